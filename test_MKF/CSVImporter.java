@@ -0,0 +1,453 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+
+// importer of IMU datasets stored as delimited text (CSV, TSV, or columns separated by spaces)
+// the file is streamed through a buffer of a FileChannel, and the numbers are parsed directly from its bytes into the
+// columns of an IMUDataset, so the importer does not create a String for each line or field, and the files can be larger
+// than the memory that the text would take. The delimiter is detected in the first data line; the lines that do not
+// start with a number (headers, comments) are skipped. The numbers are parsed exactly (the same double that
+// Double.parseDouble returns): most of them have at most 15 significant digits and are converted with one
+// multiplication or division by an exact power of 10; the rest are passed to Double.parseDouble. The times are stored
+// relative to the first sample, so the timestamps in ns (19 digits) do not lose precision
+public class CSVImporter {
+  
+  // PARAMETERS
+  private static final int bufferSize = 1 << 20;  // bytes read at once (a line can not be longer)
+  private static final int maxColumns = 64;
+  private static final double[] POW10 = { 1.0e0 , 1.0e1 , 1.0e2 , 1.0e3 , 1.0e4 , 1.0e5 , 1.0e6 , 1.0e7 , 1.0e8 , 1.0e9 , 1.0e10 , 1.0e11 , 1.0e12 , 1.0e13 , 1.0e14 , 1.0e15 , 1.0e16 , 1.0e17 , 1.0e18 , 1.0e19 , 1.0e20 , 1.0e21 , 1.0e22 };
+  
+  // PRIVATE VARIABLES
+  // columns of each quantity (counted from 0), and scale factors to the units of IMUDataset
+  private int timeColumn;
+  private double timeScale;
+  private int[] accelerationColumns;
+  private double accelerationScale;
+  private int[] angularVelocityColumns;
+  private double angularVelocityScale;
+  private int[] magnetometerColumns;  // null if the magnetic field is not imported
+  private double magnetometerScale;
+  private int[] orientationColumns;  // null if the true orientation is not imported
+  private byte delimiter;  // 0 to detect it
+  // state of the import
+  private IMUDataset dataset;
+  private byte separator;  // delimiter of the file being imported
+  private int lastColumn;  // last column that is imported
+  private boolean[] used = new boolean[CSVImporter.maxColumns];
+  private double[] values = new double[CSVImporter.maxColumns];
+  private boolean firstTime;
+  private long t0Long;  // first time, if it is an integer
+  private double t0Double;  // first time
+  private long fileSize;
+  private long lines;
+  private long skippedLines;
+  // workspace of the lines
+  private double[] am = new double[3];
+  private double[] wm = new double[3];
+  private double[] mm = new double[3];
+  private double[] q = new double[4];
+  
+  
+  // CONSTRUCTORS
+  
+  // the default layout is: time (s), acceleration (g), angular velocity (rad/s)
+  public CSVImporter() {
+    this.timeColumn = 0;
+    this.timeScale = 1.0;
+    this.accelerationColumns = new int[]{ 1 , 2 , 3 };
+    this.accelerationScale = 1.0;
+    this.angularVelocityColumns = new int[]{ 4 , 5 , 6 };
+    this.angularVelocityScale = 1.0;
+    this.magnetometerColumns = null;
+    this.magnetometerScale = 1.0;
+    this.orientationColumns = null;
+    this.delimiter = 0;
+  }
+  
+  
+  // PUBLIC STATIC METHODS
+  
+  // layout of the IMU files of the EuRoC MAV and TUM-VI datasets:
+  // timestamp (ns), angular velocity (rad/s), acceleration (m/s^2)
+  public static CSVImporter euroc() {
+    CSVImporter importer = new CSVImporter();
+    importer.set_timeColumn( 0 , 1.0e-9 );
+    importer.set_angularVelocityColumns( 1 , 2 , 3 , 1.0 );
+    importer.set_accelerationColumns( 4 , 5 , 6 , 1.0/StrapdownIntegrator.GRAVITY );
+    return importer;
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  // Method: set_timeColumn
+  // inputs:
+  //  column: column of the time
+  //  scale: factor that converts the time to s
+  // outputs:
+  public void set_timeColumn( int column , double scale ) {
+    CSVImporter.check_column( column );
+    this.timeColumn = column;
+    this.timeScale = scale;
+  }
+  
+  // scale: factor that converts the acceleration to g
+  public void set_accelerationColumns( int cx , int cy , int cz , double scale ) {
+    this.accelerationColumns = CSVImporter.columns( cx , cy , cz );
+    this.accelerationScale = scale;
+  }
+  
+  // scale: factor that converts the angular velocity to rad/s
+  public void set_angularVelocityColumns( int cx , int cy , int cz , double scale ) {
+    this.angularVelocityColumns = CSVImporter.columns( cx , cy , cz );
+    this.angularVelocityScale = scale;
+  }
+  
+  // scale: factor applied to the magnetic field (the units are kept by the dataset)
+  public void set_magnetometerColumns( int cx , int cy , int cz , double scale ) {
+    this.magnetometerColumns = CSVImporter.columns( cx , cy , cz );
+    this.magnetometerScale = scale;
+  }
+  
+  // columns of the components ( w , x , y , z ) of the true orientation
+  public void set_orientationColumns( int cw , int cx , int cy , int cz ) {
+    this.orientationColumns = CSVImporter.columns( cw , cx , cy , cz );
+  }
+  
+  // delimiter between fields: ',' , '\t' , ';' , ' ' (any number of spaces or tabs), or 0 to detect it
+  public void set_delimiter( char delimiterIn ) {
+    this.delimiter = (byte)delimiterIn;
+  }
+  
+  // lines read in the last import
+  public long get_lines() {
+    return this.lines;
+  }
+  
+  // data lines skipped in the last import because they had less fields than needed
+  public long get_skippedLines() {
+    return this.skippedLines;
+  }
+  
+  // Method: read
+  // imports a file
+  // inputs:
+  //  file: delimited text file
+  // outputs:
+  //  dataset with the samples of the file (in the order of the file)
+  public IMUDataset read( File file ) throws IOException {
+    this.prepare();
+    FileChannel channel = FileChannel.open( file.toPath() , StandardOpenOption.READ );
+    try{
+      this.fileSize = channel.size();
+      ByteBuffer buffer = ByteBuffer.allocate( CSVImporter.bufferSize );
+      byte[] b = buffer.array();
+      int start = 0;  // start of the first line that is not complete
+      int end = 0;  // end of the bytes read
+      while( true ){
+        // the incomplete line is moved to the beginning of the buffer, and the rest of it is read
+        if( start > 0 ){
+          System.arraycopy( b , start , b , 0 , end-start );
+          end -= start;
+          start = 0;
+        }
+        if( end == b.length ) throw new IOException( "Line " + ( this.lines+1 ) + " is longer than " + b.length + " bytes" );
+        buffer.limit( b.length );
+        buffer.position( end );
+        int n = channel.read( buffer );
+        if( n < 0 ) break;
+        int scanned = end;
+        end += n;
+        for(int k=scanned; k<end; k++){
+          if( b[k] == '\n' ){
+            this.parse_line( b , start , k );
+            start = k+1;
+          }
+        }
+      }
+      // the last line does not need to end with a new line
+      if( end > start ) this.parse_line( b , start , end );
+    }finally{
+      channel.close();
+    }
+    
+    IMUDataset result = ( this.dataset != null )? this.dataset : this.create_dataset( 1 );
+    this.dataset = null;
+    result.trim();
+    return result;
+  }
+  
+  
+  // PRIVATE METHODS
+  
+  private void prepare() {
+    this.lastColumn = -1;
+    for(int c=0; c<CSVImporter.maxColumns; c++) this.used[c] = false;
+    this.use( this.timeColumn );
+    for(int i=0; i<3; i++) this.use( this.accelerationColumns[i] );
+    for(int i=0; i<3; i++) this.use( this.angularVelocityColumns[i] );
+    if( this.magnetometerColumns != null ) for(int i=0; i<3; i++) this.use( this.magnetometerColumns[i] );
+    if( this.orientationColumns != null ) for(int i=0; i<4; i++) this.use( this.orientationColumns[i] );
+    this.separator = this.delimiter;
+    this.firstTime = true;
+    this.dataset = null;
+    this.lines = 0;
+    this.skippedLines = 0;
+  }
+  
+  private void use( int column ) {
+    this.used[column] = true;
+    if( column > this.lastColumn ) this.lastColumn = column;
+  }
+  
+  private IMUDataset create_dataset( int capacity ) {
+    return new IMUDataset( capacity , ( this.orientationColumns != null ) , ( this.magnetometerColumns != null ) );
+  }
+  
+  // Method: parse_line
+  // parses a line and adds its sample to the dataset (if it is a data line)
+  // inputs:
+  //  b: bytes
+  //  from: start of the line
+  //  to: end of the line (the position of the new line character)
+  // outputs:
+  private void parse_line( byte[] b , int from , int to ) {
+    this.lines++;
+    if(  to > from  &&  b[to-1] == '\r'  ) to--;
+    int i = from;
+    while(  i < to  &&  ( b[i] == ' '  ||  b[i] == '\t' )  ) i++;
+    if( i == to ) return;
+    byte first = b[i];
+    // headers and comments
+    if(  !( first >= '0'  &&  first <= '9' )  &&  first != '-'  &&  first != '+'  &&  first != '.'  ) return;
+    
+    if( this.separator == 0 ) this.separator = CSVImporter.detect_delimiter( b , i , to );
+    if( this.dataset == null ){
+      // the capacity is estimated with the length of the first data line
+      long capacity = this.fileSize/( to-from+1 ) + 16;
+      this.dataset = this.create_dataset( (int)Math.min( capacity , Integer.MAX_VALUE-8 ) );
+    }
+    
+    // the fields that are used are parsed
+    double time = 0.0;
+    int column = 0;
+    while( column <= this.lastColumn ){
+      int fieldEnd = i;
+      if( this.separator == ' ' ){
+        while(  fieldEnd < to  &&  b[fieldEnd] != ' '  &&  b[fieldEnd] != '\t'  ) fieldEnd++;
+      }else{
+        while(  fieldEnd < to  &&  b[fieldEnd] != this.separator  ) fieldEnd++;
+      }
+      if( this.used[column] ){
+        if( column == this.timeColumn ){
+          time = this.parse_time( b , i , fieldEnd );
+        }else{
+          this.values[column] = CSVImporter.parse_double( b , i , fieldEnd );
+        }
+      }
+      column++;
+      if( fieldEnd == to ) break;
+      i = fieldEnd+1;
+      if( this.separator == ' ' ) while(  i < to  &&  ( b[i] == ' '  ||  b[i] == '\t' )  ) i++;
+    }
+    if( column <= this.lastColumn ){
+      this.skippedLines++;
+      return;
+    }
+    
+    for(int k=0; k<3; k++){
+      this.am[k] = this.accelerationScale*this.values[this.accelerationColumns[k]];
+      this.wm[k] = this.angularVelocityScale*this.values[this.angularVelocityColumns[k]];
+    }
+    if( this.magnetometerColumns != null ) for(int k=0; k<3; k++) this.mm[k] = this.magnetometerScale*this.values[this.magnetometerColumns[k]];
+    if( this.orientationColumns != null ) for(int k=0; k<4; k++) this.q[k] = this.values[this.orientationColumns[k]];
+    this.dataset.add( time , this.am , this.wm , this.mm , this.q );
+  }
+  
+  // time relative to the first sample (s); the integer timestamps are subtracted before converting them to double
+  private double parse_time( byte[] b , int from , int to ) {
+    long integer = CSVImporter.parse_long( b , from , to );
+    if( integer != Long.MIN_VALUE ){
+      if( this.firstTime ){
+        this.firstTime = false;
+        this.t0Long = integer;
+        this.t0Double = (double)integer;
+      }
+      return this.timeScale*(double)( integer - this.t0Long );
+    }
+    double value = CSVImporter.parse_double( b , from , to );
+    if( this.firstTime ){
+      this.firstTime = false;
+      this.t0Long = 0;
+      this.t0Double = value;
+    }
+    return this.timeScale*( value - this.t0Double );
+  }
+  
+  
+  // PRIVATE STATIC METHODS
+  
+  private static void check_column( int column ) {
+    if(  column < 0  ||  column >= CSVImporter.maxColumns  ) throw new IllegalArgumentException( "Column out of range: " + column );
+  }
+  
+  private static int[] columns( int... c ) {
+    for(int i=0; i<c.length; i++) CSVImporter.check_column( c[i] );
+    return c;
+  }
+  
+  private static byte detect_delimiter( byte[] b , int from , int to ) {
+    byte[] candidates = { ',' , '\t' , ';' };
+    for(byte candidate : candidates){
+      for(int i=from; i<to; i++) if( b[i] == candidate ) return candidate;
+    }
+    return ' ';
+  }
+  
+  // Method: parse_long
+  // parses an integer
+  // inputs:
+  //  b: bytes
+  //  from: start of the field
+  //  to: end of the field
+  // outputs:
+  //  the integer (Long.MIN_VALUE if the field is not an integer, or if it does not fit in a long)
+  private static long parse_long( byte[] b , int from , int to ) {
+    while(  from < to  &&  ( b[from] == ' '  ||  b[from] == '"' )  ) from++;
+    while(  to > from  &&  ( b[to-1] == ' '  ||  b[to-1] == '"' )  ) to--;
+    if( from == to ) return Long.MIN_VALUE;
+    boolean negative = ( b[from] == '-' );
+    if(  negative  ||  b[from] == '+'  ) from++;
+    if( from == to ) return Long.MIN_VALUE;
+    long value = 0;
+    for(int i=from; i<to; i++){
+      int digit = b[i] - '0';
+      if(  digit < 0  ||  digit > 9  ) return Long.MIN_VALUE;
+      if( value > ( Long.MAX_VALUE - digit )/10 ) return Long.MIN_VALUE;
+      value = 10*value + digit;
+    }
+    return ( negative )? -value : value;
+  }
+  
+  // Method: parse_double
+  // parses a decimal number
+  // inputs:
+  //  b: bytes
+  //  from: start of the field
+  //  to: end of the field
+  // outputs:
+  //  the number (NaN if the field is empty)
+  private static double parse_double( byte[] b , int from , int to ) {
+    while(  from < to  &&  ( b[from] == ' '  ||  b[from] == '"' )  ) from++;
+    while(  to > from  &&  ( b[to-1] == ' '  ||  b[to-1] == '"' )  ) to--;
+    if( from == to ) return Double.NaN;
+    int i = from;
+    boolean negative = ( b[i] == '-' );
+    if(  negative  ||  b[i] == '+'  ) i++;
+    // mantissa (at most 19 digits) and decimal exponent
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean anyDigit = false;
+    while(  i < to  &&  b[i] >= '0'  &&  b[i] <= '9'  ){
+      if( digits < 19 ){
+        mantissa = 10*mantissa + ( b[i] - '0' );
+        if( mantissa != 0 ) digits++;
+      }else{
+        exponent++;
+      }
+      anyDigit = true;
+      i++;
+    }
+    if(  i < to  &&  b[i] == '.'  ){
+      i++;
+      while(  i < to  &&  b[i] >= '0'  &&  b[i] <= '9'  ){
+        if( digits < 19 ){
+          mantissa = 10*mantissa + ( b[i] - '0' );
+          if( mantissa != 0 ) digits++;
+          exponent--;
+        }
+        anyDigit = true;
+        i++;
+      }
+    }
+    if(  anyDigit  &&  i < to  &&  ( b[i] == 'e'  ||  b[i] == 'E' )  ){
+      i++;
+      boolean negativeExponent = (  i < to  &&  b[i] == '-'  );
+      if(  i < to  &&  ( b[i] == '-'  ||  b[i] == '+' )  ) i++;
+      int e = 0;
+      boolean anyExponentDigit = false;
+      while(  i < to  &&  b[i] >= '0'  &&  b[i] <= '9'  ){
+        if( e < 10000 ) e = 10*e + ( b[i] - '0' );
+        anyExponentDigit = true;
+        i++;
+      }
+      if( !anyExponentDigit ) anyDigit = false;
+      exponent += ( negativeExponent )? -e : e;
+    }
+    
+    // exact conversion: the mantissa and the power of 10 are exact doubles, so the result is rounded only once
+    if(  anyDigit  &&  i == to  &&  mantissa <= ( 1L << 53 )  &&  exponent >= -22  &&  exponent <= 22  ){
+      double value = ( exponent >= 0 )? mantissa*CSVImporter.POW10[exponent] : mantissa/CSVImporter.POW10[-exponent];
+      return ( negative )? -value : value;
+    }
+    // the rest of the cases (long mantissas, big exponents, "NaN", "Infinity", or malformed numbers)
+    try{
+      return Double.parseDouble( new String( b , from , to-from , StandardCharsets.ISO_8859_1 ) );
+    }catch( NumberFormatException e ){
+      return Double.NaN;
+    }
+  }
+  
+  
+  // MAIN
+  
+  // imports a dataset and runs all the estimators over it
+  // arguments: file, layout ("default" or "euroc"), convergence time (s)
+  public static void main( String[] args ) throws IOException {
+    if( args.length < 1 ){
+      System.out.println( "usage: CSVImporter file [default|euroc] [convergenceTime]" );
+      return;
+    }
+    File file = new File( args[0] );
+    boolean euroc = (  args.length > 1  &&  args[1].equals( "euroc" )  );
+    double convergenceTime = ( args.length > 2 )? Double.parseDouble( args[2] ) : 1.0;
+    
+    CSVImporter importer = ( euroc )? CSVImporter.euroc() : new CSVImporter();
+    long t0 = System.nanoTime();
+    IMUDataset dataset = importer.read( file );
+    double wallSeconds = ( System.nanoTime() - t0 )*1.0e-9;
+    int size = dataset.size();
+    double seconds = ( size > 0 )? dataset.t[size-1] - dataset.t[0] : 0.0;
+    System.out.println( String.format( "%d samples (%.1f s, %d lines skipped) read in %.2f s: %.1f MB/s" , size , seconds , importer.get_skippedLines() , wallSeconds , file.length()*1.0e-6/wallSeconds ) );
+    
+    for(int n=0; n<Estimators.count(); n++){
+      EstimatorRun run = new EstimatorRun( Estimators.create( n ) , dataset , convergenceTime );
+      run.run();
+      System.out.println( String.format( "%-10s %8.1f ns/update   rms error = %8.4f deg   max error = %8.4f deg" , Estimators.NAMES[n] , run.get_nanosPerUpdate() , Math.toDegrees( run.get_rmsError() ) , Math.toDegrees( run.get_maxError() ) ) );
+    }
+  }
+  
+}
\ No newline at end of file
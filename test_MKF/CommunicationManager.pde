@@ -18,10 +18,13 @@
 
 // we import the serial library
 import processing.serial.*;
+import java.io.IOException;
 
 
-// class that manages connected serial devices
-public class CommunicationManager implements Runnable {
+// class that manages connected serial devices, and the network source (if it is enabled)
+// each serial port and the network source are read by their own threads, that pass the packets to packetReceived; the
+// thread of the manager is the clock of the simulated data
+public class CommunicationManager implements Runnable, PacketListener {
   
   // PARAMETERS
   private String[] dontOpen = new String[]{ "/dev/rfcomm0" , "/dev/ttyAMA0" , "/dev/serial1" ,
@@ -30,29 +33,40 @@ public class CommunicationManager implements Runnable {
   
   // PRIVATE VARIABLES
   private PApplet thePApplet;
-  private boolean running;  // true while the thread is running
-  private boolean wait;  // true if we want to pause the thread
-  private boolean waiting;  // true if we are waiting for activity
-  private int stateN;  // state of the finite-state machine that manages the network
+  private volatile boolean running;  // true while the thread is running
   private int NSPM;  // Number of Serial Port Managers in the last update (in the list; not all will be available)
   private int NASPM;  // Number of Available Serial Port Managers in the last update (only those that can be opened; those that do not throw an exception when you try to open them)
-  private SerialPortManager[] SPM;
-  private dataAdministrator dataAdmin;
-  private Fleet theFleet;
+  private volatile SerialPortManager[] SPM;
+  private NetworkSource network;  // null if the network source is not enabled
+  private ShardManager shards;
+  private long simulationStart;  // time when the simulation clock was started (ns; 0 if the data are not simulated)
+  private long simulatedSamples;  // samples generated by the simulation clock since it was started
+  private byte[] simulationPacket;  // packet sent to the displayed shard for each simulated sample
   
   
   // CONSTRUCTORS
   
-  public CommunicationManager( PApplet aPApplet , dataAdministrator aDataAdmin , Fleet aFleet ) {
+  public CommunicationManager( PApplet aPApplet , ShardManager aShardManager ) {
     this.thePApplet = aPApplet;
     this.running = true;
-    this.wait = false;
-    this.waiting = false;
-    this.stateN = 0;
     this.NSPM = 0;
     this.NASPM = 0;
-    this.dataAdmin = aDataAdmin;
-    this.theFleet = aFleet;
+    this.SPM = new SerialPortManager[0];
+    this.shards = aShardManager;
+    this.simulationStart = 0;
+    this.simulatedSamples = 0;
+    this.simulationPacket = new byte[]{ -1 , 0 };
+    System.out.println( "The devices are read by " + ( ( DeviceThreads.are_virtual() )? "virtual" : "platform" ) + " threads" );
+    this.network = null;
+    if( networkPort > 0 ){
+      try{
+        this.network = new NetworkSource( null , networkPort , networkPort , this );
+        this.network.start();
+        System.out.println( "Receiving packets on UDP and TCP port " + networkPort );
+      }catch( IOException e ){
+        System.out.println( "The network source could not be opened on port " + networkPort + ": " + e.getMessage() );
+      }
+    }
     ( new Thread( this ) ).start();
   }
   
@@ -90,7 +104,7 @@ public class CommunicationManager implements Runnable {
       // if it has not been opened, we try to open it (here is where the objects are created)
       if( !opened ){
         try{
-          auxSPM[newNASPM] = new SerialPortManager( this.thePApplet , theName );
+          auxSPM[newNASPM] = new SerialPortManager( this.thePApplet , theName , this );
           newNASPM++;
         }catch( Exception exc ){
         }
@@ -109,66 +123,54 @@ public class CommunicationManager implements Runnable {
         this.SPM[i].stop();
       }
     }
-    // finally, we perform the redefinition
-    this.SPM = new SerialPortManager[newNASPM];
+    // finally, we perform the redefinition (the array is replaced, not modified, because serialEvent reads it)
+    SerialPortManager[] newSPM = new SerialPortManager[newNASPM];
     for(int i=0; i<newNASPM; i++){
-      this.SPM[i] = auxSPM[i];
-      System.out.println( this.SPM[i].serialPortName );
+      newSPM[i] = auxSPM[i];
+      System.out.println( newSPM[i].serialPortName );
     }
+    this.SPM = newSPM;
     System.out.println();
     this.NASPM = newNASPM;
     this.NSPM = newNSPM;
   }  // end update_serialPorts
   
-  public void notify_activity() {
-    this.wait = false;
-    if( this.waiting ){
-      synchronized( this ){
-        this.notify();
-      }
+  // wakes up the thread of the serial port that has activity (it is called by serialEvent)
+  public void notify_activity( Serial aSerial ) {
+    SerialPortManager[] managers = this.SPM;
+    for(int i=0; i<managers.length; i++){
+      if( managers[i].is_thisSerial( aSerial ) ) managers[i].notify_activity();
     }
   }
   
   public void run() {
     while( this.running ){
-      //
-      switch( this.stateN ){
-        case 0:  // we do not have a server running
-          try{
-            this.wait = false;  // we do not want it to stop in this state
-            this.stateN = 1;
-          }catch( Exception e ){
-            e.printStackTrace();
-          }
-          break;
-        case 1:  // we have a server running
-          // first, we manage the serial ports
-          this.manage_serial();
-          break;
-        default:
-          this.stateN = 0;
-          break;
-      }
-      //
-      if( this.wait ){
-        synchronized( this ){
-          this.waiting = true;
-          try{
-            this.wait(1000);  // we wait at most 1 second
-          }catch( Exception e ){
-            e.printStackTrace();
-          }
-          this.waiting = false;
-        }
+      // if the data are simulated, the simulation clock generates the samples
+      if( this.simulating() ){
+        this.manage_simulation();
       }else{
-        this.wait = true;
+        // the data of the devices are received by their threads; here we only check if the simulation is started
+        this.simulationStart = 0;
+        try{
+          Thread.sleep( 10 );
+        }catch( InterruptedException e ){
+        }
       }
-    }  // end while( this.running )
-  }  // end public void run()
+    }
+  }
+  
+  // receives the packets of the serial ports and the network source (it is called by the thread of each device)
+  public void packetReceived( byte[] data , long t0 , long t ) {
+    // if the data are simulated, the received data are discarded (the samples are generated by the simulation clock)
+    if( this.simulating() ) return;
+    latency.frame.record( t-t0 );
+    // the data and the estimators are updated by the shard of the sensor
+    this.shards.dispatch( data , t0 , t );
+  }
   
   void stop(){
     this.running = false;
-    this.notify_activity();
+    if( this.network != null ) this.network.stop();
   }
   
   
@@ -178,20 +180,32 @@ public class CommunicationManager implements Runnable {
     return Math.sqrt( x*x + y*y + z*z );
   }
   
-  private void manage_serial() {
-    for(int i=0; i<this.NASPM; i++){
-      while( this.SPM[i].available() > 0 ){
-        byte[] data = this.SPM[i].read();
-        if( data != null ){
-          samplesFromLastUpdate++;
-          long t = System.nanoTime();
-          // we update the data
-          this.dataAdmin.updateData( data );
-          // and the estimators
-          theFleet.updateEstimators( t , this.dataAdmin.get_am() , this.dataAdmin.get_wm() );
-          updates++;
-        }
-      }
+  private boolean simulating() {
+    return ( this.shards.get_shards()[0].dataAdmin.dataSource != 0 );
+  }
+  
+  // generates the samples of the simulation clock: one sample each 1/simulationRate seconds, with simulated arrival
+  // times, so the estimators are updated with a fixed time step
+  private void manage_simulation() {
+    SensorShard displayed = this.shards.get_shards()[0];
+    long dtNanos = (long)( displayed.dataAdmin.simulator.get_dt()*1.0e9 );
+    long now = System.nanoTime();
+    if( this.simulationStart == 0 ){
+      this.simulationStart = now;
+      this.simulatedSamples = 0;
+    }
+    long due = (now-this.simulationStart)/dtNanos;
+    // if we have been stopped for a long time, we do not try to recover more than 1 second of samples
+    long samplesPerSecond = 1000000000L/dtNanos;
+    if( due-this.simulatedSamples > samplesPerSecond ) this.simulatedSamples = due-samplesPerSecond;
+    while( this.simulatedSamples < due ){
+      this.simulatedSamples++;
+      long t = this.simulationStart + this.simulatedSamples*dtNanos;
+      displayed.submit( this.simulationPacket , t , t );
+    }
+    try{
+      Thread.sleep( 1 );
+    }catch( InterruptedException e ){
     }
   }
   
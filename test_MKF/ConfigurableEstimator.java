@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+
+// settings and update scheduler shared by the double (OrientationEstimator64) and the single (OrientationEstimator32)
+// precision estimators; the state and the noise matrices are kept by the subclasses
+public abstract class ConfigurableEstimator extends OrientationEstimator {
+  
+  // PUBLIC METHODS
+  
+  public void set_chartUpdate( boolean chartUpdateIn ){
+    this.chartUpdate = chartUpdateIn;
+  }
+  
+  public void set_W0( double W0In ){
+    this.W0 = W0In;
+  }
+  
+  public void set_reducedSigmaPoints( boolean reducedSigmaPointsIn ){
+    this.reducedSigmaPoints = reducedSigmaPointsIn;
+  }
+  
+  public void set_sequentialUpdate( boolean sequentialUpdateIn ){
+    this.sequentialUpdate = sequentialUpdateIn;
+  }
+  
+  public void set_fastMath( boolean fastMathIn ){
+    this.fastMath = fastMathIn;
+  }
+  
+  public void set_measurementAxis( int axis , boolean use ){
+    this.measurementAxes[axis] = use;
+  }
+  
+  public void set_correctionPeriod( int period ){
+    if( period < 0 ) throw new IllegalArgumentException( "Not a valid correction period: " + period );
+    this.correctionPeriod = period;
+  }
+  
+  public int get_correctionPeriod(){
+    return this.correctionPeriod;
+  }
+  
+  public void request_correction(){
+    this.correctionRequested = true;
+  }
+  
+  // the full update is performed if a correction is due (see set_correctionPeriod), and the prediction if not
+  public void updateIMU( double[] am , double[] wm , double dt ){
+    this.samplesSinceCorrection++;
+    if(  this.correctionRequested  ||  ( this.correctionPeriod > 0  &&  this.samplesSinceCorrection >= this.correctionPeriod )  ){
+      this.update( am , wm , dt );
+      this.samplesSinceCorrection = 0;
+      this.correctionRequested = false;
+    }else{
+      this.predict( wm , dt );
+    }
+  }
+  
+  // the noise covariance matrices of the measurements are scaled during the update (see GyroPreintegrator)
+  public void updateIMU( GyroPreintegrator step ){
+    step.get_am( this.amPreintegrated );
+    double gyroscopeNoise;
+    if( this.meanRate() ){
+      step.get_wm( this.wmPreintegrated );
+      gyroscopeNoise = step.get_gyroscopeNoiseFactor();
+    }else{
+      step.get_wmEnd( this.wmPreintegrated );
+      gyroscopeNoise = step.get_endGyroscopeNoiseFactor();
+    }
+    this.scale_measurementNoise( gyroscopeNoise , step.get_accelerometerNoiseFactor() );
+    this.updateIMU( this.amPreintegrated , this.wmPreintegrated , step.get_dt() );
+    this.restore_measurementNoise();
+  }
+  
+  public void correct( double[] am , double[] wm ){
+    this.update( am , wm , 0.0 );
+    this.samplesSinceCorrection = 0;
+    this.correctionRequested = false;
+  }
+  
+  // ABSTRACT METHODS
+  
+  // Method: update
+  // full update of the estimator: prediction of the state, and correction with the accelerometer and the gyroscope
+  // inputs:
+  //  am: measured acceleration (g)
+  //  wm: measured angular velocity (rad/s)
+  //  dt: time step from the last update (s)
+  // outputs:
+  protected abstract void update( double[] am , double[] wm , double dt );
+  
+  // Method: scale_measurementNoise
+  // scales the noise covariance matrices of the measurements used by the updates until restore_measurementNoise is
+  // called (the configured matrices are not modified, so they can be set meanwhile)
+  // inputs:
+  //  gyroscope: factor of the gyroscope noise covariance matrix
+  //  accelerometer: factor of the accelerometer noise covariance matrix
+  // outputs:
+  protected abstract void scale_measurementNoise( double gyroscope , double accelerometer );
+  
+  protected abstract void restore_measurementNoise();
+  
+  
+  // PROTECTED METHODS
+  
+  // Method: meanRate
+  // tells which angular velocity of a pre-integrated interval is measured by the gyroscope in the model of the estimator
+  // (in the MEKF, the rotation of an interval is produced by the angular velocity of the previous update)
+  // inputs:
+  // outputs:
+  //  true if it is the mean angular velocity of the interval, false if it is the one at the end of the interval
+  protected boolean meanRate(){
+    return false;
+  }
+  
+  // settings saved with the state
+  protected void writeSettings( DataOutput out ) throws IOException {
+    out.writeBoolean( this.chartUpdate );
+    out.writeDouble( this.W0 );
+  }
+  
+  protected void readSettings( DataInput in ) throws IOException {
+    this.chartUpdate = in.readBoolean();
+    this.W0 = in.readDouble();
+  }
+  
+  // trigonometric functions used by the estimators (FastMath if the fast math is enabled, Math otherwise)
+  protected double sin( double x ){
+    return ( this.fastMath )? FastMath.sin( x ) : Math.sin( x );
+  }
+  
+  protected double cos( double x ){
+    return ( this.fastMath )? FastMath.cos( x ) : Math.cos( x );
+  }
+  
+  protected double asin( double x ){
+    return ( this.fastMath )? FastMath.asin( x ) : Math.asin( x );
+  }
+  
+  
+  // PRIVATE VARIABLES
+  // use or not the chart update
+  protected boolean chartUpdate = true;
+  // weight of the sigma point produced with the distribution mean (only MUKF)
+  double W0 = 1.0/25.0;
+  // sample only the state (13 sigma points), and add the process noise analytically (only MUKF)
+  protected boolean reducedSigmaPoints = false;
+  // use or not the sequential update (one measurement component at a time) when the noise matrices are diagonal
+  protected boolean sequentialUpdate = false;
+  // measurement components used in the sequential update (ax,ay,az,wx,wy,wz)
+  protected boolean[] measurementAxes = { true , true , true , true , true , true };
+  // use or not the fast trigonometric functions
+  protected boolean fastMath = false;
+  // samples between full updates (see set_correctionPeriod), samples since the last one, and requested correction
+  protected int correctionPeriod = 1;
+  protected int samplesSinceCorrection = 0;
+  protected boolean correctionRequested = false;
+  // workspace of the pre-integrated updates
+  private double[] amPreintegrated = new double[3];
+  private double[] wmPreintegrated = new double[3];
+  
+}
\ No newline at end of file
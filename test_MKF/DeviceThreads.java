@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.lang.reflect.Method;
+
+
+// threads that read the devices
+// each device is read by its own thread, that blocks until the device has data. If the JVM has virtual threads (Java
+// 21 or later), the threads are virtual, so a new device does not take a platform thread; if not, they are daemon
+// platform threads. The virtual threads are created by reflection, so the classes still run in Java 8
+public class DeviceThreads {
+  
+  // PRIVATE VARIABLES
+  private static Method ofVirtual;  // Thread.ofVirtual() (null if there are no virtual threads)
+  private static Method name;  // Thread.Builder.name( String )
+  private static Method start;  // Thread.Builder.start( Runnable )
+  
+  static {
+    try{
+      Class<?> builder = Class.forName( "java.lang.Thread$Builder" );
+      DeviceThreads.name = builder.getMethod( "name" , String.class );
+      DeviceThreads.start = builder.getMethod( "start" , Runnable.class );
+      DeviceThreads.ofVirtual = Thread.class.getMethod( "ofVirtual" );
+    }catch( Exception e ){
+      DeviceThreads.ofVirtual = null;
+    }
+  }
+  
+  
+  // PUBLIC STATIC METHODS
+  
+  // Method: start
+  // starts the thread of a device
+  // inputs:
+  //  threadName: name of the thread
+  //  task: loop that reads the device
+  // outputs:
+  //  the started thread
+  public static Thread start( String threadName , Runnable task ) {
+    if( DeviceThreads.ofVirtual != null ){
+      try{
+        Object builder = DeviceThreads.name.invoke( DeviceThreads.ofVirtual.invoke( null ) , threadName );
+        return (Thread)DeviceThreads.start.invoke( builder , task );
+      }catch( Exception e ){
+        // if the virtual threads can not be created, we use platform threads
+        DeviceThreads.ofVirtual = null;
+      }
+    }
+    Thread thread = new Thread( task , threadName );
+    thread.setDaemon( true );
+    thread.start();
+    return thread;
+  }
+  
+  // true if the threads of the devices are virtual
+  public static boolean are_virtual() {
+    return ( DeviceThreads.ofVirtual != null );
+  }
+  
+}
\ No newline at end of file
@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+
+// ring of estimates in a memory-mapped file, written by one thread and read by any number of processes
+// layout (little endian):
+//  header (64 bytes):
+//   0 int magic ("MKFR")   4 int version   8 int number of slots   12 int size of a slot (128)
+//   16 int number of estimators   20 int offset of the first slot   24 long number of written records
+//   32 long creation time (ms since the epoch)   40-63 reserved
+//  labels (from byte 64): 32 bytes for each estimator, UTF-8 padded with zeros
+//  slots (from the offset of the first slot): the record n is written in the slot n%(number of slots)
+//   0 long sequence (2n+1 while the record n is being written, 2n+2 when it is complete)
+//   8 long time of the sample (ns, System.nanoTime: CLOCK_MONOTONIC in Linux, so it is comparable between processes)
+//   16 int index of the estimator   20 int 1 if the state is finite, 0 if not
+//   24 double q[4]   56 double w[3]   80 double diagonal of P[6]
+// a reader reads the sequence, the record and the sequence again; the record is valid if both sequences are 2n+2 (if
+// not, it has been overwritten while it was read). The number of written records is updated after each record, so the
+// readers can follow the writer. The writes (and the reads) are ordered with the store (and load) fences of
+// sun.misc.Unsafe, since the accesses to a MappedByteBuffer are plain accesses (VarHandle fences need Java 9)
+public class EstimateRing {
+  
+  // PARAMETERS
+  public static final int MAGIC = 0x4D4B4652;
+  public static final int VERSION = 1;
+  public static final int HEADER_SIZE = 64;
+  public static final int LABEL_SIZE = 32;
+  public static final int SLOT_SIZE = 128;
+  private static final int WRITTEN = 24;  // position of the number of written records in the header
+  // Unsafe.storeFence and Unsafe.loadFence (bound to the Unsafe instance)
+  private static final MethodHandle STORE_FENCE;
+  private static final MethodHandle LOAD_FENCE;
+  static {
+    try{
+      Class<?> unsafeClass = Class.forName( "sun.misc.Unsafe" );
+      Field field = unsafeClass.getDeclaredField( "theUnsafe" );
+      field.setAccessible( true );
+      Object unsafe = field.get( null );
+      MethodType type = MethodType.methodType( void.class );
+      STORE_FENCE = MethodHandles.lookup().findVirtual( unsafeClass , "storeFence" , type ).bindTo( unsafe );
+      LOAD_FENCE = MethodHandles.lookup().findVirtual( unsafeClass , "loadFence" , type ).bindTo( unsafe );
+    }catch( ReflectiveOperationException e ){
+      throw new ExceptionInInitializerError( e );
+    }
+  }
+  
+  // PRIVATE VARIABLES
+  private MappedByteBuffer buffer;
+  private int slots;
+  private int slotsOffset;
+  private long written;  // number of written records
+  // workspace of write
+  private double[] q = new double[4];
+  private double[] w = new double[3];
+  private double[] P = new double[6];
+  
+  
+  // CONSTRUCTORS
+  
+  // Method: EstimateRing
+  // creates the ring file (if it exists, it is overwritten)
+  // inputs:
+  //  file: ring file (its directory is created if it does not exist)
+  //  slotsIn: number of slots (records kept in the ring)
+  //  labels: label of each estimator
+  // outputs:
+  public EstimateRing( File file , int slotsIn , String[] labels ) throws IOException {
+    this.slots = slotsIn;
+    this.slotsOffset = EstimateRing.HEADER_SIZE + EstimateRing.LABEL_SIZE*labels.length;
+    this.written = 0;
+    File directory = file.getAbsoluteFile().getParentFile();
+    if( directory != null ) directory.mkdirs();
+    long size = this.slotsOffset + (long)EstimateRing.SLOT_SIZE*this.slots;
+    RandomAccessFile raf = new RandomAccessFile( file , "rw" );
+    try{
+      raf.setLength( 0 );
+      raf.setLength( size );
+      this.buffer = raf.getChannel().map( FileChannel.MapMode.READ_WRITE , 0 , size );
+    }finally{
+      // the mapping stays valid after closing the file
+      raf.close();
+    }
+    this.buffer.order( ByteOrder.LITTLE_ENDIAN );
+    
+    this.buffer.putInt( 4 , EstimateRing.VERSION );
+    this.buffer.putInt( 8 , this.slots );
+    this.buffer.putInt( 12 , EstimateRing.SLOT_SIZE );
+    this.buffer.putInt( 16 , labels.length );
+    this.buffer.putInt( 20 , this.slotsOffset );
+    this.buffer.putLong( EstimateRing.WRITTEN , 0 );
+    this.buffer.putLong( 32 , System.currentTimeMillis() );
+    for(int n=0; n<labels.length; n++){
+      byte[] label = labels[n].getBytes( StandardCharsets.UTF_8 );
+      int length = Math.min( label.length , EstimateRing.LABEL_SIZE-1 );
+      for(int k=0; k<length; k++) this.buffer.put( EstimateRing.HEADER_SIZE + n*EstimateRing.LABEL_SIZE + k , label[k] );
+    }
+    // the magic number is written the last, so a reader does not take a header that is being written
+    EstimateRing.storeFence();
+    this.buffer.putInt( 0 , EstimateRing.MAGIC );
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  // Method: write
+  // writes the current estimate of an estimator in the next slot
+  // inputs:
+  //  index: index of the estimator
+  //  t: time of the sample (ns)
+  //  estimator: estimator
+  // outputs:
+  public void write( int index , long t , OrientationEstimator estimator ) {
+    estimator.get_q( this.q );
+    estimator.get_w( this.w );
+    estimator.get_Pdiagonal( this.P );
+    int slot = this.slotsOffset + (int)( this.written % this.slots )*EstimateRing.SLOT_SIZE;
+    long sequence = 2*this.written + 1;
+    this.buffer.putLong( slot , sequence );
+    EstimateRing.storeFence();
+    this.buffer.putLong( slot+8 , t );
+    this.buffer.putInt( slot+16 , index );
+    this.buffer.putInt( slot+20 , ( estimator.is_finite() )? 1 : 0 );
+    for(int i=0; i<4; i++) this.buffer.putDouble( slot+24+8*i , this.q[i] );
+    for(int i=0; i<3; i++) this.buffer.putDouble( slot+56+8*i , this.w[i] );
+    for(int i=0; i<6; i++) this.buffer.putDouble( slot+80+8*i , this.P[i] );
+    EstimateRing.storeFence();
+    this.buffer.putLong( slot , sequence+1 );
+    this.written++;
+    EstimateRing.storeFence();
+    this.buffer.putLong( EstimateRing.WRITTEN , this.written );
+  }
+  
+  public long get_written() {
+    return this.written;
+  }
+  
+  public int get_slots() {
+    return this.slots;
+  }
+  
+  
+  // PRIVATE STATIC METHODS
+  
+  // the stores before the fence are not reordered with the stores after it
+  private static void storeFence() {
+    try{
+      EstimateRing.STORE_FENCE.invokeExact();
+    }catch( Throwable e ){
+      throw new IllegalStateException( e );
+    }
+  }
+  
+  // the loads before the fence are not reordered with the loads after it
+  private static void loadFence() {
+    try{
+      EstimateRing.LOAD_FENCE.invokeExact();
+    }catch( Throwable e ){
+      throw new IllegalStateException( e );
+    }
+  }
+  
+  
+  // record of the ring, as it is read by Reader
+  public static class Record {
+    public long t;  // time of the sample (ns)
+    public int estimator;  // index of the estimator
+    public boolean finite;
+    public double[] q = new double[4];
+    public double[] w = new double[3];
+    public double[] Pdiagonal = new double[6];
+  }
+  
+  
+  // reader of a ring file (it can be used in other process)
+  public static class Reader {
+    
+    private MappedByteBuffer buffer;
+    private int slots;
+    private int slotsOffset;
+    private String[] labels;
+    
+    public Reader( File file ) throws IOException {
+      RandomAccessFile raf = new RandomAccessFile( file , "r" );
+      try{
+        this.buffer = raf.getChannel().map( FileChannel.MapMode.READ_ONLY , 0 , raf.length() );
+      }finally{
+        raf.close();
+      }
+      this.buffer.order( ByteOrder.LITTLE_ENDIAN );
+      if( this.buffer.getInt( 0 ) != EstimateRing.MAGIC ) throw new IOException( "Not an estimate ring" );
+      EstimateRing.loadFence();
+      if( this.buffer.getInt( 4 ) != EstimateRing.VERSION ) throw new IOException( "Unsupported ring version: " + this.buffer.getInt( 4 ) );
+      this.slots = this.buffer.getInt( 8 );
+      this.slotsOffset = this.buffer.getInt( 20 );
+      this.labels = new String[this.buffer.getInt( 16 )];
+      for(int n=0; n<this.labels.length; n++){
+        byte[] label = new byte[EstimateRing.LABEL_SIZE];
+        int length = 0;
+        for(int k=0; k<EstimateRing.LABEL_SIZE; k++){
+          label[k] = this.buffer.get( EstimateRing.HEADER_SIZE + n*EstimateRing.LABEL_SIZE + k );
+          if( label[k] != 0 ) length = k+1;
+        }
+        this.labels[n] = new String( label , 0 , length , StandardCharsets.UTF_8 );
+      }
+    }
+    
+    public String[] get_labels() {
+      return this.labels;
+    }
+    
+    public int get_slots() {
+      return this.slots;
+    }
+    
+    // number of records written by the writer (the last one is the record get_written()-1)
+    public long get_written() {
+      long written = this.buffer.getLong( EstimateRing.WRITTEN );
+      // the records are read after the number of written records
+      EstimateRing.loadFence();
+      return written;
+    }
+    
+    // Method: read
+    // reads the record n
+    // inputs:
+    //  n: number of the record (it is available if  get_written()-get_slots() <= n < get_written() )
+    //  record: where the record is read
+    // outputs:
+    //  true if the record has been read (false if it has not been written yet, or if it has been overwritten)
+    public boolean read( long n , Record record ) {
+      int slot = this.slotsOffset + (int)( n % this.slots )*EstimateRing.SLOT_SIZE;
+      long sequence = 2*n + 2;
+      if( this.buffer.getLong( slot ) != sequence ) return false;
+      EstimateRing.loadFence();
+      record.t = this.buffer.getLong( slot+8 );
+      record.estimator = this.buffer.getInt( slot+16 );
+      record.finite = ( this.buffer.getInt( slot+20 ) != 0 );
+      for(int i=0; i<4; i++) record.q[i] = this.buffer.getDouble( slot+24+8*i );
+      for(int i=0; i<3; i++) record.w[i] = this.buffer.getDouble( slot+56+8*i );
+      for(int i=0; i<6; i++) record.Pdiagonal[i] = this.buffer.getDouble( slot+80+8*i );
+      EstimateRing.loadFence();
+      return ( this.buffer.getLong( slot ) == sequence );
+    }
+  
+  }
+  
+}
\ No newline at end of file
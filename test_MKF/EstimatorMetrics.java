@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+
+// metrics of an estimator: cost and allocated bytes of each update, and number of updates that left a non-finite state
+// they are written by the thread that updates the estimator, and can be read from any thread (GUI, or JMX)
+public class EstimatorMetrics implements EstimatorMetricsMBean {
+  
+  // PRIVATE VARIABLES
+  private final String name;
+  private final LatencyHistogram cost;  // time spent in each updateIMU (ns)
+  private volatile long allocatedBytes;  // bytes allocated in all the updates
+  private volatile long allocationSamples;  // number of updates in which the allocated bytes were measured
+  private volatile long nonFinite;  // number of updates that left NaN or infinite values in q or P
+  private ObjectName objectName;  // name in the MBean server (null if it is not registered)
+  
+  
+  // CONSTRUCTORS
+  
+  public EstimatorMetrics( String nameIn ) {
+    this.name = nameIn;
+    this.cost = new LatencyHistogram( nameIn );
+    this.allocatedBytes = 0;
+    this.allocationSamples = 0;
+    this.nonFinite = 0;
+    this.objectName = null;
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  // Method: record
+  // records the metrics of an update (only called by the thread that updates the estimator)
+  // inputs:
+  //  nanos: time spent in the update (ns)
+  //  bytes: bytes allocated in the update (negative if they were not measured)
+  //  finite: false if the update left NaN or infinite values in the state
+  // outputs:
+  public void record( long nanos , long bytes , boolean finite ) {
+    this.cost.record( nanos );
+    if( bytes >= 0 ){
+      this.allocatedBytes += bytes;
+      this.allocationSamples++;
+    }
+    if( !finite ) this.nonFinite++;
+  }
+  
+  // Method: register
+  // publishes the metrics in the platform MBean server (with the name "test_MKF:type=EstimatorMetrics,name=...")
+  // inputs:
+  // outputs:
+  //  true if the metrics have been registered
+  public boolean register() {
+    try{
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      String quoted = ObjectName.quote( this.name );
+      ObjectName on = new ObjectName( "test_MKF:type=EstimatorMetrics,name=" + quoted );
+      // if there are several estimators with the same name (one for each sensor), we number them
+      for(int k=2; server.isRegistered( on ); k++) on = new ObjectName( "test_MKF:type=EstimatorMetrics,name=" + quoted + ",instance=" + k );
+      server.registerMBean( this , on );
+      this.objectName = on;
+      return true;
+    }catch( Exception e ){
+      System.out.println( "Not able to register the metrics of " + this.name + ": " + e );
+      return false;
+    }
+  }
+  
+  public void unregister() {
+    if( this.objectName == null ) return;
+    try{
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean( this.objectName );
+    }catch( Exception e ){
+    }
+    this.objectName = null;
+  }
+  
+  // Method: snapshot
+  // takes the current values of the metrics
+  // inputs:
+  // outputs:
+  //  snapshot of the metrics
+  public Snapshot snapshot() {
+    return new Snapshot( this.getUpdateCount() , this.getMeanNanos() , this.getP99Nanos() , this.getMaxNanos() ,
+                         this.getAllocatedBytesPerUpdate() , this.getNonFiniteCount() );
+  }
+  
+  // MBEAN METHODS
+  
+  public String getName() {
+    return this.name;
+  }
+  
+  public long getUpdateCount() {
+    return this.cost.get_count();
+  }
+  
+  public double getMeanNanos() {
+    return this.cost.get_mean();
+  }
+  
+  public long getP99Nanos() {
+    return this.cost.get_percentile( 99.0 );
+  }
+  
+  public long getMaxNanos() {
+    return this.cost.get_max();
+  }
+  
+  public double getAllocatedBytesPerUpdate() {
+    long n = this.allocationSamples;
+    return ( n > 0 )? (double)this.allocatedBytes/n : 0.0;
+  }
+  
+  public long getNonFiniteCount() {
+    return this.nonFinite;
+  }
+  
+  public void reset() {
+    this.cost.reset();
+    this.allocatedBytes = 0;
+    this.allocationSamples = 0;
+    this.nonFinite = 0;
+  }
+  
+  
+  // PUBLIC CLASSES
+  
+  // values of the metrics at some instant
+  public static class Snapshot {
+    public final long updates;
+    public final double meanNanos;
+    public final long p99Nanos;
+    public final long maxNanos;
+    public final double bytesPerUpdate;
+    public final long nonFinite;
+    
+    public Snapshot( long updatesIn , double meanNanosIn , long p99NanosIn , long maxNanosIn , double bytesPerUpdateIn , long nonFiniteIn ) {
+      this.updates = updatesIn;
+      this.meanNanos = meanNanosIn;
+      this.p99Nanos = p99NanosIn;
+      this.maxNanos = maxNanosIn;
+      this.bytesPerUpdate = bytesPerUpdateIn;
+      this.nonFinite = nonFiniteIn;
+    }
+    
+    public String toString() {
+      return String.format( "%.1f us (p99 %.1f, max %.1f), %.0f B/update, %d non-finite" ,
+                            1.0e-3*this.meanNanos , 1.0e-3*this.p99Nanos , 1.0e-3*this.maxNanos , this.bytesPerUpdate , this.nonFinite );
+    }
+  }
+  
+}
\ No newline at end of file
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+// management interface of the EstimatorMetrics (the attributes are shown by any JMX console, like jconsole)
+public interface EstimatorMetricsMBean {
+  
+  public String getName();
+  
+  public long getUpdateCount();
+  
+  public double getMeanNanos();
+  
+  public long getP99Nanos();
+  
+  public long getMaxNanos();
+  
+  public double getAllocatedBytesPerUpdate();
+  
+  public long getNonFiniteCount();
+  
+  public void reset();
+  
+}
\ No newline at end of file
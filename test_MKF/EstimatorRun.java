@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+
+// class that runs an estimator over a dataset, and accumulates the angular error with respect to the true orientation
+// the run can be advanced in several steps (the estimator keeps its state between them). The errors of the samples
+// before the convergence time are not accumulated. If the dataset does not have the true orientation, the error is the
+// tilt of the prediction: the angle between the measured acceleration and the gravity predicted with the previous
+// estimation (the error of the estimation after the update would favour the estimators that follow the accelerometer)
+public class EstimatorRun {
+  
+  // PRIVATE VARIABLES
+  private OrientationEstimator estimator;
+  private IMUDataset dataset;
+  private double convergenceTime;  // time after which the errors are accumulated (s)
+  private int next;  // index of the next sample
+  private long count;  // number of accumulated errors
+  private double sum;  // sum of the errors (rad)
+  private double sum2;  // sum of the squared errors (rad^2)
+  private double max;  // maximum error (rad)
+  private long nanos;  // CPU time spent in the updates (ns; wall-clock time if the JVM can not measure it)
+  private boolean finite;  // false if the estimator produced a non-finite quaternion
+  private double[] am = new double[3];
+  private double[] wm = new double[3];
+  private double[] q = new double[4];
+  private double[] qt = new double[4];
+  
+  
+  // CONSTRUCTORS
+  
+  public EstimatorRun( OrientationEstimator estimatorIn , IMUDataset datasetIn , double convergenceTimeIn ) {
+    this.estimator = estimatorIn;
+    this.dataset = datasetIn;
+    this.convergenceTime = convergenceTimeIn;
+    this.next = 0;
+    this.count = 0;
+    this.sum = 0.0;
+    this.sum2 = 0.0;
+    this.max = 0.0;
+    this.nanos = 0;
+    this.finite = true;
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  // Method: advance
+  // updates the estimator with the next samples of the dataset
+  // inputs:
+  //  samples: number of samples (it stops at the end of the dataset)
+  // outputs:
+  //  number of processed samples
+  public int advance( int samples ) {
+    int end = (int)Math.min( (long)this.next + samples , this.dataset.size() );
+    int start = this.next;
+    // we measure the CPU time of the whole loop (measuring each update would cost more than some of the updates)
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    boolean cpuTime = bean.isCurrentThreadCpuTimeSupported();
+    long t0 = ( cpuTime )? bean.getCurrentThreadCpuTime() : System.nanoTime();
+    for(int k=start; k<end; k++){
+      this.dataset.get_am( k , this.am );
+      this.dataset.get_wm( k , this.wm );
+      boolean accumulate = ( this.dataset.t[k]-this.dataset.t[0] >= this.convergenceTime );
+      if(  accumulate  &&  !this.dataset.has_groundTruth()  ){
+        this.estimator.get_q( this.q );
+        this.accumulate( EstimatorRun.tiltAngle( this.q , this.am ) );
+      }
+      this.estimator.updateIMU( this.am , this.wm , this.dataset.get_dt( k ) );
+      if(  accumulate  &&  this.dataset.has_groundTruth()  ){
+        this.estimator.get_q( this.q );
+        this.dataset.get_q( k , this.qt );
+        this.accumulate( EstimatorRun.angle( this.q , this.qt ) );
+      }
+    }
+    long t1 = ( cpuTime )? bean.getCurrentThreadCpuTime() : System.nanoTime();
+    this.nanos += t1 - t0;
+    this.next = end;
+    return end-start;
+  }
+  
+  // runs the estimator until the end of the dataset
+  public void run() {
+    this.advance( this.dataset.size()-this.next );
+  }
+  
+  public boolean finished() {
+    return ( this.next >= this.dataset.size() );
+  }
+  
+  public OrientationEstimator get_estimator() {
+    return this.estimator;
+  }
+  
+  public int get_processedSamples() {
+    return this.next;
+  }
+  
+  public long get_errorCount() {
+    return this.count;
+  }
+  
+  // mean angular error (rad)
+  public double get_meanError() {
+    return ( this.count > 0 )? this.sum/this.count : 0.0;
+  }
+  
+  // root mean square angular error (rad)
+  public double get_rmsError() {
+    return ( this.count > 0 )? Math.sqrt( this.sum2/this.count ) : 0.0;
+  }
+  
+  // maximum angular error (rad)
+  public double get_maxError() {
+    return this.max;
+  }
+  
+  // false if the estimator produced a non-finite quaternion
+  public boolean is_finite() {
+    return this.finite;
+  }
+  
+  // CPU time per update (ns)
+  public double get_nanosPerUpdate() {
+    return ( this.next > 0 )? (double)this.nanos/this.next : 0.0;
+  }
+  
+  
+  // PRIVATE METHODS
+  
+  private void accumulate( double e ) {
+    if( Double.isNaN( e ) ){
+      this.finite = false;
+      e = Math.PI;
+    }
+    this.count++;
+    this.sum += e;
+    this.sum2 += e*e;
+    if( e > this.max ) this.max = e;
+  }
+  
+  
+  // PUBLIC STATIC METHODS
+  
+  // Method: angle
+  // angle of the rotation between two orientations
+  // inputs:
+  //  p, q: unit quaternions
+  // outputs:
+  //  angle of the rotation that transforms one into the other (rad, in [0,pi])
+  public static double angle( double[] p , double[] q ) {
+    double d = Math.abs( p[0]*q[0] + p[1]*q[1] + p[2]*q[2] + p[3]*q[3] );
+    if( d > 1.0 ) d = 1.0;
+    return 2.0*Math.acos( d );
+  }
+  
+  // Method: tiltAngle
+  // angle between the gravity predicted by an orientation and a measured acceleration
+  // inputs:
+  //  q: unit quaternion
+  //  am: measured acceleration
+  // outputs:
+  //  angle between the two directions (rad, in [0,pi]; 0 if the acceleration is null)
+  public static double tiltAngle( double[] q , double[] am ) {
+    double anorm = Math.sqrt( am[0]*am[0] + am[1]*am[1] + am[2]*am[2] );
+    if( anorm == 0.0 ) return 0.0;
+    // gravity in the sensor reference frame ( g = q^* (0,0,1) q )
+    double gx = 2.0*( q[1]*q[3] - q[0]*q[2] );
+    double gy = 2.0*( q[2]*q[3] + q[0]*q[1] );
+    double gz = q[0]*q[0] - q[1]*q[1] - q[2]*q[2] + q[3]*q[3];
+    double c = ( gx*am[0] + gy*am[1] + gz*am[2] )/anorm;
+    if( c > 1.0 ) c = 1.0;
+    if( c < -1.0 ) c = -1.0;
+    return Math.acos( c );
+  }
+  
+}
\ No newline at end of file
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+
+// binary snapshot of the state of a set of estimators, used to restore them without the convergence transient
+// format (big endian):
+//  int magic ("MKFS"), short version, int number of estimators
+//  for each estimator: UTF label, UTF class name, int length of the state, state (OrientationEstimator.writeState)
+//  int CRC32 of all the previous bytes
+// a snapshot with a wrong magic, an unknown version or a wrong CRC is rejected as a whole. An estimator is restored
+// only if the snapshot has an entry with its label and its class; the other entries are skipped. The state of each
+// entry is first read by a new estimator of its class, and if any of them can not be read exactly (a state written by
+// a different version of the estimator), the snapshot is also rejected without modifying any estimator
+public class EstimatorSnapshot {
+  
+  // PARAMETERS
+  public static final int MAGIC = 0x4D4B4653;
+  public static final short VERSION = 1;
+  
+  
+  // PUBLIC STATIC METHODS
+  
+  // Method: capture
+  // writes the state of the estimators in a snapshot (it must be called by the thread that updates them)
+  // inputs:
+  //  labels: label of each estimator
+  //  estimators: estimators (they can be instrumented)
+  // outputs:
+  //  snapshot
+  public static byte[] capture( String[] labels , OrientationEstimator[] estimators ) {
+    try{
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream( 640*estimators.length );
+      DataOutputStream out = new DataOutputStream( bytes );
+      out.writeInt( EstimatorSnapshot.MAGIC );
+      out.writeShort( EstimatorSnapshot.VERSION );
+      out.writeInt( estimators.length );
+      ByteArrayOutputStream stateBytes = new ByteArrayOutputStream( 640 );
+      DataOutputStream state = new DataOutputStream( stateBytes );
+      for(int n=0; n<estimators.length; n++){
+        stateBytes.reset();
+        estimators[n].writeState( state );
+        state.flush();
+        out.writeUTF( labels[n] );
+        out.writeUTF( EstimatorSnapshot.unwrap( estimators[n] ).getClass().getName() );
+        out.writeInt( stateBytes.size() );
+        stateBytes.writeTo( out );
+      }
+      out.flush();
+      CRC32 crc = new CRC32();
+      byte[] content = bytes.toByteArray();
+      crc.update( content , 0 , content.length );
+      out.writeInt( (int)crc.getValue() );
+      return bytes.toByteArray();
+    }catch( IOException e ){
+      // it does not happen writing to memory
+      throw new UncheckedIOException( e );
+    }
+  }
+  
+  // Method: restore
+  // sets the state of the estimators from a snapshot (it must be called when they are not being updated)
+  // the estimators are not modified if the snapshot is rejected
+  // inputs:
+  //  snapshot: snapshot made with capture
+  //  labels: label of each estimator
+  //  estimators: estimators (they can be instrumented)
+  // outputs:
+  //  number of restored estimators
+  public static int restore( byte[] snapshot , String[] labels , OrientationEstimator[] estimators ) throws IOException {
+    if( snapshot.length < 14 ) throw new IOException( "Truncated snapshot" );
+    CRC32 crc = new CRC32();
+    crc.update( snapshot , 0 , snapshot.length-4 );
+    DataInputStream in = new DataInputStream( new ByteArrayInputStream( snapshot ) );
+    if( in.readInt() != EstimatorSnapshot.MAGIC ) throw new IOException( "Not an estimator snapshot" );
+    short version = in.readShort();
+    if( version != EstimatorSnapshot.VERSION ) throw new IOException( "Unsupported snapshot version: " + version );
+    in.mark( snapshot.length );
+    in.skipBytes( snapshot.length-10 );
+    if( in.readInt() != (int)crc.getValue() ) throw new IOException( "Corrupted snapshot (wrong CRC)" );
+    in.reset();
+    
+    // the states are checked before restoring any of them
+    byte[][] states = new byte[estimators.length][];
+    int entries = in.readInt();
+    for(int k=0; k<entries; k++){
+      String label = in.readUTF();
+      String className = in.readUTF();
+      byte[] state = new byte[in.readInt()];
+      in.readFully( state );
+      for(int n=0; n<estimators.length; n++){
+        OrientationEstimator estimator = EstimatorSnapshot.unwrap( estimators[n] );
+        if(  labels[n].equals( label )  &&  estimator.getClass().getName().equals( className )  ){
+          EstimatorSnapshot.check( state , estimator.getClass() , label );
+          states[n] = state;
+          break;
+        }
+      }
+    }
+    
+    int restored = 0;
+    for(int n=0; n<estimators.length; n++){
+      if( states[n] != null ){
+        estimators[n].readState( new DataInputStream( new ByteArrayInputStream( states[n] ) ) );
+        restored++;
+      }
+    }
+    return restored;
+  }
+  
+  // Method: write
+  // writes a snapshot in a file (a temporary file is renamed, so the file is never left half written)
+  // inputs:
+  //  snapshot: snapshot made with capture
+  //  file: destination file (its directory is created if it does not exist)
+  // outputs:
+  public static void write( byte[] snapshot , File file ) throws IOException {
+    File directory = file.getAbsoluteFile().getParentFile();
+    if( directory != null ) directory.mkdirs();
+    File temporary = new File( directory , file.getName() + ".tmp" );
+    Files.write( temporary.toPath() , snapshot );
+    try{
+      Files.move( temporary.toPath() , file.toPath() , StandardCopyOption.REPLACE_EXISTING , StandardCopyOption.ATOMIC_MOVE );
+    }catch( AtomicMoveNotSupportedException e ){
+      Files.move( temporary.toPath() , file.toPath() , StandardCopyOption.REPLACE_EXISTING );
+    }
+  }
+  
+  public static byte[] read( File file ) throws IOException {
+    return Files.readAllBytes( file.toPath() );
+  }
+  
+  
+  // PRIVATE STATIC METHODS
+  
+  // the class of an instrumented estimator is the class of the estimator that it wraps
+  private static OrientationEstimator unwrap( OrientationEstimator estimator ) {
+    while( estimator instanceof InstrumentedEstimator ) estimator = ((InstrumentedEstimator)estimator).get_estimator();
+    return estimator;
+  }
+  
+  // reads a state with a new estimator of the given class, and checks that all of its bytes have been read
+  private static void check( byte[] state , Class<? extends OrientationEstimator> estimatorClass , String label ) throws IOException {
+    OrientationEstimator estimator;
+    try{
+      estimator = estimatorClass.getDeclaredConstructor().newInstance();
+    }catch( ReflectiveOperationException e ){
+      throw new IOException( "Can not create an estimator to check the state of " + label + " (" + e + ")" );
+    }
+    DataInputStream in = new DataInputStream( new ByteArrayInputStream( state ) );
+    try{
+      estimator.readState( in );
+    }catch( EOFException e ){
+      throw new IOException( "Wrong state length of " + label + " (truncated)" );
+    }
+    if( in.available() != 0 ) throw new IOException( "Wrong state length of " + label + " (" + in.available() + " bytes left)" );
+  }
+  
+}
\ No newline at end of file
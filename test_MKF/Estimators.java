@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+// class that creates the estimators compared in this project (the same ones, and in the same order, in the sketch and in the tools)
+public class Estimators {
+  
+  // PARAMETERS
+  public static final String[] NAMES = { "MUKF O" , "MUKF RP" , "MUKF MRP" , "MUKF RV" , "MEKF O" , "MEKF RP" , "MEKF MRP" , "MEKF RV" , "Madgwick" };
+  
+  
+  // PUBLIC STATIC METHODS
+  
+  public static int count() {
+    return Estimators.NAMES.length;
+  }
+  
+  // Method: create
+  // creates a new estimator
+  // inputs:
+  //  index: index of the estimator in NAMES
+  // outputs:
+  //  new estimator
+  public static OrientationEstimator create( int index ) {
+    switch( index ){
+      case 0:
+        return new MUKFcO();
+      case 1:
+        return new MUKFcRP();
+      case 2:
+        return new MUKFcMRP();
+      case 3:
+        return new MUKFcRV();
+      case 4:
+        return new MEKFcO();
+      case 5:
+        return new MEKFcRP();
+      case 6:
+        return new MEKFcMRP();
+      case 7:
+        return new MEKFcRV();
+      case 8:
+        return new MadgwickAHRS();
+      default:
+        throw new IllegalArgumentException( "Not a valid estimator index: " + index );
+    }
+  }
+  
+  // Method: create32
+  // creates the single precision version of an estimator (see OrientationEstimator32)
+  // inputs:
+  //  index: index of the estimator in NAMES
+  // outputs:
+  //  new estimator
+  public static OrientationEstimator create32( int index ) {
+    switch( index ){
+      case 0:
+        return new MUKF32cO();
+      case 1:
+        return new MUKF32cRP();
+      case 2:
+        return new MUKF32cMRP();
+      case 3:
+        return new MUKF32cRV();
+      case 4:
+        return new MEKF32cO();
+      case 5:
+        return new MEKF32cRP();
+      case 6:
+        return new MEKF32cMRP();
+      case 7:
+        return new MEKF32cRV();
+      case 8:
+        return new MadgwickAHRS32();
+      default:
+        throw new IllegalArgumentException( "Not a valid estimator index: " + index );
+    }
+  }
+  
+  // Method: indexOf
+  // finds the index of an estimator by its name
+  // inputs:
+  //  name: name of the estimator (as in NAMES)
+  // outputs:
+  //  index of the estimator, or -1 if there is no estimator with that name
+  public static int indexOf( String name ) {
+    for(int n=0; n<Estimators.NAMES.length; n++) if( Estimators.NAMES[n].equals( name ) ) return n;
+    return -1;
+  }
+  
+}
\ No newline at end of file
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+// trigonometric functions for small arguments
+// the arguments of the estimators are small angles almost all the time (0.5*wnorm*dt in the state prediction, and the
+// updates in the chart maps). For them, the functions are evaluated with their Taylor series, truncated where the
+// relative truncation error is below 5e-17 (half an ulp), so the results only differ from the ones of Math in the
+// rounding of the operations (a few ulps). For larger arguments, NaN or infinite, the functions of Math are used:
+//  sin, cos: |x| <= 0.5 (terms up to x^13 and x^14)
+//  asin, atan: |x| <= 0.125 (terms up to x^17 and x^19)
+public class FastMath {
+  
+  // PARAMETERS
+  public static final double SIN_LIMIT = 0.5;
+  public static final double ASIN_LIMIT = 0.125;
+  // coefficients of the series
+  private static final double S1 = -1.0/6.0;
+  private static final double S2 = 1.0/120.0;
+  private static final double S3 = -1.0/5040.0;
+  private static final double S4 = 1.0/362880.0;
+  private static final double S5 = -1.0/39916800.0;
+  private static final double S6 = 1.0/6227020800.0;
+  private static final double C1 = -1.0/2.0;
+  private static final double C2 = 1.0/24.0;
+  private static final double C3 = -1.0/720.0;
+  private static final double C4 = 1.0/40320.0;
+  private static final double C5 = -1.0/3628800.0;
+  private static final double C6 = 1.0/479001600.0;
+  private static final double C7 = -1.0/87178291200.0;
+  private static final double AS1 = 1.0/6.0;
+  private static final double AS2 = 3.0/40.0;
+  private static final double AS3 = 5.0/112.0;
+  private static final double AS4 = 35.0/1152.0;
+  private static final double AS5 = 63.0/2816.0;
+  private static final double AS6 = 231.0/13312.0;
+  private static final double AS7 = 143.0/10240.0;
+  private static final double AS8 = 6435.0/557056.0;
+  
+  
+  // PUBLIC STATIC METHODS
+  
+  public static double sin( double x ) {
+    if( !( Math.abs( x ) <= FastMath.SIN_LIMIT ) ) return Math.sin( x );
+    double x2 = x*x;
+    return x + x*x2*( S1 + x2*( S2 + x2*( S3 + x2*( S4 + x2*( S5 + x2*S6 ) ) ) ) );
+  }
+  
+  public static double cos( double x ) {
+    if( !( Math.abs( x ) <= FastMath.SIN_LIMIT ) ) return Math.cos( x );
+    double x2 = x*x;
+    return 1.0 + x2*( C1 + x2*( C2 + x2*( C3 + x2*( C4 + x2*( C5 + x2*( C6 + x2*C7 ) ) ) ) ) );
+  }
+  
+  public static double asin( double x ) {
+    if( !( Math.abs( x ) <= FastMath.ASIN_LIMIT ) ) return Math.asin( x );
+    double x2 = x*x;
+    return x + x*x2*( AS1 + x2*( AS2 + x2*( AS3 + x2*( AS4 + x2*( AS5 + x2*( AS6 + x2*( AS7 + x2*AS8 ) ) ) ) ) ) );
+  }
+  
+  public static double atan( double x ) {
+    if( !( Math.abs( x ) <= FastMath.ASIN_LIMIT ) ) return Math.atan( x );
+    double x2 = x*x;
+    return x - x*x2*( 1.0/3.0 - x2*( 1.0/5.0 - x2*( 1.0/7.0 - x2*( 1.0/9.0 - x2*( 1.0/11.0 - x2*( 1.0/13.0 - x2*( 1.0/15.0 - x2*( 1.0/17.0 - x2*( 1.0/19.0 ) ) ) ) ) ) ) ) );
+  }
+  
+}
\ No newline at end of file
@@ -26,11 +26,32 @@ public class Fleet {
   int spacecraftCount = 0;
   // spacecraft objects
   Spacecraft[] spacecraft;
+  // false if the fleet is not drawn (its spacecraft do not have visible toggles in the GUI)
+  boolean displayed;
+  // snapshots of the fleet published for the renderer (one after each sample, if the fleet is displayed)
+  TripleBuffer<FleetSnapshot> snapshots;
+  // number of processed samples
+  long samples = 0;
+  // workspace of quaternion2angleAxis (the fleet is drawn by a single thread)
+  double[] rotationVector = new double[3];
+  float[] angAxis = new float[4];
   
   
   
   // METHODS
   
+  // constructors
+  Fleet(){
+    this( true );
+  }
+  
+  Fleet( boolean displayedIn ){
+    this.displayed = displayedIn;
+    this.spacecraft = new Spacecraft[0];
+    this.snapshots = this.createSnapshots();
+  }
+  
+  
   // sets the parameters for a new spacecraft
   void addSpacecraft( String labelIn , OrientationEstimator estimatorIn , float[] r0In ){
     // we create a new array with space for another Spacecraft
@@ -38,50 +59,174 @@ public class Fleet {
     // we make the new references point to the old spacecraft objects
     for(int n=0; n<this.spacecraftCount; n++) newSpacecraft[n] = this.spacecraft[n];
     // and we create a new spacecraft
-    newSpacecraft[this.spacecraftCount] = new Spacecraft( labelIn , estimatorIn , r0In );
+    newSpacecraft[this.spacecraftCount] = new Spacecraft( labelIn , estimatorIn , r0In , this.displayed );
     // finally we increase the spacecraft counter
     this.spacecraftCount++;
+    this.snapshots = this.createSnapshots();
     
     // and we set the reference to the new array
     spacecraft = newSpacecraft;
   }
   
   
-  // update the estimator of the whole fleet
-  void updateEstimators( long t , double[] am , double[] wm ){
+  // update the estimator of the whole fleet (t0 is the arrival time of the first byte of the packet, used to measure latencies)
+  void updateEstimators( long t0 , long t , double[] am , double[] wm ){
     // for each spacecraft
     for(int n=0; n<this.spacecraftCount; n++){
       // we update its estimator
-      this.spacecraft[n].updateEstimator( t , am , wm );
+      this.spacecraft[n].updateEstimator( t0 , t , am , wm );
+    }
+    this.samples++;
+  }
+  
+  
+  // publishes the state of the whole fleet after the last sample (dataCount is its position in the data buffers). It must
+  // be called by the thread that updates the estimators
+  void publishSnapshot( long t , int dataCount ){
+    if( !this.displayed ) return;
+    FleetSnapshot snapshot = this.snapshots.get_back();
+    for(int n=0; n<this.spacecraftCount; n++){
+      for(int i=0; i<4; i++) snapshot.q[n][i] = this.spacecraft[n].q[i];
+      this.spacecraft[n].strapdown.get_position( snapshot.r[n] );
+    }
+    snapshot.dataCount = dataCount;
+    snapshot.samples = this.samples;
+    snapshot.t = t;
+    this.snapshots.publish();
+  }
+  
+  
+  // writes the estimates of the estimators updated with the last sample in a ring (t is the arrival time of the sample)
+  void publishEstimates( EstimateRing ring , long t ){
+    for(int n=0; n<this.spacecraftCount; n++){
+      if( this.spacecraft[n].updated ) ring.write( n , t , this.spacecraft[n].estimator );
+    }
+  }
+  
+  
+  // returns the labels of the spacecraft
+  String[] get_labels(){
+    String[] labels = new String[this.spacecraftCount];
+    for(int n=0; n<this.spacecraftCount; n++) labels[n] = this.spacecraft[n].label;
+    return labels;
+  }
+  
+  
+  // takes the last published snapshot of the fleet (it must be called only by the renderer)
+  FleetSnapshot acquireSnapshot(){
+    return this.snapshots.acquire();
+  }
+  
+  
+  // sets the target update frequency of the whole fleet
+  void set_targetFrequency( double f ){
+    for(int n=0; n<this.spacecraftCount; n++) this.spacecraft[n].scheduler.set_targetFrequency( f );
+  }
+  
+  
+  // sets the target update frequencies of a processor limited system (MUKF: 5 Hz, MEKF: 25 Hz, Madgwick: 400 Hz)
+  void set_processorLimitedFrequencies(){
+    for(int n=0; n<4; n++) this.spacecraft[n].scheduler.set_targetFrequency( 5.0 );
+    for(int n=4; n<8; n++) this.spacecraft[n].scheduler.set_targetFrequency( 25.0 );
+    this.spacecraft[8].scheduler.set_targetFrequency( 400.0 );
+  }
+  
+  
+  // sets the chart update of the whole fleet
+  void set_chartUpdate( boolean chartUpdate ){
+    for(int n=0; n<this.spacecraftCount; n++) this.spacecraft[n].estimator.set_chartUpdate( chartUpdate );
+  }
+  
+  
+  // resets the orientation of the whole fleet
+  void reset_orientation(){
+    for(int n=0; n<this.spacecraftCount; n++) this.spacecraft[n].estimator.reset_orientation();
+  }
+  
+  
+  // sets the same quaternion for the whole fleet
+  void set_q( double[] q ){
+    for(int n=0; n<this.spacecraftCount; n++) this.spacecraft[n].estimator.set_q( q );
+  }
+  
+  
+  // sets the W0 parameter of the whole fleet
+  void set_W0( double W0 ){
+    for(int n=0; n<this.spacecraftCount; n++) this.spacecraft[n].estimator.set_W0( W0 );
+  }
+  
+  
+  // sets the noise parameters of the whole fleet
+  void set_Qa( double Qa ){
+    for(int n=0; n<this.spacecraftCount; n++) this.spacecraft[n].estimator.set_Qa( Qa );
+  }
+  
+  void set_Qw( double Qw ){
+    for(int n=0; n<this.spacecraftCount; n++) this.spacecraft[n].estimator.set_Qw( Qw );
+  }
+  
+  void set_Ra( double Ra ){
+    for(int n=0; n<this.spacecraftCount; n++) this.spacecraft[n].estimator.set_Ra( Ra );
+  }
+  
+  void set_Rw( double Rw ){
+    for(int n=0; n<this.spacecraftCount; n++) this.spacecraft[n].estimator.set_Rw( Rw );
+  }
+  
+  
+  // captures the state of the estimators of the whole fleet (it must be called by the thread that updates them)
+  byte[] captureState(){
+    String[] labels = new String[this.spacecraftCount];
+    OrientationEstimator[] estimators = new OrientationEstimator[this.spacecraftCount];
+    for(int n=0; n<this.spacecraftCount; n++){
+      labels[n] = this.spacecraft[n].label;
+      estimators[n] = this.spacecraft[n].estimator;
     }
+    return EstimatorSnapshot.capture( labels , estimators );
+  }
+  
+  // restores the state of the estimators of the whole fleet, returning the number of restored estimators
+  int restoreState( byte[] snapshot ) throws IOException {
+    String[] labels = new String[this.spacecraftCount];
+    OrientationEstimator[] estimators = new OrientationEstimator[this.spacecraftCount];
+    for(int n=0; n<this.spacecraftCount; n++){
+      labels[n] = this.spacecraft[n].label;
+      estimators[n] = this.spacecraft[n].estimator;
+    }
+    return EstimatorSnapshot.restore( snapshot , labels , estimators );
+  }
+  
+  
+  // creates the buffers of the snapshots of the fleet (the spacecraft are added before the fleet starts being updated)
+  private TripleBuffer<FleetSnapshot> createSnapshots(){
+    return new TripleBuffer<FleetSnapshot>( new FleetSnapshot( this.spacecraftCount ) , new FleetSnapshot( this.spacecraftCount ) , new FleetSnapshot( this.spacecraftCount ) );
   }
   
   
   // computes the angle axis representation from the quaternion representation of a rotation. We need this to use the processing rotate method
   private float[] quaternion2angleAxis( double[] q ){
-    float[] angAxis = new float[4];
-    float inorm = sqrt( (float)(q[1]*q[1] + q[2]*q[2] + q[3]*q[3]) );
-    if( inorm > 0.0 ){
-      angAxis[0] = 2.0*(float)Math.atan2( inorm , q[0] );
-      inorm = 1.0/inorm;
-      angAxis[1] = (float)q[1]*inorm;
-      angAxis[2] = (float)q[2]*inorm;
-      angAxis[3] = (float)q[3]*inorm;
+    Quaternion.log( q , 0 , this.rotationVector , 0 , false );
+    double angle = Math.sqrt( this.rotationVector[0]*this.rotationVector[0] + this.rotationVector[1]*this.rotationVector[1] + this.rotationVector[2]*this.rotationVector[2] );
+    if( angle > 0.0 ){
+      this.angAxis[0] = (float)angle;
+      this.angAxis[1] = (float)( this.rotationVector[0]/angle );
+      this.angAxis[2] = (float)( this.rotationVector[1]/angle );
+      this.angAxis[3] = (float)( this.rotationVector[2]/angle );
     }else{
-      angAxis[0] = 0.0;
-      angAxis[1] = 1.0;
-      angAxis[2] = 0.0;
-      angAxis[3] = 0.0;
+      this.angAxis[0] = 0.0;
+      this.angAxis[1] = 1.0;
+      this.angAxis[2] = 0.0;
+      this.angAxis[3] = 0.0;
     }
     
-    return angAxis;
+    return this.angAxis;
   }
   
   
-  // draws the whole fleet
-  void drawFleet(){
+  // draws the whole fleet with its state in a snapshot
+  void drawFleet( FleetSnapshot snapshot ){
     for(int n=0; n<this.spacecraftCount; n++){
-      this.spacecraft[n].drawSpacecraft();
+      this.spacecraft[n].drawSpacecraft( snapshot , n );
     }
   }
   
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+// state of a whole fleet after a sample, as it is drawn
+// it is filled by the thread that updates the estimators and published through a TripleBuffer; once published, it is
+// not modified until the renderer acquires a newer one, so all the spacecraft drawn in a frame come from the same sample
+public class FleetSnapshot {
+  
+  // VARIABLES
+  public double[][] q;  // quaternion of each estimator
+  public double[][] r;  // position of the dead reckoning of each spacecraft (m)
+  public int dataCount;  // position of the sample in the data buffers (plot cursor)
+  public long samples;  // number of processed samples
+  public long t;  // arrival time of the sample (ns)
+  
+  
+  // CONSTRUCTORS
+  
+  public FleetSnapshot( int spacecraftCount ) {
+    this.q = new double[spacecraftCount][4];
+    this.r = new double[spacecraftCount][3];
+    for(int n=0; n<spacecraftCount; n++) this.q[n][0] = 1.0;
+    this.dataCount = 0;
+    this.samples = 0;
+    this.t = 0;
+  }
+  
+}
\ No newline at end of file
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+// pre-integration of IMU samples, so several samples can be passed to an estimator in a single update
+// the gyroscope increments are composed in a delta quaternion (with the two-sample coning correction), and the
+// accelerometer measurements are rotated to the sensor frame at the end of the interval before averaging them. The
+// estimator receives the mean acceleration, the constant angular velocity that produces the delta quaternion in the
+// whole interval, and the factors by which the noise of one sample is reduced in these combined measurements (see
+// OrientationEstimator.updateIMU( GyroPreintegrator )). The estimators whose angular velocity is the one at the end of
+// the interval receive instead the mean angular velocity extrapolated with the one of the previous interval
+public class GyroPreintegrator {
+  
+  // PRIVATE VARIABLES
+  private int samples;  // samples accumulated in the current interval
+  private double T;  // duration of the interval (s)
+  private double dt2;  // sum of the squared time steps (s^2)
+  private double[] dq = new double[4];  // rotation from the sensor frame at the start to the sensor frame at the end of the interval
+  private double[] aSum = new double[3];  // sum of the accelerations in the sensor frame at the start of the interval (g)
+  private double[] alphaPrevious = new double[3];  // last gyroscope increment (rad)
+  private boolean hasPrevious;
+  private double[] wPrevious = new double[3];  // mean angular velocity of the previous interval (rad/s)
+  private double TPrevious;  // duration of the previous interval (s)
+  private double noisePrevious;  // gyroscope noise factor of the previous interval
+  private boolean hasPreviousInterval;
+  // workspace
+  private double[] alpha = new double[3];
+  private double[] dqk = new double[4];
+  private double[] R = new double[9];
+  private double[] v = new double[3];
+  
+  
+  // CONSTRUCTORS
+  
+  public GyroPreintegrator() {
+    this.samples = 0;
+    this.hasPrevious = false;
+    this.hasPreviousInterval = false;
+    this.reset();
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  // starts a new interval (the last gyroscope increment and the mean angular velocity are kept for the next one)
+  public void reset() {
+    if( this.samples > 0 ){
+      this.get_wm( this.wPrevious );
+      this.TPrevious = this.T;
+      this.noisePrevious = this.get_gyroscopeNoiseFactor();
+      this.hasPreviousInterval = true;
+    }
+    this.samples = 0;
+    this.T = 0.0;
+    this.dt2 = 0.0;
+    this.dq[0] = 1.0;   this.dq[1] = 0.0;   this.dq[2] = 0.0;   this.dq[3] = 0.0;
+    this.aSum[0] = 0.0;   this.aSum[1] = 0.0;   this.aSum[2] = 0.0;
+  }
+  
+  // forgets the previous samples (the next sample is not consecutive to them)
+  public void restart() {
+    this.samples = 0;
+    this.hasPrevious = false;
+    this.hasPreviousInterval = false;
+    this.reset();
+  }
+  
+  // Method: add
+  // accumulates an IMU sample in the current interval
+  // inputs:
+  //  am: measured acceleration (g)
+  //  wm: measured angular velocity (rad/s)
+  //  dt: time step from the previous sample (s)
+  // outputs:
+  //  number of samples accumulated in the current interval
+  public int add( double[] am , double[] wm , double dt ) {
+    for(int i=0; i<3; i++) this.alpha[i] = wm[i]*dt;
+    // two-sample coning correction ( alpha + alphaPrevious x alpha / 12 ): the angular velocity changes during the sample
+    if( this.hasPrevious ){
+      double[] a = this.alphaPrevious;
+      double[] b = this.alpha;
+      this.v[0] = b[0] + ( a[1]*b[2] - a[2]*b[1] )/12.0;
+      this.v[1] = b[1] + ( a[2]*b[0] - a[0]*b[2] )/12.0;
+      this.v[2] = b[2] + ( a[0]*b[1] - a[1]*b[0] )/12.0;
+    }else{
+      for(int i=0; i<3; i++) this.v[i] = this.alpha[i];
+    }
+    for(int i=0; i<3; i++) this.alphaPrevious[i] = this.alpha[i];
+    this.hasPrevious = true;
+    Quaternion.exp( this.v , 0 , 1.0 , this.dqk , 0 , false );
+    Quaternion.multiply( this.dq , 0 , this.dqk , 0 , this.dq , 0 );
+    
+    // the acceleration is measured at the end of the sample: we rotate it to the sensor frame at the start of the interval
+    Quaternion.rotationMatrix( this.dq , 0 , this.R , 0 );
+    for(int i=0; i<3; i++) this.aSum[i] += this.R[i]*am[0] + this.R[i+3]*am[1] + this.R[i+6]*am[2];
+    
+    this.samples++;
+    this.T += dt;
+    this.dt2 += dt*dt;
+    return this.samples;
+  }
+  
+  public int get_samples() {
+    return this.samples;
+  }
+  
+  // duration of the interval (s)
+  public double get_dt() {
+    return this.T;
+  }
+  
+  // rotation from the sensor frame at the start to the sensor frame at the end of the interval
+  public void get_dq( double[] dqOut ) {
+    for(int i=0; i<4; i++) dqOut[i] = this.dq[i];
+    Quaternion.normalize( dqOut , 0 );
+  }
+  
+  // Method: get_am
+  // computes the mean acceleration of the interval
+  // inputs:
+  // outputs:
+  //  amOut: mean acceleration in the sensor frame at the end of the interval (g)
+  public void get_am( double[] amOut ) {
+    if( this.samples == 0 ){
+      amOut[0] = 0.0;   amOut[1] = 0.0;   amOut[2] = 0.0;
+      return;
+    }
+    Quaternion.rotationMatrix( this.dq , 0 , this.R , 0 );
+    for(int i=0; i<3; i++) amOut[i] = ( this.R[3*i]*this.aSum[0] + this.R[3*i+1]*this.aSum[1] + this.R[3*i+2]*this.aSum[2] )/this.samples;
+  }
+  
+  // Method: get_wm
+  // computes the angular velocity equivalent to the interval
+  // inputs:
+  // outputs:
+  //  wmOut: constant angular velocity that produces the rotation of the interval in its duration (rad/s)
+  public void get_wm( double[] wmOut ) {
+    if( this.T <= 0.0 ){
+      wmOut[0] = 0.0;   wmOut[1] = 0.0;   wmOut[2] = 0.0;
+      return;
+    }
+    Quaternion.log( this.dq , 0 , wmOut , 0 , false );
+    for(int i=0; i<3; i++) wmOut[i] /= this.T;
+  }
+  
+  // Method: get_wmEnd
+  // estimates the angular velocity at the end of the interval
+  // the mean angular velocities are the ones at the middle of the intervals: we extrapolate linearly the last two
+  // inputs:
+  // outputs:
+  //  wmOut: angular velocity at the end of the interval (rad/s)
+  public void get_wmEnd( double[] wmOut ) {
+    this.get_wm( wmOut );
+    if(  !this.hasPreviousInterval  ||  this.T <= 0.0  ) return;
+    double c = this.T/( this.T + this.TPrevious );
+    for(int i=0; i<3; i++) wmOut[i] += c*( wmOut[i] - this.wPrevious[i] );
+  }
+  
+  // covariance of the equivalent angular velocity, relative to the covariance of one gyroscope sample
+  // ( sum of dt^2/T^2: 1/samples if the time steps are equal )
+  public double get_gyroscopeNoiseFactor() {
+    if( this.T <= 0.0 ) return 1.0;
+    return this.dt2/( this.T*this.T );
+  }
+  
+  // covariance of the angular velocity at the end of the interval, relative to the covariance of one gyroscope sample
+  public double get_endGyroscopeNoiseFactor() {
+    if(  !this.hasPreviousInterval  ||  this.T <= 0.0  ) return this.get_gyroscopeNoiseFactor();
+    double c = this.T/( this.T + this.TPrevious );
+    return (1.0+c)*(1.0+c)*this.get_gyroscopeNoiseFactor() + c*c*this.noisePrevious;
+  }
+  
+  // covariance of the mean acceleration, relative to the covariance of one accelerometer sample
+  public double get_accelerometerNoiseFactor() {
+    if( this.samples == 0 ) return 1.0;
+    return 1.0/this.samples;
+  }
+  
+}
\ No newline at end of file
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.util.Arrays;
+
+
+// sequence of IMU samples, stored by columns (one array for each component)
+// each sample has a time, a measured acceleration, a measured angular velocity, and optionally a measured magnetic field
+// and the true orientation
+public class IMUDataset {
+  
+  // VARIABLES
+  public double[] t;  // time of each sample (s)
+  public double[] ax, ay, az;  // measured acceleration (g)
+  public double[] wx, wy, wz;  // measured angular velocity (rad/s)
+  public double[] mx, my, mz;  // measured magnetic field (null if it is not measured)
+  public double[] qw, qx, qy, qz;  // true orientation (null if it is not known)
+  
+  // PRIVATE VARIABLES
+  private int size;
+  
+  
+  // CONSTRUCTORS
+  
+  public IMUDataset( int capacity , boolean withGroundTruth ) {
+    this( capacity , withGroundTruth , false );
+  }
+  
+  public IMUDataset( int capacity , boolean withGroundTruth , boolean withMagnetometer ) {
+    if( capacity < 1 ) capacity = 1;
+    this.t = new double[capacity];
+    this.ax = new double[capacity];
+    this.ay = new double[capacity];
+    this.az = new double[capacity];
+    this.wx = new double[capacity];
+    this.wy = new double[capacity];
+    this.wz = new double[capacity];
+    if( withMagnetometer ){
+      this.mx = new double[capacity];
+      this.my = new double[capacity];
+      this.mz = new double[capacity];
+    }
+    if( withGroundTruth ){
+      this.qw = new double[capacity];
+      this.qx = new double[capacity];
+      this.qy = new double[capacity];
+      this.qz = new double[capacity];
+    }
+    this.size = 0;
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  public int size() {
+    return this.size;
+  }
+  
+  public boolean has_groundTruth() {
+    return ( this.qw != null );
+  }
+  
+  public boolean has_magnetometer() {
+    return ( this.mx != null );
+  }
+  
+  // Method: add
+  // adds a sample at the end of the dataset (the capacity grows if necessary)
+  // inputs:
+  //  time: time of the sample (s)
+  //  am: measured acceleration (g)
+  //  wm: measured angular velocity (rad/s)
+  //  q: true orientation (ignored if the dataset does not have ground truth)
+  // outputs:
+  public void add( double time , double[] am , double[] wm , double[] q ) {
+    this.add( time , am , wm , null , q );
+  }
+  
+  // Method: add
+  // adds a sample at the end of the dataset (the capacity grows if necessary)
+  // inputs:
+  //  time: time of the sample (s)
+  //  am: measured acceleration (g)
+  //  wm: measured angular velocity (rad/s)
+  //  mm: measured magnetic field (ignored if the dataset does not have magnetometer)
+  //  q: true orientation (ignored if the dataset does not have ground truth)
+  // outputs:
+  public void add( double time , double[] am , double[] wm , double[] mm , double[] q ) {
+    if( this.size == this.t.length ) this.grow();
+    int k = this.size;
+    this.t[k] = time;
+    this.ax[k] = am[0];   this.ay[k] = am[1];   this.az[k] = am[2];
+    this.wx[k] = wm[0];   this.wy[k] = wm[1];   this.wz[k] = wm[2];
+    if(  this.mx != null  &&  mm != null  ){
+      this.mx[k] = mm[0];   this.my[k] = mm[1];   this.mz[k] = mm[2];
+    }
+    if(  this.qw != null  &&  q != null  ){
+      this.qw[k] = q[0];   this.qx[k] = q[1];   this.qy[k] = q[2];   this.qz[k] = q[3];
+    }
+    this.size++;
+  }
+  
+  public void get_am( int k , double[] am ) {
+    am[0] = this.ax[k];   am[1] = this.ay[k];   am[2] = this.az[k];
+  }
+  
+  public void get_wm( int k , double[] wm ) {
+    wm[0] = this.wx[k];   wm[1] = this.wy[k];   wm[2] = this.wz[k];
+  }
+  
+  public void get_mm( int k , double[] mm ) {
+    mm[0] = this.mx[k];   mm[1] = this.my[k];   mm[2] = this.mz[k];
+  }
+  
+  public void get_q( int k , double[] q ) {
+    q[0] = this.qw[k];   q[1] = this.qx[k];   q[2] = this.qy[k];   q[3] = this.qz[k];
+  }
+  
+  // Method: get_dt
+  // time step from the previous sample
+  // inputs:
+  //  k: index of the sample
+  // outputs:
+  //  time step (s); for the first sample, the time step to the second one
+  public double get_dt( int k ) {
+    if( this.size < 2 ) return 0.0;
+    if( k == 0 ) return this.t[1] - this.t[0];
+    return this.t[k] - this.t[k-1];
+  }
+  
+  // reduces the capacity to the number of samples
+  public void trim() {
+    if( this.size < this.t.length ) this.resize( Math.max( this.size , 1 ) );
+  }
+  
+  
+  // PRIVATE METHODS
+  
+  private void grow() {
+    this.resize( 2*this.t.length );
+  }
+  
+  private void resize( int capacity ) {
+    this.t = Arrays.copyOf( this.t , capacity );
+    this.ax = Arrays.copyOf( this.ax , capacity );
+    this.ay = Arrays.copyOf( this.ay , capacity );
+    this.az = Arrays.copyOf( this.az , capacity );
+    this.wx = Arrays.copyOf( this.wx , capacity );
+    this.wy = Arrays.copyOf( this.wy , capacity );
+    this.wz = Arrays.copyOf( this.wz , capacity );
+    if( this.mx != null ){
+      this.mx = Arrays.copyOf( this.mx , capacity );
+      this.my = Arrays.copyOf( this.my , capacity );
+      this.mz = Arrays.copyOf( this.mz , capacity );
+    }
+    if( this.qw != null ){
+      this.qw = Arrays.copyOf( this.qw , capacity );
+      this.qx = Arrays.copyOf( this.qx , capacity );
+      this.qy = Arrays.copyOf( this.qy , capacity );
+      this.qz = Arrays.copyOf( this.qz , capacity );
+    }
+  }
+  
+}
\ No newline at end of file
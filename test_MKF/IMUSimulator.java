@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.util.Random;
+
+
+// class that simulates IMU measurements with its own clock
+// the samples are generated at a nominal rate (fixed time step), and the noise is generated from a seed, so two
+// simulators with the same seed and parameters produce exactly the same sequence of measurements
+public class IMUSimulator {
+  
+  // PARAMETERS
+  public static final int STATIC = 1;  // sensor at rest, with the z axis pointing up
+  public static final int BAD = 2;  // only noise (no gravity)
+  
+  // PRIVATE VARIABLES
+  private Random random;
+  private long seed;
+  private int profile;
+  private double dt;  // time step between samples (s)
+  private double ra;  // standard deviation of the noise added to the accelerometer measurement (g)
+  private double rw;  // standard deviation of the noise added to the gyroscope measurement (rad/s)
+  private long sampleCount;  // number of generated samples
+  
+  
+  // CONSTRUCTORS
+  
+  public IMUSimulator( long seed , double nominalRate ) {
+    this.random = new Random( seed );
+    this.seed = seed;
+    this.profile = IMUSimulator.STATIC;
+    this.dt = 1.0/nominalRate;
+    this.ra = 0.0;
+    this.rw = 0.0;
+    this.sampleCount = 0;
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  public void set_seed( long seedIn ) {
+    this.random.setSeed( seedIn );
+    this.seed = seedIn;
+    this.sampleCount = 0;
+  }
+  
+  // Method: copy
+  // creates a simulator with the same seed and parameters, that starts again the sequence of samples
+  // inputs:
+  // outputs:
+  //  new simulator
+  public IMUSimulator copy() {
+    IMUSimulator theCopy = new IMUSimulator( this.seed , 1.0/this.dt );
+    theCopy.dt = this.dt;
+    theCopy.profile = this.profile;
+    theCopy.ra = this.ra;
+    theCopy.rw = this.rw;
+    return theCopy;
+  }
+  
+  public void set_profile( int profileIn ) {
+    this.profile = profileIn;
+  }
+  
+  public int get_profile() {
+    return this.profile;
+  }
+  
+  public void set_nominalRate( double nominalRate ) {
+    this.dt = 1.0/nominalRate;
+  }
+  
+  public double get_dt() {
+    return this.dt;
+  }
+  
+  // sets the standard deviation of the accelerometer noise (g)
+  public void set_ra( double raIn ) {
+    this.ra = raIn;
+  }
+  
+  // sets the standard deviation of the gyroscope noise (rad/s)
+  public void set_rw( double rwIn ) {
+    this.rw = rwIn;
+  }
+  
+  public long get_sampleCount() {
+    return this.sampleCount;
+  }
+  
+  // time of the last generated sample (s)
+  public double get_time() {
+    return this.sampleCount*this.dt;
+  }
+  
+  // Method: gaussian
+  // generates a normal distributed number with the generator of the simulator
+  // inputs:
+  // outputs:
+  //  normal distributed number with mean 0 and standard deviation 1
+  public double gaussian() {
+    return this.random.nextGaussian();
+  }
+  
+  // Method: next
+  // generates the next sample (the time advances dt)
+  // inputs:
+  // outputs:
+  //  am: simulated acceleration (g)
+  //  wm: simulated angular velocity (rad/s)
+  public void next( double[] am , double[] wm ) {
+    am[0] = this.ra*this.random.nextGaussian();
+    am[1] = this.ra*this.random.nextGaussian();
+    am[2] = this.ra*this.random.nextGaussian();
+    if( this.profile == IMUSimulator.STATIC ) am[2] += 1.0;
+    wm[0] = this.rw*this.random.nextGaussian();
+    wm[1] = this.rw*this.random.nextGaussian();
+    wm[2] = this.rw*this.random.nextGaussian();
+    this.sampleCount++;
+  }
+  
+}
\ No newline at end of file
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+
+// estimator that wraps another estimator, and records the metrics of its updates
+// the cost of each updateIMU, the bytes allocated in it (if the JVM can measure them), and the updates that leave
+// a non-finite state. The rest of the methods are forwarded to the wrapped estimator (the wrapper does not hold any
+// state of the estimator, since OrientationEstimator does not)
+public class InstrumentedEstimator extends OrientationEstimator {
+  
+  // PRIVATE VARIABLES
+  private final OrientationEstimator estimator;  // wrapped estimator
+  private final EstimatorMetrics metrics;
+  private final com.sun.management.ThreadMXBean threadBean;  // null if the allocated bytes can not be measured
+  
+  
+  // CONSTRUCTORS
+  
+  public InstrumentedEstimator( String name , OrientationEstimator estimatorIn ) {
+    this.estimator = estimatorIn;
+    this.metrics = new EstimatorMetrics( name );
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    com.sun.management.ThreadMXBean sunBean = null;
+    if( bean instanceof com.sun.management.ThreadMXBean ){
+      sunBean = (com.sun.management.ThreadMXBean)bean;
+      try{
+        if( sunBean.isThreadAllocatedMemorySupported() ){
+          sunBean.setThreadAllocatedMemoryEnabled( true );
+        }else{
+          sunBean = null;
+        }
+      }catch( UnsupportedOperationException e ){
+        sunBean = null;
+      }
+    }
+    this.threadBean = sunBean;
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  public OrientationEstimator get_estimator() {
+    return this.estimator;
+  }
+  
+  public EstimatorMetrics get_metrics() {
+    return this.metrics;
+  }
+  
+  // Method: updateIMU
+  // updates the wrapped estimator, and records the metrics of the update
+  // inputs:
+  //  am: measured acceleration (g)
+  //  wm: measured angular velocity (rad/s)
+  //  dt: time step from the last update (s)
+  // outputs:
+  public void updateIMU( double[] am , double[] wm , double dt ){
+    long bytes0 = this.allocatedBytes();
+    long t0 = System.nanoTime();
+    this.estimator.updateIMU( am , wm , dt );
+    this.record( t0 , bytes0 );
+  }
+  
+  // the pre-integrated update is recorded as one update (see OrientationEstimator.updateIMU)
+  public void updateIMU( GyroPreintegrator step ){
+    long bytes0 = this.allocatedBytes();
+    long t0 = System.nanoTime();
+    this.estimator.updateIMU( step );
+    this.record( t0 , bytes0 );
+  }
+  
+  // the correction period is kept by the wrapped estimator (its updateIMU is the one recorded)
+  public void set_correctionPeriod( int period ){
+    this.estimator.set_correctionPeriod( period );
+  }
+  
+  public int get_correctionPeriod(){
+    return this.estimator.get_correctionPeriod();
+  }
+  
+  public void request_correction(){
+    this.estimator.request_correction();
+  }
+  
+  public void predict( double[] wm , double dt ){
+    this.estimator.predict( wm , dt );
+  }
+  
+  public void correct( double[] am , double[] wm ){
+    this.estimator.correct( am , wm );
+  }
+  
+  public void get_q( double[] qOut ){
+    this.estimator.get_q( qOut );
+  }
+  
+  public void get_w( double[] wOut ){
+    this.estimator.get_w( wOut );
+  }
+  
+  public void get_Pdiagonal( double[] Pout ){
+    this.estimator.get_Pdiagonal( Pout );
+  }
+  
+  public void set_q( double[] qIn ){
+    this.estimator.set_q( qIn );
+  }
+  
+  public void reset_orientation(){
+    this.estimator.reset_orientation();
+  }
+  
+  public void set_Qw( double QwIn ){
+    this.estimator.set_Qw( QwIn );
+  }
+  
+  public void set_Qa( double QaIn ){
+    this.estimator.set_Qa( QaIn );
+  }
+  
+  public void set_Rw( double RwIn ){
+    this.estimator.set_Rw( RwIn );
+  }
+  
+  public void set_Ra( double RaIn ){
+    this.estimator.set_Ra( RaIn );
+  }
+  
+  public void set_chartUpdate( boolean chartUpdateIn ){
+    this.estimator.set_chartUpdate( chartUpdateIn );
+  }
+  
+  public void set_W0( double W0In ){
+    this.estimator.set_W0( W0In );
+  }
+  
+  public void set_sequentialUpdate( boolean sequentialUpdateIn ){
+    this.estimator.set_sequentialUpdate( sequentialUpdateIn );
+  }
+  
+  public void writeState( DataOutput out ) throws IOException {
+    this.estimator.writeState( out );
+  }
+  
+  public void readState( DataInput in ) throws IOException {
+    this.estimator.readState( in );
+  }
+  
+  public void set_reducedSigmaPoints( boolean reducedSigmaPointsIn ){
+    this.estimator.set_reducedSigmaPoints( reducedSigmaPointsIn );
+  }
+  
+  public void set_fastMath( boolean fastMathIn ){
+    this.estimator.set_fastMath( fastMathIn );
+  }
+  
+  public void set_measurementAxis( int axis , boolean use ){
+    this.estimator.set_measurementAxis( axis , use );
+  }
+  
+  public boolean is_finite(){
+    return this.estimator.is_finite();
+  }
+  
+  
+  // PRIVATE METHODS
+  
+  // bytes allocated by the current thread (-1 if they can not be measured)
+  private long allocatedBytes(){
+    if( this.threadBean == null ) return -1;
+    return this.threadBean.getThreadAllocatedBytes( Thread.currentThread().getId() );
+  }
+  
+  // records the metrics of an update started at t0 (System.nanoTime), with bytes0 allocated bytes
+  private void record( long t0 , long bytes0 ){
+    long nanos = System.nanoTime() - t0;
+    long bytes = -1;
+    if( bytes0 >= 0 ) bytes = this.allocatedBytes() - bytes0;
+    this.metrics.record( nanos , bytes , this.estimator.is_finite() );
+  }
+  
+}
\ No newline at end of file
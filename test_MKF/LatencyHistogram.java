@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+// lock-free histogram of latencies (ns), with log-linear buckets (HDR-style)
+// values below 64 ns have their own bucket; above, each power of 2 is divided into 32 buckets, so the relative
+// error of the reported values is below 1/32. Several threads can record at the same time without locks
+public class LatencyHistogram {
+  
+  // PARAMETERS
+  private static final int subBits = 5;  // each power of 2 is divided in 2^subBits buckets
+  private static final int subCount = 1 << LatencyHistogram.subBits;
+  private static final int Nbuckets = (64-LatencyHistogram.subBits)*LatencyHistogram.subCount;
+  
+  // PRIVATE VARIABLES
+  private final String name;
+  private final AtomicLongArray counts;
+  private final AtomicLong count;
+  private final AtomicLong sum;
+  private final AtomicLong max;
+  
+  
+  // CONSTRUCTORS
+  
+  public LatencyHistogram( String nameIn ) {
+    this.name = nameIn;
+    this.counts = new AtomicLongArray( LatencyHistogram.Nbuckets );
+    this.count = new AtomicLong();
+    this.sum = new AtomicLong();
+    this.max = new AtomicLong();
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  // Method: record
+  // adds a latency to the histogram
+  // inputs:
+  //  nanos: latency (ns)
+  // outputs:
+  public void record( long nanos ) {
+    if( nanos < 0 ) nanos = 0;
+    this.counts.incrementAndGet( LatencyHistogram.bucketIndex( nanos ) );
+    this.count.incrementAndGet();
+    this.sum.addAndGet( nanos );
+    long m = this.max.get();
+    while(  nanos > m  &&  !this.max.compareAndSet( m , nanos )  ) m = this.max.get();
+  }
+  
+  public String get_name() {
+    return this.name;
+  }
+  
+  public long get_count() {
+    return this.count.get();
+  }
+  
+  public long get_max() {
+    return this.max.get();
+  }
+  
+  public double get_mean() {
+    long n = this.count.get();
+    return ( n > 0 )? (double)this.sum.get()/n : 0.0;
+  }
+  
+  // Method: get_percentile
+  // computes a percentile of the recorded latencies
+  // inputs:
+  //  p: percentile in [0,100]
+  // outputs:
+  //  highest value of the bucket that contains the percentile (ns)
+  public long get_percentile( double p ) {
+    long n = this.count.get();
+    if( n == 0 ) return 0;
+    long target = (long)Math.ceil( p*0.01*n );
+    if( target < 1 ) target = 1;
+    long accumulated = 0;
+    for(int k=0; k<LatencyHistogram.Nbuckets; k++){
+      accumulated += this.counts.get( k );
+      if( accumulated >= target ) return Math.min( LatencyHistogram.bucketHighestValue( k ) , this.max.get() );
+    }
+    return this.max.get();
+  }
+  
+  public void reset() {
+    for(int k=0; k<LatencyHistogram.Nbuckets; k++) this.counts.set( k , 0 );
+    this.count.set( 0 );
+    this.sum.set( 0 );
+    this.max.set( 0 );
+  }
+  
+  public String toString() {
+    return String.format( "%-20s n=%d mean=%.1f p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f (us)" ,
+                          this.name , this.get_count() , 1.0e-3*this.get_mean() , 1.0e-3*this.get_percentile( 50.0 ) , 1.0e-3*this.get_percentile( 90.0 ) ,
+                          1.0e-3*this.get_percentile( 99.0 ) , 1.0e-3*this.get_percentile( 99.9 ) , 1.0e-3*this.get_max() );
+  }
+  
+  
+  // PRIVATE STATIC METHODS
+  
+  // computes the bucket of a value
+  private static int bucketIndex( long v ) {
+    if( v < 2*LatencyHistogram.subCount ) return (int)v;
+    int e = 63 - Long.numberOfLeadingZeros( v );  // position of the highest bit (e >= subBits+1)
+    int shift = e - LatencyHistogram.subBits;
+    return shift*LatencyHistogram.subCount + (int)(v >>> shift);
+  }
+  
+  // computes the highest value that falls in a bucket
+  private static long bucketHighestValue( int k ) {
+    if( k < 2*LatencyHistogram.subCount ) return k;
+    int shift = ( k >> LatencyHistogram.subBits ) - 1;
+    long sub = LatencyHistogram.subCount + ( k & (LatencyHistogram.subCount-1) );
+    return ( (sub+1) << shift ) - 1;
+  }
+  
+}
\ No newline at end of file
@@ -16,87 +16,26 @@
  */
 
 
-public abstract class MEKF extends OrientationEstimator {
+public abstract class MEKF extends OrientationEstimator64 {
   
-  // PUBLIC METHODS
+  // PROTECTED METHODS
   
-  // Method: updateIMU
+  // Method: update
   // method used to update the state information through an IMU measurement
   // inputs:
   //  am: measured acceleration (g)
   //  wm: measured angular velocity (rad/s)
   //  dt: time step from the last update (s)
   // outputs:
-  public void updateIMU( double[] am , double[] wm , double dt ){
-    // we compute the state prediction
-    double wnorm = Math.sqrt( this.w[0]*this.w[0] + this.w[1]*this.w[1] + this.w[2]*this.w[2] );
-    double[] qw = new double[4];
-    if( wnorm != 0.0 ){
-      double wdt05 = 0.5*wnorm*dt;
-      double swdt = Math.sin(wdt05)/wnorm;
-      qw[0] = Math.cos(wdt05);
-      qw[1] = this.w[0]*swdt;
-      qw[2] = this.w[1]*swdt;
-      qw[3] = this.w[2]*swdt;
-    }else{
-      qw[0] = 1.0;
-      qw[1] = 0.0;
-      qw[2] = 0.0;
-      qw[3] = 0.0;
-    }
-    
-    double[] qp = new double[4];
-    qp[0] = this.q[0]*qw[0] - this.q[1]*qw[1] - this.q[2]*qw[2] - this.q[3]*qw[3];
-    qp[1] = this.q[0]*qw[1]  +  qw[0]*this.q[1]  +  this.q[2]*qw[3] - this.q[3]*qw[2];
-    qp[2] = this.q[0]*qw[2]  +  qw[0]*this.q[2]  +  this.q[3]*qw[1] - this.q[1]*qw[3];
-    qp[3] = this.q[0]*qw[3]  +  qw[0]*this.q[3]  +  this.q[1]*qw[2] - this.q[2]*qw[1];
-    
-    // we compute the covariance matrix for the state prediction
-    for(int j=0; j<3; j++){
-      for(int i=0; i<3; i++) this.P[i+j*6] += this.Qw[i+j*3]*dt*dt*dt/3;
-    }
-    for(int j=0; j<3; j++){
-      for(int i=3; i<6; i++) this.P[i+j*6] -= this.Qw[i-3+(j)*3]*dt*dt/2;
-    }
-    for(int j=3; j<6; j++){
-      for(int i=0; i<3; i++) this.P[i+j*6] -= this.Qw[i+(j-3)*3]*dt*dt/2;
-    }
-    for(int j=3; j<6; j++){
-      for(int i=3; i<6; i++) this.P[i+j*6] += this.Qw[i-3+(j-3)*3]*dt;
-    }
+  protected void update( double[] am , double[] wm , double dt ){
+    // we compute the state prediction, and the covariance matrix for the state prediction
+    this.timeUpdate( dt );
+    double[] qp = { this.q[0] , this.q[1] , this.q[2] , this.q[3] };
     
+    double[] qw = new double[4];
     double[] F = new double[9];
-    F[0] = -qw[2]*qw[2]-qw[3]*qw[3];    F[3] = qw[1]*qw[2]+qw[3]*qw[0];     F[6] = qw[1]*qw[3]-qw[2]*qw[0];
-    F[1] = qw[1]*qw[2]-qw[3]*qw[0];     F[4] = -qw[1]*qw[1]-qw[3]*qw[3];    F[7] = qw[2]*qw[3]+qw[1]*qw[0];
-    F[2] = qw[1]*qw[3]+qw[2]*qw[0];     F[5] = qw[2]*qw[3]-qw[1]*qw[0];     F[8] = -qw[1]*qw[1]-qw[2]*qw[2];
-    
-    F[0] += F[0] + 1.0;    F[3] += F[3];          F[6] += F[6];
-    F[1] += F[1];          F[4] += F[4] + 1.0;    F[7] += F[7];
-    F[2] += F[2];          F[5] += F[5];          F[8] += F[8] + 1.0;
-    
     double[] M = new double[36];
-    M[0] = F[0];    M[6] = F[3];    M[12] = F[6];    M[18] = dt;     M[24] =0.0;     M[30] = 0.0;
-    M[1] = F[1];    M[7] = F[4];    M[13] = F[7];    M[19] = 0.0;    M[25] = dt;     M[31] = 0.0;
-    M[2] = F[2];    M[8] = F[5];    M[14] = F[8];    M[20] = 0.0;    M[26] = 0.0;    M[32] = dt;
-    M[3] = 0.0;     M[9] = 0.0;     M[15] = 0.0;     M[21] = 1.0;    M[27] = 0.0;    M[33] = 0.0;
-    M[4] = 0.0;     M[10] = 0.0;    M[16] = 0.0;     M[22] = 0.0;    M[28] = 1.0;    M[34] = 0.0;
-    M[5] = 0.0;     M[11] = 0.0;    M[17] = 0.0;     M[23] = 0.0;    M[29] = 0.0;    M[35] = 1.0;
-    
     double[] S = new double[36];
-    for(int i=0; i<6; i++){
-      for(int j=0; j<6; j++){
-        double sum = 0.0;
-        for(int k=0; k<6; k++) sum += this.P[i+k*6]*M[j+k*6];
-        S[i*6+j] = sum;
-      }
-    }
-    for(int i=0; i<6; i++){
-      for(int j=0; j<6; j++){
-        double sum = 0.0;
-        for(int k=0; k<6; k++) sum += M[i+k*6]*S[k*6+j];
-        this.P[i+j*6] = sum;
-      }
-    }
     
     // we compute the measurement prediction
     double[] ap = { qp[1]*qp[3]-qp[2]*qp[0] , qp[2]*qp[3]+qp[1]*qp[0] , -qp[1]*qp[1]-qp[2]*qp[2] };
@@ -116,73 +55,45 @@ public abstract class MEKF extends OrientationEstimator {
     H[4] = 0.0;     H[10] = 0.0;    H[16] = 0.0;     H[22] = 0.0;    H[28] = 1.0;    H[34] = 0.0;
     H[5] = 0.0;     H[11] = 0.0;    H[17] = 0.0;     H[23] = 0.0;    H[29] = 0.0;    H[35] = 1.0;
     
-    for(int i=0; i<6; i++){
-      for(int j=0; j<6; j++){
-        double sum = 0.0;
-        for(int k=0; k<6; k++) sum += this.P[i+k*6]*H[j+k*6];
-        M[i*6+j] = sum;
-      }
-    }
-    
-    for(int j=0; j<6; j++){
-      for(int i=0; i<6; i++){
-        double sum = 0.0;
-        for(int k=0; k<6; k++) sum += H[i+k*6]*M[k*6+j];
-        S[i+j*6] = sum;
-      }
-    }
-    
-    for(int j=0; j<3; j++){
-      for(int i=0; i<3; i++) S[i+j*6] += this.Qa[i+j*3] + this.Ra[i+j*3];
-    }
-    for(int j=3; j<6; j++){
-      for(int i=3; i<6; i++) S[i+j*6] += this.Rw[i-3+(j-3)*3];
-    }
-    
-    // now we can compute the gain
-    MEKF.solve( S , M );  // now K is stored in M
-    
     // and update the state in the chart
     double[] dy = { am[0]-ap[0] , am[1]-ap[1] , am[2]-ap[2] , wm[0]-this.w[0] , wm[1]-this.w[1] , wm[2]-this.w[2] };
-    
     double[] dx = new double[6];
-    for(int i=0; i<6; i++){
-      double sum = 0.0;
-      for(int j=0; j<6; j++) sum += M[i*6+j]*dy[j];
-      dx[i] = sum;
+    
+    if( this.useSequentialUpdate() ){
+      // the measurement components are processed one at a time (no matrix inversion is needed)
+      this.sequentialUpdate( H , dy , dx , M );  // now the updated covariance matrix is stored in M
+    }else{
+      // S = H*P*H' (M = P*H')
+      SmallMatrix.congruence6( H , this.P , M , S );
+      
+      for(int j=0; j<3; j++){
+        for(int i=0; i<3; i++) S[i+j*6] += this.Qa[i+j*3] + this.RaUpdate[i+j*3];
+      }
+      for(int j=3; j<6; j++){
+        for(int i=3; i<6; i++) S[i+j*6] += this.RwUpdate[i-3+(j-3)*3];
+      }
+      
+      // now we can compute the gain ( K*S = P*H' )
+      SmallMatrix.solveRight6( S , M );  // now K is stored in M
+      SmallMatrix.multiplyVector6( M , dy , dx );
+      
+      // the covariance matrix is updated in the chart centered in qp: ( I - K*H )*P
+      SmallMatrix.multiply6( M , H , S );
+      for(int k=0; k<36; k++) S[k] = -S[k];
+      for(int k=0; k<36; k+=7) S[k] += 1.0;
+      SmallMatrix.multiply6( S , this.P , M );
     }
     
     // the updated point in the chart is mapped to a quaternion
     this.fC2M( dx , qw );  // now delta is stored in qw
     
-    this.q[0] = qp[0]*qw[0] - qp[1]*qw[1] - qp[2]*qw[2] - qp[3]*qw[3];
-    this.q[1] = qp[0]*qw[1]  +  qw[0]*qp[1]  +  qp[2]*qw[3] - qp[3]*qw[2];
-    this.q[2] = qp[0]*qw[2]  +  qw[0]*qp[2]  +  qp[3]*qw[1] - qp[1]*qw[3];
-    this.q[3] = qp[0]*qw[3]  +  qw[0]*qp[3]  +  qp[1]*qw[2] - qp[2]*qw[1];
+    Quaternion.multiply( qp , 0 , qw , 0 , this.q , 0 );
     
     // and the angular velocity is updated in the usual way
     this.w[0] += dx[3];
     this.w[1] += dx[4];
     this.w[2] += dx[5];
     
-    // the covariance matrix is updated in the chart centered in qp
-    for(int i=0; i<6; i++){
-      for(int j=0; j<6; j++){
-        double sum = 0.0;
-        for(int k=0; k<6; k++) sum -= M[i*6+k]*H[k+j*6];
-        S[i*6+j] = sum;
-      }
-    }
-    for(int k=0; k<36; k+=7) S[k] += 1.0;
-    
-    for(int i=0; i<6; i++){
-      for(int j=0; j<6; j++){
-        double sum = 0.0;
-        for(int k=0; k<6; k++) sum += S[i*6+k]*P[k+j*6];
-        M[i+j*6] = sum;
-      }
-    }
-    
     if( this.chartUpdate ){
       // finally we update the covariance matrix from the chart centered in qp
       // quaternion to the chart centered in the updated q quaternion
@@ -195,33 +106,13 @@ public abstract class MEKF extends OrientationEstimator {
       S[4] = 0.0;     S[10] = 0.0;    S[16] = 0.0;     S[22] = 0.0;    S[28] = 1.0;    S[34] = 0.0;
       S[5] = 0.0;     S[11] = 0.0;    S[17] = 0.0;     S[23] = 0.0;    S[29] = 0.0;    S[35] = 1.0;
       
-      for(int i=0; i<6; i++){
-        for(int j=0; j<6; j++){
-          double sum = 0.0;
-          for(int k=0; k<6; k++) sum += M[i+k*6]*S[j+k*6];
-          H[i*6+j] = sum;
-        }
-      }
-      
-      for(int j=0; j<6; j++){
-        for(int i=0; i<6; i++){
-          double sum = 0.0;
-          for(int k=0; k<6; k++) sum += S[i+k*6]*H[k*6+j];
-          M[i+j*6] = sum;
-        }
-      }
+      SmallMatrix.congruence6( S , M , H , M );
     } //chartUpdate
     
     // we avoid numerical instabilities
-    double qnorm = Math.sqrt( this.q[0]*this.q[0] + this.q[1]*this.q[1] + this.q[2]*this.q[2] + this.q[3]*this.q[3] );
-    this.q[0] /= qnorm;
-    this.q[1] /= qnorm;
-    this.q[2] /= qnorm;
-    this.q[3] /= qnorm;
+    Quaternion.normalize( this.q , 0 );
     
-    for(int i=0; i<6; i++){
-      for(int j=0; j<6; j++) P[i+j*6] = 0.5*( M[i+j*6] + M[j+i*6] );
-    }
+    SmallMatrix.symmetrize6( M , this.P );
     
     return;
   }
@@ -248,70 +139,42 @@ public abstract class MEKF extends OrientationEstimator {
   protected abstract void chartUpdateMatrix( double[] delta , double[] G );
   
   
-  // PRIVATE STATIC METHODS
+  // PRIVATE METHODS
   
-  // Method: Cholesky
-  // performs the Cholesky decomposition of a positive definite matrix ( S = L*L' )
+  // Method: sequentialUpdate
+  // updates the state in the chart processing the measurement components one at a time
+  // (it is equivalent to the joint update when the measurement noise covariance matrix is diagonal)
   // inputs:
-  //  S: 6x6 positive definite matrix to be decomposed (must be stored by columns)
+  //  H: 6x6 measurement matrix stored by columns
+  //  dy: difference between the measurement and the predicted measurement
   // outputs:
-  //  S: the lower triangular matrix L (6x6) is overwritten in S (is stored by columns)
-  private static void Cholesky( double[] S ){
-    // for each column
-    for(int j=0; j<6; j++){
-      double sum = 0.0;  //sum for the diagonal term
-      // we first fill with 0.0 until diagonal
-      for(int i=0; i<j; i++){
-        S[i+j*6] = 0.0;
-        //we can compute this sum at the same time
-        sum += S[j+i*6]*S[j+i*6];
+  //  dx: updated point in the chart
+  //  Pu: 6x6 updated covariance matrix stored by columns
+  private void sequentialUpdate( double[] H , double[] dy , double[] dx , double[] Pu ){
+    for(int k=0; k<36; k++) Pu[k] = this.P[k];
+    for(int i=0; i<6; i++) dx[i] = 0.0;
+    
+    double[] PHt = new double[6];
+    for(int m=0; m<6; m++){
+      // the disabled components are skipped
+      if( !this.measurementAxes[m] ) continue;
+      // we compute P*h^T, being h the m-th row of H
+      for(int i=0; i<6; i++){
+        double sum = 0.0;
+        for(int k=0; k<6; k++) sum += Pu[i+k*6]*H[m+k*6];
+        PHt[i] = sum;
       }
-      // now we compute the diagonal term
-      S[j*7] = Math.sqrt( S[j*7] - sum ); //S[j+j*m] = sqrt( S[j+j*m] - sum );
-      // finally we compute the terms below the diagonal
-      for(int i=j+1; i<6; i++){
-        //first the sum
-        sum = 0.0;
-        for(char k=0; k<j; k++){
-          sum += S[i+k*6]*S[j+k*6];
-        }
-        //after the non-diagonal term
-        S[i+j*6] = ( S[i+j*6] - sum )/S[j*7];
+      // the innovation variance (h*P*h^T + r), and the innovation with respect to the already updated state
+      double s = ( m < 3 )?  this.Qa[m*4] + this.RaUpdate[m*4]  :  this.RwUpdate[(m-3)*4];
+      double innovation = dy[m];
+      for(int k=0; k<6; k++){
+        s += H[m+k*6]*PHt[k];
+        innovation -= H[m+k*6]*dx[k];
       }
-    }//end j
-    
-    return;
-  }
-  
-  // Method: solve
-  // solves the system of linear equations  K*S = M  for K
-  // inputs:
-  //  S: 6x6 positive definite matrix stored by columns
-  //  M: 6x6 matrix stored by rows
-  // outputs:
-  //  M: K (6x6) is stored by rows in the M memory space
-  private static void solve( double[] S , double[] M ){
-    // we first compute the Cholesky decomposition for transform the system from  K*S = M  into K*L*L' = M
-    MEKF.Cholesky( S );
-    
-    double[] y = new double[6];
-    // then we take each pair of rows of K and M independently
-    for(int i=0; i<6; i++){
-      // first we solve (y*L' = M)
+      // now the gain is K = P*h^T/s, and we update the state and the covariance matrix
+      for(int i=0; i<6; i++) dx[i] += PHt[i]*innovation/s;
       for(int j=0; j<6; j++){
-        double sum = 0.0;
-        for(int k=0; k<j; k++){
-          sum += y[k]*S[j+k*6];
-        }
-        y[j] = ( M[i*6+j] - sum )/S[j*7];
-      }
-      // now we solve (Ki*L = y)
-      for(int j=5; j>-1; j--){
-        double sum = 0.0;
-        for(int k=j+1; k<6; k++){
-          sum += M[i*6+k]*S[k+j*6];
-        }
-        M[i*6+j] = ( y[j] - sum )/S[j*7];
+        for(int i=0; i<6; i++) Pu[i+j*6] -= PHt[i]*PHt[j]/s;
       }
     }
     
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+public abstract class MEKF32 extends OrientationEstimator32 {
+  
+  // PUBLIC METHODS
+  
+  // Method: updateIMU
+  // method used to update the state information through an IMU measurement
+  // inputs:
+  //  am: measured acceleration (g)
+  //  wm: measured angular velocity (rad/s)
+  //  dt: time step from the last update (s)
+  // outputs:
+  public void updateIMU( float[] am , float[] wm , float dt ){
+    // we compute the state prediction, and the covariance matrix for the state prediction
+    this.timeUpdate( dt );
+    float[] qp = { this.qf[0] , this.qf[1] , this.qf[2] , this.qf[3] };
+    
+    float[] qw = new float[4];
+    float[] F = new float[9];
+    float[] M = new float[36];
+    float[] S = new float[36];
+    
+    // we compute the measurement prediction
+    float[] ap = { qp[1]*qp[3]-qp[2]*qp[0] , qp[2]*qp[3]+qp[1]*qp[0] , -qp[1]*qp[1]-qp[2]*qp[2] };
+    ap[0] += ap[0];
+    ap[1] += ap[1];
+    ap[2] += ap[2] + 1.0f;
+    
+    F[0] = 0.0f;      F[3] = -ap[2];    F[6] = ap[1];
+    F[1] = ap[2];     F[4] = 0.0f;      F[7] = -ap[0];
+    F[2] = -ap[1];    F[5] = ap[0];     F[8] = 0.0f;
+    
+    float[] H = new float[36];
+    H[0] = F[0];    H[6] = F[3];    H[12] = F[6];    H[18] = 0.0f;   H[24] = 0.0f;   H[30] = 0.0f;
+    H[1] = F[1];    H[7] = F[4];    H[13] = F[7];    H[19] = 0.0f;   H[25] = 0.0f;   H[31] = 0.0f;
+    H[2] = F[2];    H[8] = F[5];    H[14] = F[8];    H[20] = 0.0f;   H[26] = 0.0f;   H[32] = 0.0f;
+    H[3] = 0.0f;    H[9] = 0.0f;    H[15] = 0.0f;    H[21] = 1.0f;   H[27] = 0.0f;   H[33] = 0.0f;
+    H[4] = 0.0f;    H[10] = 0.0f;   H[16] = 0.0f;    H[22] = 0.0f;   H[28] = 1.0f;   H[34] = 0.0f;
+    H[5] = 0.0f;    H[11] = 0.0f;   H[17] = 0.0f;    H[23] = 0.0f;   H[29] = 0.0f;   H[35] = 1.0f;
+    
+    // and update the state in the chart
+    float[] dy = { am[0]-ap[0] , am[1]-ap[1] , am[2]-ap[2] , wm[0]-this.wf[0] , wm[1]-this.wf[1] , wm[2]-this.wf[2] };
+    float[] dx = new float[6];
+    
+    if( this.useSequentialUpdate() ){
+      // the measurement components are processed one at a time (no matrix inversion is needed)
+      this.sequentialUpdate( H , dy , dx , M );  // now the updated covariance matrix is stored in M
+    }else{
+      // S = H*P*H' (M = P*H')
+      SmallMatrix32.congruence6( H , this.Pf , M , S );
+      
+      for(int j=0; j<3; j++){
+        for(int i=0; i<3; i++) S[i+j*6] += this.Qaf[i+j*3] + this.RafUpdate[i+j*3];
+      }
+      for(int j=3; j<6; j++){
+        for(int i=3; i<6; i++) S[i+j*6] += this.RwfUpdate[i-3+(j-3)*3];
+      }
+      
+      // now we can compute the gain ( K*S = P*H' )
+      SmallMatrix32.solveRight6( S , M );  // now K is stored in M
+      SmallMatrix32.multiplyVector6( M , dy , dx );
+      
+      // the covariance matrix is updated in the chart centered in qp: ( I - K*H )*P
+      SmallMatrix32.multiply6( M , H , S );
+      for(int k=0; k<36; k++) S[k] = -S[k];
+      for(int k=0; k<36; k+=7) S[k] += 1.0f;
+      SmallMatrix32.multiply6( S , this.Pf , M );
+    }
+    
+    // the updated point in the chart is mapped to a quaternion
+    this.fC2M( dx , qw );  // now delta is stored in qw
+    
+    Quaternion32.multiply( qp , 0 , qw , 0 , this.qf , 0 );
+    
+    // and the angular velocity is updated in the usual way
+    this.wf[0] += dx[3];
+    this.wf[1] += dx[4];
+    this.wf[2] += dx[5];
+    
+    if( this.chartUpdate ){
+      // finally we update the covariance matrix from the chart centered in qp
+      // quaternion to the chart centered in the updated q quaternion
+      this.chartUpdateMatrix( qw , H );  // now G is stored in H
+      
+      S[0] = H[0];    S[6] = H[3];    S[12] = H[6];    S[18] = 0.0f;   S[24] = 0.0f;   S[30] = 0.0f;
+      S[1] = H[1];    S[7] = H[4];    S[13] = H[7];    S[19] = 0.0f;   S[25] = 0.0f;   S[31] = 0.0f;
+      S[2] = H[2];    S[8] = H[5];    S[14] = H[8];    S[20] = 0.0f;   S[26] = 0.0f;   S[32] = 0.0f;
+      S[3] = 0.0f;    S[9] = 0.0f;    S[15] = 0.0f;    S[21] = 1.0f;   S[27] = 0.0f;   S[33] = 0.0f;
+      S[4] = 0.0f;    S[10] = 0.0f;   S[16] = 0.0f;    S[22] = 0.0f;   S[28] = 1.0f;   S[34] = 0.0f;
+      S[5] = 0.0f;    S[11] = 0.0f;   S[17] = 0.0f;    S[23] = 0.0f;   S[29] = 0.0f;   S[35] = 1.0f;
+      
+      SmallMatrix32.congruence6( S , M , H , M );
+    } //chartUpdate
+    
+    // we avoid numerical instabilities
+    Quaternion32.normalize( this.qf , 0 );
+    
+    SmallMatrix32.symmetrize6( M , this.Pf );
+    
+    return;
+  }
+  
+  
+  // PROTECTED ABSTRACT METHODS
+  
+  // Method: fC2M
+  // defines the map from the chart points, to the manifold points (through the delta quaternion)
+  // inputs:
+  //  e: point of the Euclidean space that we want to map to a unit quaternion
+  // outputs:
+  //  delta: quaternion mapped with the e point
+  protected abstract void fC2M( float[] dx , float[] delta );
+  
+  // Method: chartUpdateMatrix
+  // this function defines the transformation on the covariance matrix
+  // when it is redefined from the chart centered in q quaternion, to the
+  // chart centered in p quaternion, being them related by  p = q * delta
+  // inputs:
+  //  delta: quaternion used to update the quaternion estimation
+  // outputs:
+  //  G: transformation matrix to update the covariance matrix
+  protected abstract void chartUpdateMatrix( float[] delta , float[] G );
+  
+  
+  // PRIVATE METHODS
+  
+  // Method: sequentialUpdate
+  // updates the state in the chart processing the measurement components one at a time
+  // (it is equivalent to the joint update when the measurement noise covariance matrix is diagonal)
+  // inputs:
+  //  H: 6x6 measurement matrix stored by columns
+  //  dy: difference between the measurement and the predicted measurement
+  // outputs:
+  //  dx: updated point in the chart
+  //  Pu: 6x6 updated covariance matrix stored by columns
+  private void sequentialUpdate( float[] H , float[] dy , float[] dx , float[] Pu ){
+    for(int k=0; k<36; k++) Pu[k] = this.Pf[k];
+    for(int i=0; i<6; i++) dx[i] = 0.0f;
+    
+    float[] PHt = new float[6];
+    for(int m=0; m<6; m++){
+      // the disabled components are skipped
+      if( !this.measurementAxes[m] ) continue;
+      // we compute P*h^T, being h the m-th row of H
+      for(int i=0; i<6; i++){
+        float sum = 0.0f;
+        for(int k=0; k<6; k++) sum += Pu[i+k*6]*H[m+k*6];
+        PHt[i] = sum;
+      }
+      // the innovation variance (h*P*h^T + r), and the innovation with respect to the already updated state
+      float s = ( m < 3 )?  this.Qaf[m*4] + this.RafUpdate[m*4]  :  this.RwfUpdate[(m-3)*4];
+      float innovation = dy[m];
+      for(int k=0; k<6; k++){
+        s += H[m+k*6]*PHt[k];
+        innovation -= H[m+k*6]*dx[k];
+      }
+      // now the gain is K = P*h^T/s, and we update the state and the covariance matrix
+      for(int i=0; i<6; i++) dx[i] += PHt[i]*innovation/s;
+      for(int j=0; j<6; j++){
+        for(int i=0; i<6; i++) Pu[i+j*6] -= PHt[i]*PHt[j]/s;
+      }
+    }
+    
+    return;
+  }
+  
+  
+}
\ No newline at end of file
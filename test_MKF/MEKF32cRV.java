@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+public class MEKF32cRV extends MEKF32 {
+  
+  // PROTECTED METHODS
+  
+  // Method: fC2M
+  // defines the map from the chart points, to the manifold points (through the delta quaternion)
+  // inputs:
+  //  e: point of the Euclidean space that we want to map to a unit quaternion
+  // outputs:
+  //  delta: quaternion mapped with the e point
+  protected void fC2M( float[] e , float[] delta ){
+    // delta from the chart definition: Rotation Vector
+    float enorm = (float)Math.sqrt( e[0]*e[0] + e[1]*e[1] + e[2]*e[2] );
+    if( enorm > (float)Math.PI ){
+      float aux = (float)Math.PI/enorm;
+      e[0] *= aux;
+      e[1] *= aux;
+      e[2] *= aux;
+    }
+    Quaternion32.exp( e , 0 , 1.0f , delta , 0 , this.fastMath );
+    
+    return;
+  }
+  
+  // Method: chartUpdateMatrix
+  // this function defines the transformation on the covariance matrix
+  // when it is redefined from the chart centered in q quaternion, to the
+  // chart centered in p quaternion, being them related by  p = q * delta
+  // inputs:
+  //  delta: quaternion used to update the quaternion estimation
+  // outputs:
+  //  G: transformation matrix to update the covariance matrix
+  protected void chartUpdateMatrix( float[] delta , float[] G ){
+    float dnorm = (float)Math.sqrt( delta[1]*delta[1] + delta[2]*delta[2] + delta[3]*delta[3] );
+    if( dnorm != 0.0f ){
+      float[] udelta = new float[3];
+      udelta[0] = delta[1]/dnorm;
+      udelta[1] = delta[2]/dnorm;
+      udelta[2] = delta[3]/dnorm;
+      float dnasindn = dnorm/(float)this.asin(dnorm);
+      // we will not use delta again in this update, so we transform it to save computations
+      delta[0] *= dnasindn;
+      delta[1] *= dnasindn;
+      delta[2] *= dnasindn;
+      delta[3] *= dnasindn;
+      G[0] = delta[0];     G[3] = delta[3];     G[6] = -delta[2];
+      G[1] = -delta[3];    G[4] = delta[0];     G[7] = delta[1];
+      G[2] = delta[2];     G[5] = -delta[1];    G[8] = delta[0];
+      for(int i=0; i<3; i++){
+        for(int j=0; j<3; j++) G[i+j*3] += (1.0f-delta[0])*udelta[i]*udelta[j];
+      }
+    }else{
+      for(int k=0; k<9; k++) G[k] = 0.0f;
+      for(int k=0; k<9; k+=4) G[k] = 1.0f;
+    }
+    
+    return;
+  }
+  
+}
\ No newline at end of file
@@ -34,20 +34,8 @@ public class MEKFcRV extends MEKF {
       e[0] *= aux;
       e[1] *= aux;
       e[2] *= aux;
-      enorm = Math.PI;
-    }
-    if( enorm != 0.0 ){
-      double aux = Math.sin(0.5*enorm)/enorm;
-      delta[0] = Math.cos(0.5*enorm);
-      delta[1] = e[0]*aux;
-      delta[2] = e[1]*aux;
-      delta[3] = e[2]*aux;
-    }else{
-      delta[0] = 1.0;
-      delta[1] = 0.0;
-      delta[2] = 0.0;
-      delta[3] = 0.0;
     }
+    Quaternion.exp( e , 0 , 1.0 , delta , 0 , this.fastMath );
     
     return;
   }
@@ -67,7 +55,7 @@ public class MEKFcRV extends MEKF {
       udelta[0] = delta[1]/dnorm;
       udelta[1] = delta[2]/dnorm;
       udelta[2] = delta[3]/dnorm;
-      double dnasindn = dnorm/Math.asin(dnorm);
+      double dnasindn = dnorm/this.asin(dnorm);
       // we will not use delta again in this update, so we transform it to save computations
       delta[0] *= dnasindn;
       delta[1] *= dnasindn;
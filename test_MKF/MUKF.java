@@ -16,7 +16,12 @@
  */
 
 
-public abstract class MUKF extends OrientationEstimator {
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+
+public abstract class MUKF extends OrientationEstimator64 {
   
   // PUBLIC METHODS
   
@@ -38,44 +43,79 @@ public abstract class MUKF extends OrientationEstimator {
     this.e[0] = 0.0;   this.e[1] = 0.0;   this.e[2] = 0.0;
   }
   
-  // Method: updateIMU
+  // the state of the MUKF also includes the chart used in the last update
+  public void writeState( DataOutput out ) throws IOException {
+    super.writeState( out );
+    OrientationEstimator.writeArray( out , this.q0 );
+    OrientationEstimator.writeArray( out , this.e );
+  }
+  
+  public void readState( DataInput in ) throws IOException {
+    super.readState( in );
+    OrientationEstimator.readArray( in , this.q0 );
+    OrientationEstimator.readArray( in , this.e );
+  }
+  
+  // the prediction does not use the charts of the unscented transform, so the covariance matrix is left in the chart
+  // centered in the predicted quaternion (as when the chart update is disabled)
+  public void predict( double[] wm , double dt ){
+    super.predict( wm , dt );
+    for(int i=0; i<4; i++) this.q0[i] = this.q[i];
+    for(int i=0; i<3; i++) this.e[i] = 0.0;
+  }
+  
+  // the rotation of an interval is produced by the angular velocity of the updated state (its mean in the interval)
+  protected boolean meanRate(){
+    return true;
+  }
+  
+  // Method: update
   // method used to update the state information through an IMU measurement
   // inputs:
   //  am: measured acceleration (g)
   //  wm: measured angular velocity (rad/s)
   //  dt: time step from the last update (s)
   // outputs:
-  public void updateIMU( double[] am , double[] wm , double dt ){
+  protected void update( double[] am , double[] wm , double dt ){
+    // with reduced sigma points only the state is sampled (the noise is added analytically below)
+    int L = ( this.reducedSigmaPoints )? 6 : 12;
+    int Ns = 2*L+1;
     // we define the extended covariance matrix
-    double[] Pe = new double[144];  // Pe is 12x12
-    for(int k=0; k<144; k++) Pe[k] = 0.0;
+    double[] Pe = new double[L*L];  // Pe is LxL
+    for(int k=0; k<L*L; k++) Pe[k] = 0.0;
     for(int i=0; i<6; i++){
-      for(int j=0; j<6; j++) Pe[i+j*12] = this.P[i+j*6];
+      for(int j=0; j<6; j++) Pe[i+j*L] = this.P[i+j*6];
     }
-    for(int i=0; i<3; i++){
-      for(int j=0; j<3; j++) Pe[78+i+j*12] = this.Qw[i+j*3];
-    }
-    for(int i=0; i<3; i++){
-      for(int j=0; j<3; j++) Pe[117+i+j*12] = this.Qa[i+j*3];
+    if( L == 12 ){
+      for(int i=0; i<3; i++){
+        for(int j=0; j<3; j++) Pe[78+i+j*12] = this.Qw[i+j*3];
+      }
+      for(int i=0; i<3; i++){
+        for(int j=0; j<3; j++) Pe[117+i+j*12] = this.Qa[i+j*3];
+      }
     }
     
     // we get the square-root of the matrix using the Cholesky factorization
-    MUKF.Cholesky( Pe , 12 );
+    if( L == 6 ){
+      SmallMatrix.cholesky6( Pe );
+    }else{
+      SmallMatrix.cholesky12( Pe );
+    }
     // we define the weight for the 0 sigma point (W0 must be in [0,1])
     //double W0 = 1.0/25.0;
     // the weights for the rest of sigma points are defined by the first one
-    double Wi = (1.0-this.W0)/(2.0*12);
+    double Wi = (1.0-this.W0)/(2.0*L);
     // the factor for the square root, so P = sum(W_k*sigma_k)
     double alpha = 1.0/Math.sqrt(2.0*Wi);
-    for(int k=0; k<144; k++) Pe[k] *= alpha;
+    for(int k=0; k<L*L; k++) Pe[k] *= alpha;
     
     // we define and initialize the sigma points (state and measure)
-    double[][] X = new double[25][13];
-    for(int j=0; j<25; j++){
+    double[][] X = new double[Ns][13];
+    for(int j=0; j<Ns; j++){
       for(int i=0; i<13; i++) X[j][i] = 0.0;
     }
-    double[][] Y = new double[25][6];
-    for(int j=0; j<25; j++){
+    double[][] Y = new double[Ns][6];
+    for(int j=0; j<Ns; j++){
       for(int i=0; i<6; i++) Y[j][i] = 0.0;
     }
     
@@ -89,33 +129,33 @@ public abstract class MUKF extends OrientationEstimator {
       for(int i=0; i<3; i++) this.e[i] = 0.0;
     }
     // second we generate the +sigma points from the P matrix
-    for(int j=0; j<12; j++){
+    for(int j=0; j<L; j++){
       // we do this because P is expressed in the q0 chart, but we need to
       // express it in the q chart for the next time step
       //   first we compute the point in the chart
-      double[] eP = { this.e[0]+Pe[0+j*12] , this.e[1]+Pe[1+j*12] , this.e[2]+Pe[2+j*12] };
+      double[] eP = { this.e[0]+Pe[0+j*L] , this.e[1]+Pe[1+j*L] , this.e[2]+Pe[2+j*L] };
       //   we get the point in the manifold
       this.fC2M( X[j+1] , this.q0 , eP );
       // we set the angular velocity
-      for(int i=3; i<6; i++) X[j+1][i+1] = this.w[i-3] + Pe[i+j*12];
-      for(int i=6; i<12; i++) X[j+1][i+1] = Pe[i+j*12];
+      for(int i=3; i<6; i++) X[j+1][i+1] = this.w[i-3] + Pe[i+j*L];
+      for(int i=6; i<L; i++) X[j+1][i+1] = Pe[i+j*L];
     }
     // third we generate the -sigma points from the P matrix
-    for(int j=0; j<12; j++){
+    for(int j=0; j<L; j++){
       // we do this because P is expressed in the q0 chart, but we need to
       // express it in the q chart for the next time step
       //   first we compute the point in the chart
-      double[] eP = { this.e[0]-Pe[0+j*12] , this.e[1]-Pe[1+j*12] , this.e[2]-Pe[2+j*12] };
+      double[] eP = { this.e[0]-Pe[0+j*L] , this.e[1]-Pe[1+j*L] , this.e[2]-Pe[2+j*L] };
       //   we get the point in the manifold
-      this.fC2M( X[j+13] , this.q0 , eP );
+      this.fC2M( X[j+1+L] , this.q0 , eP );
       // we set the angular velocity
-      for(int i=3; i<6; i++) X[j+13][i+1] = this.w[i-3] - Pe[i+j*12];
-      for(int i=6; i<12; i++) X[j+13][i+1] = -Pe[i+j*12];
+      for(int i=3; i<6; i++) X[j+1+L][i+1] = this.w[i-3] - Pe[i+j*L];
+      for(int i=6; i<L; i++) X[j+1+L][i+1] = -Pe[i+j*L];
     }
     
     // we compute the predictions
-    for(int j=0; j<25; j++){
-      MUKF.statePrediction( X[j] , dt );
+    for(int j=0; j<Ns; j++){
+      this.statePrediction( X[j] , dt );
       // we make sure that all quaternions are in the same hemisphere
       double prod = 0.0;
       for(int i=0; i<4; i++) prod += X[0][i]*X[j][i];
@@ -123,7 +163,7 @@ public abstract class MUKF extends OrientationEstimator {
         for(int i=0; i<4; i++) X[j][i] = -X[j][i];
       }
       //if( X[j][0] < 0.0 ) for(int i=0; i<4; i++) X[j][i] = -X[j][i];  // this is an alternative
-      MUKF.IMU_MeasurementPrediction( Y[j] , X[j] );
+      this.IMU_MeasurementPrediction( Y[j] , X[j] );
     }
     
     // we compute the means
@@ -131,16 +171,15 @@ public abstract class MUKF extends OrientationEstimator {
     double[] ymean = new double[6];
     for(int i=0; i<7; i++) xmean[i] = this.W0*X[0][i];
     for(int i=0; i<6; i++) ymean[i] = this.W0*Y[0][i];
-    for(int j=1; j<25; j++){
+    for(int j=1; j<Ns; j++){
       for(int i=0; i<7; i++) xmean[i] += Wi*X[j][i];
       for(int i=0; i<6; i++) ymean[i] += Wi*Y[j][i];
     }
-    double qmeanNorm = Math.sqrt( xmean[0]*xmean[0] + xmean[1]*xmean[1] + xmean[2]*xmean[2] + xmean[3]*xmean[3] );
-    for(int i=0; i<4; i++) xmean[i] /= qmeanNorm;
+    Quaternion.normalize( xmean , 0 );
     
     // we compute the covariance matrices
     double[] Pxx = new double[6*6];
-    double[] Pxy = new double[6*6];
+    double[] Pyx = new double[6*6];
     double[] Pyy = new double[6*6];
     double[] dX = new double[6];
     //   first we add the 0 contribution
@@ -151,45 +190,61 @@ public abstract class MUKF extends OrientationEstimator {
     for(int i=0; i<6; i++){
       for(int j=0; j<6; j++){
         Pxx[i+j*6] = W0*dX[i]*dX[j];
-        Pxy[i*6+j] = W0*dX[i]*dY[j];
+        Pyx[j+i*6] = W0*dX[i]*dY[j];
         Pyy[i+j*6] = W0*dY[i]*dY[j];
       }
     }
     //   then the rest
-    for(int k=1; k<25; k++){
+    for(int k=1; k<Ns; k++){
       this.fM2C( dX , xmean , X[k] );
       for(int i=3; i<6; i++) dX[i] = X[k][i+1]-xmean[i+1];
       for(int i=0; i<6; i++) dY[i] = Y[k][i]-ymean[i];
       for(int i=0; i<6; i++){
         for(int j=0; j<6; j++){
           Pxx[i+j*6] += Wi*dX[i]*dX[j];
-          Pxy[i*6+j] += Wi*dX[i]*dY[j];
+          Pyx[j+i*6] += Wi*dX[i]*dY[j];
           Pyy[i+j*6] += Wi*dY[i]*dY[j];
         }
       }
     }
+    //   with reduced sigma points, the process noise is added with its linearized effect
+    if( L == 6 ) this.addProcessNoise( Pxx , Pyx , Pyy , xmean , dt );
     //   finally we add the noise (the linear part)
     for(int i=0; i<3; i++){
       for(int j=0; j<3; j++){
-        Pyy[i+j*6] += this.Ra[i+j*3];
-        Pyy[i+3+(j+3)*6] += this.Rw[i+j*3];
+        Pyy[i+j*6] += this.RaUpdate[i+j*3];
+        Pyy[i+3+(j+3)*6] += this.RwUpdate[i+j*3];
       }
     }
     
-    // we save Pyy in other matrix because solve() will overwrite it
-    for(int k=0; k<36; k++) this.P[k] = Pyy[k];
-    
-    // now we can compute the gain ( K*Pyy = Pxy )
-    MUKF.solve( this.P , Pxy );  // now K is stored in Pxy
-    
     // and update the state in the chart
     double[] dy = { am[0]-ymean[0] , am[1]-ymean[1] , am[2]-ymean[2] , wm[0]-ymean[3] , wm[1]-ymean[4] , wm[2]-ymean[5] };
-    
     double[] dx = new double[6];
-    for(int i=0; i<6; i++){
-      double sum = 0.0;
-      for(int j=0; j<6; j++) sum += Pxy[i*6+j]*dy[j];
-      dx[i] = sum;
+    
+    if( this.useSequentialUpdate() ){
+      // we condition on the measurement components one at a time (no matrix inversion is needed)
+      this.sequentialUpdate( Pxx , Pyx , Pyy , dy , dx );  // now the updated covariance matrix is stored in Pxx
+    }else{
+      // we factorize Pyy = L*L', and we compute Z = L^-1*Pyx and z = L^-1*dy (overwriting Pyy, Pyx and dy)
+      // the gain ( K*Pyy = Pyx' ) is not needed: K*dy = Z'*z and K*Pyy*K^T = Z'*Z
+      MUKF.whiten( Pyy , Pyx , dy );  // now Z is stored in Pyx
+      
+      for(int i=0; i<6; i++){
+        double sum = 0.0;
+        for(int j=0; j<6; j++) sum += Pyx[j+i*6]*dy[j];
+        dx[i] = sum;
+      }
+      
+      // the covariance matrix is updated in the chart centered in q0 ( P = Pxx - Z'*Z )
+      // only the lower triangle is computed, and it is copied to the upper one
+      for(int j=0; j<6; j++){
+        for(int i=j; i<6; i++){
+          double sum = 0.0;
+          for(int k=0; k<6; k++) sum += Pyx[k+i*6]*Pyx[k+j*6];
+          Pxx[i+j*6] -= sum;
+          Pxx[j+i*6] = Pxx[i+j*6];
+        }
+      }
     }
     
     // this update takes place in the chart centered in xmean
@@ -197,35 +252,15 @@ public abstract class MUKF extends OrientationEstimator {
     for(int i=0; i<3; i++) this.e[i] = dx[i];
     
     // the updated point in the chart is mapped to a quaternion
-    double[] delta = new double[4];
     this.fC2M( this.q , this.q0 , this.e );
     // and the angular velocity is updated in the usual way
     this.w[0] = xmean[4] + dx[3];
     this.w[1] = xmean[5] + dx[4];
     this.w[2] = xmean[6] + dx[5];
     
-    // the covariance matrix is updated in the chart centered in q0 ( P = Pxx - K*Pyy*K^T )
-    for(int i=0; i<6; i++){
-      for(int j=0; j<6; j++){
-        double sum = 0.0;
-        for(int k=0; k<6; k++) sum += Pyy[i+k*6]*Pxy[j*6+k];
-        this.P[i+j*6] = sum;
-      }
-    }
-    for(int i=0; i<6; i++){
-      for(int j=0; j<6; j++){
-        double sum = 0.0;
-        for(int k=0; k<6; k++) sum += Pxy[i*6+k]*this.P[k+j*6];
-        Pxx[i+j*6] -= sum;
-      }
-    }
-    
     // we avoid numerical instabilities
-    double qnorm = Math.sqrt( this.q[0]*this.q[0] + this.q[1]*this.q[1] + this.q[2]*this.q[2] + this.q[3]*this.q[3] );
-    for(int i=0; i<4; i++) this.q[i] /= qnorm;
-    for(int i=0; i<6; i++){
-      for(int j=0; j<6; j++) this.P[i+j*6] = 0.5*( Pxx[i+j*6] + Pxx[j+i*6] );
-    }
+    Quaternion.normalize( this.q , 0 );
+    SmallMatrix.symmetrize6( Pxx , this.P );
     
     // this covariance matrix is expressed in the q0 chart
     // we will have to update it to the new q chart
@@ -262,6 +297,143 @@ public abstract class MUKF extends OrientationEstimator {
   double[] q0 = new double[4];
   // last updated point in the chart
   double[] e = new double[3];
+  // workspace of the state and measurement predictions (so they do not allocate memory for each sigma point)
+  private double[] qw = new double[4];
+  private double[] RT = new double[9];
+  // workspace of the chart maps
+  protected double[] delta = new double[4];
+  
+  
+  // PRIVATE METHODS
+  
+  // Method: sequentialUpdate
+  // conditions the state on the measurement components one at a time
+  // (the gains for the remaining components are updated at each step, so no matrix inversion is needed)
+  // inputs:
+  //  Pxx: 6x6 state covariance matrix stored by columns
+  //  Pyx: 6x6 measurement-state cross-covariance matrix stored by columns
+  //  Pyy: 6x6 measurement covariance matrix stored by columns
+  //  dy: difference between the measurement and the predicted measurement
+  // outputs:
+  //  dx: updated point in the chart
+  //  Pxx: updated state covariance matrix (Pyx, Pyy and dy are overwritten)
+  private void sequentialUpdate( double[] Pxx , double[] Pyx , double[] Pyy , double[] dy , double[] dx ){
+    for(int i=0; i<6; i++) dx[i] = 0.0;
+    
+    double[] Kx = new double[6];
+    double[] Ky = new double[6];
+    for(int m=0; m<6; m++){
+      // the disabled components are skipped
+      if( !this.measurementAxes[m] ) continue;
+      // gains for the state, and for the remaining measurement components
+      double s = Pyy[m*7];
+      for(int i=0; i<6; i++){
+        Kx[i] = Pyx[m+i*6]/s;
+        Ky[i] = Pyy[i+m*6]/s;
+      }
+      // we update the state and the innovations of the remaining components
+      double innovation = dy[m];
+      for(int i=0; i<6; i++){
+        dx[i] += Kx[i]*innovation;
+        dy[i] -= Ky[i]*innovation;
+      }
+      // and we condition the covariance matrices on the m-th component
+      for(int j=0; j<6; j++){
+        double aux = Pyx[m+j*6];
+        for(int i=0; i<6; i++) Pxx[i+j*6] -= Kx[i]*aux;
+      }
+      for(int j=0; j<6; j++){
+        double aux = Pyy[m+j*6];
+        for(int i=0; i<6; i++) Pyx[j+i*6] -= Kx[i]*aux;
+      }
+      for(int j=0; j<6; j++){
+        double aux = Pyy[m+j*6];
+        for(int i=0; i<6; i++) Pyy[i+j*6] -= Ky[i]*aux;
+      }
+    }
+    
+    return;
+  }
+  
+  
+  // Method: addProcessNoise
+  // adds the effect of the process noise to the covariance matrices, linearized around the predicted mean (used with
+  // reduced sigma points, where the noise is not sampled)
+  // the angular velocity noise n (covariance Qw) changes the predicted angular velocity by n*dt, and the predicted
+  // orientation by the rotation n*dt^2 (in the chart, where every chart is the rotation vector to first order). The
+  // acceleration noise a (covariance Qa) is measured in the sensor frame: R^T*a
+  // inputs:
+  //  Pxx: 6x6 state covariance matrix stored by columns
+  //  Pyx: 6x6 measurement-state cross-covariance matrix stored by columns
+  //  Pyy: 6x6 measurement covariance matrix stored by columns
+  //  xmean: predicted mean state (q,w)
+  //  dt: time step
+  // outputs:
+  //  Pxx, Pyx, Pyy: covariance matrices with the noise
+  private void addProcessNoise( double[] Pxx , double[] Pyx , double[] Pyy , double[] xmean , double dt ){
+    // rotation matrix transposed (as in IMU_MeasurementPrediction), and predicted gravity in the sensor frame
+    double[] RT = new double[9];
+    Quaternion.rotationMatrixTransposed( xmean , 0 , RT , 0 );
+    double gx = RT[6];
+    double gy = RT[7];
+    double gz = RT[8];
+    // Jacobians of the state (Gx) and the measurement (Gy) with respect to n (6x3, stored by columns)
+    // a rotation e of the orientation changes the predicted acceleration by g x e
+    double dt2 = dt*dt;
+    double[] Gx = new double[18];
+    double[] Gy = new double[18];
+    for(int k=0; k<18; k++){
+      Gx[k] = 0.0;
+      Gy[k] = 0.0;
+    }
+    for(int i=0; i<3; i++){
+      Gx[i+i*6] = dt2;
+      Gx[i+3+i*6] = dt;
+      Gy[i+3+i*6] = dt;
+    }
+    Gy[0+1*6] = -gz*dt2;   Gy[0+2*6] = gy*dt2;
+    Gy[1+0*6] = gz*dt2;    Gy[1+2*6] = -gx*dt2;
+    Gy[2+0*6] = -gy*dt2;   Gy[2+1*6] = gx*dt2;
+    // GxQ = Gx*Qw and GyQ = Gy*Qw
+    double[] GxQ = new double[18];
+    double[] GyQ = new double[18];
+    for(int i=0; i<6; i++){
+      for(int j=0; j<3; j++){
+        double sumx = 0.0;
+        double sumy = 0.0;
+        for(int k=0; k<3; k++){
+          sumx += Gx[i+k*6]*this.Qw[k+j*3];
+          sumy += Gy[i+k*6]*this.Qw[k+j*3];
+        }
+        GxQ[i+j*6] = sumx;
+        GyQ[i+j*6] = sumy;
+      }
+    }
+    for(int i=0; i<6; i++){
+      for(int j=0; j<6; j++){
+        double sumxx = 0.0;
+        double sumxy = 0.0;
+        double sumyy = 0.0;
+        for(int k=0; k<3; k++){
+          sumxx += GxQ[i+k*6]*Gx[j+k*6];
+          sumxy += GxQ[i+k*6]*Gy[j+k*6];
+          sumyy += GyQ[i+k*6]*Gy[j+k*6];
+        }
+        Pxx[i+j*6] += sumxx;
+        Pyx[j+i*6] += sumxy;
+        Pyy[i+j*6] += sumyy;
+      }
+    }
+    // the acceleration noise: R^T*Qa*R
+    double[] T = new double[9];
+    double[] RQR = new double[9];
+    SmallMatrix.congruence3( RT , this.Qa , T , RQR );
+    for(int i=0; i<3; i++){
+      for(int j=0; j<3; j++) Pyy[i+j*6] += RQR[i+j*3];
+    }
+    
+    return;
+  }
   
   
   // PRIVATE STATIC METHODS
@@ -273,35 +445,14 @@ public abstract class MUKF extends OrientationEstimator {
   //  dt: time step
   // outputs:
   //  xp: predicted state (qp,wp,np,ap)
-  private static void statePrediction( double[] x , double dt ){
+  private void statePrediction( double[] x , double dt ){
     // first we predict the angular velocity
-    double[] wp = { x[4]+x[7]*dt , x[5]+x[8]*dt , x[6]+x[9]*dt };
-    // angular velocity norm computation
-    double wnorm = Math.sqrt( wp[0]*wp[0] + wp[1]*wp[1] + wp[2]*wp[2] );
-    // we compute qw
-    double[] qw = new double[4];
-    if( wnorm != 0.0 ){
-      double wdt05 = 0.5*wnorm*dt;
-      double swdt = Math.sin(wdt05)/wnorm;
-      qw[0] = Math.cos(wdt05);
-      qw[1] = wp[0]*swdt;
-      qw[2] = wp[1]*swdt;
-      qw[3] = wp[2]*swdt;
-    }else{
-      qw[0] = 1.0;
-      qw[1] = 0.0;
-      qw[2] = 0.0;
-      qw[3] = 0.0;
-    }
-    // we compute the predicted state (q*qw,w)
-    double[] qp = new double[4];
-    qp[0] = x[0]*qw[0] - x[1]*qw[1] - x[2]*qw[2] - x[3]*qw[3];
-    qp[1] = x[0]*qw[1]  +  qw[0]*x[1]  +  x[2]*qw[3] - x[3]*qw[2];
-    qp[2] = x[0]*qw[2]  +  qw[0]*x[2]  +  x[3]*qw[1] - x[1]*qw[3];
-    qp[3] = x[0]*qw[3]  +  qw[0]*x[3]  +  x[1]*qw[2] - x[2]*qw[1];
-    // we overwrite the predicted state in the current state
-    for(int i=0; i<4; i++) x[i] = qp[i];
-    for(int i=0; i<3; i++) x[i+4] = wp[i];
+    x[4] += x[7]*dt;
+    x[5] += x[8]*dt;
+    x[6] += x[9]*dt;
+    // we compute qw, and the predicted orientation q*qw
+    Quaternion.exp( x , 4 , dt , this.qw , 0 , this.fastMath );
+    Quaternion.multiply( x , 0 , this.qw , 0 , x , 0 );
     
     return;
   }
@@ -312,25 +463,12 @@ public abstract class MUKF extends OrientationEstimator {
   //  xp: state for which the measure is to be predicted
   // outputs:
   //  yp: predicted measurement
-  private static void IMU_MeasurementPrediction( double[] y , double[] x ){
+  private void IMU_MeasurementPrediction( double[] y , double[] x ){
     // the predicted acceleration measurement will be the gravity vector measured
     // in the sensor frame: g = (R^T)*[a-(0,0,-1)]
     //  first we compute the rotation matrix
-    double[] RT = new double[9];
-    RT[0] = -x[2]*x[2]-x[3]*x[3];    RT[3] = x[1]*x[2]+x[3]*x[0];     RT[6] = x[1]*x[3]-x[2]*x[0];
-    RT[1] = x[1]*x[2]-x[3]*x[0];     RT[4] = -x[1]*x[1]-x[3]*x[3];    RT[7] = x[2]*x[3]+x[1]*x[0];
-    RT[2] = x[1]*x[3]+x[2]*x[0];     RT[5] = x[2]*x[3]-x[1]*x[0];     RT[8] = -x[1]*x[1]-x[2]*x[2];
-    
-    RT[0] += RT[0] + 1.0;    RT[3] += RT[3];          RT[6] += RT[6];
-    RT[1] += RT[1];          RT[4] += RT[4] + 1.0;    RT[7] += RT[7];
-    RT[2] += RT[2];          RT[5] += RT[5];          RT[8] += RT[8] + 1.0;
-    
-    double[] ag = { x[10] , x[11] , x[12]+1.0 };
-    for(int i=0; i<3; i++){
-      double sum = 0.0;
-      for(int j=0; j<3; j++) sum += RT[i+j*3]*ag[j];
-      y[i] = sum;
-    }
+    Quaternion.rotationMatrixTransposed( x , 0 , this.RT , 0 );
+    for(int i=0; i<3; i++) y[i] = this.RT[i]*x[10] + this.RT[i+3]*x[11] + this.RT[i+6]*( x[12]+1.0 );
     
     // the predicted measurement for the angular velocity will be itself
     y[3] = x[4];
@@ -340,71 +478,20 @@ public abstract class MUKF extends OrientationEstimator {
     return;
   }
   
-  // Method: Cholesky
-  // performs the Cholesky decomposition of a positive definite matrix ( S = L*L' )
-  // inputs:
-  //  S: positive definite matrix to be decomposed (must be stored by columns)
-  //  n: number of rows or column of the square matrix S (nxn)
-  // outputs:
-  //  S: the lower triangular matrix L (nxn) is overwritten in S (is stored by columns)
-  private static void Cholesky( double[] S , int n ){
-    // for each column
-    for(int j=0; j<n; j++){
-      double sum = 0.0;  //sum for the diagonal term
-      // we first fill with 0.0 until diagonal
-      for(int i=0; i<j; i++){
-        S[i+j*n] = 0.0;
-        //we can compute this sum at the same time
-        sum += S[j+i*n]*S[j+i*n];
-      }
-      // now we compute the diagonal term
-      S[j*(n+1)] = Math.sqrt( S[j*(n+1)] - sum ); //S[j+j*m] = sqrt( S[j+j*m] - sum );
-      // finally we compute the terms below the diagonal
-      for(int i=j+1; i<n; i++){
-        //first the sum
-        sum = 0.0;
-        for(char k=0; k<j; k++){
-          sum += S[i+k*n]*S[j+k*n];
-        }
-        //after the non-diagonal term
-        S[i+j*n] = ( S[i+j*n] - sum )/S[j*(n+1)];
-      }
-    }//end j
-    
-    return;
-  }
-  
-  // Method: solve
-  // solves the system of linear equations  K*S = M  for K
+  // Method: whiten
+  // factorizes a positive definite matrix ( S = L*L' ), and transforms a matrix and a vector with the inverse of L
   // inputs:
   //  S: 6x6 positive definite matrix stored by columns
-  //  M: 6x6 matrix stored by rows
+  //  M: 6x6 matrix stored by columns
+  //  v: vector of 6 components
   // outputs:
-  //  M: K (6x6) is stored by rows in the M memory space
-  private static void solve( double[] S , double[] M ){
-    // we first compute the Cholesky decomposition for transform the system from  K*S = M  into K*L*L' = M
-    MUKF.Cholesky( S , 6 );
-    
-    double[] y = new double[6];
-    // then we take each pair of rows of K and M independently
-    for(int i=0; i<6; i++){
-      // first we solve (y*L' = M)
-      for(int j=0; j<6; j++){
-        double sum = 0.0;
-        for(int k=0; k<j; k++){
-          sum += y[k]*S[j+k*6];
-        }
-        y[j] = ( M[i*6+j] - sum )/S[j*7];
-      }
-      // now we solve (Ki*L = y)
-      for(int j=5; j>-1; j--){
-        double sum = 0.0;
-        for(int k=j+1; k<6; k++){
-          sum += M[i*6+k]*S[k+j*6];
-        }
-        M[i*6+j] = ( y[j] - sum )/S[j*7];
-      }
-    }
+  //  S: the lower triangular matrix L is overwritten in S (is stored by columns)
+  //  M: L^-1*M is overwritten in M
+  //  v: L^-1*v is overwritten in v
+  private static void whiten( double[] S , double[] M , double[] v ){
+    SmallMatrix.cholesky6( S );
+    for(int i=0; i<6; i++) SmallMatrix.forwardSubstitution6( S , M , i*6 );
+    SmallMatrix.forwardSubstitution6( S , v , 0 );
     
     return;
   }
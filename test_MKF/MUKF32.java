@@ -0,0 +1,500 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+
+public abstract class MUKF32 extends OrientationEstimator32 {
+  
+  // PUBLIC METHODS
+  
+  MUKF32(){
+    super();
+    this.q0[0] = 1.0f;  this.q0[1] = 0.0f;  this.q0[2] = 0.0f;  this.q0[3] = 0.0f;
+    this.e[0] = 0.0f;  this.e[1] = 0.0f;  this.e[2] = 0.0f;
+  }
+  
+  public void set_q( double[] qIn ){
+    super.set_q( qIn );
+    for(int i=0; i<4; i++) this.q0[i] = (float)qIn[i];
+    this.e[0] = 0.0f;  this.e[1] = 0.0f;  this.e[2] = 0.0f;
+  }
+  
+  public void reset_orientation(){
+    super.reset_orientation();
+    this.q0[0] = 1.0f;  this.q0[1] = 0.0f;  this.q0[2] = 0.0f;  this.q0[3] = 0.0f;
+    this.e[0] = 0.0f;  this.e[1] = 0.0f;  this.e[2] = 0.0f;
+  }
+  
+  // the state of the MUKF also includes the chart used in the last update
+  public void writeState( DataOutput out ) throws IOException {
+    super.writeState( out );
+    OrientationEstimator32.writeArray( out , this.q0 );
+    OrientationEstimator32.writeArray( out , this.e );
+  }
+  
+  public void readState( DataInput in ) throws IOException {
+    super.readState( in );
+    OrientationEstimator32.readArray( in , this.q0 );
+    OrientationEstimator32.readArray( in , this.e );
+  }
+  
+  // the prediction does not use the charts of the unscented transform, so the covariance matrix is left in the chart
+  // centered in the predicted quaternion (as when the chart update is disabled)
+  public void predict( float[] wm , float dt ){
+    super.predict( wm , dt );
+    for(int i=0; i<4; i++) this.q0[i] = this.qf[i];
+    for(int i=0; i<3; i++) this.e[i] = 0.0f;
+  }
+  
+  // the rotation of an interval is produced by the angular velocity of the updated state (its mean in the interval)
+  protected boolean meanRate(){
+    return true;
+  }
+  
+  // Method: updateIMU
+  // method used to update the state information through an IMU measurement
+  // inputs:
+  //  am: measured acceleration (g)
+  //  wm: measured angular velocity (rad/s)
+  //  dt: time step from the last update (s)
+  // outputs:
+  public void updateIMU( float[] am , float[] wm , float dt ){
+    // with reduced sigma points only the state is sampled (the noise is added analytically below)
+    int L = ( this.reducedSigmaPoints )? 6 : 12;
+    int Ns = 2*L+1;
+    // we define the extended covariance matrix
+    float[] Pe = new float[L*L];  // Pe is LxL
+    for(int k=0; k<L*L; k++) Pe[k] = 0.0f;
+    for(int i=0; i<6; i++){
+      for(int j=0; j<6; j++) Pe[i+j*L] = this.Pf[i+j*6];
+    }
+    if( L == 12 ){
+      for(int i=0; i<3; i++){
+        for(int j=0; j<3; j++) Pe[78+i+j*12] = this.Qwf[i+j*3];
+      }
+      for(int i=0; i<3; i++){
+        for(int j=0; j<3; j++) Pe[117+i+j*12] = this.Qaf[i+j*3];
+      }
+    }
+    
+    // we get the square-root of the matrix using the Cholesky factorization
+    if( L == 6 ){
+      SmallMatrix32.cholesky6( Pe );
+    }else{
+      SmallMatrix32.cholesky12( Pe );
+    }
+    // we define the weight for the 0 sigma point (W0 must be in [0,1])
+    float W0f = (float)this.W0;
+    // the weights for the rest of sigma points are defined by the first one
+    float Wi = (1.0f-W0f)/(2.0f*L);
+    // the factor for the square root, so P = sum(W_k*sigma_k)
+    float alpha = 1.0f/(float)Math.sqrt(2.0f*Wi);
+    for(int k=0; k<L*L; k++) Pe[k] *= alpha;
+    
+    // we define and initialize the sigma points (state and measure)
+    float[][] X = new float[Ns][13];
+    for(int j=0; j<Ns; j++){
+      for(int i=0; i<13; i++) X[j][i] = 0.0f;
+    }
+    float[][] Y = new float[Ns][6];
+    for(int j=0; j<Ns; j++){
+      for(int i=0; i<6; i++) Y[j][i] = 0.0f;
+    }
+    
+    // first we set the mean value
+    for(int i=0; i<4; i++) X[0][i] = this.qf[i];
+    for(int i=0; i<3; i++) X[0][i+4] = this.wf[i];
+    for(int i=0; i<6; i++) X[0][i+7] = 0.0f;
+    // we can test if the Chart update is good or not by uncommenting the next lines
+    if( !this.chartUpdate ){
+      for(int i=0; i<4; i++) this.q0[i] = this.qf[i];
+      for(int i=0; i<3; i++) this.e[i] = 0.0f;
+    }
+    // second we generate the +sigma points from the P matrix
+    for(int j=0; j<L; j++){
+      // we do this because P is expressed in the q0 chart, but we need to
+      // express it in the q chart for the next time step
+      //   first we compute the point in the chart
+      float[] eP = { this.e[0]+Pe[0+j*L] , this.e[1]+Pe[1+j*L] , this.e[2]+Pe[2+j*L] };
+      //   we get the point in the manifold
+      this.fC2M( X[j+1] , this.q0 , eP );
+      // we set the angular velocity
+      for(int i=3; i<6; i++) X[j+1][i+1] = this.wf[i-3] + Pe[i+j*L];
+      for(int i=6; i<L; i++) X[j+1][i+1] = Pe[i+j*L];
+    }
+    // third we generate the -sigma points from the P matrix
+    for(int j=0; j<L; j++){
+      // we do this because P is expressed in the q0 chart, but we need to
+      // express it in the q chart for the next time step
+      //   first we compute the point in the chart
+      float[] eP = { this.e[0]-Pe[0+j*L] , this.e[1]-Pe[1+j*L] , this.e[2]-Pe[2+j*L] };
+      //   we get the point in the manifold
+      this.fC2M( X[j+1+L] , this.q0 , eP );
+      // we set the angular velocity
+      for(int i=3; i<6; i++) X[j+1+L][i+1] = this.wf[i-3] - Pe[i+j*L];
+      for(int i=6; i<L; i++) X[j+1+L][i+1] = -Pe[i+j*L];
+    }
+    
+    // we compute the predictions
+    for(int j=0; j<Ns; j++){
+      this.statePrediction( X[j] , dt );
+      // we make sure that all quaternions are in the same hemisphere
+      float prod = 0.0f;
+      for(int i=0; i<4; i++) prod += X[0][i]*X[j][i];
+      if( prod < 0.0f ){
+        for(int i=0; i<4; i++) X[j][i] = -X[j][i];
+      }
+      //if( X[j][0] < 0.0f ) for(int i=0; i<4; i++) X[j][i] = -X[j][i];  // this is an alternative
+      this.IMU_MeasurementPrediction( Y[j] , X[j] );
+    }
+    
+    // we compute the means
+    float[] xmean = new float[7];
+    float[] ymean = new float[6];
+    for(int i=0; i<7; i++) xmean[i] = W0f*X[0][i];
+    for(int i=0; i<6; i++) ymean[i] = W0f*Y[0][i];
+    for(int j=1; j<Ns; j++){
+      for(int i=0; i<7; i++) xmean[i] += Wi*X[j][i];
+      for(int i=0; i<6; i++) ymean[i] += Wi*Y[j][i];
+    }
+    Quaternion32.normalize( xmean , 0 );
+    
+    // we compute the covariance matrices
+    float[] Pxx = new float[6*6];
+    float[] Pyx = new float[6*6];
+    float[] Pyy = new float[6*6];
+    float[] dX = new float[6];
+    //   first we add the 0 contribution
+    this.fM2C( dX , xmean , X[0] );
+    for(int i=3; i<6; i++) dX[i] = X[0][i+1]-xmean[i+1];
+    float[] dY = new float[6];
+    for(int i=0; i<6; i++) dY[i] = Y[0][i]-ymean[i];
+    for(int i=0; i<6; i++){
+      for(int j=0; j<6; j++){
+        Pxx[i+j*6] = W0f*dX[i]*dX[j];
+        Pyx[j+i*6] = W0f*dX[i]*dY[j];
+        Pyy[i+j*6] = W0f*dY[i]*dY[j];
+      }
+    }
+    //   then the rest
+    for(int k=1; k<Ns; k++){
+      this.fM2C( dX , xmean , X[k] );
+      for(int i=3; i<6; i++) dX[i] = X[k][i+1]-xmean[i+1];
+      for(int i=0; i<6; i++) dY[i] = Y[k][i]-ymean[i];
+      for(int i=0; i<6; i++){
+        for(int j=0; j<6; j++){
+          Pxx[i+j*6] += Wi*dX[i]*dX[j];
+          Pyx[j+i*6] += Wi*dX[i]*dY[j];
+          Pyy[i+j*6] += Wi*dY[i]*dY[j];
+        }
+      }
+    }
+    //   with reduced sigma points, the process noise is added with its linearized effect
+    if( L == 6 ) this.addProcessNoise( Pxx , Pyx , Pyy , xmean , dt );
+    //   finally we add the noise (the linear part)
+    for(int i=0; i<3; i++){
+      for(int j=0; j<3; j++){
+        Pyy[i+j*6] += this.RafUpdate[i+j*3];
+        Pyy[i+3+(j+3)*6] += this.RwfUpdate[i+j*3];
+      }
+    }
+    
+    // and update the state in the chart
+    float[] dy = { am[0]-ymean[0] , am[1]-ymean[1] , am[2]-ymean[2] , wm[0]-ymean[3] , wm[1]-ymean[4] , wm[2]-ymean[5] };
+    float[] dx = new float[6];
+    
+    if( this.useSequentialUpdate() ){
+      // we condition on the measurement components one at a time (no matrix inversion is needed)
+      this.sequentialUpdate( Pxx , Pyx , Pyy , dy , dx );  // now the updated covariance matrix is stored in Pxx
+    }else{
+      // we factorize Pyy = L*L', and we compute Z = L^-1*Pyx and z = L^-1*dy (overwriting Pyy, Pyx and dy)
+      // the gain ( K*Pyy = Pyx' ) is not needed: K*dy = Z'*z and K*Pyy*K^T = Z'*Z
+      MUKF32.whiten( Pyy , Pyx , dy );  // now Z is stored in Pyx
+      
+      for(int i=0; i<6; i++){
+        float sum = 0.0f;
+        for(int j=0; j<6; j++) sum += Pyx[j+i*6]*dy[j];
+        dx[i] = sum;
+      }
+      
+      // the covariance matrix is updated in the chart centered in q0 ( P = Pxx - Z'*Z )
+      // only the lower triangle is computed, and it is copied to the upper one
+      for(int j=0; j<6; j++){
+        for(int i=j; i<6; i++){
+          float sum = 0.0f;
+          for(int k=0; k<6; k++) sum += Pyx[k+i*6]*Pyx[k+j*6];
+          Pxx[i+j*6] -= sum;
+          Pxx[j+i*6] = Pxx[i+j*6];
+        }
+      }
+    }
+    
+    // this update takes place in the chart centered in xmean
+    for(int i=0; i<4; i++) this.q0[i] = xmean[i];
+    for(int i=0; i<3; i++) this.e[i] = dx[i];
+    
+    // the updated point in the chart is mapped to a quaternion
+    this.fC2M( this.qf , this.q0 , this.e );
+    // and the angular velocity is updated in the usual way
+    this.wf[0] = xmean[4] + dx[3];
+    this.wf[1] = xmean[5] + dx[4];
+    this.wf[2] = xmean[6] + dx[5];
+    
+    // we avoid numerical instabilities
+    Quaternion32.normalize( this.qf , 0 );
+    SmallMatrix32.symmetrize6( Pxx , this.Pf );
+    
+    // this covariance matrix is expressed in the q0 chart
+    // we will have to update it to the new q chart
+    // that is why we do what we do at the begining  
+    
+    return;
+  }
+  
+  
+  // ABSTRACT METHODS
+  
+  // Method: fM2C
+  // defines the map from the manifold points, to the chart points
+  // inputs:
+  //  qm: mean quaternion of the distribution (is mapped with the origin of the chart)
+  //  q: quaternion that we want to map with a point in the chart
+  // outputs:
+  //  e: point in the chart mapped with the q quaternion
+  protected abstract void fM2C( float[] e , float[] qm , float[] q );
+  
+  // Method: fC2M
+  // defines the map from the chart points, to the manifold points
+  // inputs:
+  //  qm: mean quaternion of the distribution (it is mapped with the origin of the chart)
+  //  e: point of the chart that we want to map to a unit quaternion in the manifold
+  // outputs:
+  //  q: quaternion in the manifold mapped with the e point in the chart
+  protected abstract void fC2M( float[] q , float[] qm , float[] e );
+  
+  
+  // PRIVATE VARIABLES
+  // quaternion used for the last update (q1,q2,q3,q4)=(qx,qy,qz,qw)
+  // (rotation that transform vectors from the sensor reference frame, to the external reference frame)
+  float[] q0 = new float[4];
+  // last updated point in the chart
+  float[] e = new float[3];
+  // workspace of the state and measurement predictions (so they do not allocate memory for each sigma point)
+  private float[] qw = new float[4];
+  private float[] RT = new float[9];
+  // workspace of the chart maps
+  protected float[] delta = new float[4];
+  
+  
+  // PRIVATE METHODS
+  
+  // Method: sequentialUpdate
+  // conditions the state on the measurement components one at a time
+  // (the gains for the remaining components are updated at each step, so no matrix inversion is needed)
+  // inputs:
+  //  Pxx: 6x6 state covariance matrix stored by columns
+  //  Pyx: 6x6 measurement-state cross-covariance matrix stored by columns
+  //  Pyy: 6x6 measurement covariance matrix stored by columns
+  //  dy: difference between the measurement and the predicted measurement
+  // outputs:
+  //  dx: updated point in the chart
+  //  Pxx: updated state covariance matrix (Pyx, Pyy and dy are overwritten)
+  private void sequentialUpdate( float[] Pxx , float[] Pyx , float[] Pyy , float[] dy , float[] dx ){
+    for(int i=0; i<6; i++) dx[i] = 0.0f;
+    
+    float[] Kx = new float[6];
+    float[] Ky = new float[6];
+    for(int m=0; m<6; m++){
+      // the disabled components are skipped
+      if( !this.measurementAxes[m] ) continue;
+      // gains for the state, and for the remaining measurement components
+      float s = Pyy[m*7];
+      for(int i=0; i<6; i++){
+        Kx[i] = Pyx[m+i*6]/s;
+        Ky[i] = Pyy[i+m*6]/s;
+      }
+      // we update the state and the innovations of the remaining components
+      float innovation = dy[m];
+      for(int i=0; i<6; i++){
+        dx[i] += Kx[i]*innovation;
+        dy[i] -= Ky[i]*innovation;
+      }
+      // and we condition the covariance matrices on the m-th component
+      for(int j=0; j<6; j++){
+        float aux = Pyx[m+j*6];
+        for(int i=0; i<6; i++) Pxx[i+j*6] -= Kx[i]*aux;
+      }
+      for(int j=0; j<6; j++){
+        float aux = Pyy[m+j*6];
+        for(int i=0; i<6; i++) Pyx[j+i*6] -= Kx[i]*aux;
+      }
+      for(int j=0; j<6; j++){
+        float aux = Pyy[m+j*6];
+        for(int i=0; i<6; i++) Pyy[i+j*6] -= Ky[i]*aux;
+      }
+    }
+    
+    return;
+  }
+  
+  
+  // Method: addProcessNoise
+  // adds the effect of the process noise to the covariance matrices, linearized around the predicted mean (used with
+  // reduced sigma points, where the noise is not sampled)
+  // the angular velocity noise n (covariance Qw) changes the predicted angular velocity by n*dt, and the predicted
+  // orientation by the rotation n*dt^2 (in the chart, where every chart is the rotation vector to first order). The
+  // acceleration noise a (covariance Qa) is measured in the sensor frame: R^T*a
+  // inputs:
+  //  Pxx: 6x6 state covariance matrix stored by columns
+  //  Pyx: 6x6 measurement-state cross-covariance matrix stored by columns
+  //  Pyy: 6x6 measurement covariance matrix stored by columns
+  //  xmean: predicted mean state (q,w)
+  //  dt: time step
+  // outputs:
+  //  Pxx, Pyx, Pyy: covariance matrices with the noise
+  private void addProcessNoise( float[] Pxx , float[] Pyx , float[] Pyy , float[] xmean , float dt ){
+    // rotation matrix transposed (as in IMU_MeasurementPrediction), and predicted gravity in the sensor frame
+    float[] RT = new float[9];
+    Quaternion32.rotationMatrixTransposed( xmean , 0 , RT , 0 );
+    float gx = RT[6];
+    float gy = RT[7];
+    float gz = RT[8];
+    // Jacobians of the state (Gx) and the measurement (Gy) with respect to n (6x3, stored by columns)
+    // a rotation e of the orientation changes the predicted acceleration by g x e
+    float dt2 = dt*dt;
+    float[] Gx = new float[18];
+    float[] Gy = new float[18];
+    for(int k=0; k<18; k++){
+      Gx[k] = 0.0f;
+      Gy[k] = 0.0f;
+    }
+    for(int i=0; i<3; i++){
+      Gx[i+i*6] = dt2;
+      Gx[i+3+i*6] = dt;
+      Gy[i+3+i*6] = dt;
+    }
+    Gy[0+1*6] = -gz*dt2;   Gy[0+2*6] = gy*dt2;
+    Gy[1+0*6] = gz*dt2;    Gy[1+2*6] = -gx*dt2;
+    Gy[2+0*6] = -gy*dt2;   Gy[2+1*6] = gx*dt2;
+    // GxQ = Gx*Qw and GyQ = Gy*Qw
+    float[] GxQ = new float[18];
+    float[] GyQ = new float[18];
+    for(int i=0; i<6; i++){
+      for(int j=0; j<3; j++){
+        float sumx = 0.0f;
+        float sumy = 0.0f;
+        for(int k=0; k<3; k++){
+          sumx += Gx[i+k*6]*this.Qwf[k+j*3];
+          sumy += Gy[i+k*6]*this.Qwf[k+j*3];
+        }
+        GxQ[i+j*6] = sumx;
+        GyQ[i+j*6] = sumy;
+      }
+    }
+    for(int i=0; i<6; i++){
+      for(int j=0; j<6; j++){
+        float sumxx = 0.0f;
+        float sumxy = 0.0f;
+        float sumyy = 0.0f;
+        for(int k=0; k<3; k++){
+          sumxx += GxQ[i+k*6]*Gx[j+k*6];
+          sumxy += GxQ[i+k*6]*Gy[j+k*6];
+          sumyy += GyQ[i+k*6]*Gy[j+k*6];
+        }
+        Pxx[i+j*6] += sumxx;
+        Pyx[j+i*6] += sumxy;
+        Pyy[i+j*6] += sumyy;
+      }
+    }
+    // the acceleration noise: R^T*Qa*R
+    float[] T = new float[9];
+    float[] RQR = new float[9];
+    SmallMatrix32.congruence3( RT , this.Qaf , T , RQR );
+    for(int i=0; i<3; i++){
+      for(int j=0; j<3; j++) Pyy[i+j*6] += RQR[i+j*3];
+    }
+    
+    return;
+  }
+  
+  
+  // PRIVATE STATIC METHODS
+  
+  // Method: statePrediction
+  // this method predicts the state given the previous state, and the time increment
+  // inputs:
+  //  x: previous state (q,w,n,a)
+  //  dt: time step
+  // outputs:
+  //  xp: predicted state (qp,wp,np,ap)
+  private void statePrediction( float[] x , float dt ){
+    // first we predict the angular velocity
+    x[4] += x[7]*dt;
+    x[5] += x[8]*dt;
+    x[6] += x[9]*dt;
+    // we compute qw, and the predicted orientation q*qw
+    Quaternion32.exp( x , 4 , dt , this.qw , 0 , this.fastMath );
+    Quaternion32.multiply( x , 0 , this.qw , 0 , x , 0 );
+    
+    return;
+  }
+  
+  // Function: IMU_MeasurementPrediction
+  // this method predicts the measurement given a state
+  // inputs:
+  //  xp: state for which the measure is to be predicted
+  // outputs:
+  //  yp: predicted measurement
+  private void IMU_MeasurementPrediction( float[] y , float[] x ){
+    // the predicted acceleration measurement will be the gravity vector measured
+    // in the sensor frame: g = (R^T)*[a-(0,0,-1)]
+    //  first we compute the rotation matrix
+    Quaternion32.rotationMatrixTransposed( x , 0 , this.RT , 0 );
+    for(int i=0; i<3; i++) y[i] = this.RT[i]*x[10] + this.RT[i+3]*x[11] + this.RT[i+6]*( x[12]+1.0f );
+    
+    // the predicted measurement for the angular velocity will be itself
+    y[3] = x[4];
+    y[4] = x[5];
+    y[5] = x[6];
+    
+    return;
+  }
+  
+  // Method: whiten
+  // factorizes a positive definite matrix ( S = L*L' ), and transforms a matrix and a vector with the inverse of L
+  // inputs:
+  //  S: 6x6 positive definite matrix stored by columns
+  //  M: 6x6 matrix stored by columns
+  //  v: vector of 6 components
+  // outputs:
+  //  S: the lower triangular matrix L is overwritten in S (is stored by columns)
+  //  M: L^-1*M is overwritten in M
+  //  v: L^-1*v is overwritten in v
+  private static void whiten( float[] S , float[] M , float[] v ){
+    SmallMatrix32.cholesky6( S );
+    for(int i=0; i<6; i++) SmallMatrix32.forwardSubstitution6( S , M , i*6 );
+    SmallMatrix32.forwardSubstitution6( S , v , 0 );
+    
+    return;
+  }
+  
+  
+}
\ No newline at end of file
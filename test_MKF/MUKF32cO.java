@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+public class MUKF32cO extends MUKF32 {
+  
+  // PROTECTED METHODS
+  
+  // Method: fM2C
+  // defines the map from the manifold points, to the chart points
+  // inputs:
+  //  qm: mean quaternion of the distribution (is mapped with the origin of the chart)
+  //  q: quaternion that we want to map with a point in the chart
+  // outputs:
+  //  e: point in the chart mapped with the q quaternion
+  protected void fM2C( float[] e , float[] qm , float[] q ){
+    // first we compute the delta in the manifold
+    Quaternion32.conjugateMultiply( qm , 0 , q , 0 , this.delta , 0 );
+    // e from the chart definition: Orthographic
+    if( this.delta[0] < 0.0f ) for(int i=0; i<4; i++) this.delta[i] = -this.delta[i];
+    e[0] = 2.0f*this.delta[1];
+    e[1] = 2.0f*this.delta[2];
+    e[2] = 2.0f*this.delta[3];
+    
+    return;
+  }
+  
+  // Method: fC2M
+  // defines the map from the chart points, to the manifold points
+  // inputs:
+  //  qm: mean quaternion of the distribution (it is mapped with the origin of the chart)
+  //  e: point of the chart that we want to map to a unit quaternion in the manifold
+  // outputs:
+  //  q: quaternion in the manifold mapped with the e point in the chart
+  protected void fC2M( float[] q , float[] qm , float[] e ){
+    // delta from the chart definition: Orthographic
+    float enorm = (float)Math.sqrt( e[0]*e[0] + e[1]*e[1] + e[2]*e[2] );
+    if( enorm > 2.0f ){
+      float aux = 2.0f/enorm;
+      e[0] *= aux;
+      e[1] *= aux;
+      e[2] *= aux;
+      enorm = 2.0f;
+    }
+    q[0] = (float)Math.sqrt( 1.0f - 0.25f*enorm*enorm );
+    q[1] = 0.5f*e[0];
+    q[2] = 0.5f*e[1];
+    q[3] = 0.5f*e[2];
+    // now we update in the manifold with this delta (stored in q)
+    Quaternion32.multiply( qm , 0 , q , 0 , q , 0 );
+    
+    return;
+  }
+  
+}
\ No newline at end of file
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+public class MUKF32cRP extends MUKF32 {
+  
+  // PROTECTED METHODS
+  
+  // Method: fM2C
+  // defines the map from the manifold points, to the chart points
+  // inputs:
+  //  qm: mean quaternion of the distribution (is mapped with the origin of the chart)
+  //  q: quaternion that we want to map with a point in the chart
+  // outputs:
+  //  e: point in the chart mapped with the q quaternion
+  protected void fM2C( float[] e , float[] qm , float[] q ){
+    // first we compute the delta in the manifold
+    Quaternion32.conjugateMultiply( qm , 0 , q , 0 , this.delta , 0 );
+    // e from the chart definition: Rodrigues Parameters
+    float aux = 2.0f/this.delta[0];
+    e[0] = this.delta[1]*aux;
+    e[1] = this.delta[2]*aux;
+    e[2] = this.delta[3]*aux;
+    
+    return;
+  }
+  
+  // Method: fC2M
+  // defines the map from the chart points, to the manifold points
+  // inputs:
+  //  qm: mean quaternion of the distribution (it is mapped with the origin of the chart)
+  //  e: point of the chart that we want to map to a unit quaternion in the manifold
+  // outputs:
+  //  q: quaternion in the manifold mapped with the e point in the chart
+  protected void fC2M( float[] q , float[] qm , float[] e ){
+    // delta from the chart definition: Rodrigues Parameters
+    float aux = 1.0f/(float)Math.sqrt( 4.0f + e[0]*e[0] + e[1]*e[1] + e[2]*e[2] );
+    q[0] = 2.0f*aux;
+    q[1] = e[0]*aux;
+    q[2] = e[1]*aux;
+    q[3] = e[2]*aux;
+    // now we update in the manifold with this delta (stored in q)
+    Quaternion32.multiply( qm , 0 , q , 0 , q , 0 );
+    
+    return;
+  }
+  
+}
\ No newline at end of file
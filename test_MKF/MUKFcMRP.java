@@ -29,17 +29,13 @@ public class MUKFcMRP extends MUKF {
   //  e: point in the chart mapped with the q quaternion
   protected void fM2C( double[] e , double[] qm , double[] q ){
     // first we compute the delta in the manifold
-    double[] delta = new double[4];
-    delta[0] = qm[0]*q[0] + qm[1]*q[1] + qm[2]*q[2] + qm[3]*q[3];
-    delta[1] = qm[0]*q[1]  -  q[0]*qm[1]  -  qm[2]*q[3] + qm[3]*q[2];
-    delta[2] = qm[0]*q[2]  -  q[0]*qm[2]  -  qm[3]*q[1] + qm[1]*q[3];
-    delta[3] = qm[0]*q[3]  -  q[0]*qm[3]  -  qm[1]*q[2] + qm[2]*q[1];
+    Quaternion.conjugateMultiply( qm , 0 , q , 0 , this.delta , 0 );
     // e from the chart definition: Modified Rodrigues Parameters
-    if( delta[0] < 0.0 ) for(int i=0; i<4; i++) delta[i] = -delta[i];
-    double aux = 4.0/( 1.0 + delta[0] );
-    e[0] = delta[1]*aux;
-    e[1] = delta[2]*aux;
-    e[2] = delta[3]*aux;
+    if( this.delta[0] < 0.0 ) for(int i=0; i<4; i++) this.delta[i] = -this.delta[i];
+    double aux = 4.0/( 1.0 + this.delta[0] );
+    e[0] = this.delta[1]*aux;
+    e[1] = this.delta[2]*aux;
+    e[2] = this.delta[3]*aux;
     
     return;
   }
@@ -62,16 +58,12 @@ public class MUKFcMRP extends MUKF {
       enorm = 4.0;
     }
     double aux = 1.0/( 16.0 + enorm*enorm );
-    double[] delta = new double[4];
-    delta[0] = ( 16.0 - enorm*enorm )*aux;
-    delta[1] = 8.0*e[0]*aux;
-    delta[2] = 8.0*e[1]*aux;
-    delta[3] = 8.0*e[2]*aux;
-    // now we update in the manifold with this delta
-    q[0] = qm[0]*delta[0] - qm[1]*delta[1] - qm[2]*delta[2] - qm[3]*delta[3];
-    q[1] = qm[0]*delta[1]  +  delta[0]*qm[1]  +  qm[2]*delta[3] - qm[3]*delta[2];
-    q[2] = qm[0]*delta[2]  +  delta[0]*qm[2]  +  qm[3]*delta[1] - qm[1]*delta[3];
-    q[3] = qm[0]*delta[3]  +  delta[0]*qm[3]  +  qm[1]*delta[2] - qm[2]*delta[1];
+    q[0] = ( 16.0 - enorm*enorm )*aux;
+    q[1] = 8.0*e[0]*aux;
+    q[2] = 8.0*e[1]*aux;
+    q[3] = 8.0*e[2]*aux;
+    // now we update in the manifold with this delta (stored in q)
+    Quaternion.multiply( qm , 0 , q , 0 , q , 0 );
     
     return;
   }
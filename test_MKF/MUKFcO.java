@@ -29,16 +29,12 @@ public class MUKFcO extends MUKF {
   //  e: point in the chart mapped with the q quaternion
   protected void fM2C( double[] e , double[] qm , double[] q ){
     // first we compute the delta in the manifold
-    double[] delta = new double[4];
-    delta[0] = qm[0]*q[0] + qm[1]*q[1] + qm[2]*q[2] + qm[3]*q[3];
-    delta[1] = qm[0]*q[1]  -  q[0]*qm[1]  -  qm[2]*q[3] + qm[3]*q[2];
-    delta[2] = qm[0]*q[2]  -  q[0]*qm[2]  -  qm[3]*q[1] + qm[1]*q[3];
-    delta[3] = qm[0]*q[3]  -  q[0]*qm[3]  -  qm[1]*q[2] + qm[2]*q[1];
+    Quaternion.conjugateMultiply( qm , 0 , q , 0 , this.delta , 0 );
     // e from the chart definition: Orthographic
-    if( delta[0] < 0.0 ) for(int i=0; i<4; i++) delta[i] = -delta[i];
-    e[0] = 2.0*delta[1];
-    e[1] = 2.0*delta[2];
-    e[2] = 2.0*delta[3];
+    if( this.delta[0] < 0.0 ) for(int i=0; i<4; i++) this.delta[i] = -this.delta[i];
+    e[0] = 2.0*this.delta[1];
+    e[1] = 2.0*this.delta[2];
+    e[2] = 2.0*this.delta[3];
     
     return;
   }
@@ -60,16 +56,12 @@ public class MUKFcO extends MUKF {
       e[2] *= aux;
       enorm = 2.0;
     }
-    double[] delta = new double[4];
-    delta[0] = Math.sqrt( 1.0 - 0.25*enorm*enorm );
-    delta[1] = 0.5*e[0];
-    delta[2] = 0.5*e[1];
-    delta[3] = 0.5*e[2];
-    // now we update in the manifold with this delta
-    q[0] = qm[0]*delta[0] - qm[1]*delta[1] - qm[2]*delta[2] - qm[3]*delta[3];
-    q[1] = qm[0]*delta[1]  +  delta[0]*qm[1]  +  qm[2]*delta[3] - qm[3]*delta[2];
-    q[2] = qm[0]*delta[2]  +  delta[0]*qm[2]  +  qm[3]*delta[1] - qm[1]*delta[3];
-    q[3] = qm[0]*delta[3]  +  delta[0]*qm[3]  +  qm[1]*delta[2] - qm[2]*delta[1];
+    q[0] = Math.sqrt( 1.0 - 0.25*enorm*enorm );
+    q[1] = 0.5*e[0];
+    q[2] = 0.5*e[1];
+    q[3] = 0.5*e[2];
+    // now we update in the manifold with this delta (stored in q)
+    Quaternion.multiply( qm , 0 , q , 0 , q , 0 );
     
     return;
   }
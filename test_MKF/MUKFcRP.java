@@ -29,16 +29,12 @@ public class MUKFcRP extends MUKF {
   //  e: point in the chart mapped with the q quaternion
   protected void fM2C( double[] e , double[] qm , double[] q ){
     // first we compute the delta in the manifold
-    double[] delta = new double[4];
-    delta[0] = qm[0]*q[0] + qm[1]*q[1] + qm[2]*q[2] + qm[3]*q[3];
-    delta[1] = qm[0]*q[1]  -  q[0]*qm[1]  -  qm[2]*q[3] + qm[3]*q[2];
-    delta[2] = qm[0]*q[2]  -  q[0]*qm[2]  -  qm[3]*q[1] + qm[1]*q[3];
-    delta[3] = qm[0]*q[3]  -  q[0]*qm[3]  -  qm[1]*q[2] + qm[2]*q[1];
+    Quaternion.conjugateMultiply( qm , 0 , q , 0 , this.delta , 0 );
     // e from the chart definition: Rodrigues Parameters
-    double aux = 2.0/delta[0];
-    e[0] = delta[1]*aux;
-    e[1] = delta[2]*aux;
-    e[2] = delta[3]*aux;
+    double aux = 2.0/this.delta[0];
+    e[0] = this.delta[1]*aux;
+    e[1] = this.delta[2]*aux;
+    e[2] = this.delta[3]*aux;
     
     return;
   }
@@ -53,16 +49,12 @@ public class MUKFcRP extends MUKF {
   protected void fC2M( double[] q , double[] qm , double[] e ){
     // delta from the chart definition: Rodrigues Parameters
     double aux = 1.0/Math.sqrt( 4.0 + e[0]*e[0] + e[1]*e[1] + e[2]*e[2] );
-    double[] delta = new double[4];
-    delta[0] = 2.0*aux;
-    delta[1] = e[0]*aux;
-    delta[2] = e[1]*aux;
-    delta[3] = e[2]*aux;
-    // now we update in the manifold with this delta
-    q[0] = qm[0]*delta[0] - qm[1]*delta[1] - qm[2]*delta[2] - qm[3]*delta[3];
-    q[1] = qm[0]*delta[1]  +  delta[0]*qm[1]  +  qm[2]*delta[3] - qm[3]*delta[2];
-    q[2] = qm[0]*delta[2]  +  delta[0]*qm[2]  +  qm[3]*delta[1] - qm[1]*delta[3];
-    q[3] = qm[0]*delta[3]  +  delta[0]*qm[3]  +  qm[1]*delta[2] - qm[2]*delta[1];
+    q[0] = 2.0*aux;
+    q[1] = e[0]*aux;
+    q[2] = e[1]*aux;
+    q[3] = e[2]*aux;
+    // now we update in the manifold with this delta (stored in q)
+    Quaternion.multiply( qm , 0 , q , 0 , q , 0 );
     
     return;
   }
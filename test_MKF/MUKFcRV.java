@@ -29,26 +29,9 @@ public class MUKFcRV extends MUKF {
   //  e: point in the chart mapped with the q quaternion
   protected void fM2C( double[] e , double[] qm , double[] q ){
     // first we compute the delta in the manifold
-    double[] delta = new double[4];
-    delta[0] = qm[0]*q[0] + qm[1]*q[1] + qm[2]*q[2] + qm[3]*q[3];
-    delta[1] = qm[0]*q[1]  -  q[0]*qm[1]  -  qm[2]*q[3] + qm[3]*q[2];
-    delta[2] = qm[0]*q[2]  -  q[0]*qm[2]  -  qm[3]*q[1] + qm[1]*q[3];
-    delta[3] = qm[0]*q[3]  -  q[0]*qm[3]  -  qm[1]*q[2] + qm[2]*q[1];
+    Quaternion.conjugateMultiply( qm , 0 , q , 0 , this.delta , 0 );
     // e from the chart definition: Rotation Vector
-    if( delta[0] < 0.0 ) for(int i=0; i<4; i++) delta[i] = -delta[i];
-    
-    double dnorm = Math.sqrt( delta[1]*delta[1] + delta[2]*delta[2] + delta[3]*delta[3] );
-    if( dnorm > 1.0 ) dnorm = 1.0;
-    if( dnorm != 0.0 ){
-      double aux = 2.0*Math.asin(dnorm)/dnorm;
-      e[0] = delta[1]*aux;
-      e[1] = delta[2]*aux;
-      e[2] = delta[3]*aux;
-    }else{
-      e[0] = 0.0;
-      e[1] = 0.0;
-      e[2] = 0.0;
-    }
+    Quaternion.log( this.delta , 0 , e , 0 , this.fastMath );
     
     return;
   }
@@ -68,26 +51,10 @@ public class MUKFcRV extends MUKF {
       e[0] = e[0]*aux;
       e[1] = e[1]*aux;
       e[2] = e[2]*aux;
-      enorm = Math.PI;
-    }
-    double[] delta = new double[4];
-    if( enorm != 0.0 ){
-      double aux = Math.sin(0.5*enorm)/enorm;
-      delta[0] = Math.cos(0.5*enorm);
-      delta[1] = e[0]*aux;
-      delta[2] = e[1]*aux;
-      delta[3] = e[2]*aux;
-    }else{
-      delta[0] = 1.0;
-      delta[1] = 0.0;
-      delta[2] = 0.0;
-      delta[3] = 0.0;
     }
-    // now we update in the manifold with this delta
-    q[0] = qm[0]*delta[0] - qm[1]*delta[1] - qm[2]*delta[2] - qm[3]*delta[3];
-    q[1] = qm[0]*delta[1]  +  delta[0]*qm[1]  +  qm[2]*delta[3] - qm[3]*delta[2];
-    q[2] = qm[0]*delta[2]  +  delta[0]*qm[2]  +  qm[3]*delta[1] - qm[1]*delta[3];
-    q[3] = qm[0]*delta[3]  +  delta[0]*qm[3]  +  qm[1]*delta[2] - qm[2]*delta[1];
+    Quaternion.exp( e , 0 , 1.0 , q , 0 , this.fastMath );
+    // now we update in the manifold with this delta (stored in q)
+    Quaternion.multiply( qm , 0 , q , 0 , q , 0 );
     
     return;
   }
@@ -22,21 +22,44 @@
 // From the x-io website "Open-source resources available on this website are
 // provided under the GNU General Public Licence unless an alternative licence
 // is provided in source."
-public class MadgwickAHRS extends OrientationEstimator {
+public class MadgwickAHRS extends OrientationEstimator64 {
   
-  // Method: updateIMU
-  // implementation of the abstract method "updateIMU" defined in the OrientationEstimator class.
-  // This is an interface between the "updateIMU" from the OrientationEstimator class, and the
+  // Method: update
+  // implementation of the abstract method "update" defined in the OrientationEstimator class.
+  // This is an interface between the "update" from the OrientationEstimator class, and the
   // "updateIMU" implemented by Madgwick
   @Override
-  public void updateIMU( double[] am , double[] wm , double dt ){
-    double gx = wm[0]*180.0/Math.PI;
-    double gy = wm[1]*180.0/Math.PI;
-    double gz = wm[2]*180.0/Math.PI;
-    double ax = am[0];
-    double ay = am[1];
-    double az = am[2];
+  protected void update( double[] am , double[] wm , double dt ){
+    invSampleFreq = dt;
+    this.step( wm[0]*180.0/Math.PI , wm[1]*180.0/Math.PI , wm[2]*180.0/Math.PI , am[0] , am[1] , am[2] );
+    
+    return;
+  }
+  
+  // the quaternion is integrated with the measured angular velocity, so its mean in the interval is the right one
+  @Override
+  protected boolean meanRate(){
+    return true;
+  }
+  
+  // the prediction integrates the gyroscope without the feedback of the accelerometer (Madgwick skips the feedback when
+  // the acceleration is zero)
+  @Override
+  public void predict( double[] wm , double dt ){
     invSampleFreq = dt;
+    if( wm != null ) this.step( wm[0]*180.0/Math.PI , wm[1]*180.0/Math.PI , wm[2]*180.0/Math.PI , 0.0 , 0.0 , 0.0 );
+  }
+  
+  // the correction applies the feedback of the accelerometer alone, during the time step of the last prediction
+  @Override
+  public void correct( double[] am , double[] wm ){
+    this.step( 0.0 , 0.0 , 0.0 , am[0] , am[1] , am[2] );
+    this.samplesSinceCorrection = 0;
+    this.correctionRequested = false;
+  }
+  
+  // calls the "updateIMU" implemented by Madgwick with the quaternion of the OrientationEstimator class
+  private void step( double gx , double gy , double gz , double ax , double ay , double az ){
     this.q0 = this.q[0];
     this.q1 = this.q[1];
     this.q2 = this.q[2];
@@ -48,8 +71,6 @@ public class MadgwickAHRS extends OrientationEstimator {
     this.q[1] = this.q1;
     this.q[2] = this.q2;
     this.q[3] = this.q3;
-    
-    return;
   }
   
   
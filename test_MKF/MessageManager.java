@@ -30,6 +30,7 @@ public class MessageManager {
   private byte[] checksumInM;  // checksum that arrives with the incoming message
   private byte[] checksumInC;  // checksum computed with the incoming message
   private byte[] checksumOut;  // checksum for the outgoing message
+  private long frameStartTime;  // time when the magic byte of the last message was received (ns)
   
   
   // CONSTRUCTORS
@@ -45,6 +46,7 @@ public class MessageManager {
     this.checksumInC = new byte[theNchecksums];
     this.state = 0;
     this.NRB = 0;
+    this.frameStartTime = 0;
   }
   
   
@@ -58,6 +60,7 @@ public class MessageManager {
       case 0:  // we are not receiving a message,
         // we wait for the magic byte
         if( newByte == MessageManager.magicByte ){  // if we find the magic byte,
+          this.frameStartTime = System.nanoTime();  // we stamp the beginning of the message
           this.NRB = 0;  // we initialize the number of received bytes
           this.state = 1;  // and we go to the next state
         }
@@ -116,6 +119,12 @@ public class MessageManager {
   }  // end manage_byteIn( byte newByte )
   
   
+  // returns the time when the first byte of the last message was received (System.nanoTime())
+  public long get_frameStartTime() {
+    return this.frameStartTime;
+  }
+  
+  
   // prepares the bytes of an outgoing message
   public byte[] prepare_message( byte[] theMessage ) {
     if( theMessage.length > 127 ) return null;
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+// class that compares the estimators over many synthetic trajectories with ground truth
+// each trial generates a trajectory (with its own seed), and runs every estimator over it. The trials are split
+// between the threads of a ForkJoinPool, and the estimators of each trial are run in parallel too. Since the yaw is
+// not observable with an IMU, the estimators start at the true initial orientation
+public class MonteCarloHarness {
+  
+  // PRIVATE VARIABLES
+  private TrajectoryGenerator generator;
+  private double Ra;  // accelerometer noise variance (g^2)
+  private double Rw;  // gyroscope noise variance ((rad/s)^2)
+  private double seconds;  // duration of each trajectory (s)
+  private double convergenceTime;  // the errors before this time are not taken into account (s)
+  private long seed;
+  private boolean singlePrecision = false;  // run the single precision versions of the estimators (Estimators.create32)
+  // results of each estimator (first index) in each trial (second index)
+  private double[][] meanError;
+  private double[][] rmsError;
+  private double[][] maxError;
+  private double[][] nanosPerUpdate;
+  private boolean[][] finite;
+  
+  
+  // CONSTRUCTORS
+  
+  public MonteCarloHarness( double rate , double maxAngularVelocity , double RaIn , double RwIn , double secondsIn , double convergenceTimeIn , long seedIn ) {
+    this.generator = new TrajectoryGenerator( rate , maxAngularVelocity , RaIn , RwIn );
+    this.Ra = RaIn;
+    this.Rw = RwIn;
+    this.seconds = secondsIn;
+    this.convergenceTime = convergenceTimeIn;
+    this.seed = seedIn;
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  public void set_singlePrecision( boolean singlePrecisionIn ) {
+    this.singlePrecision = singlePrecisionIn;
+  }
+  
+  // Method: run
+  // runs all the estimators over several trajectories
+  // inputs:
+  //  trials: number of trajectories
+  //  pool: pool of threads that runs the trials
+  // outputs:
+  public void run( int trials , ForkJoinPool pool ) {
+    int N = Estimators.count();
+    this.meanError = new double[N][trials];
+    this.rmsError = new double[N][trials];
+    this.maxError = new double[N][trials];
+    this.nanosPerUpdate = new double[N][trials];
+    this.finite = new boolean[N][trials];
+    pool.invoke( new TrialsTask( 0 , trials ) );
+  }
+  
+  // Method: report
+  // summarizes the results of the last run
+  // inputs:
+  // outputs:
+  //  table with the statistics of the angular error (degrees) and the cost of each estimator
+  public String report() {
+    StringBuilder sb = new StringBuilder();
+    int trials = this.rmsError[0].length;
+    sb.append( String.format( "%d trials of %.1f s (errors after %.1f s; degrees)%n" , trials , this.seconds , this.convergenceTime ) );
+    sb.append( String.format( "%-10s %10s %10s %12s %12s %10s %12s %9s%n" , "estimator" , "mean" , "RMS" , "median RMS" , "p95 RMS" , "max" , "ns/update" , "diverged" ) );
+    double toDeg = 180.0/Math.PI;
+    for(int n=0; n<Estimators.count(); n++){
+      double mean = 0.0;
+      double ms = 0.0;
+      double max = 0.0;
+      double nanos = 0.0;
+      int diverged = 0;
+      double[] sorted = this.rmsError[n].clone();
+      Arrays.sort( sorted );
+      for(int k=0; k<trials; k++){
+        mean += this.meanError[n][k];
+        ms += this.rmsError[n][k]*this.rmsError[n][k];
+        if( this.maxError[n][k] > max ) max = this.maxError[n][k];
+        nanos += this.nanosPerUpdate[n][k];
+        if( !this.finite[n][k] ) diverged++;
+      }
+      sb.append( String.format( "%-10s %10.4f %10.4f %12.4f %12.4f %10.4f %12.1f %9d%n" , Estimators.NAMES[n] ,
+                                toDeg*mean/trials , toDeg*Math.sqrt( ms/trials ) , toDeg*MonteCarloHarness.percentile( sorted , 50.0 ) ,
+                                toDeg*MonteCarloHarness.percentile( sorted , 95.0 ) , toDeg*max , nanos/trials , diverged ) );
+    }
+    return sb.toString();
+  }
+  
+  
+  // PRIVATE METHODS
+  
+  // runs one estimator over the trajectory of a trial
+  private void runEstimator( int n , int trial , IMUDataset dataset ) {
+    OrientationEstimator estimator = ( this.singlePrecision )? Estimators.create32( n ) : Estimators.create( n );
+    estimator.set_Ra( this.Ra );
+    estimator.set_Rw( this.Rw );
+    double[] q0 = new double[4];
+    dataset.get_q( 0 , q0 );
+    estimator.set_q( q0 );
+    EstimatorRun run = new EstimatorRun( estimator , dataset , this.convergenceTime );
+    run.run();
+    this.meanError[n][trial] = run.get_meanError();
+    this.rmsError[n][trial] = run.get_rmsError();
+    this.maxError[n][trial] = run.get_maxError();
+    this.nanosPerUpdate[n][trial] = run.get_nanosPerUpdate();
+    this.finite[n][trial] = run.is_finite();
+  }
+  
+  
+  // PRIVATE STATIC METHODS
+  
+  // percentile of sorted values (nearest rank)
+  private static double percentile( double[] sorted , double p ) {
+    int k = (int)Math.ceil( p*0.01*sorted.length ) - 1;
+    if( k < 0 ) k = 0;
+    return sorted[k];
+  }
+  
+  
+  // PRIVATE CLASSES
+  
+  // runs the trials in [from,to) (splitting them if there are more than one)
+  private class TrialsTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final int from;
+    private final int to;
+    
+    TrialsTask( int fromIn , int toIn ) {
+      this.from = fromIn;
+      this.to = toIn;
+    }
+    
+    protected void compute() {
+      if( this.to-this.from > 1 ){
+        int middle = (this.from+this.to)/2;
+        invokeAll( new TrialsTask( this.from , middle ) , new TrialsTask( middle , this.to ) );
+        return;
+      }
+      // we generate the trajectory, and we run the estimators over it
+      IMUDataset dataset = MonteCarloHarness.this.generator.generate( MonteCarloHarness.this.seed + this.from , MonteCarloHarness.this.seconds );
+      EstimatorTask[] tasks = new EstimatorTask[Estimators.count()];
+      for(int n=0; n<tasks.length; n++) tasks[n] = new EstimatorTask( n , this.from , dataset );
+      invokeAll( tasks );
+    }
+  }
+  
+  // runs one estimator in one trial
+  private class EstimatorTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final int n;
+    private final int trial;
+    private final IMUDataset dataset;
+    
+    EstimatorTask( int nIn , int trialIn , IMUDataset datasetIn ) {
+      this.n = nIn;
+      this.trial = trialIn;
+      this.dataset = datasetIn;
+    }
+    
+    protected void compute() {
+      MonteCarloHarness.this.runEstimator( this.n , this.trial , this.dataset );
+    }
+  }
+  
+  
+  // MAIN
+  
+  // arguments (all optional): trials (1000), seconds of each trajectory (20), rate (100 samples/s), Ra (1e-4 g^2),
+  // Rw (1e-4 (rad/s)^2), maximum angular velocity (2 rad/s), seed (1), threads (available processors), precision
+  // (64 or 32 bits; 64)
+  public static void main( String[] args ) {
+    int trials = ( args.length > 0 )? Integer.parseInt( args[0] ) : 1000;
+    double seconds = ( args.length > 1 )? Double.parseDouble( args[1] ) : 20.0;
+    double rate = ( args.length > 2 )? Double.parseDouble( args[2] ) : 100.0;
+    double Ra = ( args.length > 3 )? Double.parseDouble( args[3] ) : 1.0e-4;
+    double Rw = ( args.length > 4 )? Double.parseDouble( args[4] ) : 1.0e-4;
+    double maxAngularVelocity = ( args.length > 5 )? Double.parseDouble( args[5] ) : 2.0;
+    long seed = ( args.length > 6 )? Long.parseLong( args[6] ) : 1;
+    int threads = ( args.length > 7 )? Integer.parseInt( args[7] ) : Runtime.getRuntime().availableProcessors();
+    boolean singlePrecision = (  args.length > 8  &&  args[8].equals( "32" )  );
+    
+    MonteCarloHarness harness = new MonteCarloHarness( rate , maxAngularVelocity , Ra , Rw , seconds , 1.0 , seed );
+    harness.set_singlePrecision( singlePrecision );
+    ForkJoinPool pool = new ForkJoinPool( threads );
+    long t0 = System.nanoTime();
+    harness.run( trials , pool );
+    double wallSeconds = ( System.nanoTime() - t0 )*1.0e-9;
+    pool.shutdown();
+    System.out.print( harness.report() );
+    System.out.println( String.format( "%.2f s with %d threads" , wallSeconds , threads ) );
+  }
+  
+}
\ No newline at end of file
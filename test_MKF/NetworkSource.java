@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+// source of data packets received by the network (UDP datagrams and TCP connections)
+// the bridges send the same byte stream that is sent by the serial ports (packets framed by MessageManager). A single
+// thread waits on a selector for all the channels: each TCP connection and each UDP sender has its own MessageManager,
+// so the streams are deframed independently, and each complete packet is handed to the listener with its arrival times.
+// Only the deframers of the last maxSenders UDP senders are kept (a sender that comes back starts a new stream)
+public class NetworkSource implements Runnable {
+  
+  // PARAMETERS
+  private static final int Nchecksums = 2;  // checksums of the packets (as in SerialPortManager)
+  private static final int bufferSize = 65536;  // bytes read at once (the maximum size of a datagram)
+  private static final int maxSenders = 64;  // UDP senders whose deframers are kept (the least recently used is removed)
+  
+  // PRIVATE VARIABLES
+  private PacketListener listener;
+  private Selector selector;
+  private ServerSocketChannel server;  // null if TCP is not enabled
+  private DatagramChannel datagrams;  // null if UDP is not enabled
+  private SenderMap senders;  // deframer of each UDP sender
+  private ByteBuffer buffer;
+  private Thread thread;
+  private volatile boolean running;
+  private volatile int connections;  // open TCP connections
+  private volatile long packets;  // received packets
+  private volatile long bytes;  // received bytes
+  
+  
+  // CONSTRUCTORS
+  
+  // Method: NetworkSource
+  // opens the channels (the packets are not received until start is called)
+  // inputs:
+  //  address: local address where the channels are bound (null for all the interfaces)
+  //  udpPort: UDP port (0 disables UDP)
+  //  tcpPort: TCP port (0 disables TCP)
+  //  listenerIn: receiver of the packets (it is called by the thread of the source)
+  // outputs:
+  public NetworkSource( String address , int udpPort , int tcpPort , PacketListener listenerIn ) throws IOException {
+    this.listener = listenerIn;
+    this.selector = Selector.open();
+    this.senders = new SenderMap();
+    this.buffer = ByteBuffer.allocateDirect( NetworkSource.bufferSize );
+    try{
+      if( udpPort > 0 ){
+        this.datagrams = DatagramChannel.open();
+        this.datagrams.bind( NetworkSource.socketAddress( address , udpPort ) );
+        this.datagrams.configureBlocking( false );
+        this.datagrams.register( this.selector , SelectionKey.OP_READ );
+      }
+      if( tcpPort > 0 ){
+        this.server = ServerSocketChannel.open();
+        this.server.bind( NetworkSource.socketAddress( address , tcpPort ) );
+        this.server.configureBlocking( false );
+        this.server.register( this.selector , SelectionKey.OP_ACCEPT );
+      }
+    }catch( IOException e ){
+      this.close();
+      throw e;
+    }
+    this.running = true;
+    this.connections = 0;
+    this.packets = 0;
+    this.bytes = 0;
+    this.thread = new Thread( this , "NetworkSource" );
+    this.thread.setDaemon( true );
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  public void start() {
+    this.thread.start();
+  }
+  
+  public void stop() {
+    this.running = false;
+    this.selector.wakeup();
+  }
+  
+  // port where the UDP datagrams are received (-1 if UDP is not enabled)
+  public int get_udpPort() {
+    if( this.datagrams == null ) return -1;
+    return this.datagrams.socket().getLocalPort();
+  }
+  
+  // port where the TCP connections are accepted (-1 if TCP is not enabled)
+  public int get_tcpPort() {
+    if( this.server == null ) return -1;
+    return this.server.socket().getLocalPort();
+  }
+  
+  public int get_connections() {
+    return this.connections;
+  }
+  
+  public long get_packets() {
+    return this.packets;
+  }
+  
+  public long get_bytes() {
+    return this.bytes;
+  }
+  
+  public void run() {
+    while( this.running ){
+      try{
+        this.selector.select( 1000 );
+        Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+        while( keys.hasNext() ){
+          SelectionKey key = keys.next();
+          keys.remove();
+          if( !key.isValid() ) continue;
+          if( key.isAcceptable() ){
+            this.accept();
+          }else if( key.channel() == this.datagrams ){
+            this.receive();
+          }else{
+            this.read( key );
+          }
+        }
+      }catch( IOException e ){
+        System.out.println( "Network source: " + e.getMessage() );
+      }
+    }
+    this.close();
+  }
+  
+  
+  // PRIVATE METHODS
+  
+  // accepts the pending TCP connections
+  private void accept() throws IOException {
+    SocketChannel channel;
+    while( ( channel = this.server.accept() ) != null ){
+      channel.configureBlocking( false );
+      channel.socket().setTcpNoDelay( true );
+      channel.register( this.selector , SelectionKey.OP_READ , new MessageManager( NetworkSource.Nchecksums ) );
+      this.connections++;
+    }
+  }
+  
+  // reads the available bytes of a TCP connection
+  private void read( SelectionKey key ) {
+    SocketChannel channel = (SocketChannel)key.channel();
+    MessageManager MM = (MessageManager)key.attachment();
+    try{
+      int n;
+      while( ( n = channel.read( this.buffer ) ) > 0 ){
+        this.buffer.flip();
+        this.deframe( MM );
+        this.buffer.clear();
+      }
+      if( n < 0 ) this.disconnect( key );
+    }catch( IOException e ){
+      // the connection has been reset by the other side
+      this.disconnect( key );
+    }
+  }
+  
+  // receives the pending UDP datagrams
+  private void receive() throws IOException {
+    SocketAddress sender;
+    while( ( sender = this.datagrams.receive( this.buffer ) ) != null ){
+      MessageManager MM = this.senders.get( sender );
+      if( MM == null ){
+        MM = new MessageManager( NetworkSource.Nchecksums );
+        this.senders.put( sender , MM );
+      }
+      this.buffer.flip();
+      this.deframe( MM );
+      this.buffer.clear();
+    }
+  }
+  
+  // passes the bytes of the buffer to the deframer of their stream, and the complete packets to the listener
+  private void deframe( MessageManager MM ) {
+    this.bytes += this.buffer.remaining();
+    while( this.buffer.hasRemaining() ){
+      byte[] data = MM.manage_byteIn( this.buffer.get() );
+      if( data != null ){
+        this.packets++;
+        this.listener.packetReceived( data , MM.get_frameStartTime() , System.nanoTime() );
+      }
+    }
+  }
+  
+  private void disconnect( SelectionKey key ) {
+    key.cancel();
+    try{
+      key.channel().close();
+    }catch( IOException e ){
+    }
+    this.connections--;
+  }
+  
+  // closes all the channels
+  private void close() {
+    try{
+      if( this.datagrams != null ) this.datagrams.close();
+      if( this.server != null ) this.server.close();
+      for(SelectionKey key : this.selector.keys()) key.channel().close();
+      this.selector.close();
+    }catch( IOException e ){
+    }
+  }
+  
+  
+  // PRIVATE STATIC METHODS
+  
+  private static InetSocketAddress socketAddress( String address , int port ) {
+    if( address == null ) return new InetSocketAddress( port );
+    return new InetSocketAddress( address , port );
+  }
+  
+  
+  // PRIVATE CLASSES
+  
+  // deframers of the UDP senders, in access order; the least recently used one is removed beyond maxSenders
+  private static class SenderMap extends LinkedHashMap<SocketAddress,MessageManager> {
+    private static final long serialVersionUID = 1L;
+    
+    SenderMap() {
+      super( 16 , 0.75f , true );
+    }
+    
+    protected boolean removeEldestEntry( Map.Entry<SocketAddress,MessageManager> eldest ) {
+      return ( this.size() > NetworkSource.maxSenders );
+    }
+  }
+  
+}
\ No newline at end of file
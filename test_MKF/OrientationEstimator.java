@@ -16,105 +16,169 @@
  */
 
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+
+// interface of the orientation estimators (it does not hold any state)
+// the double precision estimators extend OrientationEstimator64, and the single precision ones OrientationEstimator32;
+// both share the settings and the update scheduler of ConfigurableEstimator
 public abstract class OrientationEstimator {
   
-  // PUBLIC METHODS
-  
-  public OrientationEstimator(){
-    this.q[0] = 1.0;   this.q[1] = 0.0;   this.q[2] = 0.0;   this.q[3] = 0.0;
-    // it is necessary to set an angular velocity different from 0.0 to break the symmetry
-    // otherwise, the MUKF could not converge (especially when we apply the "reset operation" with the RV chart)
-    this.w[0] = 1.0e-10;   this.w[1] = 1.0e-10;   this.w[2] = 1.0e-10;
-    
-    for(int k=0; k<36; k++) this.P[k] = 0.0;
-    for(int k=0; k<36; k+=7) this.P[k] = 1.0e2;
-    this.P[2+2*6] = 1.0e-16;
-    
-    for(int k=0; k<9; k++){
-      this.Qw[k] = 0.0;
-      this.Qa[k] = 0.0;
-      this.Rw[k] = 0.0;
-      this.Ra[k] = 0.0;
-    }
-    for(int k=0; k<9; k+=4){
-      this.Qw[k] = 1.0e1;
-      this.Qa[k] = 1.0e-2;
-      this.Rw[k] = 1.0e-3;
-      this.Ra[k] = 1.0e-3;
-    }
-  }
+  // ABSTRACT METHODS
   
-  public void get_q( double[] qOut ){
-    for(int i=0; i<4; i++) qOut[i] = this.q[i];
-  }
+  // quaternion describing the orientation (q1,q2,q3,q4)=(qx,qy,qz,qw)
+  // (rotation that transform vectors from the sensor reference frame, to the external reference frame)
+  public abstract void get_q( double[] qOut );
   
-  public void set_q( double[] qIn ){
-    for(int i=0; i<4; i++) this.q[i] = qIn[i];
-    for(int k=0; k<36; k++) this.P[k] = 0.0;
-    for(int k=0; k<36; k+=7) this.P[k] = 1.0e-8;
-    this.P[2+2*6] = 1.0e-16;
-  }
+  // angular velocity (the estimators that do not estimate it return its initial value)
+  public abstract void get_w( double[] wOut );
   
-  public void reset_orientation(){
-    this.q[0] = 1.0;   this.q[1] = 0.0;   this.q[2] = 0.0;   this.q[3] = 0.0;
-    this.w[0] = 0.0;   this.w[1] = 0.0;   this.w[2] = 0.0;
-    
-    for(int k=0; k<36; k++) this.P[k] = 0.0;
-    for(int k=0; k<36; k+=7) this.P[k] = 1.0e2;
-    this.P[2+2*6] = 1.0e-16;
-  }
+  // diagonal of the covariance matrix of the state (orientation error in the chart and angular velocity)
+  public abstract void get_Pdiagonal( double[] Pout );
   
-  public void set_Qw( double QwIn ){
-    for(int k=0; k<9; k++) this.Qw[k] = 0.0;
-    for(int k=0; k<9; k+=4) this.Qw[k] = QwIn;
-  }
+  // sets the orientation, with a small uncertainty
+  public abstract void set_q( double[] qIn );
   
-  public void set_Qa( double QaIn ){
-    for(int k=0; k<9; k++) this.Qa[k] = 0.0;
-    for(int k=0; k<9; k+=4) this.Qa[k] = QaIn;
-  }
+  public abstract void reset_orientation();
   
-  public void set_Rw( double RwIn ){
-    for(int k=0; k<9; k++) this.Rw[k] = 0.0;
-    for(int k=0; k<9; k+=4) this.Rw[k] = RwIn;
-  }
+  // noise covariance matrices (diagonal, with the same value in all the axes)
+  public abstract void set_Qw( double QwIn );
+  public abstract void set_Qa( double QaIn );
+  public abstract void set_Rw( double RwIn );
+  public abstract void set_Ra( double RaIn );
   
-  public void set_Ra( double RaIn ){
-    for(int k=0; k<9; k++) this.Ra[k] = 0.0;
-    for(int k=0; k<9; k+=4) this.Ra[k] = RaIn;
-  }
+  public abstract void set_chartUpdate( boolean chartUpdateIn );
+  
+  // weight of the sigma point produced with the distribution mean (only MUKF)
+  public abstract void set_W0( double W0In );
+  
+  // uses 13 sigma points (only the state is sampled) and adds the process noise analytically (only MUKF)
+  public abstract void set_reducedSigmaPoints( boolean reducedSigmaPointsIn );
+  
+  // uses the sequential update (one measurement component at a time) when the noise matrices are diagonal
+  public abstract void set_sequentialUpdate( boolean sequentialUpdateIn );
+  
+  // enables the fast trigonometric functions (see FastMath); the results only differ in the rounding
+  public abstract void set_fastMath( boolean fastMathIn );
+  
+  // Method: set_measurementAxis
+  // enables or disables one component of the measurement (only used in the sequential update)
+  // inputs:
+  //  axis: measurement component { 0: ax , 1: ay , 2: az , 3: wx , 4: wy , 5: wz }
+  //  use: true if the component has to be used in the update
+  // outputs:
+  public abstract void set_measurementAxis( int axis , boolean use );
+  
+  // Method: set_correctionPeriod
+  // sets how often updateIMU performs the full update (prediction and correction with the accelerometer and the
+  // gyroscope); the rest of the samples only perform the prediction with the gyroscope (see predict)
+  // inputs:
+  //  period: samples between full updates (1: all the samples; 0: only when a correction is requested)
+  // outputs:
+  public abstract void set_correctionPeriod( int period );
   
-  public void set_chartUpdate( boolean chartUpdateIn ){
-    this.chartUpdate = chartUpdateIn;
+  public abstract int get_correctionPeriod();
+  
+  // the next sample passed to updateIMU will perform the full update
+  public abstract void request_correction();
+  
+  // Method: updateIMU
+  // method used to update the state information through an IMU measurement
+  // it performs the full update if a correction is due (see set_correctionPeriod), and the prediction if not
+  // inputs:
+  //  am: measured acceleration (g)
+  //  wm: measured angular velocity (rad/s)
+  //  dt: time step from the last update (s)
+  // outputs:
+  public abstract void updateIMU( double[] am , double[] wm , double dt );
+  
+  // Method: updateIMU
+  // updates the state with the samples accumulated by a pre-integrator (as a single sample)
+  // the noise covariance matrices of the measurements are reduced during the update, as the noise of the mean
+  // inputs:
+  //  step: pre-integrator with the samples accumulated since the last update (it is not modified)
+  // outputs:
+  public abstract void updateIMU( GyroPreintegrator step );
+  
+  // Method: predict
+  // propagates the state to the next sample, with the gyroscope but without the accelerometer
+  // the state and its covariance matrix are propagated with the linearized model (as in the MEKF), and then the
+  // angular velocity is updated with its measurement. This update is linear and has 3 dimensions, so it is much cheaper
+  // than the full update
+  // inputs:
+  //  wm: measured angular velocity (rad/s; null to propagate the state without it, before calling correct)
+  //  dt: time step from the last update (s)
+  // outputs:
+  public abstract void predict( double[] wm , double dt );
+  
+  // Method: correct
+  // performs the full update with an IMU measurement taken at the time of the last prediction
+  // inputs:
+  //  am: measured acceleration (g)
+  //  wm: measured angular velocity (rad/s)
+  // outputs:
+  public abstract void correct( double[] am , double[] wm );
+  
+  // Method: is_finite
+  // checks the state of the estimator
+  // inputs:
+  // outputs:
+  //  false if the quaternion or the covariance matrix contain NaN or infinite values
+  public abstract boolean is_finite();
+  
+  // Method: writeState
+  // writes the state of the estimator in a compact binary form (see EstimatorSnapshot)
+  // the symmetric matrices are written by their lower triangle, and the subclasses append their own state
+  // inputs:
+  //  out: destination of the state
+  // outputs:
+  public abstract void writeState( DataOutput out ) throws IOException;
+  
+  // Method: readState
+  // reads the state written by writeState (in an estimator of the same class)
+  // inputs:
+  //  in: source of the state
+  // outputs:
+  public abstract void readState( DataInput in ) throws IOException;
+  
+  
+  // PROTECTED STATIC METHODS
+  
+  protected static void writeArray( DataOutput out , double[] a ) throws IOException {
+    for(int i=0; i<a.length; i++) out.writeDouble( a[i] );
   }
   
-  public void set_W0( double W0In ){
-    this.W0 = W0In;
+  protected static void readArray( DataInput in , double[] a ) throws IOException {
+    for(int i=0; i<a.length; i++) a[i] = in.readDouble();
   }
   
-  // ABSTRACT METHODS
-  public abstract void updateIMU( double[] am , double[] wm , double dt );
+  // writes the lower triangle of a symmetric nxn matrix (stored by columns)
+  protected static void writeSymmetric( DataOutput out , double[] A , int n ) throws IOException {
+    for(int j=0; j<n; j++){
+      for(int i=j; i<n; i++) out.writeDouble( A[i+j*n] );
+    }
+  }
   
+  // reads the lower triangle of a symmetric nxn matrix, and copies it to the upper one
+  protected static void readSymmetric( DataInput in , double[] A , int n ) throws IOException {
+    for(int j=0; j<n; j++){
+      for(int i=j; i<n; i++){
+        A[i+j*n] = in.readDouble();
+        A[j+i*n] = A[i+j*n];
+      }
+    }
+  }
   
-  // PRIVATE VARIABLES
-  // quaternion describing the orientation (q1,q2,q3,q4)=(qx,qy,qz,qw)
-  // (rotation that transform vectors from the sensor reference frame, to the external reference frame)
-  protected double[] q = new double[4];
-  // angular velocity (rad/s)
-  protected double[] w = new double[3];
-  // covariance matrix
-  protected double[] P = new double[36];
-  // covariance matrix of the angular velocity noise (rad^2/s^3)
-  protected double[] Qw = new double[9];
-  // covariance matrix of the acceleration noise (g^2)
-  protected double[] Qa = new double[9];
-  // covariance matrix of the angular velocity measurement noise (rad^2/s^2)
-  protected double[] Rw = new double[9];
-  // covariance matrix of the acceleration measurement noise (g^2)
-  protected double[] Ra = new double[9];
-  // use or not the chart update
-  protected boolean chartUpdate = true;
-  // weight of the sigma point produced with the distribution mean (only MUKF)
-  double W0 = 1.0/25.0;
+  // Method: isDiagonal
+  // checks if a 3x3 matrix is diagonal
+  // inputs:
+  //  A: 3x3 matrix
+  // outputs:
+  //  true if all the off-diagonal terms are 0.0
+  protected static boolean isDiagonal( double[] A ){
+    return  A[1] == 0.0  &&  A[2] == 0.0  &&  A[3] == 0.0  &&  A[5] == 0.0  &&  A[6] == 0.0  &&  A[7] == 0.0;
+  }
   
 }
\ No newline at end of file
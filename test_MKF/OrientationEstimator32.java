@@ -0,0 +1,373 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+
+// single precision version of the OrientationEstimator64
+// the state and the noise matrices are stored as float; the double interface is kept so the
+// estimators can be used wherever an OrientationEstimator is expected
+public abstract class OrientationEstimator32 extends ConfigurableEstimator {
+  
+  // PUBLIC METHODS
+  
+  public OrientationEstimator32(){
+    this.qf[0] = 1.0f;   this.qf[1] = 0.0f;   this.qf[2] = 0.0f;   this.qf[3] = 0.0f;
+    // it is necessary to set an angular velocity different from 0.0 to break the symmetry
+    // otherwise, the MUKF could not converge (especially when we apply the "reset operation" with the RV chart)
+    this.wf[0] = 1.0e-10f;   this.wf[1] = 1.0e-10f;   this.wf[2] = 1.0e-10f;
+    
+    for(int k=0; k<36; k++) this.Pf[k] = 0.0f;
+    for(int k=0; k<36; k+=7) this.Pf[k] = 1.0e2f;
+    this.Pf[2+2*6] = 1.0e-16f;
+    
+    for(int k=0; k<9; k++){
+      this.Qwf[k] = 0.0f;
+      this.Qaf[k] = 0.0f;
+      this.Rwf[k] = 0.0f;
+      this.Raf[k] = 0.0f;
+    }
+    for(int k=0; k<9; k+=4){
+      this.Qwf[k] = (float)1.0e1;
+      this.Qaf[k] = (float)1.0e-2;
+      this.Rwf[k] = (float)1.0e-3;
+      this.Raf[k] = (float)1.0e-3;
+    }
+  }
+  
+  public void get_q( double[] qOut ){
+    for(int i=0; i<4; i++) qOut[i] = this.qf[i];
+  }
+  
+  public void get_w( double[] wOut ){
+    for(int i=0; i<3; i++) wOut[i] = this.wf[i];
+  }
+  
+  public void get_Pdiagonal( double[] Pout ){
+    for(int i=0; i<6; i++) Pout[i] = this.Pf[i*7];
+  }
+  
+  public void set_q( double[] qIn ){
+    for(int i=0; i<4; i++) this.qf[i] = (float)qIn[i];
+    for(int k=0; k<36; k++) this.Pf[k] = 0.0f;
+    for(int k=0; k<36; k+=7) this.Pf[k] = 1.0e-8f;
+    this.Pf[2+2*6] = 1.0e-16f;
+  }
+  
+  public void reset_orientation(){
+    this.qf[0] = 1.0f;   this.qf[1] = 0.0f;   this.qf[2] = 0.0f;   this.qf[3] = 0.0f;
+    this.wf[0] = 0.0f;   this.wf[1] = 0.0f;   this.wf[2] = 0.0f;
+    
+    for(int k=0; k<36; k++) this.Pf[k] = 0.0f;
+    for(int k=0; k<36; k+=7) this.Pf[k] = 1.0e2f;
+    this.Pf[2+2*6] = 1.0e-16f;
+  }
+  
+  public void set_Qw( double QwIn ){
+    for(int k=0; k<9; k++) this.Qwf[k] = 0.0f;
+    for(int k=0; k<9; k+=4) this.Qwf[k] = (float)QwIn;
+  }
+  
+  public void set_Qa( double QaIn ){
+    for(int k=0; k<9; k++) this.Qaf[k] = 0.0f;
+    for(int k=0; k<9; k+=4) this.Qaf[k] = (float)QaIn;
+  }
+  
+  public void set_Rw( double RwIn ){
+    for(int k=0; k<9; k++) this.Rwf[k] = 0.0f;
+    for(int k=0; k<9; k+=4) this.Rwf[k] = (float)RwIn;
+  }
+  
+  public void set_Ra( double RaIn ){
+    for(int k=0; k<9; k++) this.Raf[k] = 0.0f;
+    for(int k=0; k<9; k+=4) this.Raf[k] = (float)RaIn;
+  }
+  
+  public boolean is_finite(){
+    for(int i=0; i<4; i++) if( Float.isNaN( this.qf[i] )  ||  Float.isInfinite( this.qf[i] ) ) return false;
+    for(int k=0; k<36; k++) if( Float.isNaN( this.Pf[k] )  ||  Float.isInfinite( this.Pf[k] ) ) return false;
+    return true;
+  }
+  
+  // writes the single precision state (see OrientationEstimator.writeState)
+  public void writeState( DataOutput out ) throws IOException {
+    OrientationEstimator32.writeArray( out , this.qf );
+    OrientationEstimator32.writeArray( out , this.wf );
+    OrientationEstimator32.writeSymmetric( out , this.Pf , 6 );
+    OrientationEstimator32.writeSymmetric( out , this.Qwf , 3 );
+    OrientationEstimator32.writeSymmetric( out , this.Qaf , 3 );
+    OrientationEstimator32.writeSymmetric( out , this.Rwf , 3 );
+    OrientationEstimator32.writeSymmetric( out , this.Raf , 3 );
+    this.writeSettings( out );
+  }
+  
+  public void readState( DataInput in ) throws IOException {
+    OrientationEstimator32.readArray( in , this.qf );
+    OrientationEstimator32.readArray( in , this.wf );
+    OrientationEstimator32.readSymmetric( in , this.Pf , 6 );
+    OrientationEstimator32.readSymmetric( in , this.Qwf , 3 );
+    OrientationEstimator32.readSymmetric( in , this.Qaf , 3 );
+    OrientationEstimator32.readSymmetric( in , this.Rwf , 3 );
+    OrientationEstimator32.readSymmetric( in , this.Raf , 3 );
+    this.readSettings( in );
+  }
+  
+  // Method: predict
+  // converts the measurement to single precision, and performs the single precision prediction
+  // inputs:
+  //  wm: measured angular velocity (rad/s; null to propagate the state without it)
+  //  dt: time step from the last update (s)
+  // outputs:
+  public void predict( double[] wm , double dt ){
+    if( wm == null ){
+      this.predict( (float[])null , (float)dt );
+      return;
+    }
+    for(int i=0; i<3; i++) this.wmf[i] = (float)wm[i];
+    this.predict( this.wmf , (float)dt );
+  }
+  
+  // Method: predict
+  // single precision prediction (see OrientationEstimator.predict)
+  // inputs:
+  //  wm: measured angular velocity (rad/s; null to propagate the state without it)
+  //  dt: time step from the last update (s)
+  // outputs:
+  public void predict( float[] wm , float dt ){
+    this.timeUpdate( dt );
+    if( wm != null ) this.gyroscopeUpdate( wm );
+    Quaternion32.normalize( this.qf , 0 );
+  }
+  
+  // ABSTRACT METHODS
+  public abstract void updateIMU( float[] am , float[] wm , float dt );
+  
+  
+  // PROTECTED METHODS
+  
+  // Method: update
+  // converts the measurements to single precision, and performs the single precision update
+  // inputs:
+  //  am: measured acceleration (g)
+  //  wm: measured angular velocity (rad/s)
+  //  dt: time step from the last update (s)
+  // outputs:
+  protected void update( double[] am , double[] wm , double dt ){
+    for(int i=0; i<3; i++){
+      this.amf[i] = (float)am[i];
+      this.wmf[i] = (float)wm[i];
+    }
+    this.updateIMU( this.amf , this.wmf , (float)dt );
+  }
+  
+  // the single precision noise covariance matrices are the ones used by the updates (see OrientationEstimator64)
+  protected void scale_measurementNoise( double gyroscope , double accelerometer ){
+    for(int k=0; k<9; k++){
+      this.RwfScaled[k] = this.Rwf[k]*(float)gyroscope;
+      this.RafScaled[k] = this.Raf[k]*(float)accelerometer;
+    }
+    this.RwfUpdate = this.RwfScaled;
+    this.RafUpdate = this.RafScaled;
+  }
+  
+  protected void restore_measurementNoise(){
+    this.RwfUpdate = this.Rwf;
+    this.RafUpdate = this.Raf;
+  }
+  
+  // Method: timeUpdate
+  // single precision time update (see OrientationEstimator64.timeUpdate)
+  // inputs:
+  //  dt: time step from the last update (s)
+  // outputs:
+  protected void timeUpdate( float dt ){
+    // we compute the state prediction
+    float[] qw = this.qwPrediction;
+    Quaternion32.exp( this.wf , 0 , dt , qw , 0 , this.fastMath );
+    Quaternion32.multiply( this.qf , 0 , qw , 0 , this.qf , 0 );
+    
+    // we compute the covariance matrix for the state prediction
+    for(int j=0; j<3; j++){
+      for(int i=0; i<3; i++) this.Pf[i+j*6] += this.Qwf[i+j*3]*dt*dt*dt/3;
+    }
+    for(int j=0; j<3; j++){
+      for(int i=3; i<6; i++) this.Pf[i+j*6] -= this.Qwf[i-3+(j)*3]*dt*dt/2;
+    }
+    for(int j=3; j<6; j++){
+      for(int i=0; i<3; i++) this.Pf[i+j*6] -= this.Qwf[i+(j-3)*3]*dt*dt/2;
+    }
+    for(int j=3; j<6; j++){
+      for(int i=3; i<6; i++) this.Pf[i+j*6] += this.Qwf[i-3+(j-3)*3]*dt;
+    }
+    
+    float[] F = this.FPrediction;
+    F[0] = -qw[2]*qw[2]-qw[3]*qw[3];    F[3] = qw[1]*qw[2]+qw[3]*qw[0];     F[6] = qw[1]*qw[3]-qw[2]*qw[0];
+    F[1] = qw[1]*qw[2]-qw[3]*qw[0];     F[4] = -qw[1]*qw[1]-qw[3]*qw[3];    F[7] = qw[2]*qw[3]+qw[1]*qw[0];
+    F[2] = qw[1]*qw[3]+qw[2]*qw[0];     F[5] = qw[2]*qw[3]-qw[1]*qw[0];     F[8] = -qw[1]*qw[1]-qw[2]*qw[2];
+    
+    F[0] += F[0] + 1.0f;   F[3] += F[3];          F[6] += F[6];
+    F[1] += F[1];          F[4] += F[4] + 1.0f;   F[7] += F[7];
+    F[2] += F[2];          F[5] += F[5];          F[8] += F[8] + 1.0f;
+    
+    float[] M = this.MPrediction;
+    M[0] = F[0];    M[6] = F[3];    M[12] = F[6];    M[18] = dt;     M[24] =0.0f;    M[30] = 0.0f;
+    M[1] = F[1];    M[7] = F[4];    M[13] = F[7];    M[19] = 0.0f;   M[25] = dt;     M[31] = 0.0f;
+    M[2] = F[2];    M[8] = F[5];    M[14] = F[8];    M[20] = 0.0f;   M[26] = 0.0f;   M[32] = dt;
+    M[3] = 0.0f;    M[9] = 0.0f;    M[15] = 0.0f;    M[21] = 1.0f;   M[27] = 0.0f;   M[33] = 0.0f;
+    M[4] = 0.0f;    M[10] = 0.0f;   M[16] = 0.0f;    M[22] = 0.0f;   M[28] = 1.0f;   M[34] = 0.0f;
+    M[5] = 0.0f;    M[11] = 0.0f;   M[17] = 0.0f;    M[23] = 0.0f;   M[29] = 0.0f;   M[35] = 1.0f;
+    
+    SmallMatrix32.congruence6( M , this.Pf , this.SPrediction , this.Pf );
+    
+    return;
+  }
+  
+  // PROTECTED METHODS
+  
+  // Method: useSequentialUpdate
+  // the sequential update is only equivalent to the joint update when the measurement noise is uncorrelated
+  // inputs:
+  // outputs:
+  //  true if the sequential update is enabled, and the noise covariance matrices are diagonal
+  protected boolean useSequentialUpdate(){
+    return  this.sequentialUpdate  &&  OrientationEstimator32.isDiagonal( this.Qaf )  &&  OrientationEstimator32.isDiagonal( this.RafUpdate )  &&  OrientationEstimator32.isDiagonal( this.RwfUpdate );
+  }
+  
+  
+  // PRIVATE METHODS
+  
+  // Method: gyroscopeUpdate
+  // single precision update with the measured angular velocity (see OrientationEstimator64.gyroscopeUpdate)
+  // inputs:
+  //  wm: measured angular velocity (rad/s)
+  // outputs:
+  private void gyroscopeUpdate( float[] wm ){
+    // P*H' are the last 3 columns of P
+    float[] PHt = this.PHtGyroscope;
+    for(int k=0; k<18; k++) PHt[k] = this.Pf[k+18];
+    // S = H*P*H' + Rw, and its inverse (S is symmetric)
+    float s00 = this.Pf[21] + this.RwfUpdate[0];
+    float s10 = this.Pf[22] + this.RwfUpdate[1];
+    float s20 = this.Pf[23] + this.RwfUpdate[2];
+    float s11 = this.Pf[28] + this.RwfUpdate[4];
+    float s21 = this.Pf[29] + this.RwfUpdate[5];
+    float s22 = this.Pf[35] + this.RwfUpdate[8];
+    float c00 = s11*s22 - s21*s21;
+    float c10 = s20*s21 - s10*s22;
+    float c20 = s10*s21 - s11*s20;
+    float c11 = s00*s22 - s20*s20;
+    float c21 = s10*s20 - s00*s21;
+    float c22 = s00*s11 - s10*s10;
+    float det = s00*c00 + s10*c10 + s20*c20;
+    float d0 = wm[0] - this.wf[0];
+    float d1 = wm[1] - this.wf[1];
+    float d2 = wm[2] - this.wf[2];
+    // K = P*H'*S^-1, and the update in the chart dx = K*dy
+    float[] K = this.KGyroscope;
+    float[] dx = this.dxGyroscope;
+    for(int i=0; i<6; i++){
+      float p0 = PHt[i];
+      float p1 = PHt[i+6];
+      float p2 = PHt[i+12];
+      K[i] = ( p0*c00 + p1*c10 + p2*c20 )/det;
+      K[i+6] = ( p0*c10 + p1*c11 + p2*c21 )/det;
+      K[i+12] = ( p0*c20 + p1*c21 + p2*c22 )/det;
+      dx[i] = K[i]*d0 + K[i+6]*d1 + K[i+12]*d2;
+    }
+    // P = P - K*H*P = P - K*(P*H')'
+    for(int j=0; j<6; j++){
+      for(int i=0; i<6; i++) this.Pf[i+j*6] -= K[i]*PHt[j] + K[i+6]*PHt[j+6] + K[i+12]*PHt[j+12];
+    }
+    SmallMatrix32.symmetrize6( this.Pf , this.Pf );
+    
+    // the updated point in the chart is mapped to the state
+    Quaternion32.exp( dx , 0 , 1.0f , this.qwPrediction , 0 , this.fastMath );
+    Quaternion32.multiply( this.qf , 0 , this.qwPrediction , 0 , this.qf , 0 );
+    this.wf[0] += dx[3];
+    this.wf[1] += dx[4];
+    this.wf[2] += dx[5];
+    
+    return;
+  }
+  
+  
+  // PROTECTED STATIC METHODS
+  
+  // Method: isDiagonal
+  // checks if a 3x3 matrix is diagonal
+  // inputs:
+  //  A: 3x3 matrix
+  // outputs:
+  //  true if all the off-diagonal terms are 0.0
+  protected static boolean isDiagonal( float[] A ){
+    return  A[1] == 0.0f  &&  A[2] == 0.0f  &&  A[3] == 0.0f  &&  A[5] == 0.0f  &&  A[6] == 0.0f  &&  A[7] == 0.0f;
+  }
+  
+  protected static void writeArray( DataOutput out , float[] a ) throws IOException {
+    for(int i=0; i<a.length; i++) out.writeFloat( a[i] );
+  }
+  
+  protected static void readArray( DataInput in , float[] a ) throws IOException {
+    for(int i=0; i<a.length; i++) a[i] = in.readFloat();
+  }
+  
+  protected static void writeSymmetric( DataOutput out , float[] A , int n ) throws IOException {
+    for(int j=0; j<n; j++){
+      for(int i=j; i<n; i++) out.writeFloat( A[i+j*n] );
+    }
+  }
+  
+  protected static void readSymmetric( DataInput in , float[] A , int n ) throws IOException {
+    for(int j=0; j<n; j++){
+      for(int i=j; i<n; i++){
+        A[i+j*n] = in.readFloat();
+        A[j+i*n] = A[i+j*n];
+      }
+    }
+  }
+  
+  
+  // PRIVATE VARIABLES
+  // (the variables have the same meaning that in the OrientationEstimator, but in single precision)
+  protected float[] qf = new float[4];
+  protected float[] wf = new float[3];
+  protected float[] Pf = new float[36];
+  protected float[] Qwf = new float[9];
+  protected float[] Qaf = new float[9];
+  protected float[] Rwf = new float[9];
+  protected float[] Raf = new float[9];
+  protected float[] RwfUpdate = this.Rwf;
+  protected float[] RafUpdate = this.Raf;
+  // buffers used to convert the double precision measurements
+  private float[] amf = new float[3];
+  private float[] wmf = new float[3];
+  // workspace of the prediction
+  private float[] qwPrediction = new float[4];
+  private float[] FPrediction = new float[9];
+  private float[] MPrediction = new float[36];
+  private float[] SPrediction = new float[36];
+  private float[] PHtGyroscope = new float[18];
+  private float[] KGyroscope = new float[18];
+  private float[] dxGyroscope = new float[6];
+  // workspace of the pre-integrated updates
+  private float[] RwfScaled = new float[9];
+  private float[] RafScaled = new float[9];
+  
+}
\ No newline at end of file
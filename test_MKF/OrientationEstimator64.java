@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+
+// double precision state of the estimators (see OrientationEstimator32 for the single precision one)
+public abstract class OrientationEstimator64 extends ConfigurableEstimator {
+  
+  // PUBLIC METHODS
+  
+  public OrientationEstimator64(){
+    this.q[0] = 1.0;   this.q[1] = 0.0;   this.q[2] = 0.0;   this.q[3] = 0.0;
+    // it is necessary to set an angular velocity different from 0.0 to break the symmetry
+    // otherwise, the MUKF could not converge (especially when we apply the "reset operation" with the RV chart)
+    this.w[0] = 1.0e-10;   this.w[1] = 1.0e-10;   this.w[2] = 1.0e-10;
+    
+    for(int k=0; k<36; k++) this.P[k] = 0.0;
+    for(int k=0; k<36; k+=7) this.P[k] = 1.0e2;
+    this.P[2+2*6] = 1.0e-16;
+    
+    for(int k=0; k<9; k++){
+      this.Qw[k] = 0.0;
+      this.Qa[k] = 0.0;
+      this.Rw[k] = 0.0;
+      this.Ra[k] = 0.0;
+    }
+    for(int k=0; k<9; k+=4){
+      this.Qw[k] = 1.0e1;
+      this.Qa[k] = 1.0e-2;
+      this.Rw[k] = 1.0e-3;
+      this.Ra[k] = 1.0e-3;
+    }
+  }
+  
+  public void get_q( double[] qOut ){
+    for(int i=0; i<4; i++) qOut[i] = this.q[i];
+  }
+  
+  public void get_w( double[] wOut ){
+    for(int i=0; i<3; i++) wOut[i] = this.w[i];
+  }
+  
+  public void get_Pdiagonal( double[] Pout ){
+    for(int i=0; i<6; i++) Pout[i] = this.P[i*7];
+  }
+  
+  public void set_q( double[] qIn ){
+    for(int i=0; i<4; i++) this.q[i] = qIn[i];
+    for(int k=0; k<36; k++) this.P[k] = 0.0;
+    for(int k=0; k<36; k+=7) this.P[k] = 1.0e-8;
+    this.P[2+2*6] = 1.0e-16;
+  }
+  
+  public void reset_orientation(){
+    this.q[0] = 1.0;   this.q[1] = 0.0;   this.q[2] = 0.0;   this.q[3] = 0.0;
+    this.w[0] = 0.0;   this.w[1] = 0.0;   this.w[2] = 0.0;
+    
+    for(int k=0; k<36; k++) this.P[k] = 0.0;
+    for(int k=0; k<36; k+=7) this.P[k] = 1.0e2;
+    this.P[2+2*6] = 1.0e-16;
+  }
+  
+  public void set_Qw( double QwIn ){
+    for(int k=0; k<9; k++) this.Qw[k] = 0.0;
+    for(int k=0; k<9; k+=4) this.Qw[k] = QwIn;
+  }
+  
+  public void set_Qa( double QaIn ){
+    for(int k=0; k<9; k++) this.Qa[k] = 0.0;
+    for(int k=0; k<9; k+=4) this.Qa[k] = QaIn;
+  }
+  
+  public void set_Rw( double RwIn ){
+    for(int k=0; k<9; k++) this.Rw[k] = 0.0;
+    for(int k=0; k<9; k+=4) this.Rw[k] = RwIn;
+  }
+  
+  public void set_Ra( double RaIn ){
+    for(int k=0; k<9; k++) this.Ra[k] = 0.0;
+    for(int k=0; k<9; k+=4) this.Ra[k] = RaIn;
+  }
+  
+  // propagation of the state with the linearized model, and update with the gyroscope (see OrientationEstimator.predict)
+  public void predict( double[] wm , double dt ){
+    this.timeUpdate( dt );
+    if( wm != null ) this.gyroscopeUpdate( wm );
+    Quaternion.normalize( this.q , 0 );
+  }
+  
+  public boolean is_finite(){
+    for(int i=0; i<4; i++) if( Double.isNaN( this.q[i] )  ||  Double.isInfinite( this.q[i] ) ) return false;
+    for(int k=0; k<36; k++) if( Double.isNaN( this.P[k] )  ||  Double.isInfinite( this.P[k] ) ) return false;
+    return true;
+  }
+  
+  // the symmetric matrices are written by their lower triangle, and the subclasses append their own state
+  public void writeState( DataOutput out ) throws IOException {
+    OrientationEstimator.writeArray( out , this.q );
+    OrientationEstimator.writeArray( out , this.w );
+    OrientationEstimator.writeSymmetric( out , this.P , 6 );
+    OrientationEstimator.writeSymmetric( out , this.Qw , 3 );
+    OrientationEstimator.writeSymmetric( out , this.Qa , 3 );
+    OrientationEstimator.writeSymmetric( out , this.Rw , 3 );
+    OrientationEstimator.writeSymmetric( out , this.Ra , 3 );
+    this.writeSettings( out );
+  }
+  
+  public void readState( DataInput in ) throws IOException {
+    OrientationEstimator.readArray( in , this.q );
+    OrientationEstimator.readArray( in , this.w );
+    OrientationEstimator.readSymmetric( in , this.P , 6 );
+    OrientationEstimator.readSymmetric( in , this.Qw , 3 );
+    OrientationEstimator.readSymmetric( in , this.Qa , 3 );
+    OrientationEstimator.readSymmetric( in , this.Rw , 3 );
+    OrientationEstimator.readSymmetric( in , this.Ra , 3 );
+    this.readSettings( in );
+  }
+  
+  
+  // PROTECTED METHODS
+  
+  // Method: timeUpdate
+  // propagates the state and its covariance matrix to the next sample (linearized model)
+  // inputs:
+  //  dt: time step from the last update (s)
+  // outputs:
+  protected void timeUpdate( double dt ){
+    // we compute the state prediction
+    double[] qw = this.qwPrediction;
+    Quaternion.exp( this.w , 0 , dt , qw , 0 , this.fastMath );
+    Quaternion.multiply( this.q , 0 , qw , 0 , this.q , 0 );
+    
+    // we compute the covariance matrix for the state prediction
+    for(int j=0; j<3; j++){
+      for(int i=0; i<3; i++) this.P[i+j*6] += this.Qw[i+j*3]*dt*dt*dt/3;
+    }
+    for(int j=0; j<3; j++){
+      for(int i=3; i<6; i++) this.P[i+j*6] -= this.Qw[i-3+(j)*3]*dt*dt/2;
+    }
+    for(int j=3; j<6; j++){
+      for(int i=0; i<3; i++) this.P[i+j*6] -= this.Qw[i+(j-3)*3]*dt*dt/2;
+    }
+    for(int j=3; j<6; j++){
+      for(int i=3; i<6; i++) this.P[i+j*6] += this.Qw[i-3+(j-3)*3]*dt;
+    }
+    
+    double[] F = this.FPrediction;
+    F[0] = -qw[2]*qw[2]-qw[3]*qw[3];    F[3] = qw[1]*qw[2]+qw[3]*qw[0];     F[6] = qw[1]*qw[3]-qw[2]*qw[0];
+    F[1] = qw[1]*qw[2]-qw[3]*qw[0];     F[4] = -qw[1]*qw[1]-qw[3]*qw[3];    F[7] = qw[2]*qw[3]+qw[1]*qw[0];
+    F[2] = qw[1]*qw[3]+qw[2]*qw[0];     F[5] = qw[2]*qw[3]-qw[1]*qw[0];     F[8] = -qw[1]*qw[1]-qw[2]*qw[2];
+    
+    F[0] += F[0] + 1.0;    F[3] += F[3];          F[6] += F[6];
+    F[1] += F[1];          F[4] += F[4] + 1.0;    F[7] += F[7];
+    F[2] += F[2];          F[5] += F[5];          F[8] += F[8] + 1.0;
+    
+    double[] M = this.MPrediction;
+    M[0] = F[0];    M[6] = F[3];    M[12] = F[6];    M[18] = dt;     M[24] =0.0;     M[30] = 0.0;
+    M[1] = F[1];    M[7] = F[4];    M[13] = F[7];    M[19] = 0.0;    M[25] = dt;     M[31] = 0.0;
+    M[2] = F[2];    M[8] = F[5];    M[14] = F[8];    M[20] = 0.0;    M[26] = 0.0;    M[32] = dt;
+    M[3] = 0.0;     M[9] = 0.0;     M[15] = 0.0;     M[21] = 1.0;    M[27] = 0.0;    M[33] = 0.0;
+    M[4] = 0.0;     M[10] = 0.0;    M[16] = 0.0;     M[22] = 0.0;    M[28] = 1.0;    M[34] = 0.0;
+    M[5] = 0.0;     M[11] = 0.0;    M[17] = 0.0;     M[23] = 0.0;    M[29] = 0.0;    M[35] = 1.0;
+    
+    SmallMatrix.congruence6( M , this.P , this.SPrediction , this.P );
+    
+    return;
+  }
+  
+  // the scaled matrices are computed in a workspace, so the configured ones (set_Rw, set_Ra) are not modified
+  protected void scale_measurementNoise( double gyroscope , double accelerometer ){
+    for(int k=0; k<9; k++){
+      this.RwScaled[k] = this.Rw[k]*gyroscope;
+      this.RaScaled[k] = this.Ra[k]*accelerometer;
+    }
+    this.RwUpdate = this.RwScaled;
+    this.RaUpdate = this.RaScaled;
+  }
+  
+  protected void restore_measurementNoise(){
+    this.RwUpdate = this.Rw;
+    this.RaUpdate = this.Ra;
+  }
+  
+  // Method: useSequentialUpdate
+  // the sequential update is only equivalent to the joint update when the measurement noise is uncorrelated
+  // inputs:
+  // outputs:
+  //  true if the sequential update is enabled, and the noise covariance matrices are diagonal
+  protected boolean useSequentialUpdate(){
+    return  this.sequentialUpdate  &&  OrientationEstimator.isDiagonal( this.Qa )  &&  OrientationEstimator.isDiagonal( this.RaUpdate )  &&  OrientationEstimator.isDiagonal( this.RwUpdate );
+  }
+  
+  
+  // PRIVATE METHODS
+  
+  // Method: gyroscopeUpdate
+  // updates the state with the measured angular velocity (linear measurement of the angular velocity: H = [ 0 I ])
+  // the orientation is corrected through its correlation with the angular velocity (the correction is small, so it is
+  // applied as a rotation vector in all the charts)
+  // inputs:
+  //  wm: measured angular velocity (rad/s)
+  // outputs:
+  private void gyroscopeUpdate( double[] wm ){
+    // P*H' are the last 3 columns of P
+    double[] PHt = this.PHtGyroscope;
+    for(int k=0; k<18; k++) PHt[k] = this.P[k+18];
+    // S = H*P*H' + Rw, and its inverse (S is symmetric)
+    double s00 = this.P[21] + this.RwUpdate[0];
+    double s10 = this.P[22] + this.RwUpdate[1];
+    double s20 = this.P[23] + this.RwUpdate[2];
+    double s11 = this.P[28] + this.RwUpdate[4];
+    double s21 = this.P[29] + this.RwUpdate[5];
+    double s22 = this.P[35] + this.RwUpdate[8];
+    double c00 = s11*s22 - s21*s21;
+    double c10 = s20*s21 - s10*s22;
+    double c20 = s10*s21 - s11*s20;
+    double c11 = s00*s22 - s20*s20;
+    double c21 = s10*s20 - s00*s21;
+    double c22 = s00*s11 - s10*s10;
+    double det = s00*c00 + s10*c10 + s20*c20;
+    double d0 = wm[0] - this.w[0];
+    double d1 = wm[1] - this.w[1];
+    double d2 = wm[2] - this.w[2];
+    // K = P*H'*S^-1, and the update in the chart dx = K*dy
+    double[] K = this.KGyroscope;
+    double[] dx = this.dxGyroscope;
+    for(int i=0; i<6; i++){
+      double p0 = PHt[i];
+      double p1 = PHt[i+6];
+      double p2 = PHt[i+12];
+      K[i] = ( p0*c00 + p1*c10 + p2*c20 )/det;
+      K[i+6] = ( p0*c10 + p1*c11 + p2*c21 )/det;
+      K[i+12] = ( p0*c20 + p1*c21 + p2*c22 )/det;
+      dx[i] = K[i]*d0 + K[i+6]*d1 + K[i+12]*d2;
+    }
+    // P = P - K*H*P = P - K*(P*H')'
+    for(int j=0; j<6; j++){
+      for(int i=0; i<6; i++) this.P[i+j*6] -= K[i]*PHt[j] + K[i+6]*PHt[j+6] + K[i+12]*PHt[j+12];
+    }
+    SmallMatrix.symmetrize6( this.P , this.P );
+    
+    // the updated point in the chart is mapped to the state
+    Quaternion.exp( dx , 0 , 1.0 , this.qwPrediction , 0 , this.fastMath );
+    Quaternion.multiply( this.q , 0 , this.qwPrediction , 0 , this.q , 0 );
+    this.w[0] += dx[3];
+    this.w[1] += dx[4];
+    this.w[2] += dx[5];
+    
+    return;
+  }
+  
+  
+  // PRIVATE VARIABLES
+  // quaternion describing the orientation (q1,q2,q3,q4)=(qx,qy,qz,qw)
+  // (rotation that transform vectors from the sensor reference frame, to the external reference frame)
+  protected double[] q = new double[4];
+  // angular velocity (rad/s)
+  protected double[] w = new double[3];
+  // covariance matrix
+  protected double[] P = new double[36];
+  // covariance matrix of the angular velocity noise (rad^2/s^3)
+  protected double[] Qw = new double[9];
+  // covariance matrix of the acceleration noise (g^2)
+  protected double[] Qa = new double[9];
+  // covariance matrix of the angular velocity measurement noise (rad^2/s^2)
+  protected double[] Rw = new double[9];
+  // covariance matrix of the acceleration measurement noise (g^2)
+  protected double[] Ra = new double[9];
+  // measurement noise covariance matrices used by the updates (Rw and Ra, or their scaled versions during a
+  // pre-integrated update)
+  protected double[] RwUpdate = this.Rw;
+  protected double[] RaUpdate = this.Ra;
+  // workspace of the prediction
+  private double[] qwPrediction = new double[4];
+  private double[] FPrediction = new double[9];
+  private double[] MPrediction = new double[36];
+  private double[] SPrediction = new double[36];
+  private double[] PHtGyroscope = new double[18];
+  private double[] KGyroscope = new double[18];
+  private double[] dxGyroscope = new double[6];
+  // workspace of the pre-integrated updates
+  private double[] RwScaled = new double[9];
+  private double[] RaScaled = new double[9];
+  
+}
\ No newline at end of file
@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+// receiver of the data packets of a source (serial ports, network)
+// it is called by the thread of the source, as soon as each packet is complete
+public interface PacketListener {
+  
+  // Method: packetReceived
+  // inputs:
+  //  data: data packet (b[0]: information packet ID, b[1]: sensor ID)
+  //  t0: arrival time of the first byte of the packet (ns)
+  //  t: arrival time of the packet (ns)
+  // outputs:
+  void packetReceived( byte[] data , long t0 , long t );
+  
+}
\ No newline at end of file
@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+// class that searches the best parameters (Qw, Qa, Rw, Ra, W0) of an estimator over a dataset
+// the candidates (a grid, or random samples) are evaluated with successive halving: in each round, the surviving
+// candidates continue their run over the dataset (each round doubles the number of processed samples), and the worst
+// half is discarded. The last round processes the whole dataset. The cost of a candidate is the RMS angular error of
+// its EstimatorRun, and the runs of each round are advanced in parallel in a ForkJoinPool
+public class ParameterSweep {
+  
+  // PARAMETERS
+  public static final int QW = 0;
+  public static final int QA = 1;
+  public static final int RW = 2;
+  public static final int RA = 3;
+  public static final int W0 = 4;
+  public static final String[] NAMES = { "Qw" , "Qa" , "Rw" , "Ra" , "W0" };
+  private static final int minRoundSamples = 50;  // minimum number of samples evaluated in the first round
+  
+  // PRIVATE VARIABLES
+  private IMUDataset dataset;
+  private double convergenceTime;  // the errors before this time are not taken into account (s)
+  // ranges of the parameters (the same ones as the sliders of the GUI)
+  private double[] min = { 1.0e-6 , 1.0e-6 , 1.0e-6 , 1.0e-6 , 0.0 };
+  private double[] max = { 1.0e1 , 1.0e1 , 1.0e1 , 1.0e1 , 1.0 };
+  private boolean[] logarithmic = { true , true , true , true , false };
+  
+  
+  // CONSTRUCTORS
+  
+  public ParameterSweep( IMUDataset datasetIn , double convergenceTimeIn ) {
+    this.dataset = datasetIn;
+    this.convergenceTime = convergenceTimeIn;
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  // Method: set_range
+  // sets the range of values of a parameter
+  // inputs:
+  //  parameter: index of the parameter (QW, QA, RW, RA, W0)
+  //  minIn, maxIn: limits of the range (if they are equal, the parameter is fixed)
+  // outputs:
+  public void set_range( int parameter , double minIn , double maxIn ) {
+    if(  minIn > maxIn  ||  ( this.logarithmic[parameter] && minIn <= 0.0 )  ) throw new IllegalArgumentException( "Not a valid range for " + ParameterSweep.NAMES[parameter] );
+    this.min[parameter] = minIn;
+    this.max[parameter] = maxIn;
+  }
+  
+  // Method: grid
+  // generates a grid of candidates (equispaced values of each parameter, logarithmically for the covariances)
+  // inputs:
+  //  points: number of values of each parameter (fixed parameters have only one value)
+  // outputs:
+  //  candidates (parameters in the order QW, QA, RW, RA, W0)
+  public double[][] grid( int points ) {
+    int[] n = new int[ParameterSweep.NAMES.length];
+    int size = 1;
+    for(int i=0; i<n.length; i++){
+      n[i] = ( this.min[i] == this.max[i] )? 1 : points;
+      size *= n[i];
+    }
+    double[][] candidates = new double[size][n.length];
+    for(int c=0; c<size; c++){
+      int index = c;
+      for(int i=0; i<n.length; i++){
+        double u = ( n[i] > 1 )? (double)( index%n[i] )/( n[i]-1 ) : 0.0;
+        candidates[c][i] = this.value( i , u );
+        index /= n[i];
+      }
+    }
+    return candidates;
+  }
+  
+  // Method: random
+  // generates random candidates (uniform values of each parameter, logarithmically for the covariances)
+  // inputs:
+  //  size: number of candidates
+  //  seed: seed of the random numbers
+  // outputs:
+  //  candidates (parameters in the order QW, QA, RW, RA, W0)
+  public double[][] random( int size , long seed ) {
+    Random random = new Random( seed );
+    double[][] candidates = new double[size][ParameterSweep.NAMES.length];
+    for(int c=0; c<size; c++){
+      for(int i=0; i<ParameterSweep.NAMES.length; i++) candidates[c][i] = this.value( i , random.nextDouble() );
+    }
+    return candidates;
+  }
+  
+  // Method: search
+  // finds the best candidate for an estimator using successive halving
+  // inputs:
+  //  estimatorIndex: index of the estimator (see Estimators)
+  //  candidates: parameters of each candidate (see grid and random)
+  //  pool: pool of threads that runs the candidates
+  // outputs:
+  //  best candidate
+  public Result search( int estimatorIndex , double[][] candidates , ForkJoinPool pool ) {
+    if( candidates.length == 0 ) throw new IllegalArgumentException( "There are no candidates" );
+    // we create the runs
+    EstimatorRun[] runs = new EstimatorRun[candidates.length];
+    double[] q0 = new double[4];
+    if( this.dataset.has_groundTruth() ) this.dataset.get_q( 0 , q0 );
+    for(int c=0; c<runs.length; c++){
+      OrientationEstimator estimator = Estimators.create( estimatorIndex );
+      estimator.set_Qw( candidates[c][ParameterSweep.QW] );
+      estimator.set_Qa( candidates[c][ParameterSweep.QA] );
+      estimator.set_Rw( candidates[c][ParameterSweep.RW] );
+      estimator.set_Ra( candidates[c][ParameterSweep.RA] );
+      estimator.set_W0( candidates[c][ParameterSweep.W0] );
+      // the yaw is not observable, so with ground truth we start at the true orientation
+      if( this.dataset.has_groundTruth() ) estimator.set_q( q0 );
+      runs[c] = new EstimatorRun( estimator , this.dataset , this.convergenceTime );
+    }
+    Integer[] survivors = new Integer[runs.length];
+    for(int c=0; c<survivors.length; c++) survivors[c] = c;
+    
+    // the samples before the convergence time are processed in every round
+    int size = this.dataset.size();
+    int first = 0;
+    while(  first < size  &&  this.dataset.t[first]-this.dataset.t[0] < this.convergenceTime  ) first++;
+    int evaluated = size - first;
+    int rounds = 1;
+    while( ( 1 << ( rounds-1 ) ) < runs.length ) rounds++;
+    
+    final double[] cost = new double[runs.length];
+    int count = survivors.length;
+    long samples = 0;
+    for(int r=0; r<rounds; r++){
+      int shift = rounds-1-r;
+      int end = ( shift < 31 )? first + Math.max( evaluated >> shift , Math.min( evaluated , ParameterSweep.minRoundSamples ) ) : first + Math.min( evaluated , ParameterSweep.minRoundSamples );
+      AdvanceTask task = new AdvanceTask( runs , survivors , 0 , count , end );
+      pool.invoke( task );
+      samples += task.processed;
+      // we sort the survivors by their cost, and we discard the worst half
+      for(int s=0; s<count; s++){
+        EstimatorRun run = runs[survivors[s]];
+        cost[survivors[s]] = ( run.is_finite() )? run.get_rmsError() : Double.POSITIVE_INFINITY;
+      }
+      Arrays.sort( survivors , 0 , count , new Comparator<Integer>() {
+        public int compare( Integer a , Integer b ) {
+          return Double.compare( cost[a] , cost[b] );
+        }
+      } );
+      if( r < rounds-1 ) count = ( count+1 )/2;
+    }
+    
+    int best = survivors[0];
+    return new Result( estimatorIndex , candidates[best].clone() , cost[best] , runs[best].get_nanosPerUpdate() , candidates.length , samples , (long)candidates.length*size );
+  }
+  
+  
+  // PRIVATE METHODS
+  
+  // value of a parameter at the position u (in [0,1]) of its range
+  private double value( int parameter , double u ) {
+    if( this.logarithmic[parameter] ) return Math.exp( Math.log( this.min[parameter] ) + u*( Math.log( this.max[parameter] ) - Math.log( this.min[parameter] ) ) );
+    return this.min[parameter] + u*( this.max[parameter] - this.min[parameter] );
+  }
+  
+  
+  // PUBLIC CLASSES
+  
+  // best candidate found for an estimator
+  public static class Result {
+    public final int estimatorIndex;
+    public final double[] parameters;  // in the order QW, QA, RW, RA, W0
+    public final double cost;  // RMS angular error of the candidate over the whole dataset (rad)
+    public final double nanosPerUpdate;  // CPU time per update of the candidate (ns)
+    public final int candidates;  // number of evaluated candidates
+    public final long samples;  // number of updates done in the search
+    public final long exhaustiveSamples;  // number of updates of an exhaustive search
+    
+    Result( int estimatorIndexIn , double[] parametersIn , double costIn , double nanosPerUpdateIn , int candidatesIn , long samplesIn , long exhaustiveSamplesIn ) {
+      this.estimatorIndex = estimatorIndexIn;
+      this.parameters = parametersIn;
+      this.cost = costIn;
+      this.nanosPerUpdate = nanosPerUpdateIn;
+      this.candidates = candidatesIn;
+      this.samples = samplesIn;
+      this.exhaustiveSamples = exhaustiveSamplesIn;
+    }
+    
+    public String toString() {
+      return String.format( "%-10s Qw=%.2e Qa=%.2e Rw=%.2e Ra=%.2e W0=%.3f   RMS %.4f deg   %d candidates, %.1f%% of the updates of an exhaustive search" ,
+                            Estimators.NAMES[this.estimatorIndex] , this.parameters[ParameterSweep.QW] , this.parameters[ParameterSweep.QA] ,
+                            this.parameters[ParameterSweep.RW] , this.parameters[ParameterSweep.RA] , this.parameters[ParameterSweep.W0] ,
+                            this.cost*180.0/Math.PI , this.candidates , 100.0*this.samples/this.exhaustiveSamples );
+    }
+  }
+  
+  
+  // PRIVATE CLASSES
+  
+  // advances the runs of the survivors in [from,to) until the sample end
+  private static class AdvanceTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final EstimatorRun[] runs;
+    private final Integer[] survivors;
+    private final int from;
+    private final int to;
+    private final int end;
+    long processed;
+    
+    AdvanceTask( EstimatorRun[] runsIn , Integer[] survivorsIn , int fromIn , int toIn , int endIn ) {
+      this.runs = runsIn;
+      this.survivors = survivorsIn;
+      this.from = fromIn;
+      this.to = toIn;
+      this.end = endIn;
+      this.processed = 0;
+    }
+    
+    protected void compute() {
+      if( this.to-this.from > 1 ){
+        int middle = (this.from+this.to)/2;
+        AdvanceTask left = new AdvanceTask( this.runs , this.survivors , this.from , middle , this.end );
+        AdvanceTask right = new AdvanceTask( this.runs , this.survivors , middle , this.to , this.end );
+        invokeAll( left , right );
+        this.processed = left.processed + right.processed;
+        return;
+      }
+      EstimatorRun run = this.runs[this.survivors[this.from]];
+      this.processed = run.advance( this.end - run.get_processedSamples() );
+    }
+  }
+  
+  
+  // MAIN
+  
+  // searches the best parameters of every estimator over a synthetic trajectory (see TrajectoryGenerator)
+  // arguments (all optional): grid or random (grid), points per parameter of the grid or number of random candidates (4),
+  // seconds (60), rate (100 samples/s), Ra (1e-4 g^2), Rw (1e-4 (rad/s)^2), seed (1), threads (available processors)
+  public static void main( String[] args ) {
+    boolean grid = !( args.length > 0  &&  args[0].equals( "random" ) );
+    int points = ( args.length > 1 )? Integer.parseInt( args[1] ) : 4;
+    double seconds = ( args.length > 2 )? Double.parseDouble( args[2] ) : 60.0;
+    double rate = ( args.length > 3 )? Double.parseDouble( args[3] ) : 100.0;
+    double Ra = ( args.length > 4 )? Double.parseDouble( args[4] ) : 1.0e-4;
+    double Rw = ( args.length > 5 )? Double.parseDouble( args[5] ) : 1.0e-4;
+    long seed = ( args.length > 6 )? Long.parseLong( args[6] ) : 1;
+    int threads = ( args.length > 7 )? Integer.parseInt( args[7] ) : Runtime.getRuntime().availableProcessors();
+    
+    IMUDataset dataset = new TrajectoryGenerator( rate , 2.0 , Ra , Rw ).generate( seed , seconds );
+    ParameterSweep sweep = new ParameterSweep( dataset , 1.0 );
+    double[][] candidates = ( grid )? sweep.grid( points ) : sweep.random( points , seed );
+    ForkJoinPool pool = new ForkJoinPool( threads );
+    long t0 = System.nanoTime();
+    for(int n=0; n<Estimators.count(); n++) System.out.println( sweep.search( n , candidates , pool ) );
+    double wallSeconds = ( System.nanoTime() - t0 )*1.0e-9;
+    pool.shutdown();
+    System.out.println( String.format( "%.2f s with %d threads" , wallSeconds , threads ) );
+  }
+  
+}
\ No newline at end of file
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+// latency histograms of the stages of the data pipeline
+// the stamps are taken when the first byte of a frame is read from the serial port, when the frame is completed
+// in the MessageManager, when the shard starts and finishes decoding it in the dataAdministrator, and when each
+// Spacecraft publishes its quaternion (the time spent in each updateIMU is recorded by each Spacecraft)
+public class PipelineLatency {
+  
+  // VARIABLES
+  public final LatencyHistogram frame = new LatencyHistogram( "frame" );  // first byte -> frame completed
+  public final LatencyHistogram queue = new LatencyHistogram( "queue" );  // frame completed -> taken by the shard
+  public final LatencyHistogram decode = new LatencyHistogram( "decode" );  // taken by the shard -> data decoded
+  public final LatencyHistogram publication = new LatencyHistogram( "end-to-end" );  // first byte -> quaternion published
+  
+  
+  // PUBLIC METHODS
+  
+  public void reset() {
+    this.frame.reset();
+    this.queue.reset();
+    this.decode.reset();
+    this.publication.reset();
+  }
+  
+  public String toString() {
+    return this.frame + "\n" + this.queue + "\n" + this.decode + "\n" + this.publication;
+  }
+  
+}
\ No newline at end of file
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+// class that compares the single precision estimators (OrientationEstimator32) with the double precision ones
+// both versions of each estimator are fed with the same synthetic trajectory (TrajectoryGenerator), with the
+// measurements quantized as the ones of a 16-bit IMU, and the angle between their estimated quaternions is accumulated
+// after the convergence time. The result is the table of the README
+public class PrecisionComparison {
+  
+  // PARAMETERS
+  private static final double accelerometerRange = 16.0;  // full scale of the 16-bit accelerometer (g)
+  private static final double gyroscopeRange = 2000.0*Math.PI/180.0;  // full scale of the 16-bit gyroscope (rad/s)
+  
+  
+  // PUBLIC STATIC METHODS
+  
+  // Method: quantize
+  // rounds the measurements of a dataset to the resolution of a 16-bit IMU (accelerometerRange and gyroscopeRange)
+  // inputs:
+  //  dataset: dataset with the measurements (it is modified)
+  // outputs:
+  public static void quantize( IMUDataset dataset ) {
+    for(int k=0; k<dataset.size(); k++){
+      dataset.ax[k] = PrecisionComparison.quantize( dataset.ax[k] , PrecisionComparison.accelerometerRange );
+      dataset.ay[k] = PrecisionComparison.quantize( dataset.ay[k] , PrecisionComparison.accelerometerRange );
+      dataset.az[k] = PrecisionComparison.quantize( dataset.az[k] , PrecisionComparison.accelerometerRange );
+      dataset.wx[k] = PrecisionComparison.quantize( dataset.wx[k] , PrecisionComparison.gyroscopeRange );
+      dataset.wy[k] = PrecisionComparison.quantize( dataset.wy[k] , PrecisionComparison.gyroscopeRange );
+      dataset.wz[k] = PrecisionComparison.quantize( dataset.wz[k] , PrecisionComparison.gyroscopeRange );
+    }
+  }
+  
+  // Method: compare
+  // runs the double and the single precision versions of an estimator over a dataset
+  // inputs:
+  //  index: index of the estimator in Estimators.NAMES
+  //  dataset: dataset with the measurements and the true orientation
+  //  Ra, Rw: measurement noise variances given to the estimators (g^2 and (rad/s)^2)
+  //  convergenceTime: the differences before this time are not taken into account (s)
+  // outputs:
+  //  RMS and maximum angle between the two estimated quaternions (rad)
+  public static double[] compare( int index , IMUDataset dataset , double Ra , double Rw , double convergenceTime ) {
+    OrientationEstimator estimator64 = Estimators.create( index );
+    OrientationEstimator estimator32 = Estimators.create32( index );
+    double[] q0 = new double[4];
+    dataset.get_q( 0 , q0 );
+    estimator64.set_Ra( Ra );
+    estimator64.set_Rw( Rw );
+    estimator64.set_q( q0 );
+    estimator32.set_Ra( Ra );
+    estimator32.set_Rw( Rw );
+    estimator32.set_q( q0 );
+    
+    double[] am = new double[3];
+    double[] wm = new double[3];
+    double[] q64 = new double[4];
+    double[] q32 = new double[4];
+    double ms = 0.0;
+    double max = 0.0;
+    long count = 0;
+    for(int k=0; k<dataset.size(); k++){
+      dataset.get_am( k , am );
+      dataset.get_wm( k , wm );
+      double dt = dataset.get_dt( k );
+      estimator64.updateIMU( am , wm , dt );
+      estimator32.updateIMU( am , wm , dt );
+      if( dataset.t[k] - dataset.t[0] < convergenceTime ) continue;
+      estimator64.get_q( q64 );
+      estimator32.get_q( q32 );
+      double angle = EstimatorRun.angle( q64 , q32 );
+      ms += angle*angle;
+      if( angle > max ) max = angle;
+      count++;
+    }
+    double[] result = { 0.0 , max };
+    if( count > 0 ) result[0] = Math.sqrt( ms/count );
+    return result;
+  }
+  
+  
+  // PRIVATE STATIC METHODS
+  
+  // rounds a value to the nearest of the 2^16 levels in [-range,range)
+  private static double quantize( double x , double range ) {
+    double lsb = range/32768.0;
+    double level = Math.rint( x/lsb );
+    if( level > 32767.0 ) level = 32767.0;
+    if( level < -32768.0 ) level = -32768.0;
+    return level*lsb;
+  }
+  
+  
+  // MAIN
+  
+  // arguments (all optional): seconds (60), rate (1000 samples/s), noise variance of both sensors (1e-4),
+  // maximum angular velocity (2 rad/s), seed (1)
+  public static void main( String[] args ) {
+    double seconds = ( args.length > 0 )? Double.parseDouble( args[0] ) : 60.0;
+    double rate = ( args.length > 1 )? Double.parseDouble( args[1] ) : 1000.0;
+    double R = ( args.length > 2 )? Double.parseDouble( args[2] ) : 1.0e-4;
+    double maxAngularVelocity = ( args.length > 3 )? Double.parseDouble( args[3] ) : 2.0;
+    long seed = ( args.length > 4 )? Long.parseLong( args[4] ) : 1;
+    
+    IMUDataset dataset = new TrajectoryGenerator( rate , maxAngularVelocity , R , R ).generate( seed , seconds );
+    PrecisionComparison.quantize( dataset );
+    double toDeg = 180.0/Math.PI;
+    System.out.println( "| estimator | RMS difference (deg) | max difference (deg) |" );
+    System.out.println( "|-----------|----------------------|----------------------|" );
+    for(int n=0; n<Estimators.count(); n++){
+      double[] difference = PrecisionComparison.compare( n , dataset , R , R , 1.0 );
+      System.out.println( String.format( "| %-9s | %.1e | %.1e |" , Estimators.NAMES[n] , toDeg*difference[0] , toDeg*difference[1] ) );
+    }
+  }
+  
+}
\ No newline at end of file
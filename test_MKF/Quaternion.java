@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+// quaternion operations used by the estimators, the simulators and the renderer
+// a quaternion (q0,q1,q2,q3)=(qw,qx,qy,qz) is stored in 4 consecutive positions of an array, starting at an offset, so
+// the operations can work on the state vectors directly. The methods do not allocate memory, and they are short so the
+// JIT inlines them. The outputs can be the same memory as the inputs (the inputs are read before writing)
+public final class Quaternion {
+  
+  // PUBLIC STATIC METHODS
+  
+  // Method: multiply
+  // computes the quaternion product  r = p*q
+  // inputs:
+  //  p, q: quaternions starting at the positions ip and iq
+  // outputs:
+  //  r: product, starting at the position ir
+  public static void multiply( double[] p , int ip , double[] q , int iq , double[] r , int ir ){
+    double p0 = p[ip];
+    double p1 = p[ip+1];
+    double p2 = p[ip+2];
+    double p3 = p[ip+3];
+    double q0 = q[iq];
+    double q1 = q[iq+1];
+    double q2 = q[iq+2];
+    double q3 = q[iq+3];
+    r[ir] = p0*q0 - p1*q1 - p2*q2 - p3*q3;
+    r[ir+1] = p0*q1  +  q0*p1  +  p2*q3 - p3*q2;
+    r[ir+2] = p0*q2  +  q0*p2  +  p3*q1 - p1*q3;
+    r[ir+3] = p0*q3  +  q0*p3  +  p1*q2 - p2*q1;
+    
+    return;
+  }
+  
+  // Method: conjugateMultiply
+  // computes the quaternion product  r = p^* * q  (the rotation from p to q, expressed in the p frame)
+  // inputs:
+  //  p, q: quaternions starting at the positions ip and iq
+  // outputs:
+  //  r: product, starting at the position ir
+  public static void conjugateMultiply( double[] p , int ip , double[] q , int iq , double[] r , int ir ){
+    double p0 = p[ip];
+    double p1 = p[ip+1];
+    double p2 = p[ip+2];
+    double p3 = p[ip+3];
+    double q0 = q[iq];
+    double q1 = q[iq+1];
+    double q2 = q[iq+2];
+    double q3 = q[iq+3];
+    r[ir] = p0*q0 + p1*q1 + p2*q2 + p3*q3;
+    r[ir+1] = p0*q1  -  q0*p1  -  p2*q3 + p3*q2;
+    r[ir+2] = p0*q2  -  q0*p2  -  p3*q1 + p1*q3;
+    r[ir+3] = p0*q3  -  q0*p3  -  p1*q2 + p2*q1;
+    
+    return;
+  }
+  
+  // Method: exp
+  // computes the unit quaternion of the rotation w*dt ( exp(w*dt/2) )
+  // inputs:
+  //  w: angular velocity (or rotation vector, with dt = 1), starting at the position iw
+  //  dt: time step
+  //  fast: if true, the trigonometric functions of FastMath are used
+  // outputs:
+  //  q: unit quaternion, starting at the position iq
+  public static void exp( double[] w , int iw , double dt , double[] q , int iq , boolean fast ){
+    double w0 = w[iw];
+    double w1 = w[iw+1];
+    double w2 = w[iw+2];
+    double wnorm = Math.sqrt( w0*w0 + w1*w1 + w2*w2 );
+    if( wnorm != 0.0 ){
+      double wdt05 = 0.5*wnorm*dt;
+      double swdt = ( ( fast )? FastMath.sin( wdt05 ) : Math.sin( wdt05 ) )/wnorm;
+      q[iq] = ( fast )? FastMath.cos( wdt05 ) : Math.cos( wdt05 );
+      q[iq+1] = w0*swdt;
+      q[iq+2] = w1*swdt;
+      q[iq+3] = w2*swdt;
+    }else{
+      q[iq] = 1.0;
+      q[iq+1] = 0.0;
+      q[iq+2] = 0.0;
+      q[iq+3] = 0.0;
+    }
+    
+    return;
+  }
+  
+  // Method: log
+  // computes the rotation vector of a unit quaternion ( 2*log(q), with the rotation angle in [0,pi] )
+  // inputs:
+  //  q: unit quaternion, starting at the position iq
+  //  fast: if true, the trigonometric functions of FastMath are used
+  // outputs:
+  //  v: rotation vector, starting at the position iv
+  public static void log( double[] q , int iq , double[] v , int iv , boolean fast ){
+    // q and -q are the same rotation: we take the one with the smallest angle
+    double s = ( q[iq] < 0.0 )? -1.0 : 1.0;
+    double q1 = s*q[iq+1];
+    double q2 = s*q[iq+2];
+    double q3 = s*q[iq+3];
+    double qnorm = Math.sqrt( q1*q1 + q2*q2 + q3*q3 );
+    if( qnorm > 1.0 ) qnorm = 1.0;
+    if( qnorm != 0.0 ){
+      double aux = 2.0*( ( fast )? FastMath.asin( qnorm ) : Math.asin( qnorm ) )/qnorm;
+      v[iv] = q1*aux;
+      v[iv+1] = q2*aux;
+      v[iv+2] = q3*aux;
+    }else{
+      v[iv] = 0.0;
+      v[iv+1] = 0.0;
+      v[iv+2] = 0.0;
+    }
+    
+    return;
+  }
+  
+  // Method: rotationMatrix
+  // computes the rotation matrix of a unit quaternion (it transforms the vectors from the sensor reference frame, to
+  // the external reference frame)
+  // inputs:
+  //  q: unit quaternion, starting at the position iq
+  // outputs:
+  //  R: 3x3 rotation matrix stored by columns, starting at the position iR
+  public static void rotationMatrix( double[] q , int iq , double[] R , int iR ){
+    double q0 = q[iq];
+    double q1 = q[iq+1];
+    double q2 = q[iq+2];
+    double q3 = q[iq+3];
+    double r0 = -q2*q2-q3*q3;    double r3 = q1*q2-q3*q0;     double r6 = q1*q3+q2*q0;
+    double r1 = q1*q2+q3*q0;     double r4 = -q1*q1-q3*q3;    double r7 = q2*q3-q1*q0;
+    double r2 = q1*q3-q2*q0;     double r5 = q2*q3+q1*q0;     double r8 = -q1*q1-q2*q2;
+    
+    R[iR] = r0 + ( r0 + 1.0 );    R[iR+3] = r3 + r3;             R[iR+6] = r6 + r6;
+    R[iR+1] = r1 + r1;            R[iR+4] = r4 + ( r4 + 1.0 );   R[iR+7] = r7 + r7;
+    R[iR+2] = r2 + r2;            R[iR+5] = r5 + r5;             R[iR+8] = r8 + ( r8 + 1.0 );
+    
+    return;
+  }
+  
+  // Method: rotationMatrixTransposed
+  // computes the transposed rotation matrix of a unit quaternion (it transforms the vectors from the external
+  // reference frame, to the sensor reference frame)
+  // inputs:
+  //  q: unit quaternion, starting at the position iq
+  // outputs:
+  //  RT: 3x3 transposed rotation matrix stored by columns, starting at the position iRT
+  public static void rotationMatrixTransposed( double[] q , int iq , double[] RT , int iRT ){
+    Quaternion.rotationMatrix( q , iq , RT , iRT );
+    double aux = RT[iRT+1];   RT[iRT+1] = RT[iRT+3];   RT[iRT+3] = aux;
+    aux = RT[iRT+2];          RT[iRT+2] = RT[iRT+6];   RT[iRT+6] = aux;
+    aux = RT[iRT+5];          RT[iRT+5] = RT[iRT+7];   RT[iRT+7] = aux;
+    
+    return;
+  }
+  
+  // Method: normalize
+  // divides a quaternion by its norm
+  // inputs:
+  //  q: quaternion, starting at the position iq
+  // outputs:
+  //  q: unit quaternion
+  public static void normalize( double[] q , int iq ){
+    double qnorm = Math.sqrt( q[iq]*q[iq] + q[iq+1]*q[iq+1] + q[iq+2]*q[iq+2] + q[iq+3]*q[iq+3] );
+    q[iq] /= qnorm;
+    q[iq+1] /= qnorm;
+    q[iq+2] /= qnorm;
+    q[iq+3] /= qnorm;
+    
+    return;
+  }
+  
+  // Method: slerp
+  // spherical linear interpolation between two unit quaternions (along the shortest rotation)
+  // inputs:
+  //  p, q: unit quaternions starting at the positions ip and iq
+  //  t: interpolation parameter (0 gives p, 1 gives q)
+  // outputs:
+  //  r: interpolated unit quaternion, starting at the position ir
+  public static void slerp( double[] p , int ip , double[] q , int iq , double t , double[] r , int ir ){
+    double p0 = p[ip];
+    double p1 = p[ip+1];
+    double p2 = p[ip+2];
+    double p3 = p[ip+3];
+    double q0 = q[iq];
+    double q1 = q[iq+1];
+    double q2 = q[iq+2];
+    double q3 = q[iq+3];
+    double d = p0*q0 + p1*q1 + p2*q2 + p3*q3;
+    double s = 1.0;
+    if( d < 0.0 ){
+      d = -d;
+      s = -1.0;
+    }
+    double a;
+    double b;
+    if( d < 0.9995 ){
+      double theta = Math.acos( d );
+      double isin = 1.0/Math.sin( theta );
+      a = Math.sin( ( 1.0-t )*theta )*isin;
+      b = s*Math.sin( t*theta )*isin;
+    }else{
+      // for close quaternions the linear interpolation is accurate (the result is normalized below)
+      a = 1.0-t;
+      b = s*t;
+    }
+    r[ir] = a*p0 + b*q0;
+    r[ir+1] = a*p1 + b*q1;
+    r[ir+2] = a*p2 + b*q2;
+    r[ir+3] = a*p3 + b*q3;
+    Quaternion.normalize( r , ir );
+    
+    return;
+  }
+  
+}
\ No newline at end of file
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+// single precision version of the Quaternion operations (used by the single precision estimators)
+// a quaternion (q0,q1,q2,q3)=(qw,qx,qy,qz) is stored in 4 consecutive positions of an array, starting at an offset, so
+// the operations can work on the state vectors directly. The methods do not allocate memory, and they are short so the
+// JIT inlines them. The outputs can be the same memory as the inputs (the inputs are read before writing)
+public final class Quaternion32 {
+  
+  // PUBLIC STATIC METHODS
+  
+  // Method: multiply
+  // computes the quaternion product  r = p*q
+  // inputs:
+  //  p, q: quaternions starting at the positions ip and iq
+  // outputs:
+  //  r: product, starting at the position ir
+  public static void multiply( float[] p , int ip , float[] q , int iq , float[] r , int ir ){
+    float p0 = p[ip];
+    float p1 = p[ip+1];
+    float p2 = p[ip+2];
+    float p3 = p[ip+3];
+    float q0 = q[iq];
+    float q1 = q[iq+1];
+    float q2 = q[iq+2];
+    float q3 = q[iq+3];
+    r[ir] = p0*q0 - p1*q1 - p2*q2 - p3*q3;
+    r[ir+1] = p0*q1  +  q0*p1  +  p2*q3 - p3*q2;
+    r[ir+2] = p0*q2  +  q0*p2  +  p3*q1 - p1*q3;
+    r[ir+3] = p0*q3  +  q0*p3  +  p1*q2 - p2*q1;
+    
+    return;
+  }
+  
+  // Method: conjugateMultiply
+  // computes the quaternion product  r = p^* * q  (the rotation from p to q, expressed in the p frame)
+  // inputs:
+  //  p, q: quaternions starting at the positions ip and iq
+  // outputs:
+  //  r: product, starting at the position ir
+  public static void conjugateMultiply( float[] p , int ip , float[] q , int iq , float[] r , int ir ){
+    float p0 = p[ip];
+    float p1 = p[ip+1];
+    float p2 = p[ip+2];
+    float p3 = p[ip+3];
+    float q0 = q[iq];
+    float q1 = q[iq+1];
+    float q2 = q[iq+2];
+    float q3 = q[iq+3];
+    r[ir] = p0*q0 + p1*q1 + p2*q2 + p3*q3;
+    r[ir+1] = p0*q1  -  q0*p1  -  p2*q3 + p3*q2;
+    r[ir+2] = p0*q2  -  q0*p2  -  p3*q1 + p1*q3;
+    r[ir+3] = p0*q3  -  q0*p3  -  p1*q2 + p2*q1;
+    
+    return;
+  }
+  
+  // Method: exp
+  // computes the unit quaternion of the rotation w*dt ( exp(w*dt/2) )
+  // inputs:
+  //  w: angular velocity (or rotation vector, with dt = 1), starting at the position iw
+  //  dt: time step
+  //  fast: if true, the trigonometric functions of FastMath are used
+  // outputs:
+  //  q: unit quaternion, starting at the position iq
+  public static void exp( float[] w , int iw , float dt , float[] q , int iq , boolean fast ){
+    float w0 = w[iw];
+    float w1 = w[iw+1];
+    float w2 = w[iw+2];
+    float wnorm = (float)Math.sqrt( w0*w0 + w1*w1 + w2*w2 );
+    if( wnorm != 0.0f ){
+      float wdt05 = 0.5f*wnorm*dt;
+      float swdt = (float)( ( fast )? FastMath.sin( wdt05 ) : Math.sin( wdt05 ) )/wnorm;
+      q[iq] = (float)( ( fast )? FastMath.cos( wdt05 ) : Math.cos( wdt05 ) );
+      q[iq+1] = w0*swdt;
+      q[iq+2] = w1*swdt;
+      q[iq+3] = w2*swdt;
+    }else{
+      q[iq] = 1.0f;
+      q[iq+1] = 0.0f;
+      q[iq+2] = 0.0f;
+      q[iq+3] = 0.0f;
+    }
+    
+    return;
+  }
+  
+  // Method: log
+  // computes the rotation vector of a unit quaternion ( 2*log(q), with the rotation angle in [0,pi] )
+  // inputs:
+  //  q: unit quaternion, starting at the position iq
+  //  fast: if true, the trigonometric functions of FastMath are used
+  // outputs:
+  //  v: rotation vector, starting at the position iv
+  public static void log( float[] q , int iq , float[] v , int iv , boolean fast ){
+    // q and -q are the same rotation: we take the one with the smallest angle
+    float s = ( q[iq] < 0.0f )? -1.0f : 1.0f;
+    float q1 = s*q[iq+1];
+    float q2 = s*q[iq+2];
+    float q3 = s*q[iq+3];
+    float qnorm = (float)Math.sqrt( q1*q1 + q2*q2 + q3*q3 );
+    if( qnorm > 1.0f ) qnorm = 1.0f;
+    if( qnorm != 0.0f ){
+      float aux = 2.0f*(float)( ( fast )? FastMath.asin( qnorm ) : Math.asin( qnorm ) )/qnorm;
+      v[iv] = q1*aux;
+      v[iv+1] = q2*aux;
+      v[iv+2] = q3*aux;
+    }else{
+      v[iv] = 0.0f;
+      v[iv+1] = 0.0f;
+      v[iv+2] = 0.0f;
+    }
+    
+    return;
+  }
+  
+  // Method: rotationMatrix
+  // computes the rotation matrix of a unit quaternion (it transforms the vectors from the sensor reference frame, to
+  // the external reference frame)
+  // inputs:
+  //  q: unit quaternion, starting at the position iq
+  // outputs:
+  //  R: 3x3 rotation matrix stored by columns, starting at the position iR
+  public static void rotationMatrix( float[] q , int iq , float[] R , int iR ){
+    float q0 = q[iq];
+    float q1 = q[iq+1];
+    float q2 = q[iq+2];
+    float q3 = q[iq+3];
+    float r0 = -q2*q2-q3*q3;    float r3 = q1*q2-q3*q0;     float r6 = q1*q3+q2*q0;
+    float r1 = q1*q2+q3*q0;     float r4 = -q1*q1-q3*q3;    float r7 = q2*q3-q1*q0;
+    float r2 = q1*q3-q2*q0;     float r5 = q2*q3+q1*q0;     float r8 = -q1*q1-q2*q2;
+    
+    R[iR] = r0 + ( r0 + 1.0f );    R[iR+3] = r3 + r3;             R[iR+6] = r6 + r6;
+    R[iR+1] = r1 + r1;            R[iR+4] = r4 + ( r4 + 1.0f );   R[iR+7] = r7 + r7;
+    R[iR+2] = r2 + r2;            R[iR+5] = r5 + r5;             R[iR+8] = r8 + ( r8 + 1.0f );
+    
+    return;
+  }
+  
+  // Method: rotationMatrixTransposed
+  // computes the transposed rotation matrix of a unit quaternion (it transforms the vectors from the external
+  // reference frame, to the sensor reference frame)
+  // inputs:
+  //  q: unit quaternion, starting at the position iq
+  // outputs:
+  //  RT: 3x3 transposed rotation matrix stored by columns, starting at the position iRT
+  public static void rotationMatrixTransposed( float[] q , int iq , float[] RT , int iRT ){
+    Quaternion32.rotationMatrix( q , iq , RT , iRT );
+    float aux = RT[iRT+1];   RT[iRT+1] = RT[iRT+3];   RT[iRT+3] = aux;
+    aux = RT[iRT+2];          RT[iRT+2] = RT[iRT+6];   RT[iRT+6] = aux;
+    aux = RT[iRT+5];          RT[iRT+5] = RT[iRT+7];   RT[iRT+7] = aux;
+    
+    return;
+  }
+  
+  // Method: normalize
+  // divides a quaternion by its norm
+  // inputs:
+  //  q: quaternion, starting at the position iq
+  // outputs:
+  //  q: unit quaternion
+  public static void normalize( float[] q , int iq ){
+    float qnorm = (float)Math.sqrt( q[iq]*q[iq] + q[iq+1]*q[iq+1] + q[iq+2]*q[iq+2] + q[iq+3]*q[iq+3] );
+    q[iq] /= qnorm;
+    q[iq+1] /= qnorm;
+    q[iq+2] /= qnorm;
+    q[iq+3] /= qnorm;
+    
+    return;
+  }
+  
+  // Method: slerp
+  // spherical linear interpolation between two unit quaternions (along the shortest rotation)
+  // inputs:
+  //  p, q: unit quaternions starting at the positions ip and iq
+  //  t: interpolation parameter (0 gives p, 1 gives q)
+  // outputs:
+  //  r: interpolated unit quaternion, starting at the position ir
+  public static void slerp( float[] p , int ip , float[] q , int iq , float t , float[] r , int ir ){
+    float p0 = p[ip];
+    float p1 = p[ip+1];
+    float p2 = p[ip+2];
+    float p3 = p[ip+3];
+    float q0 = q[iq];
+    float q1 = q[iq+1];
+    float q2 = q[iq+2];
+    float q3 = q[iq+3];
+    float d = p0*q0 + p1*q1 + p2*q2 + p3*q3;
+    float s = 1.0f;
+    if( d < 0.0f ){
+      d = -d;
+      s = -1.0f;
+    }
+    float a;
+    float b;
+    if( d < 0.9995f ){
+      float theta = (float)Math.acos( d );
+      float isin = 1.0f/(float)Math.sin( theta );
+      a = (float)Math.sin( ( 1.0f-t )*theta )*isin;
+      b = s*(float)Math.sin( t*theta )*isin;
+    }else{
+      // for close quaternions the linear interpolation is accurate (the result is normalized below)
+      a = 1.0f-t;
+      b = s*t;
+    }
+    r[ir] = a*p0 + b*q0;
+    r[ir+1] = a*p1 + b*q1;
+    r[ir+2] = a*p2 + b*q2;
+    r[ir+3] = a*p3 + b*q3;
+    Quaternion32.normalize( r , ir );
+    
+    return;
+  }
+  
+}
\ No newline at end of file
@@ -0,0 +1,455 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+// class that replays many recordings with many estimator configurations (nightly regression of the estimators)
+// the recordings are sensor logs (see SensorLog.java; each IMU stream is replayed independently) or CSV/TSV files (see
+// CSVImporter.java). Each recording is loaded by a task of a ForkJoinPool, that forks a task for each stream and each
+// configuration: the tasks create their own estimators, and they only share the dataset (that is not modified), so
+// the idle threads steal the configurations of the recordings that are already loaded. The recordings are taken from
+// the largest to the smallest, so the last tasks are the short ones
+public class ReplayDriver {
+  
+  // PARAMETERS
+  // scales of the raw measurements of the sensor logs (the same ones as in dataAdministrator)
+  private static final double accelerationScale = 16.0/(1<<15);  // g
+  private static final double angularVelocityScale = 2000.0*Math.PI/180.0/(1<<15);  // rad/s
+  
+  // PRIVATE VARIABLES
+  private File[] recordings;
+  private Configuration[] configurations;
+  private double convergenceTime;  // the errors before this time are not taken into account (s)
+  private boolean euroc;  // if true, the CSV files are read with the EuRoC layout
+  // results of each recording (one for each stream and configuration), and the error that prevented its replay
+  private Result[][] results;
+  private String[] failures;
+  
+  
+  // CONSTRUCTORS
+  
+  public ReplayDriver( File[] recordingsIn , Configuration[] configurationsIn , double convergenceTimeIn , boolean eurocIn ) {
+    this.recordings = recordingsIn.clone();
+    Arrays.sort( this.recordings , new Comparator<File>() {
+      public int compare( File a , File b ) {
+        return Long.compare( b.length() , a.length() );
+      }
+    } );
+    this.configurations = configurationsIn;
+    this.convergenceTime = convergenceTimeIn;
+    this.euroc = eurocIn;
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  // Method: run
+  // replays all the recordings with all the configurations
+  // inputs:
+  //  pool: pool of threads that runs the replays
+  // outputs:
+  public void run( ForkJoinPool pool ) {
+    this.results = new Result[this.recordings.length][];
+    this.failures = new String[this.recordings.length];
+    if( this.recordings.length > 0 ) pool.invoke( new RecordingsTask( 0 , this.recordings.length ) );
+  }
+  
+  // Method: report
+  // summarizes the results of the last run
+  // inputs:
+  // outputs:
+  //  table with the statistics of the angular error (degrees) and the cost of each configuration over all the streams,
+  //  and the recordings (or the streams and configurations) that could not be replayed
+  public String report() {
+    StringBuilder sb = new StringBuilder();
+    int streams = 0;
+    for(int r=0; r<this.recordings.length; r++) if( this.results[r] != null ) streams += this.results[r].length/this.configurations.length;
+    sb.append( String.format( "%d recordings, %d streams (errors after %.1f s; degrees)%n" , this.recordings.length , streams , this.convergenceTime ) );
+    sb.append( String.format( "%-32s %12s %10s %10s %10s %12s %9s%n" , "configuration" , "samples" , "mean" , "RMS" , "max" , "ns/update" , "diverged" ) );
+    double toDeg = 180.0/Math.PI;
+    for(int c=0; c<this.configurations.length; c++){
+      long samples = 0;
+      double sum = 0.0;
+      double ms = 0.0;
+      double max = 0.0;
+      double nanos = 0.0;
+      int diverged = 0;
+      for(int r=0; r<this.recordings.length; r++){
+        if( this.results[r] == null ) continue;
+        for(int k=c; k<this.results[r].length; k+=this.configurations.length){
+          Result result = this.results[r][k];
+          if( result.failure != null ) continue;
+          // the errors are weighted by the number of samples in which they are accumulated
+          samples += result.samples;
+          sum += result.meanError*result.samples;
+          ms += result.rmsError*result.rmsError*result.samples;
+          if( result.maxError > max ) max = result.maxError;
+          nanos += result.nanosPerUpdate*result.samples;
+          if( !result.finite ) diverged++;
+        }
+      }
+      double n = Math.max( samples , 1 );
+      sb.append( String.format( "%-32s %12d %10.4f %10.4f %10.4f %12.1f %9d%n" , this.configurations[c].label , samples ,
+                                toDeg*sum/n , toDeg*Math.sqrt( ms/n ) , toDeg*max , nanos/n , diverged ) );
+    }
+    for(int r=0; r<this.recordings.length; r++){
+      if( this.failures[r] != null ) sb.append( String.format( "failed: %s (%s)%n" , this.recordings[r].getPath() , this.failures[r] ) );
+      if( this.results[r] == null ) continue;
+      for(Result result : this.results[r]){
+        if( result.failure != null ) sb.append( String.format( "failed: %s, %s, %s (%s)%n" , this.recordings[r].getPath() , result.stream , result.configuration , result.failure ) );
+      }
+    }
+    return sb.toString();
+  }
+  
+  // Method: write_results
+  // writes the results of each recording, stream and configuration of the last run (tab separated values; the failed
+  // ones are only listed by report)
+  // inputs:
+  //  file: where the results are written
+  // outputs:
+  public void write_results( File file ) throws IOException {
+    PrintWriter out = new PrintWriter( file , "UTF-8" );
+    try{
+      out.println( "recording\tstream\tconfiguration\tsamples\tmean (deg)\tRMS (deg)\tmax (deg)\tns/update\tfinite" );
+      double toDeg = 180.0/Math.PI;
+      for(int r=0; r<this.recordings.length; r++){
+        if( this.results[r] == null ) continue;
+        for(Result result : this.results[r]){
+          if( result.failure != null ) continue;
+          out.println( String.format( "%s\t%s\t%s\t%d\t%.6f\t%.6f\t%.6f\t%.1f\t%b" , this.recordings[r].getPath() , result.stream ,
+                                      result.configuration , result.samples , toDeg*result.meanError , toDeg*result.rmsError ,
+                                      toDeg*result.maxError , result.nanosPerUpdate , result.finite ) );
+        }
+      }
+    }finally{
+      out.close();
+    }
+  }
+  
+  
+  // PRIVATE METHODS
+  
+  // Method: load
+  // loads the IMU streams of a recording
+  // inputs:
+  //  file: recording
+  //  pool: pool where the blocks of the sensor logs are decoded
+  //  labels: where the label of each stream is added
+  // outputs:
+  //  datasets of the streams
+  private ArrayList<IMUDataset> load( File file , ForkJoinPool pool , ArrayList<String> labels ) throws IOException {
+    ArrayList<IMUDataset> datasets = new ArrayList<IMUDataset>();
+    if( !file.getName().endsWith( ".mkfl" ) ){
+      CSVImporter importer = ( this.euroc )? CSVImporter.euroc() : new CSVImporter();
+      datasets.add( importer.read( file ) );
+      labels.add( "-" );
+      return datasets;
+    }
+    SensorLog.Reader reader = new SensorLog.Reader( file );
+    try{
+      for(int s=0; s<reader.get_streamCount(); s++){
+        IPM_IMU decoder = ReplayDriver.decoder( reader.get_packetID( s ) );
+        if( decoder == null ) continue;
+        SensorLog.Stream stream = reader.decode( s , pool );
+        IMUDataset dataset = new IMUDataset( Math.max( stream.size() , 1 ) , false );
+        byte[] packet = new byte[stream.length];
+        decoder.set_bytes( packet );
+        for(int k=0; k<stream.size(); k++){
+          stream.get_packet( k , packet );
+          double[] am = decoder.get_a();
+          double[] wm = decoder.get_w();
+          for(int i=0; i<3; i++){
+            am[i] *= ReplayDriver.accelerationScale;
+            wm[i] *= ReplayDriver.angularVelocityScale;
+          }
+          dataset.add( ( stream.t[k] - stream.t[0] )*1.0e-9 , am , wm , null );
+        }
+        datasets.add( dataset );
+        labels.add( String.format( "sensor %d (packet %d)" , stream.sensorID & 0xFF , stream.packetID & 0xFF ) );
+      }
+    }finally{
+      reader.close();
+    }
+    return datasets;
+  }
+  
+  
+  // PRIVATE STATIC METHODS
+  
+  // decoder of the IMU packets (null if the packets do not have IMU measurements)
+  private static IPM_IMU decoder( byte packetID ) {
+    switch( packetID ){
+      case 0:
+        return new IPM_MPU6050( (byte)0 );
+      case 1:
+        return new IPM_MPU6050_HMC5883L( (byte)0 );
+      case 3:
+        return new IPM_AdafruitIMU9dof( (byte)0 );
+      default:
+        return null;
+    }
+  }
+  
+  // recordings of a path: the file itself, or the files of a directory (recursively)
+  private static void addRecordings( File path , ArrayList<File> recordings ) {
+    if( !path.isDirectory() ){
+      recordings.add( path );
+      return;
+    }
+    File[] files = path.listFiles();
+    if( files == null ) return;
+    Arrays.sort( files );
+    for(File file : files){
+      if( file.isDirectory() ){
+        ReplayDriver.addRecordings( file , recordings );
+      }else{
+        String name = file.getName();
+        if(  name.endsWith( ".mkfl" )  ||  name.endsWith( ".csv" )  ||  name.endsWith( ".tsv" )  ||  name.endsWith( ".txt" )  ) recordings.add( file );
+      }
+    }
+  }
+  
+  // configurations of a file (one for each line; empty lines and lines starting with # are ignored), or all the
+  // estimators with their default parameters if the argument is "all"
+  private static Configuration[] readConfigurations( String argument ) throws IOException {
+    ArrayList<Configuration> configurations = new ArrayList<Configuration>();
+    if( argument.equals( "all" ) ){
+      for(int n=0; n<Estimators.count(); n++) configurations.add( new Configuration( Estimators.NAMES[n] ) );
+    }else{
+      BufferedReader in = new BufferedReader( new FileReader( argument ) );
+      try{
+        String line;
+        while( ( line = in.readLine() ) != null ){
+          line = line.trim();
+          if(  line.length() > 0  &&  !line.startsWith( "#" )  ) configurations.add( new Configuration( line ) );
+        }
+      }finally{
+        in.close();
+      }
+    }
+    return configurations.toArray( new Configuration[configurations.size()] );
+  }
+  
+  
+  // PUBLIC CLASSES
+  
+  // configuration of an estimator: "name" or "name: parameter=value, parameter=value, ..." (the names are the ones of
+  // Estimators; the parameters are Qw, Qa, Rw, Ra, W0, correctionPeriod, chartUpdate, fastMath, reducedSigmaPoints,
+  // and sequentialUpdate)
+  public static class Configuration {
+    
+    public final String label;
+    private final int estimator;
+    private final String[] parameters;
+    private final String[] values;
+    
+    public Configuration( String specification ) {
+      this.label = specification.trim();
+      int colon = this.label.indexOf( ':' );
+      String name = ( colon < 0 )? this.label : this.label.substring( 0 , colon ).trim();
+      this.estimator = Estimators.indexOf( name );
+      if( this.estimator < 0 ) throw new IllegalArgumentException( "Unknown estimator: " + name );
+      String[] settings = ( colon < 0 )? new String[0] : this.label.substring( colon+1 ).split( "," );
+      ArrayList<String> parametersIn = new ArrayList<String>();
+      ArrayList<String> valuesIn = new ArrayList<String>();
+      for(String setting : settings){
+        if( setting.trim().length() == 0 ) continue;
+        int equals = setting.indexOf( '=' );
+        if( equals < 0 ) throw new IllegalArgumentException( "Not a parameter=value setting: " + setting.trim() );
+        parametersIn.add( setting.substring( 0 , equals ).trim() );
+        valuesIn.add( setting.substring( equals+1 ).trim() );
+      }
+      this.parameters = parametersIn.toArray( new String[parametersIn.size()] );
+      this.values = valuesIn.toArray( new String[valuesIn.size()] );
+      // the settings are checked now, instead of in the middle of the run
+      this.create();
+    }
+    
+    // creates a new estimator with this configuration
+    public OrientationEstimator create() {
+      OrientationEstimator estimator = Estimators.create( this.estimator );
+      for(int p=0; p<this.parameters.length; p++){
+        String value = this.values[p];
+        String parameter = this.parameters[p];
+        if( parameter.equals( "Qw" ) ){
+          estimator.set_Qw( Double.parseDouble( value ) );
+        }else if( parameter.equals( "Qa" ) ){
+          estimator.set_Qa( Double.parseDouble( value ) );
+        }else if( parameter.equals( "Rw" ) ){
+          estimator.set_Rw( Double.parseDouble( value ) );
+        }else if( parameter.equals( "Ra" ) ){
+          estimator.set_Ra( Double.parseDouble( value ) );
+        }else if( parameter.equals( "W0" ) ){
+          estimator.set_W0( Double.parseDouble( value ) );
+        }else if( parameter.equals( "correctionPeriod" ) ){
+          estimator.set_correctionPeriod( Integer.parseInt( value ) );
+        }else if( parameter.equals( "chartUpdate" ) ){
+          estimator.set_chartUpdate( Boolean.parseBoolean( value ) );
+        }else if( parameter.equals( "fastMath" ) ){
+          estimator.set_fastMath( Boolean.parseBoolean( value ) );
+        }else if( parameter.equals( "reducedSigmaPoints" ) ){
+          estimator.set_reducedSigmaPoints( Boolean.parseBoolean( value ) );
+        }else if( parameter.equals( "sequentialUpdate" ) ){
+          estimator.set_sequentialUpdate( Boolean.parseBoolean( value ) );
+        }else{
+          throw new IllegalArgumentException( "Unknown parameter: " + parameter );
+        }
+      }
+      return estimator;
+    }
+  
+  }
+  
+  // result of a configuration in a stream
+  public static class Result {
+    public String stream;
+    public String configuration;
+    public int samples;  // samples in which the errors are accumulated
+    public double meanError;  // (rad)
+    public double rmsError;  // (rad)
+    public double maxError;  // (rad)
+    public double nanosPerUpdate;
+    public boolean finite;
+    public String failure;  // exception that stopped the replay (null if it has been completed)
+  }
+  
+  
+  // PRIVATE CLASSES
+  
+  // replays the recordings in [from,to) (splitting them if there are more than one)
+  private class RecordingsTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final int from;
+    private final int to;
+    
+    RecordingsTask( int fromIn , int toIn ) {
+      this.from = fromIn;
+      this.to = toIn;
+    }
+    
+    protected void compute() {
+      if( this.to-this.from > 1 ){
+        int middle = (this.from+this.to)/2;
+        invokeAll( new RecordingsTask( this.from , middle ) , new RecordingsTask( middle , this.to ) );
+        return;
+      }
+      // we load the streams of the recording, and we replay them with all the configurations
+      ArrayList<String> labels = new ArrayList<String>();
+      ArrayList<IMUDataset> datasets;
+      try{
+        datasets = ReplayDriver.this.load( ReplayDriver.this.recordings[this.from] , getPool() , labels );
+      }catch( IOException e ){
+        ReplayDriver.this.failures[this.from] = e.getMessage();
+        return;
+      }catch( RuntimeException e ){
+        // a corrupted recording must not stop the replay of the other ones
+        ReplayDriver.this.failures[this.from] = e.toString();
+        return;
+      }
+      Configuration[] configurations = ReplayDriver.this.configurations;
+      Result[] results = new Result[datasets.size()*configurations.length];
+      ReplayTask[] tasks = new ReplayTask[results.length];
+      for(int s=0; s<datasets.size(); s++){
+        for(int c=0; c<configurations.length; c++){
+          int k = s*configurations.length + c;
+          results[k] = new Result();
+          results[k].stream = labels.get( s );
+          results[k].configuration = configurations[c].label;
+          tasks[k] = new ReplayTask( configurations[c] , datasets.get( s ) , results[k] );
+        }
+      }
+      invokeAll( tasks );
+      ReplayDriver.this.results[this.from] = results;
+    }
+  }
+  
+  // replays one stream with one configuration
+  private class ReplayTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final Configuration configuration;
+    private final IMUDataset dataset;
+    private final Result result;
+    
+    ReplayTask( Configuration configurationIn , IMUDataset datasetIn , Result resultIn ) {
+      this.configuration = configurationIn;
+      this.dataset = datasetIn;
+      this.result = resultIn;
+    }
+    
+    protected void compute() {
+      EstimatorRun run;
+      try{
+        run = new EstimatorRun( this.configuration.create() , this.dataset , ReplayDriver.this.convergenceTime );
+        run.run();
+      }catch( RuntimeException e ){
+        // the failure is reported, and the other pairs of stream and configuration are replayed
+        this.result.failure = e.toString();
+        return;
+      }
+      this.result.samples = (int)run.get_errorCount();
+      this.result.meanError = run.get_meanError();
+      this.result.rmsError = run.get_rmsError();
+      this.result.maxError = run.get_maxError();
+      this.result.nanosPerUpdate = run.get_nanosPerUpdate();
+      this.result.finite = run.is_finite();
+    }
+  }
+  
+  
+  // MAIN
+  
+  // arguments: recordings (a file, or a directory with .mkfl, .csv, .tsv and .txt files), configurations (a file with
+  // one configuration in each line, or "all"), and optionally: convergence time (1 s), threads (available processors),
+  // file where the results of each stream are written, CSV layout ("default" or "euroc")
+  public static void main( String[] args ) throws IOException {
+    if( args.length < 2 ){
+      System.out.println( "usage: ReplayDriver recordings configurations|all [convergenceTime] [threads] [results.tsv] [default|euroc]" );
+      return;
+    }
+    ArrayList<File> recordings = new ArrayList<File>();
+    ReplayDriver.addRecordings( new File( args[0] ) , recordings );
+    Configuration[] configurations = ReplayDriver.readConfigurations( args[1] );
+    double convergenceTime = ( args.length > 2 )? Double.parseDouble( args[2] ) : 1.0;
+    int threads = ( args.length > 3 )? Integer.parseInt( args[3] ) : Runtime.getRuntime().availableProcessors();
+    File resultsFile = ( args.length > 4 )? new File( args[4] ) : null;
+    boolean euroc = (  args.length > 5  &&  args[5].equals( "euroc" )  );
+    
+    ReplayDriver driver = new ReplayDriver( recordings.toArray( new File[recordings.size()] ) , configurations , convergenceTime , euroc );
+    ForkJoinPool pool = new ForkJoinPool( threads );
+    long t0 = System.nanoTime();
+    driver.run( pool );
+    double wallSeconds = ( System.nanoTime() - t0 )*1.0e-9;
+    pool.shutdown();
+    System.out.print( driver.report() );
+    System.out.println( String.format( "%d recordings x %d configurations replayed in %.2f s with %d threads" , recordings.size() , configurations.length , wallSeconds , threads ) );
+    if( resultsFile != null ) driver.write_results( resultsFile );
+  }
+  
+}
\ No newline at end of file
@@ -0,0 +1,504 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+// compressed log of the raw packets of the sensors
+// the measurements of the information packets are int16 channels (see IPM_MPU6050) that change slowly from one sample
+// to the next, so each channel is stored as the differences between consecutive samples, in zig-zag varints (1 byte
+// for the differences in [-64,63]). The packets are grouped in blocks by stream (same information packet ID, sensor ID
+// and length); each block starts from 0, so the blocks can be decoded independently, in parallel, directly into the
+// columns of a Stream. The packet bytes after the IDs are taken as int16 channels (and an int8 channel if the number is
+// odd), so any packet is stored without losses
+// layout (little endian):
+//  header (16 bytes): 0 int magic ("MKFL")   4 int version   8 long creation time (ms since the epoch)
+//  blocks, one after the other:
+//   header (24 bytes): 0 int magic ("MKFB")   4 byte information packet ID   5 byte sensor ID   6 short packet length
+//    8 int number of packets   12 int size of the payload   16 long time of the first packet (ns)
+//   payload: the second differences of the times (long zig-zag varints, from the second packet), and then the first
+//    differences of each channel (int zig-zag varints, from 0), one channel after the other
+public class SensorLog {
+  
+  // PARAMETERS
+  public static final int MAGIC = 0x4D4B464C;
+  public static final int BLOCK_MAGIC = 0x4D4B4642;
+  public static final int VERSION = 1;
+  public static final int HEADER_SIZE = 16;
+  public static final int BLOCK_HEADER_SIZE = 24;
+  private static final int blockPackets = 4096;  // packets of each block
+  
+  // PRIVATE VARIABLES
+  private FileChannel channel;
+  private HashMap<Integer,BlockEncoder> encoders;  // encoder of each stream
+  private long packets;  // written packets
+  private long bytes;  // written bytes
+  
+  
+  // CONSTRUCTORS
+  
+  // Method: SensorLog
+  // creates the log file (if it exists, it is overwritten)
+  // inputs:
+  //  file: log file (its directory is created if it does not exist)
+  // outputs:
+  public SensorLog( File file ) throws IOException {
+    File directory = file.getAbsoluteFile().getParentFile();
+    if( directory != null ) directory.mkdirs();
+    this.channel = FileChannel.open( file.toPath() , StandardOpenOption.CREATE , StandardOpenOption.TRUNCATE_EXISTING , StandardOpenOption.WRITE );
+    this.encoders = new HashMap<Integer,BlockEncoder>();
+    this.packets = 0;
+    this.bytes = 0;
+    byte[] header = new byte[SensorLog.HEADER_SIZE];
+    IPM.encode_int32( SensorLog.MAGIC , header , 0 );
+    IPM.encode_int32( SensorLog.VERSION , header , 4 );
+    IPM.encode_int64( System.currentTimeMillis() , header , 8 );
+    this.write_bytes( header , header.length );
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  // Method: write
+  // adds a packet to the log (it can be called from several threads)
+  // inputs:
+  //  data: data packet (b[0]: information packet ID, b[1]: sensor ID)
+  //  t: arrival time of the packet (ns)
+  // outputs:
+  public synchronized void write( byte[] data , long t ) throws IOException {
+    if( data.length < 2 ) return;
+    int key = ( data[0] & 0xFF ) | ( data[1] & 0xFF ) << 8 | data.length << 16;
+    BlockEncoder encoder = this.encoders.get( key );
+    if( encoder == null ){
+      encoder = new BlockEncoder( data );
+      this.encoders.put( key , encoder );
+    }
+    encoder.add( data , t );
+    this.packets++;
+    if( encoder.is_full() ) this.write_block( encoder );
+  }
+  
+  // writes the incomplete blocks (they are written as shorter blocks)
+  public synchronized void flush() throws IOException {
+    for(BlockEncoder encoder : this.encoders.values()){
+      if( encoder.count > 0 ) this.write_block( encoder );
+    }
+  }
+  
+  public synchronized void close() throws IOException {
+    this.flush();
+    this.channel.close();
+  }
+  
+  public synchronized long get_packets() {
+    return this.packets;
+  }
+  
+  public synchronized long get_bytes() {
+    return this.bytes;
+  }
+  
+  
+  // PRIVATE METHODS
+  
+  private void write_block( BlockEncoder encoder ) throws IOException {
+    int size = encoder.encode();
+    this.write_bytes( encoder.out , size );
+  }
+  
+  private void write_bytes( byte[] b , int length ) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap( b , 0 , length );
+    while( buffer.hasRemaining() ) this.channel.write( buffer );
+    this.bytes += length;
+  }
+  
+  
+  // PRIVATE STATIC METHODS
+  
+  // number of channels of a packet of a given length
+  private static int channels( int length ) {
+    return ( length - IPM.NON_MEASUREMENT_BYTES + 1 )/2;
+  }
+  
+  private static int put_varint( long value , byte[] b , int index ) {
+    while( ( value & ~0x7FL ) != 0 ){
+      b[index++] = (byte)( ( value & 0x7F ) | 0x80 );
+      value >>>= 7;
+    }
+    b[index++] = (byte)value;
+    return index;
+  }
+  
+  
+  // PRIVATE CLASSES
+  
+  // packets of a stream that have not been written yet
+  private static class BlockEncoder {
+    final byte packetID;
+    final byte sensorID;
+    final int length;
+    final int channels;
+    final long[] t = new long[SensorLog.blockPackets];
+    final short[][] values;  // values of each channel
+    final byte[] out;  // encoded block
+    int count;
+    
+    BlockEncoder( byte[] data ) {
+      this.packetID = data[0];
+      this.sensorID = data[1];
+      this.length = data.length;
+      this.channels = SensorLog.channels( this.length );
+      this.values = new short[this.channels][SensorLog.blockPackets];
+      // the biggest varints take 10 bytes for the times and 3 bytes for the channels
+      this.out = new byte[SensorLog.BLOCK_HEADER_SIZE + ( 10 + 3*this.channels )*SensorLog.blockPackets];
+      this.count = 0;
+    }
+    
+    void add( byte[] data , long time ) {
+      this.t[this.count] = time;
+      for(int c=0; c<this.channels; c++){
+        int index = IPM.NON_MEASUREMENT_BYTES + 2*c;
+        this.values[c][this.count] = ( index+1 < this.length )? IPM.decode_int16( data , index ) : IPM.decode_int8( data , index );
+      }
+      this.count++;
+    }
+    
+    boolean is_full() {
+      return ( this.count == SensorLog.blockPackets );
+    }
+    
+    // encodes the packets in out, and empties the encoder (it returns the size of the block)
+    int encode() {
+      int index = SensorLog.BLOCK_HEADER_SIZE;
+      long previousDelta = 0;
+      for(int k=1; k<this.count; k++){
+        long delta = this.t[k] - this.t[k-1];
+        long d2 = delta - previousDelta;
+        index = SensorLog.put_varint( ( d2 << 1 ) ^ ( d2 >> 63 ) , this.out , index );
+        previousDelta = delta;
+      }
+      for(int c=0; c<this.channels; c++){
+        short[] v = this.values[c];
+        int previous = 0;
+        for(int k=0; k<this.count; k++){
+          int d = v[k] - previous;
+          index = SensorLog.put_varint( ( ( d << 1 ) ^ ( d >> 31 ) ) & 0xFFFFFFFFL , this.out , index );
+          previous = v[k];
+        }
+      }
+      IPM.encode_int32( SensorLog.BLOCK_MAGIC , this.out , 0 );
+      IPM.encode_int8( this.packetID , this.out , 4 );
+      IPM.encode_int8( this.sensorID , this.out , 5 );
+      IPM.encode_int16( (short)this.length , this.out , 6 );
+      IPM.encode_int32( this.count , this.out , 8 );
+      IPM.encode_int32( index - SensorLog.BLOCK_HEADER_SIZE , this.out , 12 );
+      IPM.encode_int64( this.t[0] , this.out , 16 );
+      this.count = 0;
+      return index;
+    }
+  }
+  
+  // position of a block in the file
+  private static class Block {
+    final long position;  // position of the payload
+    final int payloadSize;
+    final int count;
+    final long t0;
+    int offset;  // position of its first packet in the decoded stream
+    
+    Block( long positionIn , int payloadSizeIn , int countIn , long t0In ) {
+      this.position = positionIn;
+      this.payloadSize = payloadSizeIn;
+      this.count = countIn;
+      this.t0 = t0In;
+    }
+  }
+  
+  
+  // packets of a stream, decoded in columns
+  public static class Stream {
+    public final byte packetID;  // information packet ID
+    public final byte sensorID;
+    public final int length;  // length of the packets (bytes)
+    public final long[] t;  // arrival time of each packet (ns)
+    public final short[][] values;  // values of each channel (the int16 fields of the packet after the IDs)
+    
+    Stream( byte packetIDIn , byte sensorIDIn , int lengthIn , int size ) {
+      this.packetID = packetIDIn;
+      this.sensorID = sensorIDIn;
+      this.length = lengthIn;
+      this.t = new long[size];
+      this.values = new short[SensorLog.channels( lengthIn )][size];
+    }
+    
+    public int size() {
+      return this.t.length;
+    }
+    
+    // Method: get_packet
+    // rebuilds a packet as it was received
+    // inputs:
+    //  k: index of the packet
+    //  data: where the packet is written (its length must be the length of the stream)
+    // outputs:
+    public void get_packet( int k , byte[] data ) {
+      IPM.encode_int8( this.packetID , data , 0 );
+      IPM.encode_int8( this.sensorID , data , 1 );
+      for(int c=0; c<this.values.length; c++){
+        int index = IPM.NON_MEASUREMENT_BYTES + 2*c;
+        if( index+1 < this.length ){
+          IPM.encode_int16( this.values[c][k] , data , index );
+        }else{
+          IPM.encode_int8( (byte)this.values[c][k] , data , index );
+        }
+      }
+    }
+  }
+  
+  
+  // reader of a log file
+  // the constructor reads the headers of the blocks (an incomplete last block, from a log that was not closed, is
+  // ignored); the streams are decoded on demand
+  public static class Reader {
+    
+    private FileChannel channel;
+    private ArrayList<byte[]> streamIDs;  // { packet ID , sensor ID , length } of each stream, in order of appearance
+    private ArrayList<ArrayList<Block>> streamBlocks;
+    private long size;  // size of the file (bytes)
+    
+    public Reader( File file ) throws IOException {
+      this.channel = FileChannel.open( file.toPath() , StandardOpenOption.READ );
+      this.streamIDs = new ArrayList<byte[]>();
+      this.streamBlocks = new ArrayList<ArrayList<Block>>();
+      this.size = this.channel.size();
+      byte[] header = new byte[SensorLog.BLOCK_HEADER_SIZE];
+      if(  !this.read_fully( header , SensorLog.HEADER_SIZE , 0 )  ||  IPM.decode_int32( header , 0 ) != SensorLog.MAGIC  ){
+        this.channel.close();
+        throw new IOException( "Not a sensor log" );
+      }
+      if( IPM.decode_int32( header , 4 ) != SensorLog.VERSION ){
+        this.channel.close();
+        throw new IOException( "Unsupported log version: " + IPM.decode_int32( header , 4 ) );
+      }
+      HashMap<Integer,Integer> streamIndex = new HashMap<Integer,Integer>();
+      long position = SensorLog.HEADER_SIZE;
+      while( this.read_fully( header , SensorLog.BLOCK_HEADER_SIZE , position ) ){
+        int length = IPM.decode_int16( header , 6 ) & 0xFFFF;
+        int count = IPM.decode_int32( header , 8 );
+        int payloadSize = IPM.decode_int32( header , 12 );
+        if(  IPM.decode_int32( header , 0 ) != SensorLog.BLOCK_MAGIC  ||  count <= 0  ||  payloadSize < 0  ){
+          this.channel.close();
+          throw new IOException( "Corrupted block at byte " + position );
+        }
+        long payloadPosition = position + SensorLog.BLOCK_HEADER_SIZE;
+        if( payloadPosition + payloadSize > this.size ) break;
+        int key = ( header[4] & 0xFF ) | ( header[5] & 0xFF ) << 8 | length << 16;
+        Integer s = streamIndex.get( key );
+        if( s == null ){
+          s = this.streamIDs.size();
+          streamIndex.put( key , s );
+          this.streamIDs.add( new byte[]{ header[4] , header[5] , (byte)length , (byte)( length >> 8 ) } );
+          this.streamBlocks.add( new ArrayList<Block>() );
+        }
+        this.streamBlocks.get( s ).add( new Block( payloadPosition , payloadSize , count , IPM.decode_int64( header , 16 ) ) );
+        position = payloadPosition + payloadSize;
+      }
+    }
+    
+    public int get_streamCount() {
+      return this.streamIDs.size();
+    }
+    
+    public byte get_packetID( int s ) {
+      return this.streamIDs.get( s )[0];
+    }
+    
+    public byte get_sensorID( int s ) {
+      return this.streamIDs.get( s )[1];
+    }
+    
+    public int get_length( int s ) {
+      return IPM.decode_int16( this.streamIDs.get( s ) , 2 ) & 0xFFFF;
+    }
+    
+    public long get_packets( int s ) {
+      long packets = 0;
+      for(Block block : this.streamBlocks.get( s )) packets += block.count;
+      return packets;
+    }
+    
+    public long get_size() {
+      return this.size;
+    }
+    
+    // Method: decode
+    // decodes all the packets of a stream (the blocks are decoded in parallel)
+    // inputs:
+    //  s: index of the stream
+    //  pool: pool where the blocks are decoded
+    // outputs:
+    //  packets of the stream
+    public Stream decode( int s , ForkJoinPool pool ) throws IOException {
+      ArrayList<Block> blocks = this.streamBlocks.get( s );
+      long packets = this.get_packets( s );
+      if( packets > Integer.MAX_VALUE ) throw new IOException( "Too many packets to decode in arrays: " + packets );
+      int offset = 0;
+      for(Block block : blocks){
+        block.offset = offset;
+        offset += block.count;
+      }
+      Stream stream = new Stream( this.get_packetID( s ) , this.get_sensorID( s ) , this.get_length( s ) , offset );
+      DecodeTask task = new DecodeTask( this , stream , blocks , 0 , blocks.size() );
+      pool.invoke( task );
+      if( task.error != null ) throw task.error;
+      return stream;
+    }
+    
+    public void close() throws IOException {
+      this.channel.close();
+    }
+    
+    // reads length bytes from a position of the file (false if the file ends before)
+    private boolean read_fully( byte[] b , int length , long position ) throws IOException {
+      ByteBuffer buffer = ByteBuffer.wrap( b , 0 , length );
+      while( buffer.hasRemaining() ){
+        // the positional reads can be done by several threads at the same time
+        if( this.channel.read( buffer , position + buffer.position() ) < 0 ) return false;
+      }
+      return true;
+    }
+    
+    // decodes a block in its place of the stream
+    private void decode_block( Block block , Stream stream ) throws IOException {
+      byte[] b = new byte[block.payloadSize];
+      if( !this.read_fully( b , b.length , block.position ) ) throw new IOException( "Truncated block at byte " + block.position );
+      int index = 0;
+      int k0 = block.offset;
+      long[] t = stream.t;
+      t[k0] = block.t0;
+      long delta = 0;
+      for(int k=k0+1; k<k0+block.count; k++){
+        long u = 0;
+        int shift = 0;
+        byte byteIn;
+        do{
+          // a corrupted payload can end in the middle of a varint, or have a varint longer than 64 bits
+          if(  index >= b.length  ||  shift > 63  ) throw new IOException( "Corrupted block at byte " + block.position );
+          byteIn = b[index++];
+          u |= (long)( byteIn & 0x7F ) << shift;
+          shift += 7;
+        }while( byteIn < 0 );
+        delta += ( u >>> 1 ) ^ -( u & 1 );
+        t[k] = t[k-1] + delta;
+      }
+      for(int c=0; c<stream.values.length; c++){
+        short[] v = stream.values[c];
+        int previous = 0;
+        for(int k=k0; k<k0+block.count; k++){
+          int u = 0;
+          int shift = 0;
+          byte byteIn;
+          do{
+            if(  index >= b.length  ||  shift > 28  ) throw new IOException( "Corrupted block at byte " + block.position );
+            byteIn = b[index++];
+            u |= ( byteIn & 0x7F ) << shift;
+            shift += 7;
+          }while( byteIn < 0 );
+          previous += ( u >>> 1 ) ^ -( u & 1 );
+          v[k] = (short)previous;
+        }
+      }
+      if( index != b.length ) throw new IOException( "Corrupted block at byte " + block.position );
+    }
+  
+  }
+  
+  // decodes the blocks in [from,to)
+  private static class DecodeTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final Reader reader;
+    private final Stream stream;
+    private final ArrayList<Block> blocks;
+    private final int from;
+    private final int to;
+    IOException error;
+    
+    DecodeTask( Reader readerIn , Stream streamIn , ArrayList<Block> blocksIn , int fromIn , int toIn ) {
+      this.reader = readerIn;
+      this.stream = streamIn;
+      this.blocks = blocksIn;
+      this.from = fromIn;
+      this.to = toIn;
+      this.error = null;
+    }
+    
+    protected void compute() {
+      if( this.to-this.from > 1 ){
+        int middle = (this.from+this.to)/2;
+        DecodeTask left = new DecodeTask( this.reader , this.stream , this.blocks , this.from , middle );
+        DecodeTask right = new DecodeTask( this.reader , this.stream , this.blocks , middle , this.to );
+        invokeAll( left , right );
+        this.error = ( left.error != null )? left.error : right.error;
+        return;
+      }
+      if( this.to == this.from ) return;
+      try{
+        this.reader.decode_block( this.blocks.get( this.from ) , this.stream );
+      }catch( IOException e ){
+        this.error = e;
+      }
+    }
+  }
+  
+  
+  // MAIN
+  
+  // decodes all the streams of a log, and shows the compression ratio and the decoding rate
+  // arguments: file, threads (available processors)
+  public static void main( String[] args ) throws IOException {
+    if( args.length < 1 ){
+      System.out.println( "usage: SensorLog file [threads]" );
+      return;
+    }
+    int threads = ( args.length > 1 )? Integer.parseInt( args[1] ) : Runtime.getRuntime().availableProcessors();
+    Reader reader = new Reader( new File( args[0] ) );
+    ForkJoinPool pool = new ForkJoinPool( threads );
+    long rawBytes = 0;
+    long t0 = System.nanoTime();
+    for(int s=0; s<reader.get_streamCount(); s++){
+      Stream stream = reader.decode( s , pool );
+      // the raw size counts the packets and an 8-byte time for each one
+      rawBytes += (long)stream.size()*( stream.length + 8 );
+      double seconds = ( stream.size() > 1 )? ( stream.t[stream.size()-1] - stream.t[0] )*1.0e-9 : 0.0;
+      System.out.println( String.format( "packet ID %3d   sensor ID %3d   %10d packets of %3d bytes   %.1f s" , stream.packetID & 0xFF , stream.sensorID & 0xFF , stream.size() , stream.length , seconds ) );
+    }
+    double wallSeconds = ( System.nanoTime() - t0 )*1.0e-9;
+    pool.shutdown();
+    reader.close();
+    System.out.println( String.format( "%d bytes (%.2fx smaller than raw) decoded in %.3f s with %d threads: %.1f MB/s of raw data" , reader.get_size() , rawBytes/(double)reader.get_size() , wallSeconds , threads , rawBytes*1.0e-6/wallSeconds ) );
+  }
+  
+}
\ No newline at end of file
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+
+// class that processes the packets of a single sensor (identified by the sensor ID in b[1])
+// each shard has its own data buffers, its own set of estimators, and its own worker thread,
+// so several sensors can be processed in parallel without sharing any state
+public class SensorShard implements Runnable {
+  
+  // PARAMETERS
+  private static final int queueCapacity = 1024;  // packets waiting to be processed (if the worker falls behind, new packets are dropped)
+  
+  // VARIABLES
+  byte sensorID;  // sensor ID of the packets processed by this shard
+  dataAdministrator dataAdmin;  // data buffers of this sensor
+  Fleet fleet;  // estimators of this sensor
+  volatile SnapshotWriter snapshots;  // periodic snapshots of the estimators (null if they are disabled)
+  volatile EstimateRing estimates;  // ring where the estimates are published for other processes (null if it is disabled)
+  
+  // PRIVATE VARIABLES
+  private ArrayBlockingQueue<Packet> queue;
+  private Thread worker;
+  private volatile boolean running;
+  private LongAdder dropped;  // packets dropped because the queue was full (counted by all the sources)
+  
+  
+  // CONSTRUCTORS
+  
+  public SensorShard( byte sensorIDIn , dataAdministrator aDataAdmin , Fleet aFleet ) {
+    this.sensorID = sensorIDIn;
+    this.dataAdmin = aDataAdmin;
+    this.fleet = aFleet;
+    this.queue = new ArrayBlockingQueue<Packet>( SensorShard.queueCapacity );
+    this.running = true;
+    this.dropped = new LongAdder();
+    this.worker = new Thread( this , "SensorShard-" + sensorIDIn );
+    this.worker.setDaemon( true );
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  void start(){
+    this.worker.start();
+  }
+  
+  // Method: submit
+  // queues a data packet to be processed by the worker of this shard (it does not block)
+  // inputs:
+  //  data: data packet
+  //  t0: arrival time of the first byte of the packet (ns)
+  //  t: arrival time of the packet (ns)
+  // outputs:
+  //  false if the packet has been dropped
+  public boolean submit( byte[] data , long t0 , long t ) {
+    if( !this.queue.offer( new Packet( data , t0 , t ) ) ){
+      this.dropped.increment();
+      return false;
+    }
+    return true;
+  }
+  
+  public long get_dropped() {
+    return this.dropped.sum();
+  }
+  
+  // Method: enable_snapshots
+  // restores the estimators from the snapshot file (if it exists), and starts writing snapshots of them periodically
+  // if the worker is running, it is the worker who restores the estimators, before the packets queued after this call
+  // inputs:
+  //  file: snapshot file
+  //  period: time between snapshots (ms)
+  // outputs:
+  void enable_snapshots( final File file , final long period ){
+    this.execute( new Runnable(){
+      public void run(){
+        SensorShard.this.start_snapshots( file , period );
+      }
+    } );
+  }
+  
+  // Method: enable_estimates
+  // creates the ring file where the estimates are published (in the worker, as enable_snapshots)
+  // inputs:
+  //  file: ring file
+  //  slots: number of records kept in the ring
+  // outputs:
+  void enable_estimates( final File file , final int slots ){
+    this.execute( new Runnable(){
+      public void run(){
+        SensorShard.this.start_estimates( file , slots );
+      }
+    } );
+  }
+  
+  // sets the measurement noise of the estimators of the fleet (in the worker, so they are not changed in the middle of an update)
+  void set_Ra( final double Ra ){
+    this.execute( new Runnable(){
+      public void run(){
+        SensorShard.this.fleet.set_Ra( Ra );
+      }
+    } );
+  }
+  
+  void set_Rw( final double Rw ){
+    this.execute( new Runnable(){
+      public void run(){
+        SensorShard.this.fleet.set_Rw( Rw );
+      }
+    } );
+  }
+  
+  public void run() {
+    while( this.running ){
+      try{
+        Packet p = this.queue.poll( 1 , TimeUnit.SECONDS );
+        if(  p != null  &&  p.task != null  ){
+          p.task.run();
+        }else if( p != null ){
+          long tTaken = System.nanoTime();
+          latency.queue.record( tTaken-p.t );
+          // we update the data
+          this.dataAdmin.updateData( p.data );
+          latency.decode.record( System.nanoTime()-tTaken );
+          // and the estimators
+          this.fleet.updateEstimators( p.t0 , p.t , this.dataAdmin.get_am() , this.dataAdmin.get_wm() );
+          // and the renderer gets the state of the fleet after this sample
+          this.fleet.publishSnapshot( p.t , this.dataAdmin.dataCount );
+          // and the other processes, the new estimates
+          if( this.estimates != null ) this.fleet.publishEstimates( this.estimates , p.t );
+          // the snapshot is captured here, between updates, so it is consistent
+          if(  this.snapshots != null  &&  this.snapshots.is_requested()  ) this.snapshots.offer( this.fleet.captureState() );
+        }
+      }catch( InterruptedException e ){
+        break;
+      }
+    }
+  }
+  
+  void stop(){
+    this.running = false;
+    this.worker.interrupt();
+    if( this.snapshots != null ) this.snapshots.stop();
+  }
+  
+  
+  // PRIVATE METHODS
+  
+  // runs a task in the worker, in order with the queued packets (before the worker is started, in the calling thread)
+  private void execute( Runnable task ){
+    if( !this.worker.isAlive() ){
+      task.run();
+      return;
+    }
+    try{
+      // the task is not dropped if the queue is full: we wait for the worker
+      this.queue.put( new Packet( task ) );
+    }catch( InterruptedException e ){
+      Thread.currentThread().interrupt();
+    }
+  }
+  
+  private void start_snapshots( File file , long period ){
+    if( file.exists() ){
+      try{
+        int restored = this.fleet.restoreState( EstimatorSnapshot.read( file ) );
+        println( "sensor " + this.sensorID + ": " + restored + " estimators restored from " + file );
+      }catch( IOException e ){
+        println( "sensor " + this.sensorID + ": the snapshot " + file + " has been ignored (" + e.getMessage() + ")" );
+      }
+    }
+    SnapshotWriter writer = new SnapshotWriter( file , period );
+    writer.start();
+    this.snapshots = writer;
+  }
+  
+  private void start_estimates( File file , int slots ){
+    try{
+      this.estimates = new EstimateRing( file , slots , this.fleet.get_labels() );
+      println( "sensor " + this.sensorID + ": estimates published in " + file );
+    }catch( IOException e ){
+      println( "sensor " + this.sensorID + ": the estimate ring " + file + " could not be created (" + e.getMessage() + ")" );
+    }
+  }
+  
+  
+  // PRIVATE CLASSES
+  
+  // data packet together with its arrival times, or a task for the worker (see execute)
+  private class Packet {
+    byte[] data;
+    long t0;
+    long t;
+    Runnable task;
+    
+    Packet( byte[] dataIn , long t0In , long tIn ){
+      this.data = dataIn;
+      this.t0 = t0In;
+      this.t = tIn;
+      this.task = null;
+    }
+    
+    Packet( Runnable taskIn ){
+      this.data = null;
+      this.task = taskIn;
+    }
+  }
+  
+}
\ No newline at end of file
@@ -16,18 +16,30 @@
  */
 
 
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+
 // class that implements the communication of the serial port
-public class SerialPortManager {
+// the port is read by its own thread (see DeviceThreads), that blocks until serialEvent reports activity in the port, and
+// passes the complete packets to the listener
+public class SerialPortManager implements Runnable {
+  
+  // PARAMETERS
+  private static final long maxWait = 100;  // maximum time without checking the port, if no activity is reported (ms)
   
   // PRIVATE VARIABLES
   private Serial serialPort;  // the serial port
   private String serialPortName;  // name of the serial port
   private MessageManager MM;  // the one that manages the package reception
+  private PacketListener listener;  // receiver of the packets
+  private Semaphore activity;  // a permit is released each time that there is activity in the port
+  private volatile boolean running;
   
   
   // CONSTRUCTORS
   
-  public SerialPortManager( PApplet thePApplet , String theName ) throws Exception {
+  public SerialPortManager( PApplet thePApplet , String theName , PacketListener aListener ) throws Exception {
     try{
       this.serialPort = new Serial( thePApplet , theName , 115200 );
     }catch( Exception e ){
@@ -35,6 +47,10 @@ public class SerialPortManager {
     }
     this.serialPortName = theName;
     this.MM = new MessageManager( 2 );
+    this.listener = aListener;
+    this.activity = new Semaphore( 0 );
+    this.running = true;
+    DeviceThreads.start( "SerialPortManager " + theName , this );
   }
   
   
@@ -43,6 +59,34 @@ public class SerialPortManager {
   }
   
   
+  public boolean is_thisSerial( Serial aSerial ) {
+    return ( this.serialPort == aSerial );
+  }
+  
+  
+  // wakes up the thread of the port (the permits are not lost if the thread is not waiting)
+  public void notify_activity() {
+    this.activity.release();
+  }
+  
+  
+  public void run() {
+    while( this.running ){
+      try{
+        this.activity.tryAcquire( SerialPortManager.maxWait , TimeUnit.MILLISECONDS );
+      }catch( InterruptedException e ){
+        return;
+      }
+      // all the available bytes are read, so the permits of the same activity are not needed
+      this.activity.drainPermits();
+      while(  this.running  &&  this.serialPort.available() > 0  ){
+        byte[] data = this.read();
+        if( data != null ) this.listener.packetReceived( data , this.get_frameStartTime() , System.nanoTime() );
+      }
+    }
+  }
+  
+  
   public int available() {
     return this.serialPort.available();
   }
@@ -53,7 +97,15 @@ public class SerialPortManager {
   }
   
   
+  // time when the first byte of the last message was read
+  public long get_frameStartTime() {
+    return this.MM.get_frameStartTime();
+  }
+  
+  
   public void stop() {
+    this.running = false;
+    this.activity.release();
     this.serialPort.clear();
     this.serialPort.stop();
   }
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+
+// class that partitions the incoming packets by sensor ID
+// the first shard uses the displayed data administrator and fleet, and it is bound to the first sensor that sends data;
+// the following sensors get their own data administrator and a fleet that is not displayed
+public class ShardManager {
+  
+  // PRIVATE VARIABLES
+  private volatile SensorShard[] shard;  // created shards (the first one is the displayed one)
+  private int shardCount;  // number of created shards
+  private AtomicIntegerArray shardIndex;  // index of the shard for each sensor ID (-1 if it has not been created)
+  private boolean displayedBound;  // true when the first shard has been bound to a sensor
+  private volatile SensorLog recording;  // log of the dispatched packets (null if they are not recorded)
+  
+  
+  // CONSTRUCTORS
+  
+  public ShardManager( dataAdministrator aDataAdmin , Fleet aFleet ) {
+    this.shardIndex = new AtomicIntegerArray( 256 );
+    for(int k=0; k<256; k++) this.shardIndex.set( k , -1 );
+    this.displayedBound = false;
+    // the displayed shard exists from the beginning, so the GUI settings always reach it
+    this.shard = new SensorShard[]{ new SensorShard( (byte)0 , aDataAdmin , aFleet ) };
+    this.shardCount = 1;
+    this.shard[0].start();
+    this.recording = null;
+    if( recordSensors ){
+      File file = new File( sketchPath( "recordings/sensors_" + System.currentTimeMillis() + ".mkfl" ) );
+      try{
+        this.recording = new SensorLog( file );
+        System.out.println( "Recording the sensors in " + file );
+      }catch( IOException e ){
+        System.out.println( "The sensor log could not be created: " + e.getMessage() );
+      }
+    }
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  // Method: dispatch
+  // sends the packet to the shard of its sensor, creating the shard if it is the first packet of that sensor
+  // inputs:
+  //  data: data packet (b[0]: information packet ID, b[1]: sensor ID)
+  //  t0: arrival time of the first byte of the packet (ns)
+  //  t: arrival time of the packet (ns)
+  // outputs:
+  public void dispatch( byte[] data , long t0 , long t ) {
+    if( data.length < 2 ) return;
+    this.record( data , t );
+    int ID = data[1] & 0xFF;
+    // the index is written after the array of shards, so the array read after the index contains the shard
+    int index = this.shardIndex.get( ID );
+    if( index < 0 ) index = this.create_shard( data[1] );
+    this.shard[index].submit( data , t0 , t );
+  }
+  
+  // Method: get_shards
+  // returns the created shards (the array is replaced, not modified, when a new shard is created)
+  // inputs:
+  // outputs:
+  //  array with the created shards
+  public SensorShard[] get_shards() {
+    return this.shard;
+  }
+  
+  void stop(){
+    for(int s=0; s<this.shardCount; s++) this.shard[s].stop();
+    if( this.recording != null ){
+      try{
+        this.recording.close();
+      }catch( IOException e ){
+        System.out.println( "The sensor log could not be closed: " + e.getMessage() );
+      }
+    }
+  }
+  
+  
+  // PRIVATE METHODS
+  
+  // creates the shard for a new sensor (the packets can be dispatched by several sources, so it checks again that the
+  // shard has not been created)
+  private synchronized int create_shard( byte sensorID ) {
+    if( this.shardIndex.get( sensorID & 0xFF ) >= 0 ) return this.shardIndex.get( sensorID & 0xFF );
+    // the first sensor is bound to the displayed shard
+    if( !this.displayedBound ){
+      this.displayedBound = true;
+      this.shard[0].sensorID = sensorID;
+      // its worker is already running, so the estimators are restored by the worker (before the packets of the sensor,
+      // that are dispatched to the shard when the index is set)
+      if( snapshotPeriod > 0 ) this.shard[0].enable_snapshots( this.snapshotFile( sensorID ) , snapshotPeriod );
+      if( estimateRingSlots > 0 ) this.shard[0].enable_estimates( this.ringFile( sensorID ) , estimateRingSlots );
+      this.shardIndex.set( sensorID & 0xFF , 0 );
+      return 0;
+    }
+    
+    Fleet aFleet = new Fleet( false );
+    populateFleet( aFleet );
+    SensorShard newShard = new SensorShard( sensorID , new dataAdministrator() , aFleet );
+    // the new shard takes the settings that are currently selected in the GUI
+    theGUI.apply_settings( newShard );
+    if( snapshotPeriod > 0 ) newShard.enable_snapshots( this.snapshotFile( sensorID ) , snapshotPeriod );
+    if( estimateRingSlots > 0 ) newShard.enable_estimates( this.ringFile( sensorID ) , estimateRingSlots );
+    newShard.start();
+    
+    // we create a new array with space for another shard (the GUI reads the old one meanwhile)
+    SensorShard[] newShards = new SensorShard[this.shardCount+1];
+    for(int s=0; s<this.shardCount; s++) newShards[s] = this.shard[s];
+    newShards[this.shardCount] = newShard;
+    // and we set the reference to the new array (before the index, so a dispatch that reads the index finds the shard)
+    this.shard = newShards;
+    this.shardIndex.set( sensorID & 0xFF , this.shardCount );
+    this.shardCount++;
+    
+    return this.shardCount-1;
+  }
+  
+  // writes a packet in the log, if the sensors are being recorded (if the log can not be written, the recording is stopped)
+  private void record( byte[] data , long t ) {
+    SensorLog log = this.recording;
+    if( log == null ) return;
+    try{
+      log.write( data , t );
+    }catch( IOException e ){
+      System.out.println( "The sensor log could not be written: " + e.getMessage() );
+      this.recording = null;
+    }
+  }
+  
+  // ring file with the estimates of a sensor
+  private File ringFile( byte sensorID ) {
+    return new File( sketchPath( "estimates/estimates_" + ( sensorID & 0xFF ) + ".ring" ) );
+  }
+  
+  // file with the snapshots of the estimators of a sensor
+  private File snapshotFile( byte sensorID ) {
+    return new File( sketchPath( "snapshots/estimators_" + ( sensorID & 0xFF ) + ".bin" ) );
+  }
+  
+}
\ No newline at end of file
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+
+// class that runs a set of estimators over simulated data, as fast as the CPU allows
+// the estimators are updated with the fixed time step of the IMUSimulator (not with the wall-clock time), so two runs
+// with the same seed and parameters produce bit-for-bit the same results (see get_checksum). Each estimator is
+// updated in its own thread, with its own copy of the simulator (all the copies produce the same samples)
+public class SimulationRunner {
+  
+  // PRIVATE VARIABLES
+  private IMUSimulator[] simulators;  // one copy of the simulator for each estimator
+  private OrientationEstimator[] estimators;
+  private long[] nanos;  // CPU time spent updating each estimator (ns; wall-clock time if the JVM can not measure it)
+  private long updates;  // number of updates of each estimator
+  
+  
+  // CONSTRUCTORS
+  
+  public SimulationRunner( IMUSimulator simulator , OrientationEstimator[] estimatorsIn ) {
+    this.estimators = estimatorsIn;
+    this.simulators = new IMUSimulator[estimatorsIn.length];
+    for(int n=0; n<estimatorsIn.length; n++) this.simulators[n] = simulator.copy();
+    this.nanos = new long[estimatorsIn.length];
+    this.updates = 0;
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  // Method: run
+  // generates samples and updates the estimators with them (each estimator in its own thread)
+  // inputs:
+  //  samples: number of samples to generate
+  // outputs:
+  public void run( final long samples ) {
+    Thread[] threads = new Thread[this.estimators.length];
+    for(int n=0; n<this.estimators.length; n++){
+      final int index = n;
+      threads[n] = new Thread( new Runnable() {
+        public void run() {
+          SimulationRunner.this.runEstimator( index , samples );
+        }
+      } , "SimulationRunner-" + n );
+      threads[n].start();
+    }
+    for(int n=0; n<threads.length; n++){
+      try{
+        threads[n].join();
+      }catch( InterruptedException e ){
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+    this.updates += samples;
+  }
+  
+  public long get_updates() {
+    return this.updates;
+  }
+  
+  public double get_nanosPerUpdate( int n ) {
+    return ( this.updates > 0 )? (double)this.nanos[n]/this.updates : 0.0;
+  }
+  
+  // Method: get_checksum
+  // computes a checksum of the quaternions of all the estimators (it only depends on their bits)
+  // inputs:
+  // outputs:
+  //  checksum of the quaternions
+  public long get_checksum() {
+    long h = 1125899906842597L;
+    double[] q = new double[4];
+    for(int n=0; n<this.estimators.length; n++){
+      this.estimators[n].get_q( q );
+      for(int i=0; i<4; i++) h = 31*h + Double.doubleToLongBits( q[i] );
+    }
+    return h;
+  }
+  
+  
+  // PRIVATE METHODS
+  
+  // updates one estimator with the samples of its simulator
+  private void runEstimator( int n , long samples ) {
+    IMUSimulator simulator = this.simulators[n];
+    OrientationEstimator estimator = this.estimators[n];
+    double dt = simulator.get_dt();
+    double[] am = new double[3];
+    double[] wm = new double[3];
+    // we measure the CPU time of the thread (the threads can share the cores)
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    boolean cpuTime = bean.isCurrentThreadCpuTimeSupported();
+    long t0 = ( cpuTime )? bean.getCurrentThreadCpuTime() : System.nanoTime();
+    for(long k=0; k<samples; k++){
+      simulator.next( am , wm );
+      estimator.updateIMU( am , wm , dt );
+    }
+    long t1 = ( cpuTime )? bean.getCurrentThreadCpuTime() : System.nanoTime();
+    this.nanos[n] += t1 - t0;
+  }
+  
+  
+  // MAIN
+  
+  // runs the nine estimators of the sketch over simulated data
+  // arguments (all optional): simulated seconds (3600), nominal rate (1000 samples/s), seed (1), profile (1: static, 2: bad),
+  // accelerometer noise standard deviation (0.01 g), gyroscope noise standard deviation (0.01 rad/s)
+  public static void main( String[] args ) {
+    double seconds = ( args.length > 0 )? Double.parseDouble( args[0] ) : 3600.0;
+    double rate = ( args.length > 1 )? Double.parseDouble( args[1] ) : 1000.0;
+    long seed = ( args.length > 2 )? Long.parseLong( args[2] ) : 1;
+    int profile = ( args.length > 3 )? Integer.parseInt( args[3] ) : IMUSimulator.STATIC;
+    double ra = ( args.length > 4 )? Double.parseDouble( args[4] ) : 0.01;
+    double rw = ( args.length > 5 )? Double.parseDouble( args[5] ) : 0.01;
+    
+    IMUSimulator simulator = new IMUSimulator( seed , rate );
+    simulator.set_profile( profile );
+    simulator.set_ra( ra );
+    simulator.set_rw( rw );
+    OrientationEstimator[] estimators = new OrientationEstimator[Estimators.count()];
+    for(int n=0; n<estimators.length; n++) estimators[n] = Estimators.create( n );
+    for(int n=0; n<estimators.length; n++){
+      estimators[n].set_Ra( ra*ra );
+      estimators[n].set_Rw( rw*rw );
+    }
+    
+    SimulationRunner runner = new SimulationRunner( simulator , estimators );
+    long samples = (long)( seconds*rate );
+    long t0 = System.nanoTime();
+    runner.run( samples );
+    double wallSeconds = ( System.nanoTime() - t0 )*1.0e-9;
+    
+    System.out.println( String.format( "%d samples (%.1f s simulated) in %.2f s: %.0fx real time" , samples , seconds , wallSeconds , seconds/wallSeconds ) );
+    double[] q = new double[4];
+    for(int n=0; n<estimators.length; n++){
+      estimators[n].get_q( q );
+      System.out.println( String.format( "%-10s %8.1f ns/update   q = ( %+.6f , %+.6f , %+.6f , %+.6f )" , Estimators.NAMES[n] , runner.get_nanosPerUpdate( n ) , q[0] , q[1] , q[2] , q[3] ) );
+    }
+    System.out.println( String.format( "checksum: %016x" , runner.get_checksum() ) );
+  }
+  
+}
\ No newline at end of file
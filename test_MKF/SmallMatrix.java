@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+// kernels for the small dense matrices of the filters (3x3, 6x6 and 12x12)
+// all the matrices are stored by columns (the element (i,j) of an nxn matrix A is A[i+j*n])
+// the sizes are fixed, so the inner products are written out and the loops have constant bounds: the JIT unrolls them
+// and it can vectorize the column operations. The terms of each inner product are added in increasing order of k, as
+// in the loops that these kernels replace, so the results do not change
+public class SmallMatrix {
+  
+  // PUBLIC STATIC METHODS
+  
+  // Method: multiply3
+  // computes C = A*B
+  // inputs:
+  //  A, B: 3x3 matrices
+  // outputs:
+  //  C: 3x3 matrix (it can not be A or B)
+  public static void multiply3( double[] A , double[] B , double[] C ){
+    for(int j=0; j<9; j+=3){
+      double b0 = B[j];
+      double b1 = B[j+1];
+      double b2 = B[j+2];
+      C[j] = A[0]*b0 + A[3]*b1 + A[6]*b2;
+      C[j+1] = A[1]*b0 + A[4]*b1 + A[7]*b2;
+      C[j+2] = A[2]*b0 + A[5]*b1 + A[8]*b2;
+    }
+    
+    return;
+  }
+  
+  // Method: congruence3
+  // computes the symmetric matrix C = A*S*A' (only the lower triangle is computed, and it is copied to the upper one)
+  // inputs:
+  //  A: 3x3 matrix
+  //  S: 3x3 symmetric matrix
+  //  T: 3x3 workspace
+  // outputs:
+  //  T: S*A'
+  //  C: 3x3 symmetric matrix (it can be S, but not A or T)
+  public static void congruence3( double[] A , double[] S , double[] T , double[] C ){
+    for(int j=0; j<3; j++){
+      double a0 = A[j];
+      double a1 = A[j+3];
+      double a2 = A[j+6];
+      for(int i=0; i<3; i++) T[i+j*3] = S[i]*a0 + S[i+3]*a1 + S[i+6]*a2;
+    }
+    for(int j=0; j<3; j++){
+      double t0 = T[j*3];
+      double t1 = T[1+j*3];
+      double t2 = T[2+j*3];
+      for(int i=j; i<3; i++){
+        C[i+j*3] = A[i]*t0 + A[i+3]*t1 + A[i+6]*t2;
+        C[j+i*3] = C[i+j*3];
+      }
+    }
+    
+    return;
+  }
+  
+  // Method: multiply6
+  // computes C = A*B
+  // inputs:
+  //  A, B: 6x6 matrices
+  // outputs:
+  //  C: 6x6 matrix (it can not be A or B)
+  public static void multiply6( double[] A , double[] B , double[] C ){
+    for(int j=0; j<36; j+=6){
+      double b0 = B[j];
+      double b1 = B[j+1];
+      double b2 = B[j+2];
+      double b3 = B[j+3];
+      double b4 = B[j+4];
+      double b5 = B[j+5];
+      for(int i=0; i<6; i++) C[i+j] = A[i]*b0 + A[i+6]*b1 + A[i+12]*b2 + A[i+18]*b3 + A[i+24]*b4 + A[i+30]*b5;
+    }
+    
+    return;
+  }
+  
+  // Method: multiplyTransposed6
+  // computes C = A*B'
+  // inputs:
+  //  A, B: 6x6 matrices
+  // outputs:
+  //  C: 6x6 matrix (it can not be A or B)
+  public static void multiplyTransposed6( double[] A , double[] B , double[] C ){
+    for(int j=0; j<6; j++){
+      double b0 = B[j];
+      double b1 = B[j+6];
+      double b2 = B[j+12];
+      double b3 = B[j+18];
+      double b4 = B[j+24];
+      double b5 = B[j+30];
+      for(int i=0; i<6; i++) C[i+j*6] = A[i]*b0 + A[i+6]*b1 + A[i+12]*b2 + A[i+18]*b3 + A[i+24]*b4 + A[i+30]*b5;
+    }
+    
+    return;
+  }
+  
+  // Method: multiplyVector6
+  // computes y = A*x
+  // inputs:
+  //  A: 6x6 matrix
+  //  x: vector of 6 components
+  // outputs:
+  //  y: vector of 6 components (it can not be x)
+  public static void multiplyVector6( double[] A , double[] x , double[] y ){
+    double x0 = x[0];
+    double x1 = x[1];
+    double x2 = x[2];
+    double x3 = x[3];
+    double x4 = x[4];
+    double x5 = x[5];
+    for(int i=0; i<6; i++) y[i] = A[i]*x0 + A[i+6]*x1 + A[i+12]*x2 + A[i+18]*x3 + A[i+24]*x4 + A[i+30]*x5;
+    
+    return;
+  }
+  
+  // Method: congruence6
+  // computes the symmetric matrix C = A*S*A' (only the lower triangle is computed, and it is copied to the upper one)
+  // inputs:
+  //  A: 6x6 matrix
+  //  S: 6x6 symmetric matrix
+  //  T: 6x6 workspace
+  // outputs:
+  //  T: S*A'
+  //  C: 6x6 symmetric matrix (it can be S, but not A or T)
+  public static void congruence6( double[] A , double[] S , double[] T , double[] C ){
+    SmallMatrix.multiplyTransposed6( S , A , T );
+    for(int j=0; j<6; j++){
+      double t0 = T[j*6];
+      double t1 = T[1+j*6];
+      double t2 = T[2+j*6];
+      double t3 = T[3+j*6];
+      double t4 = T[4+j*6];
+      double t5 = T[5+j*6];
+      for(int i=j; i<6; i++){
+        C[i+j*6] = A[i]*t0 + A[i+6]*t1 + A[i+12]*t2 + A[i+18]*t3 + A[i+24]*t4 + A[i+30]*t5;
+        C[j+i*6] = C[i+j*6];
+      }
+    }
+    
+    return;
+  }
+  
+  // Method: symmetrize6
+  // computes the symmetric part of a matrix: C = ( A + A' )/2
+  // inputs:
+  //  A: 6x6 matrix
+  // outputs:
+  //  C: 6x6 symmetric matrix (it can be A)
+  public static void symmetrize6( double[] A , double[] C ){
+    for(int j=0; j<6; j++){
+      C[j*7] = A[j*7];
+      for(int i=j+1; i<6; i++){
+        C[i+j*6] = 0.5*( A[i+j*6] + A[j+i*6] );
+        C[j+i*6] = C[i+j*6];
+      }
+    }
+    
+    return;
+  }
+  
+  // Method: cholesky6
+  // performs the Cholesky decomposition of a positive definite matrix ( S = L*L' )
+  // inputs:
+  //  S: 6x6 positive definite matrix to be decomposed (only its lower triangle is read)
+  // outputs:
+  //  S: the lower triangular matrix L (6x6) is overwritten in S (the upper triangle is set to 0)
+  public static void cholesky6( double[] S ){
+    for(int j=0; j<6; j++){
+      double sum = 0.0;
+      for(int k=0; k<j; k++){
+        S[k+j*6] = 0.0;
+        sum += S[j+k*6]*S[j+k*6];
+      }
+      double d = Math.sqrt( S[j*7] - sum );
+      S[j*7] = d;
+      for(int i=j+1; i<6; i++){
+        sum = 0.0;
+        for(int k=0; k<j; k++) sum += S[i+k*6]*S[j+k*6];
+        S[i+j*6] = ( S[i+j*6] - sum )/d;
+      }
+    }
+    
+    return;
+  }
+  
+  // Method: cholesky12
+  // performs the Cholesky decomposition of a positive definite matrix ( S = L*L' )
+  // inputs:
+  //  S: 12x12 positive definite matrix to be decomposed (only its lower triangle is read)
+  // outputs:
+  //  S: the lower triangular matrix L (12x12) is overwritten in S (the upper triangle is set to 0)
+  public static void cholesky12( double[] S ){
+    for(int j=0; j<12; j++){
+      double sum = 0.0;
+      for(int k=0; k<j; k++){
+        S[k+j*12] = 0.0;
+        sum += S[j+k*12]*S[j+k*12];
+      }
+      double d = Math.sqrt( S[j*13] - sum );
+      S[j*13] = d;
+      for(int i=j+1; i<12; i++){
+        sum = 0.0;
+        for(int k=0; k<j; k++) sum += S[i+k*12]*S[j+k*12];
+        S[i+j*12] = ( S[i+j*12] - sum )/d;
+      }
+    }
+    
+    return;
+  }
+  
+  // Method: forwardSubstitution6
+  // solves the system  L*y = b  for y, being L a 6x6 lower triangular matrix
+  // inputs:
+  //  L: 6x6 lower triangular matrix
+  //  b: vector of 6 components, starting at the position offset
+  //  offset: position of the first component of b
+  // outputs:
+  //  b: y is overwritten in b
+  public static void forwardSubstitution6( double[] L , double[] b , int offset ){
+    for(int j=0; j<6; j++){
+      double sum = 0.0;
+      for(int k=0; k<j; k++) sum += L[j+k*6]*b[offset+k];
+      b[offset+j] = ( b[offset+j] - sum )/L[j*7];
+    }
+    
+    return;
+  }
+  
+  // Method: solveRight6
+  // solves the system of linear equations  X*S = B  for X, being S positive definite
+  // inputs:
+  //  S: 6x6 positive definite matrix
+  //  B: 6x6 matrix
+  // outputs:
+  //  S: the Cholesky factor L of S ( S = L*L' )
+  //  B: X is overwritten in B
+  public static void solveRight6( double[] S , double[] B ){
+    SmallMatrix.cholesky6( S );
+    // each row of X is solved independently: first  y*L' = b  (L*y' = b'), then  x*L = y  (L'*x' = y')
+    for(int i=0; i<6; i++){
+      for(int j=0; j<6; j++){
+        double sum = 0.0;
+        for(int k=0; k<j; k++) sum += B[i+k*6]*S[j+k*6];
+        B[i+j*6] = ( B[i+j*6] - sum )/S[j*7];
+      }
+      for(int j=5; j>-1; j--){
+        double sum = 0.0;
+        for(int k=j+1; k<6; k++) sum += B[i+k*6]*S[k+j*6];
+        B[i+j*6] = ( B[i+j*6] - sum )/S[j*7];
+      }
+    }
+    
+    return;
+  }
+  
+}
\ No newline at end of file
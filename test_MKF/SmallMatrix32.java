@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+// kernels for the small dense matrices of the float filters (3x3, 6x6 and 12x12), as in SmallMatrix
+// all the matrices are stored by columns (the element (i,j) of an nxn matrix A is A[i+j*n])
+// the sizes are fixed, so the inner products are written out and the loops have constant bounds: the JIT unrolls them
+// and it can vectorize the column operations. The terms of each inner product are added in increasing order of k, as
+// in the loops that these kernels replace, so the results do not change
+public class SmallMatrix32 {
+  
+  // PUBLIC STATIC METHODS
+  
+  // Method: multiply3
+  // computes C = A*B
+  // inputs:
+  //  A, B: 3x3 matrices
+  // outputs:
+  //  C: 3x3 matrix (it can not be A or B)
+  public static void multiply3( float[] A , float[] B , float[] C ){
+    for(int j=0; j<9; j+=3){
+      float b0 = B[j];
+      float b1 = B[j+1];
+      float b2 = B[j+2];
+      C[j] = A[0]*b0 + A[3]*b1 + A[6]*b2;
+      C[j+1] = A[1]*b0 + A[4]*b1 + A[7]*b2;
+      C[j+2] = A[2]*b0 + A[5]*b1 + A[8]*b2;
+    }
+    
+    return;
+  }
+  
+  // Method: congruence3
+  // computes the symmetric matrix C = A*S*A' (only the lower triangle is computed, and it is copied to the upper one)
+  // inputs:
+  //  A: 3x3 matrix
+  //  S: 3x3 symmetric matrix
+  //  T: 3x3 workspace
+  // outputs:
+  //  T: S*A'
+  //  C: 3x3 symmetric matrix (it can be S, but not A or T)
+  public static void congruence3( float[] A , float[] S , float[] T , float[] C ){
+    for(int j=0; j<3; j++){
+      float a0 = A[j];
+      float a1 = A[j+3];
+      float a2 = A[j+6];
+      for(int i=0; i<3; i++) T[i+j*3] = S[i]*a0 + S[i+3]*a1 + S[i+6]*a2;
+    }
+    for(int j=0; j<3; j++){
+      float t0 = T[j*3];
+      float t1 = T[1+j*3];
+      float t2 = T[2+j*3];
+      for(int i=j; i<3; i++){
+        C[i+j*3] = A[i]*t0 + A[i+3]*t1 + A[i+6]*t2;
+        C[j+i*3] = C[i+j*3];
+      }
+    }
+    
+    return;
+  }
+  
+  // Method: multiply6
+  // computes C = A*B
+  // inputs:
+  //  A, B: 6x6 matrices
+  // outputs:
+  //  C: 6x6 matrix (it can not be A or B)
+  public static void multiply6( float[] A , float[] B , float[] C ){
+    for(int j=0; j<36; j+=6){
+      float b0 = B[j];
+      float b1 = B[j+1];
+      float b2 = B[j+2];
+      float b3 = B[j+3];
+      float b4 = B[j+4];
+      float b5 = B[j+5];
+      for(int i=0; i<6; i++) C[i+j] = A[i]*b0 + A[i+6]*b1 + A[i+12]*b2 + A[i+18]*b3 + A[i+24]*b4 + A[i+30]*b5;
+    }
+    
+    return;
+  }
+  
+  // Method: multiplyTransposed6
+  // computes C = A*B'
+  // inputs:
+  //  A, B: 6x6 matrices
+  // outputs:
+  //  C: 6x6 matrix (it can not be A or B)
+  public static void multiplyTransposed6( float[] A , float[] B , float[] C ){
+    for(int j=0; j<6; j++){
+      float b0 = B[j];
+      float b1 = B[j+6];
+      float b2 = B[j+12];
+      float b3 = B[j+18];
+      float b4 = B[j+24];
+      float b5 = B[j+30];
+      for(int i=0; i<6; i++) C[i+j*6] = A[i]*b0 + A[i+6]*b1 + A[i+12]*b2 + A[i+18]*b3 + A[i+24]*b4 + A[i+30]*b5;
+    }
+    
+    return;
+  }
+  
+  // Method: multiplyVector6
+  // computes y = A*x
+  // inputs:
+  //  A: 6x6 matrix
+  //  x: vector of 6 components
+  // outputs:
+  //  y: vector of 6 components (it can not be x)
+  public static void multiplyVector6( float[] A , float[] x , float[] y ){
+    float x0 = x[0];
+    float x1 = x[1];
+    float x2 = x[2];
+    float x3 = x[3];
+    float x4 = x[4];
+    float x5 = x[5];
+    for(int i=0; i<6; i++) y[i] = A[i]*x0 + A[i+6]*x1 + A[i+12]*x2 + A[i+18]*x3 + A[i+24]*x4 + A[i+30]*x5;
+    
+    return;
+  }
+  
+  // Method: congruence6
+  // computes the symmetric matrix C = A*S*A' (only the lower triangle is computed, and it is copied to the upper one)
+  // inputs:
+  //  A: 6x6 matrix
+  //  S: 6x6 symmetric matrix
+  //  T: 6x6 workspace
+  // outputs:
+  //  T: S*A'
+  //  C: 6x6 symmetric matrix (it can be S, but not A or T)
+  public static void congruence6( float[] A , float[] S , float[] T , float[] C ){
+    SmallMatrix32.multiplyTransposed6( S , A , T );
+    for(int j=0; j<6; j++){
+      float t0 = T[j*6];
+      float t1 = T[1+j*6];
+      float t2 = T[2+j*6];
+      float t3 = T[3+j*6];
+      float t4 = T[4+j*6];
+      float t5 = T[5+j*6];
+      for(int i=j; i<6; i++){
+        C[i+j*6] = A[i]*t0 + A[i+6]*t1 + A[i+12]*t2 + A[i+18]*t3 + A[i+24]*t4 + A[i+30]*t5;
+        C[j+i*6] = C[i+j*6];
+      }
+    }
+    
+    return;
+  }
+  
+  // Method: symmetrize6
+  // computes the symmetric part of a matrix: C = ( A + A' )/2
+  // inputs:
+  //  A: 6x6 matrix
+  // outputs:
+  //  C: 6x6 symmetric matrix (it can be A)
+  public static void symmetrize6( float[] A , float[] C ){
+    for(int j=0; j<6; j++){
+      C[j*7] = A[j*7];
+      for(int i=j+1; i<6; i++){
+        C[i+j*6] = 0.5f*( A[i+j*6] + A[j+i*6] );
+        C[j+i*6] = C[i+j*6];
+      }
+    }
+    
+    return;
+  }
+  
+  // Method: cholesky6
+  // performs the Cholesky decomposition of a positive definite matrix ( S = L*L' )
+  // inputs:
+  //  S: 6x6 positive definite matrix to be decomposed (only its lower triangle is read)
+  // outputs:
+  //  S: the lower triangular matrix L (6x6) is overwritten in S (the upper triangle is set to 0; the columns without
+  //     a positive pivot are set to 0)
+  public static void cholesky6( float[] S ){
+    for(int j=0; j<6; j++){
+      float sum = 0.0f;
+      for(int k=0; k<j; k++){
+        S[k+j*6] = 0.0f;
+        sum += S[j+k*6]*S[j+k*6];
+      }
+      // in single precision the rounding errors can make the nearly singular directions of S slightly negative,
+      // so we treat them as directions with zero variance
+      float d = S[j*7] - sum;
+      if( !( d > 0.0f ) ){
+        for(int i=j; i<6; i++) S[i+j*6] = 0.0f;
+        continue;
+      }
+      d = (float)Math.sqrt( d );
+      S[j*7] = d;
+      for(int i=j+1; i<6; i++){
+        sum = 0.0f;
+        for(int k=0; k<j; k++) sum += S[i+k*6]*S[j+k*6];
+        S[i+j*6] = ( S[i+j*6] - sum )/d;
+      }
+    }
+    
+    return;
+  }
+  
+  // Method: cholesky12
+  // performs the Cholesky decomposition of a positive definite matrix ( S = L*L' )
+  // inputs:
+  //  S: 12x12 positive definite matrix to be decomposed (only its lower triangle is read)
+  // outputs:
+  //  S: the lower triangular matrix L (12x12) is overwritten in S (the upper triangle is set to 0; the columns without
+  //     a positive pivot are set to 0)
+  public static void cholesky12( float[] S ){
+    for(int j=0; j<12; j++){
+      float sum = 0.0f;
+      for(int k=0; k<j; k++){
+        S[k+j*12] = 0.0f;
+        sum += S[j+k*12]*S[j+k*12];
+      }
+      // in single precision the rounding errors can make the nearly singular directions of S slightly negative,
+      // so we treat them as directions with zero variance
+      float d = S[j*13] - sum;
+      if( !( d > 0.0f ) ){
+        for(int i=j; i<12; i++) S[i+j*12] = 0.0f;
+        continue;
+      }
+      d = (float)Math.sqrt( d );
+      S[j*13] = d;
+      for(int i=j+1; i<12; i++){
+        sum = 0.0f;
+        for(int k=0; k<j; k++) sum += S[i+k*12]*S[j+k*12];
+        S[i+j*12] = ( S[i+j*12] - sum )/d;
+      }
+    }
+    
+    return;
+  }
+  
+  // Method: forwardSubstitution6
+  // solves the system  L*y = b  for y, being L a 6x6 lower triangular matrix
+  // inputs:
+  //  L: 6x6 lower triangular matrix
+  //  b: vector of 6 components, starting at the position offset
+  //  offset: position of the first component of b
+  // outputs:
+  //  b: y is overwritten in b
+  public static void forwardSubstitution6( float[] L , float[] b , int offset ){
+    for(int j=0; j<6; j++){
+      float sum = 0.0f;
+      for(int k=0; k<j; k++) sum += L[j+k*6]*b[offset+k];
+      b[offset+j] = ( b[offset+j] - sum )/L[j*7];
+    }
+    
+    return;
+  }
+  
+  // Method: solveRight6
+  // solves the system of linear equations  X*S = B  for X, being S positive definite
+  // inputs:
+  //  S: 6x6 positive definite matrix
+  //  B: 6x6 matrix
+  // outputs:
+  //  S: the Cholesky factor L of S ( S = L*L' )
+  //  B: X is overwritten in B
+  public static void solveRight6( float[] S , float[] B ){
+    SmallMatrix32.cholesky6( S );
+    // each row of X is solved independently: first  y*L' = b  (L*y' = b'), then  x*L = y  (L'*x' = y')
+    for(int i=0; i<6; i++){
+      for(int j=0; j<6; j++){
+        float sum = 0.0f;
+        for(int k=0; k<j; k++) sum += B[i+k*6]*S[j+k*6];
+        B[i+j*6] = ( B[i+j*6] - sum )/S[j*7];
+      }
+      for(int j=5; j>-1; j--){
+        float sum = 0.0f;
+        for(int k=j+1; k<6; k++) sum += B[i+k*6]*S[k+j*6];
+        B[i+j*6] = ( B[i+j*6] - sum )/S[j*7];
+      }
+    }
+    
+    return;
+  }
+  
+}
\ No newline at end of file
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+
+// thread that writes periodically a snapshot of a set of estimators in a file
+// the snapshot is captured by the thread that updates the estimators (so the state is consistent): it checks
+// is_requested after its updates, and it hands the snapshot over with offer. The file is written by this thread,
+// out of the path of the updates
+public class SnapshotWriter implements Runnable {
+  
+  // PRIVATE VARIABLES
+  private File file;
+  private long period;  // time between snapshots (ms)
+  private volatile boolean requested;
+  private ArrayBlockingQueue<byte[]> captured;
+  private Thread thread;
+  private volatile boolean running;
+  private volatile long written;  // number of snapshots written
+  
+  
+  // CONSTRUCTORS
+  
+  public SnapshotWriter( File fileIn , long periodIn ) {
+    this.file = fileIn;
+    this.period = periodIn;
+    this.requested = false;
+    this.captured = new ArrayBlockingQueue<byte[]>( 1 );
+    this.running = true;
+    this.written = 0;
+    this.thread = new Thread( this , "SnapshotWriter-" + fileIn.getName() );
+    this.thread.setDaemon( true );
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  public void start() {
+    this.thread.start();
+  }
+  
+  public void stop() {
+    this.running = false;
+    this.thread.interrupt();
+  }
+  
+  // true if the writer is waiting for a snapshot
+  public boolean is_requested() {
+    return this.requested;
+  }
+  
+  // hands a snapshot (see EstimatorSnapshot.capture) over to the writer
+  public void offer( byte[] snapshot ) {
+    this.requested = false;
+    this.captured.offer( snapshot );
+  }
+  
+  public File get_file() {
+    return this.file;
+  }
+  
+  public long get_written() {
+    return this.written;
+  }
+  
+  public void run() {
+    while( this.running ){
+      try{
+        Thread.sleep( this.period );
+        this.requested = true;
+        // if the estimators are not being updated, there is nothing new to write (the request stays active)
+        byte[] snapshot = this.captured.poll( this.period , TimeUnit.MILLISECONDS );
+        if( snapshot == null ) continue;
+        EstimatorSnapshot.write( snapshot , this.file );
+        this.written++;
+      }catch( InterruptedException e ){
+        break;
+      }catch( IOException e ){
+        System.out.println( "The snapshot could not be written in " + this.file + ": " + e.getMessage() );
+      }
+    }
+  }
+  
+}
\ No newline at end of file
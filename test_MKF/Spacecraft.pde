@@ -19,26 +19,39 @@
 // this class implements the methods referents to a single spacecraft
 class Spacecraft {
   
+  // PARAMETERS
+  // scale of the dead reckoning drawing (pixels per meter)
+  static final float pixelsPerMeter = 1.0e3;
+  
   // VARIABLES
   // estimator
   OrientationEstimator estimator;
-  // time when last update occurred
-  long lastUpdateTime;
-  // estimator update frequency for this spacecraft
-  double updateFrequency;
+  // scheduler that decides when the estimator is updated (target update frequency and CPU budget)
+  UpdateScheduler scheduler;
+  // latency of the updates of the estimator
+  LatencyHistogram updateLatency;
+  // metrics of the estimator (null if the estimator is not instrumented)
+  EstimatorMetrics metrics;
   // label to show when drawn
   String label;
-  // saved quaternions (there are 2 for each estimator to avoid reading when they are being updated)
-  double[][] q = new double[2][4];
-  int iq = 0;
+  // last quaternion of the estimator (the renderer reads it from the snapshots of the fleet)
+  double[] q = new double[4];
   // position in orientation mode
   float[] r0 = { 0.0 , 0.0 , 0.0 };
-  // velocity (dead reckoning)
-  float[] v = new float[3];
-  // position (dead reckoning). There are two to avoid reading while writing
-  float[][] r = new float[2][3];
-  // index of the last computed position (dead reckoning)
-  int ir = 0;
+  // dead reckoning (it integrates every sample, independently of the updates of the estimator)
+  StrapdownIntegrator strapdown;
+  // samples received since the last update of the estimator (used if preintegrateSamples is true)
+  GyroPreintegrator preintegrator;
+  // arrival time of the previous sample (ns)
+  long tPrevious;
+  // true if the estimator has been updated with the last sample
+  boolean updated;
+  // position (dead reckoning) where the spacecraft is drawn (pixels)
+  float[] r = new float[3];
+  // workspace of the dead reckoning and the drawing (rotations from the inertial frame, and orientation of the vehicle)
+  double[] qz = new double[4];
+  double[] qo2s = new double[4];
+  double[] qv = new double[4];
   // boolean flag for visibility
   boolean visible;
   // toggle for visibility
@@ -47,26 +60,30 @@ class Spacecraft {
   
   // METHODS
   
-  // constructor
-  Spacecraft( String labelIn , OrientationEstimator estimatorIn , float[] r0In ){
+  // constructor (withToggle is false for the spacecraft that are not displayed)
+  Spacecraft( String labelIn , OrientationEstimator estimatorIn , float[] r0In , boolean withToggle ){
     this.estimator = estimatorIn;
-    this.lastUpdateTime = System.nanoTime();
-    this.updateFrequency = 1000.0;
-    this.label = labelIn;
-    for(int iq=0; iq<2; iq++){
-      q[iq][0] = 1.0;
-      for(int i=1; i<4; i++) q[iq][i] = 0.0;
+    this.metrics = null;
+    if( instrumentEstimators ){
+      InstrumentedEstimator instrumented = new InstrumentedEstimator( labelIn , estimatorIn );
+      this.metrics = instrumented.get_metrics();
+      this.metrics.register();
+      this.estimator = instrumented;
     }
-    this.iq = 0;
+    this.scheduler = new UpdateScheduler( 1000.0 , estimatorBudget );
+    this.updateLatency = new LatencyHistogram( "update " + labelIn );
+    this.label = labelIn;
+    this.q[0] = 1.0;
+    for(int i=1; i<4; i++) this.q[i] = 0.0;
     this.r0 = r0In;
-    for(int i=0; i<3; i++) this.v[i] = 0.0;
-    for(int ir=0; ir<2; ir++){
-      this.r[ir][0] = width/2.0;
-      this.r[ir][1] = height/2.0;
-      this.r[ir][2] = 0.0;
-    }
-    this.ir = 0;
+    this.strapdown = new StrapdownIntegrator();
+    this.preintegrator = new GyroPreintegrator();
+    this.tPrevious = System.nanoTime();
+    this.r[0] = width/2.0;
+    this.r[1] = height/2.0;
+    this.r[2] = 0.0;
     this.visible = true;
+    if( !withToggle ) return;
     
     // this is a trick to set the visible toggle positions
     float alphaX = 0.25;
@@ -88,120 +105,96 @@ class Spacecraft {
   }
   
   
-  // performs an update of the estimator associated with this spacecraft
-  void updateEstimator( long t , double[] am , double[] wm ){
-    double dt = (t-this.lastUpdateTime)*1.0e-9;
-    
-    // only if its toggle is on, and if dt = 1/f has passed
-    if(  this.visible  &&  dt > 1.0/this.updateFrequency  ){
-      // we update the estimator
-      this.estimator.updateIMU( am , wm , dt );
-      this.lastUpdateTime = t;
-      // we store the quaternion each time in a place to avoid reading while writing
-      int index;
-      if( this.iq == 0 ){
-        index = 1;
+  // performs an update of the estimator associated with this spacecraft (t0 is the arrival time of the first byte of the packet)
+  void updateEstimator( long t0 , long t , double[] am , double[] wm ){
+    double dtSample = ( t-this.tPrevious )*1.0e-9;
+    this.tPrevious = t;
+    this.updated = false;
+    // only if its toggle is on
+    if( !this.visible ){
+      this.preintegrator.restart();
+      return;
+    }
+    // the samples that the scheduler does not admit are pre-integrated for the next update
+    if( preintegrateSamples ) this.preintegrator.add( am , wm , dtSample );
+    // in the dead reckoning scenario, the velocity and the position are integrated with every sample
+    if( theGUI.scenario == 1 ) this.strapdown.updateIMU( am , wm , dtSample );
+    // and the estimator is updated if the scheduler admits the sample
+    if( this.scheduler.admit( t ) ){
+      double dt = this.scheduler.get_dt();
+      // we update the estimator measuring the cost of the update
+      long tu = System.nanoTime();
+      if( preintegrateSamples ){
+        this.estimator.updateIMU( this.preintegrator );
+        this.preintegrator.reset();
       }else{
-        index = 0;
+        this.estimator.updateIMU( am , wm , dt );
       }
-      this.estimator.get_q( this.q[index] );
-      this.iq = index;
-      // and if we are in the dead reckoning scenario, we integrate the velocity and position
+      long cost = System.nanoTime()-tu;
+      this.scheduler.report( cost );
+      this.updateLatency.record( cost );
+      this.updated = true;
+      // we store the quaternion (it is published with the snapshot of the fleet)
+      this.estimator.get_q( this.q );
+      latency.publication.record( System.nanoTime()-t0 );
+      // and if we are in the dead reckoning scenario, the integration continues from the new orientation
       if( theGUI.scenario == 1 ){
         // rotation from the first inertial reference frame to the second inertial reference frame (a rotation in the z-axis)
-        double[] qz = { cos( 0.5*theGUI.zRotAngle ) , 0.0 , 0.0 , sin( 0.5*theGUI.zRotAngle ) };
+        this.qz[0] = cos( 0.5*theGUI.zRotAngle );
+        this.qz[3] = sin( 0.5*theGUI.zRotAngle );
         // rotation from the sensor reference frame to the second inertial reference frame
-        double[] q = this.q[index]; // { this.q[index][0] , this.spacecraft[n].q[index][1] , this.spacecraft[n].q[index][2] , this.spacecraft[n].q[index][3] };
-        double[] qo2s = { qz[0]*q[0] - qz[1]*q[1] - qz[2]*q[2] - qz[3]*q[3] ,
-                          qz[0]*q[1] + q[0]*qz[1] + qz[2]*q[3] - qz[3]*q[2] ,
-                          qz[0]*q[2] + q[0]*qz[2] + qz[3]*q[1] - qz[1]*q[3] ,
-                          qz[0]*q[3] + q[0]*qz[3] + qz[1]*q[2] - qz[2]*q[1] };
-        this.integrate( qo2s , am , dt );
+        Quaternion.multiply( this.qz , 0 , this.q , 0 , this.qo2s , 0 );
+        this.strapdown.set_orientation( this.qo2s );
       }
-    }  
+    }
   }
   
   
-  // integrates the position of a spacecraft having its estimated orientation, the acceleration measured in the sensor reference frame, and the time step
-  void integrate( double[] q , double[] am , double dt ){
+  // sets the velocity and the position of the dead reckoning to 0
+  void resetPosition(){
+    this.strapdown.reset();
+    this.r[0] = width/2.0;
+    this.r[1] = height/2.0;
+    this.r[2] = 0.0;
+  }
+  
+  
+  // computes the position where the spacecraft is drawn from a position of the dead reckoning (m)
+  void updatePosition( double[] rStrapdown ){
+    // processing axes: x-processing = our y, y-processing = - our z, z-processing = our x
+    float x = width/2.0 + Spacecraft.pixelsPerMeter*(float)rStrapdown[1];
+    float y = height/2.0 - Spacecraft.pixelsPerMeter*(float)rStrapdown[2];
+    float z = Spacecraft.pixelsPerMeter*(float)rStrapdown[0];
     // with this we avoid a strange behaviour in processing: a not undoable deformation on the PShape is produced when the shapes are drawn at far distances
-    double distanceFromOrigin = 0.0;
-    for(int i=0; i<3; i++) distanceFromOrigin += this.r[0][i]*this.r[0][i];
-    distanceFromOrigin = Math.sqrt( distanceFromOrigin );
-    if( distanceFromOrigin < 1.0e5 ){
-      // we build the rotation matrix
-      double[] R = new double[9];
-      R[0] = -q[2]*q[2]-q[3]*q[3];    R[3] = q[1]*q[2]-q[3]*q[0];     R[6] = q[1]*q[3]+q[2]*q[0];
-      R[1] = q[1]*q[2]+q[3]*q[0];     R[4] = -q[1]*q[1]-q[3]*q[3];    R[7] = q[2]*q[3]-q[1]*q[0];
-      R[2] = q[1]*q[3]-q[2]*q[0];     R[5] = q[2]*q[3]+q[1]*q[0];     R[8] = -q[1]*q[1]-q[2]*q[2];
-      
-      R[0] += R[0] + 1.0;    R[3] += R[3];          R[6] += R[6];
-      R[1] += R[1];          R[4] += R[4] + 1.0;    R[7] += R[7];
-      R[2] += R[2];          R[5] += R[5];          R[8] += R[8] + 1.0;
-      
-      // we transform the acceleration from the sensor reference frame to the extern inertial reference frame
-      double a[] = new double[3];
-      for(int i=0; i<3; i++){
-        double sum = 0.0;
-        for(int j=0; j<3; j++) sum += R[i+j*3]*am[j];
-        a[i] = sum;
-      }
-      // and we subtract the gravity
-      a[2] += -1.0;
-      
-      // the acceleration is multiplied by a factor in order of make distinguishable the movements produced by the produced accelerations
-      // this has the same effect that multiplying the resulting position by the same factor
-      float mult = 1.0e4;
-      for(int i=0; i<3; i++) a[i] *= mult;
-      
-      // we update in a different index each time to avoid reading while writing
-      int index;
-      int index0;
-      if( this.ir == 0 ){
-        index = 1;
-        index0 = 0;
-      }else{
-        index = 0;
-        index0 = 1;
-      }
-      
-      // we integrate velocity and acceleration to obtain position
-      this.r[index][0] = this.r[index0][0] + (float)(this.v[0]*dt + 0.5*a[1]*dt*dt);
-      this.r[index][1] = this.r[index0][1] + (float)(this.v[1]*dt + 0.5*(-a[2])*dt*dt);
-      this.r[index][2] = this.r[index0][2] + (float)(this.v[2]*dt + 0.5*a[0]*dt*dt);
-      
-      // we integrate the acceleration to obtain velocity
-      this.v[0] += a[1]*dt;
-      this.v[1] += (-a[2])*dt;
-      this.v[2] += a[0]*dt;
-      
-      // and we update the index
-      this.ir = index;
+    if( sqrt( x*x + y*y + z*z ) < 1.0e5 ){
+      this.r[0] = x;
+      this.r[1] = y;
+      this.r[2] = z;
     }
   }
   
   
-  // draws this spacecraft
-  void drawSpacecraft(){
+  // draws this spacecraft with its state in a snapshot of the fleet (n is its index in the fleet)
+  void drawSpacecraft( FleetSnapshot snapshot , int n ){
     // we only draw if the toggle is on
     if( this.visible ){
       // first we check for NaNs
-      if( this.areThereNaNs() ){
+      if( this.areThereNaNs( snapshot.q[n] ) ){
         this.visibleToggle.setState( false );
         this.estimator.reset_orientation();
         return;
       }
       // if there are no NaNs we compute the orientation from the vehicle ( qv = qs * delta_sv )
-      double[] q = this.q[this.iq];
-      double[] qv = { q[0]*theGUI.delta_sv[0] - q[1]*theGUI.delta_sv[1] - q[2]*theGUI.delta_sv[2] - q[3]*theGUI.delta_sv[3] ,
-                      q[0]*theGUI.delta_sv[1] + theGUI.delta_sv[0]*q[1] + q[2]*theGUI.delta_sv[3] - q[3]*theGUI.delta_sv[2] ,
-                      q[0]*theGUI.delta_sv[2] + theGUI.delta_sv[0]*q[2] + q[3]*theGUI.delta_sv[1] - q[1]*theGUI.delta_sv[3] ,
-                      q[0]*theGUI.delta_sv[3] + theGUI.delta_sv[0]*q[3] + q[1]*theGUI.delta_sv[2] - q[2]*theGUI.delta_sv[1] };
+      Quaternion.multiply( snapshot.q[n] , 0 , theGUI.delta_sv , 0 , this.qv , 0 );
+      // if the estimator is instrumented, we show its cost below the label
+      String text = this.label;
+      if( this.metrics != null ) text += String.format( "\n%.1f us (p99 %.1f)" , 1.0e-3*this.metrics.getMeanNanos() , 1.0e-3*this.metrics.getP99Nanos() );
       // and depending on the scenario (orientation or dead reckoning) we draw the spacecraft
       if( theGUI.scenario == 0 ){
-        theFleet.drawWith( qv , this.r0 , this.label );
+        theFleet.drawWith( this.qv , this.r0 , text );
       }else if( theGUI.scenario == 1 ){
-        theFleet.drawWith( qv , this.r[this.ir] , this.label );
+        this.updatePosition( snapshot.r[n] );
+        theFleet.drawWith( this.qv , this.r , text );
       }
     }
     
@@ -210,10 +203,10 @@ class Spacecraft {
   
   
   // it checks if there are NaNs in orientation or position
-  boolean areThereNaNs(){
+  boolean areThereNaNs( double[] q ){
     boolean isNaN = false;
-    for(int i=0; i<4; i++) isNaN = isNaN || ( this.q[this.iq][i] != this.q[this.iq][i] );
-    if( theGUI.scenario == 1 ) for(int i=0; i<3; i++) isNaN = isNaN || ( this.r[this.ir] != this.r[this.ir] );
+    for(int i=0; i<4; i++) isNaN = isNaN || ( q[i] != q[i] );
+    if( theGUI.scenario == 1 ) for(int i=0; i<3; i++) isNaN = isNaN || ( this.r[i] != this.r[i] );
     
     return isNaN;
   }
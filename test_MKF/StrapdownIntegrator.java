@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+// strapdown integration of the velocity and the position (dead reckoning)
+// it is updated with every sample, at the rate of the sensor, independently of the updates of the orientation estimator:
+// the orientation is the last one published by the estimator (set_orientation), propagated between publications with
+// the angular velocity measurements. Each step uses the angle and velocity increments of the current and the previous
+// samples to compensate the coning (orientation) and sculling (velocity) errors (two-sample algorithms of Savage).
+// The integration is done in double precision, and it does not allocate memory. The position and the velocity must be
+// read by the thread that integrates (other threads read the position published in the snapshots of the Fleet)
+public class StrapdownIntegrator {
+  
+  // PARAMETERS
+  public static final double GRAVITY = 9.80665;  // the accelerometer measures in units of g (m/s^2)
+  
+  // PRIVATE VARIABLES
+  // orientation (from the sensor reference frame to the external reference frame)
+  private double[] q = new double[4];
+  // velocity (m/s) and position (m) in the external reference frame
+  private double[] v = new double[3];
+  private double[] r = new double[3];
+  // angle (rad) and velocity (m/s) increments of the previous sample, in the sensor reference frame
+  private double[] dtheta0 = new double[3];
+  private double[] dv0 = new double[3];
+  private boolean hasPrevious;
+  // workspace of updateIMU
+  private double[] dtheta = new double[3];
+  private double[] dv = new double[3];
+  private double[] phi = new double[3];
+  private double[] dvc = new double[3];
+  private double[] dq = new double[4];
+  private double[] R = new double[9];
+  private volatile boolean resetRequested;
+  private volatile long samples;  // number of integrated samples
+  
+  
+  // CONSTRUCTORS
+  
+  public StrapdownIntegrator() {
+    this.q[0] = 1.0;
+    this.resetRequested = false;
+    this.samples = 0;
+    this.reset_state();
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  // Method: set_orientation
+  // sets the orientation published by the estimator (it must be called by the thread that calls updateIMU)
+  // inputs:
+  //  qIn: unit quaternion (from the sensor reference frame to the external reference frame)
+  // outputs:
+  public void set_orientation( double[] qIn ) {
+    for(int i=0; i<4; i++) this.q[i] = qIn[i];
+  }
+  
+  // Method: updateIMU
+  // integrates one sample
+  // inputs:
+  //  am: measured acceleration (g)
+  //  wm: measured angular velocity (rad/s)
+  //  dt: time step since the previous sample (s)
+  // outputs:
+  public void updateIMU( double[] am , double[] wm , double dt ) {
+    if( this.resetRequested ){
+      this.resetRequested = false;
+      this.reset_state();
+    }
+    if( !( dt > 0.0 ) ) return;
+    
+    // increments of this sample
+    for(int i=0; i<3; i++){
+      this.dtheta[i] = wm[i]*dt;
+      this.dv[i] = StrapdownIntegrator.GRAVITY*am[i]*dt;
+    }
+    // coning compensation: phi = dtheta + ( dtheta0 x dtheta )/12
+    // velocity increment, with the rotation ( dtheta x dv )/2 and the sculling ( dtheta0 x dv + dv0 x dtheta )/12
+    // compensations
+    for(int i=0; i<3; i++){
+      this.phi[i] = this.dtheta[i];
+      this.dvc[i] = this.dv[i];
+    }
+    StrapdownIntegrator.addCross( this.dtheta , this.dv , 0.5 , this.dvc );
+    if( this.hasPrevious ){
+      StrapdownIntegrator.addCross( this.dtheta0 , this.dtheta , 1.0/12.0 , this.phi );
+      StrapdownIntegrator.addCross( this.dtheta0 , this.dv , 1.0/12.0 , this.dvc );
+      StrapdownIntegrator.addCross( this.dv0 , this.dtheta , 1.0/12.0 , this.dvc );
+    }
+    
+    // the velocity increment is transformed with the orientation at the beginning of the step, and the gravity is
+    // subtracted
+    Quaternion.rotationMatrix( this.q , 0 , this.R , 0 );
+    double dvn0 = this.R[0]*this.dvc[0] + this.R[3]*this.dvc[1] + this.R[6]*this.dvc[2];
+    double dvn1 = this.R[1]*this.dvc[0] + this.R[4]*this.dvc[1] + this.R[7]*this.dvc[2];
+    double dvn2 = this.R[2]*this.dvc[0] + this.R[5]*this.dvc[1] + this.R[8]*this.dvc[2] - StrapdownIntegrator.GRAVITY*dt;
+    // the position is integrated with the mean velocity of the step
+    this.r[0] += ( this.v[0] + 0.5*dvn0 )*dt;
+    this.r[1] += ( this.v[1] + 0.5*dvn1 )*dt;
+    this.r[2] += ( this.v[2] + 0.5*dvn2 )*dt;
+    this.v[0] += dvn0;
+    this.v[1] += dvn1;
+    this.v[2] += dvn2;
+    
+    // the orientation is propagated until the next publication of the estimator
+    Quaternion.exp( this.phi , 0 , 1.0 , this.dq , 0 , false );
+    Quaternion.multiply( this.q , 0 , this.dq , 0 , this.q , 0 );
+    Quaternion.normalize( this.q , 0 );
+    
+    // the increments are kept for the next step (without the compensations)
+    for(int i=0; i<3; i++){
+      this.dtheta0[i] = this.dtheta[i];
+      this.dv0[i] = this.dv[i];
+    }
+    this.hasPrevious = true;
+    this.samples++;
+  }
+  
+  // sets the velocity and the position to 0 (it can be called from any thread; it is done before the next step)
+  public void reset() {
+    this.resetRequested = true;
+  }
+  
+  // Method: get_position
+  // it must be called by the thread that calls updateIMU
+  // inputs:
+  // outputs:
+  //  rOut: position after the last integrated sample (m)
+  public void get_position( double[] rOut ) {
+    for(int i=0; i<3; i++) rOut[i] = this.r[i];
+  }
+  
+  // Method: get_velocity
+  // it must be called by the thread that calls updateIMU
+  // inputs:
+  // outputs:
+  //  vOut: velocity after the last integrated sample (m/s)
+  public void get_velocity( double[] vOut ) {
+    for(int i=0; i<3; i++) vOut[i] = this.v[i];
+  }
+  
+  public long get_samples() {
+    return this.samples;
+  }
+  
+  
+  // PRIVATE METHODS
+  
+  private void reset_state() {
+    for(int i=0; i<3; i++){
+      this.v[i] = 0.0;
+      this.r[i] = 0.0;
+      this.dtheta0[i] = 0.0;
+      this.dv0[i] = 0.0;
+    }
+    this.hasPrevious = false;
+  }
+  
+  
+  // PRIVATE STATIC METHODS
+  
+  // c += s*( a x b )
+  private static void addCross( double[] a , double[] b , double s , double[] c ) {
+    double c0 = a[1]*b[2] - a[2]*b[1];
+    double c1 = a[2]*b[0] - a[0]*b[2];
+    double c2 = a[0]*b[1] - a[1]*b[0];
+    c[0] += s*c0;
+    c[1] += s*c1;
+    c[2] += s*c2;
+  }
+  
+}
\ No newline at end of file
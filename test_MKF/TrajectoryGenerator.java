@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.util.Random;
+
+
+// class that generates synthetic rotational trajectories with their true orientation
+// the angular velocity is a sum of sinusoids with random amplitudes, frequencies and phases. It is taken as constant
+// during each time step, so the true quaternion is obtained exactly composing the rotation of each step
+// (q_k = q_k-1 * exp( w_k*dt/2 )). The sensor is only rotating (no linear acceleration), so it measures the gravity.
+// The measurements are corrupted with normal noise of covariance Ra*I and Rw*I
+public class TrajectoryGenerator {
+  
+  // PARAMETERS
+  private static final int Nharmonics = 3;  // number of sinusoids in each component of the angular velocity
+  private static final double minFrequency = 0.05;  // (Hz)
+  private static final double maxFrequency = 1.0;  // (Hz)
+  
+  // PRIVATE VARIABLES
+  private double rate;  // sample rate (samples/s)
+  private double maxAngularVelocity;  // maximum amplitude of each component of the angular velocity (rad/s)
+  private double Ra;  // accelerometer noise variance (g^2)
+  private double Rw;  // gyroscope noise variance ((rad/s)^2)
+  
+  
+  // CONSTRUCTORS
+  
+  public TrajectoryGenerator( double rateIn , double maxAngularVelocityIn , double RaIn , double RwIn ) {
+    this.rate = rateIn;
+    this.maxAngularVelocity = maxAngularVelocityIn;
+    this.Ra = RaIn;
+    this.Rw = RwIn;
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  // Method: generate
+  // generates a trajectory starting at a random orientation
+  // inputs:
+  //  seed: seed of the trajectory (the same seed produces the same trajectory)
+  //  seconds: duration of the trajectory (s)
+  // outputs:
+  //  dataset with the noisy measurements and the true orientation
+  public IMUDataset generate( long seed , double seconds ) {
+    Random random = new Random( seed );
+    int N = (int)Math.round( seconds*this.rate );
+    double dt = 1.0/this.rate;
+    IMUDataset dataset = new IMUDataset( N , true );
+    
+    // random sinusoids (the amplitudes are scaled so each component is bounded by maxAngularVelocity)
+    double[][] A = new double[3][TrajectoryGenerator.Nharmonics];
+    double[][] f = new double[3][TrajectoryGenerator.Nharmonics];
+    double[][] phi = new double[3][TrajectoryGenerator.Nharmonics];
+    for(int i=0; i<3; i++){
+      for(int j=0; j<TrajectoryGenerator.Nharmonics; j++){
+        A[i][j] = this.maxAngularVelocity*( 2.0*random.nextDouble() - 1.0 )/TrajectoryGenerator.Nharmonics;
+        f[i][j] = TrajectoryGenerator.minFrequency + ( TrajectoryGenerator.maxFrequency - TrajectoryGenerator.minFrequency )*random.nextDouble();
+        phi[i][j] = 2.0*Math.PI*random.nextDouble();
+      }
+    }
+    // random initial orientation (uniform in the sphere of rotations)
+    double[] q = new double[4];
+    double norm = 0.0;
+    for(int i=0; i<4; i++){
+      q[i] = random.nextGaussian();
+      norm += q[i]*q[i];
+    }
+    norm = 1.0/Math.sqrt( norm );
+    for(int i=0; i<4; i++) q[i] *= norm;
+    
+    double[] w = new double[3];
+    double[] am = new double[3];
+    double[] wm = new double[3];
+    double[] dq = new double[4];
+    double sa = Math.sqrt( this.Ra );
+    double sw = Math.sqrt( this.Rw );
+    for(int k=0; k<N; k++){
+      // angular velocity in the middle of the time step
+      double tm = (k+0.5)*dt;
+      for(int i=0; i<3; i++){
+        w[i] = 0.0;
+        for(int j=0; j<TrajectoryGenerator.Nharmonics; j++) w[i] += A[i][j]*Math.sin( 2.0*Math.PI*f[i][j]*tm + phi[i][j] );
+      }
+      // we rotate the true orientation
+      if( k > 0 ){
+        Quaternion.exp( w , 0 , dt , dq , 0 , false );
+        Quaternion.multiply( q , 0 , dq , 0 , q , 0 );
+        Quaternion.normalize( q , 0 );
+      }
+      // the accelerometer measures the gravity in the sensor reference frame ( a = q^* (0,0,1) q )
+      am[0] = 2.0*( q[1]*q[3] - q[0]*q[2] );
+      am[1] = 2.0*( q[2]*q[3] + q[0]*q[1] );
+      am[2] = q[0]*q[0] - q[1]*q[1] - q[2]*q[2] + q[3]*q[3];
+      for(int i=0; i<3; i++){
+        am[i] += sa*random.nextGaussian();
+        wm[i] = w[i] + sw*random.nextGaussian();
+      }
+      dataset.add( k*dt , am , wm , q );
+    }
+    
+    return dataset;
+  }
+  
+}
\ No newline at end of file
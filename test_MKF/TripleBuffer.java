@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+// lock-free triple buffer between one writer thread and one reader thread
+// the writer fills the back buffer and publishes it, exchanging it with the middle one; the reader acquires the middle
+// buffer, exchanging it with the front one, only if something has been published since its last acquisition. None of
+// them waits for the other, and the reader always gets a complete buffer (the last published one). The buffers are
+// reused, so they are not allocated in each publication
+public class TripleBuffer<T> {
+  
+  // PARAMETERS
+  private static final int FRESH = 4;  // flag of the middle index: published and not acquired yet
+  
+  // PRIVATE VARIABLES
+  private Object[] buffers;
+  private AtomicInteger middle;  // index of the middle buffer (with the FRESH flag)
+  private int back;  // index of the buffer of the writer
+  private int front;  // index of the buffer of the reader
+  
+  
+  // CONSTRUCTORS
+  
+  // the three buffers must be different objects (the first one is returned by acquire until something is published)
+  public TripleBuffer( T frontIn , T middleIn , T backIn ) {
+    this.buffers = new Object[]{ frontIn , middleIn , backIn };
+    this.front = 0;
+    this.middle = new AtomicInteger( 1 );
+    this.back = 2;
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  // returns the buffer that the writer has to fill (it must not be used after publish)
+  @SuppressWarnings( "unchecked" )
+  public T get_back() {
+    return (T)this.buffers[this.back];
+  }
+  
+  // publishes the back buffer (called by the writer)
+  public void publish() {
+    this.back = this.middle.getAndSet( this.back | TripleBuffer.FRESH ) & 3;
+  }
+  
+  // Method: acquire
+  // takes the last published buffer (called by the reader)
+  // inputs:
+  // outputs:
+  //  last published buffer (it is not modified by the writer until the next call to acquire)
+  @SuppressWarnings( "unchecked" )
+  public T acquire() {
+    if( ( this.middle.get() & TripleBuffer.FRESH ) != 0 ) this.front = this.middle.getAndSet( this.front ) & 3;
+    return (T)this.buffers[this.front];
+  }
+  
+  // true if something has been published since the last acquisition
+  public boolean is_fresh() {
+    return ( ( this.middle.get() & TripleBuffer.FRESH ) != 0 );
+  }
+  
+}
\ No newline at end of file
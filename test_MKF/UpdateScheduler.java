@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+// class that decides which samples are used to update an estimator
+// each estimator has a target update frequency, and a CPU budget (fraction of a core). The cost of the updates
+// is measured, and when the target frequency does not fit in the budget, the update frequency is lowered only for
+// this estimator. The skipped samples are coalesced in the time step of the next update, and they are counted
+public class UpdateScheduler {
+  
+  // PARAMETERS
+  private static final double costSmoothing = 0.05;  // weight of the last measured cost in the mean cost
+  
+  // PRIVATE VARIABLES
+  private volatile double targetFrequency;  // desired update frequency (Hz)
+  private volatile double budget;  // fraction of a CPU core that the estimator can use
+  private volatile double meanCost;  // mean cost of an update (ns)
+  private long lastUpdateTime;  // time of the last update (ns)
+  private long lastArrivalTime;  // time of the last sample, admitted or not (ns)
+  private double dt;  // time step for the admitted update (s)
+  private volatile long updates;  // number of admitted samples
+  private volatile long dropped;  // number of skipped samples
+  
+  
+  // CONSTRUCTORS
+  
+  public UpdateScheduler( double targetFrequencyIn , double budgetIn ) {
+    this.targetFrequency = targetFrequencyIn;
+    this.budget = budgetIn;
+    this.meanCost = 0.0;
+    this.lastUpdateTime = System.nanoTime();
+    this.lastArrivalTime = this.lastUpdateTime;
+    this.dt = 0.0;
+    this.updates = 0;
+    this.dropped = 0;
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  public void set_targetFrequency( double targetFrequencyIn ) {
+    this.targetFrequency = targetFrequencyIn;
+  }
+  
+  public double get_targetFrequency() {
+    return this.targetFrequency;
+  }
+  
+  public void set_budget( double budgetIn ) {
+    this.budget = budgetIn;
+  }
+  
+  public double get_budget() {
+    return this.budget;
+  }
+  
+  // Method: get_effectiveFrequency
+  // the update frequency is the target frequency, unless the measured cost does not fit in the budget
+  // inputs:
+  // outputs:
+  //  update frequency that is being applied (Hz)
+  public double get_effectiveFrequency() {
+    double f = this.targetFrequency;
+    double cost = this.meanCost;
+    if( cost > 0.0 ){
+      double affordable = this.budget*1.0e9/cost;
+      if( affordable < f ) f = affordable;
+    }
+    return f;
+  }
+  
+  // Method: admit
+  // decides if the sample arriving at time t is used to update the estimator
+  // the sample is admitted if the update period is elapsed, with a tolerance of half the interval between samples:
+  // otherwise, when the samples arrive exactly at the update frequency, the rounding of the times would skip half of them
+  // inputs:
+  //  t: arrival time of the sample (ns)
+  // outputs:
+  //  true if the estimator has to be updated (get_dt() returns the time step, that includes the skipped samples)
+  public boolean admit( long t ) {
+    long period = (long)( 1.0e9/this.get_effectiveFrequency() );
+    long interval = t - this.lastArrivalTime;
+    this.lastArrivalTime = t;
+    if( interval < 0 ) interval = 0;
+    if( interval > period ) interval = period;
+    long elapsed = t - this.lastUpdateTime;
+    if( elapsed >= period - interval/2 ){
+      this.dt = elapsed*1.0e-9;
+      this.lastUpdateTime = t;
+      this.updates++;
+      return true;
+    }
+    this.dropped++;
+    return false;
+  }
+  
+  public double get_dt() {
+    return this.dt;
+  }
+  
+  // Method: report
+  // sets the measured cost of the last admitted update
+  // inputs:
+  //  costNanos: time spent in the update (ns)
+  // outputs:
+  public void report( long costNanos ) {
+    if( this.meanCost == 0.0 ){
+      this.meanCost = costNanos;
+    }else{
+      this.meanCost += UpdateScheduler.costSmoothing*( costNanos - this.meanCost );
+    }
+  }
+  
+  public double get_meanCost() {
+    return this.meanCost;
+  }
+  
+  public long get_updates() {
+    return this.updates;
+  }
+  
+  public long get_dropped() {
+    return this.dropped;
+  }
+  
+  public String toString() {
+    return String.format( "%.1f/%.1f Hz, %.1f us/update, %d updates, %d dropped" ,
+                          this.get_effectiveFrequency() , this.targetFrequency , 1.0e-3*this.meanCost , this.updates , this.dropped );
+  }
+  
+}
\ No newline at end of file
@@ -38,6 +38,9 @@ public class dataAdministrator {
   IPM_MPU6050_HMC5883L agtm;
   IPM_MPU6050 agt;
   IPM_AdafruitIMU9dof amtgt;
+  IMUSimulator simulator;  // generates the simulated data (and the noise added to the serial data) from a seed
+  double[] amSim = new double[3];
+  double[] wmSim = new double[3];
   
   // constructor
   dataAdministrator(){
@@ -64,6 +67,7 @@ public class dataAdministrator {
     // initially we do not add noise
     this.ra = 0.0;
     this.rw = 0.0;
+    this.simulator = new IMUSimulator( simulationSeed , simulationRate );
     
     // we initialize the information packets
     this.agtm = new IPM_MPU6050_HMC5883L( (byte)11 );
@@ -81,12 +85,14 @@ public class dataAdministrator {
   // sets the acceleration noise from the GUI
   void set_Ra( double theValue ){
     this.ra = (float)Math.sqrt( theValue );
+    this.simulator.set_ra( this.ra );
   }
   
   
   // sets the gyroscope noise from the GUI
   void set_Rw( double theValue ){
     this.rw = (float)Math.sqrt( theValue );
+    this.simulator.set_rw( this.rw );
   }
   
   
@@ -138,12 +144,12 @@ public class dataAdministrator {
         break;
     }
     if(  am != null  &&  wm != null  ){
-      this.amx[newCount] = (float)am[0]*this.amScale + this.ra*randomGaussian();
-      this.amy[newCount] = (float)am[1]*this.amScale + this.ra*randomGaussian();
-      this.amz[newCount] = (float)am[2]*this.amScale + this.ra*randomGaussian();
-      this.wmx[newCount] = (float)wm[0]*this.wmScale + this.rw*randomGaussian();
-      this.wmy[newCount] = (float)wm[1]*this.wmScale + this.rw*randomGaussian();
-      this.wmz[newCount] = (float)wm[2]*this.wmScale + this.rw*randomGaussian();
+      this.amx[newCount] = (float)am[0]*this.amScale + this.ra*(float)this.simulator.gaussian();
+      this.amy[newCount] = (float)am[1]*this.amScale + this.ra*(float)this.simulator.gaussian();
+      this.amz[newCount] = (float)am[2]*this.amScale + this.ra*(float)this.simulator.gaussian();
+      this.wmx[newCount] = (float)wm[0]*this.wmScale + this.rw*(float)this.simulator.gaussian();
+      this.wmy[newCount] = (float)wm[1]*this.wmScale + this.rw*(float)this.simulator.gaussian();
+      this.wmz[newCount] = (float)wm[2]*this.wmScale + this.rw*(float)this.simulator.gaussian();
       // we update dataCount
       this.dataCount = newCount;
     }
@@ -152,35 +158,30 @@ public class dataAdministrator {
   
   // this method is called when a new complete data package arrives by the serial port, and the data source is 1: simulated static dada
   void simulateStaticData(){
-    // we take the next data array position
-    int newCount = this.dataCount + 1;
-    if( newCount >= this.Ndat ) newCount = 0;
-    // and we update the data
-    this.amx[newCount] = this.ra*randomGaussian();
-    this.amy[newCount] = this.ra*randomGaussian();
-    this.amz[newCount] = this.ra*randomGaussian() + 1.0;
-    this.wmx[newCount] = this.rw*randomGaussian();
-    this.wmy[newCount] = this.rw*randomGaussian();
-    this.wmz[newCount] = this.rw*randomGaussian();
-    // we update dataCount
-    this.dataCount = newCount;
-    
-    return;
+    this.simulateData( IMUSimulator.STATIC );
   }
   
   
   // this method is called when a new complete data package arrives by the serial port, and the data source is 2: simulated bad data
   void simulateBadData(){
+    this.simulateData( IMUSimulator.BAD );
+  }
+  
+  
+  // generates the next sample of the simulator with the given profile
+  void simulateData( int profile ){
     // we take the next data array position
     int newCount = this.dataCount + 1;
     if( newCount >= this.Ndat ) newCount = 0;
     // and we update the data
-    this.amx[newCount] = this.ra*randomGaussian();
-    this.amy[newCount] = this.ra*randomGaussian();
-    this.amz[newCount] = this.ra*randomGaussian();
-    this.wmx[newCount] = this.rw*randomGaussian();
-    this.wmy[newCount] = this.rw*randomGaussian();
-    this.wmz[newCount] = this.rw*randomGaussian();
+    this.simulator.set_profile( profile );
+    this.simulator.next( this.amSim , this.wmSim );
+    this.amx[newCount] = (float)this.amSim[0];
+    this.amy[newCount] = (float)this.amSim[1];
+    this.amz[newCount] = (float)this.amSim[2];
+    this.wmx[newCount] = (float)this.wmSim[0];
+    this.wmy[newCount] = (float)this.wmSim[1];
+    this.wmz[newCount] = (float)this.wmSim[2];
     // we update dataCount
     this.dataCount = newCount;
     
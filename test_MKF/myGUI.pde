@@ -292,7 +292,7 @@ public class myGUI {
                             .addItem("simulated bad data",2)
                             .setValue(0)
                             .setType(ScrollableList.DROPDOWN) // currently supported DROPDOWN and LIST
-                            .plugTo( dataAdmin , "set_dataSource" )
+                            .plugTo( this , "set_dataSource" )
                             ;
     dropdownDataSource.setVisible(false);
     
@@ -497,9 +497,8 @@ public class myGUI {
       updateFrequencySlider.setColorBackground( color(backgroundColor) );
     }else{
       updateFrequencySlider.setLock(true);
-      for(int n=0; n<4; n++) theFleet.spacecraft[n].updateFrequency = 5.0;
-      for(int n=4; n<8; n++) theFleet.spacecraft[n].updateFrequency = 25.0;
-      theFleet.spacecraft[8].updateFrequency = 400.0;
+      SensorShard[] theShards = shards.get_shards();
+      for(int s=0; s<theShards.length; s++) theShards[s].fleet.set_processorLimitedFrequencies();
       updateFrequencySlider.setColorForeground( color(200,200) );
       updateFrequencySlider.setColorBackground( color(100,100) );
     }
@@ -510,19 +509,22 @@ public class myGUI {
   void set_updateFrequency( float theValue ){
     double realValue = Math.pow(10.0,theValue);
     this.updateFrequencySlider.setValueLabel( String.format("%.1f", realValue ) );
-    for(int n=0; n<N_estimators; n++) theFleet.spacecraft[n].updateFrequency = realValue;
+    SensorShard[] theShards = shards.get_shards();
+    for(int s=0; s<theShards.length; s++) theShards[s].fleet.set_targetFrequency( realValue );
   }
   
   
   // implements the chart update toggle behaviour
   void set_chartUpdate( boolean theValue ){
-    for(int n=0; n<N_estimators; n++) theFleet.spacecraft[n].estimator.set_chartUpdate( theValue );
+    SensorShard[] theShards = shards.get_shards();
+    for(int s=0; s<theShards.length; s++) theShards[s].fleet.set_chartUpdate( theValue );
   }
   
   
   // implements the reset orientation button behaviour
   void reset_orientation(){
-    for(int n=0; n<N_estimators; n++) theFleet.spacecraft[n].estimator.reset_orientation();
+    SensorShard[] theShards = shards.get_shards();
+    for(int s=0; s<theShards.length; s++) theShards[s].fleet.reset_orientation();
   }
   
   
@@ -551,10 +553,8 @@ public class myGUI {
     this.delta_sv[2] = this.qm[0]*qv0[2] - qv0[0]*this.qm[2] - this.qm[3]*qv0[1] + this.qm[1]*qv0[3];
     this.delta_sv[3] = this.qm[0]*qv0[3] - qv0[0]*this.qm[3] - this.qm[1]*qv0[2] + this.qm[2]*qv0[1];
     
-    // for each estimator, we set the same mean quaternion
-    for(int n=0; n<N_estimators; n++){
-      theFleet.spacecraft[n].estimator.set_q( this.qm );
-    }
+    // for each estimator of the displayed fleet, we set the same mean quaternion
+    theFleet.set_q( this.qm );
   }
   
   
@@ -581,24 +581,15 @@ public class myGUI {
   
   // implements the W0 slider behaviour
   void set_W0( float theValue ){
-    for(int n=0; n<N_estimators; n++) theFleet.spacecraft[n].estimator.set_W0( theValue );
+    SensorShard[] theShards = shards.get_shards();
+    for(int s=0; s<theShards.length; s++) theShards[s].fleet.set_W0( theValue );
   }
   
   
   // implements the reset position button behaviour
   void reset_r(){
-    // we reset the velocity (only N_estimators)
-    // for each spacecraft in the fleet
-    for(int n=0; n<theFleet.spacecraftCount; n++){
-      // we reset the velocity
-      for(int i=0; i<3; i++) theFleet.spacecraft[n].v[i] = 0.0;
-      // and we reset both positions
-      for(int is=0; is<2; is++){
-        theFleet.spacecraft[n].r[is][0] = width/2.0;
-        theFleet.spacecraft[n].r[is][1] = height/2.0;
-        theFleet.spacecraft[n].r[is][2] = 0.0;
-      }
-    }
+    // we reset the velocity and the position of each spacecraft in the fleet
+    for(int n=0; n<theFleet.spacecraftCount; n++) theFleet.spacecraft[n].resetPosition();
   }
   
   
@@ -612,7 +603,8 @@ public class myGUI {
   void set_Qa( float theValue ){
     double realValue = Math.pow(10.0,theValue);
     this.QaSlider.setValueLabel( String.format("%4.1e", realValue ) );
-    for(int n=0; n<N_estimators; n++) theFleet.spacecraft[n].estimator.set_Qa( realValue );
+    SensorShard[] theShards = shards.get_shards();
+    for(int s=0; s<theShards.length; s++) theShards[s].fleet.set_Qa( realValue );
   }
   
   
@@ -620,7 +612,8 @@ public class myGUI {
   void set_Qw( float theValue ){
     double realValue = Math.pow(10.0,theValue);
     this.QwSlider.setValueLabel( String.format("%4.1e", realValue ) );
-    for(int n=0; n<N_estimators; n++) theFleet.spacecraft[n].estimator.set_Qw( realValue );
+    SensorShard[] theShards = shards.get_shards();
+    for(int s=0; s<theShards.length; s++) theShards[s].fleet.set_Qw( realValue );
   }
   
   
@@ -628,9 +621,10 @@ public class myGUI {
   void set_Ra( float theValue ){
     double realValue = Math.pow(10.0,theValue);
     this.RaSlider.setValueLabel( String.format("%4.1e", realValue ) );
-    dataAdmin.set_Ra( realValue );
+    SensorShard[] theShards = shards.get_shards();
+    for(int s=0; s<theShards.length; s++) theShards[s].dataAdmin.set_Ra( realValue );
     if( this.dropdownDataSource.getValue() == 0 ) realValue += 1.0e-4;  // this is a common noise in the MPU6050 sensor if we have the serial data selected
-    for(int n=0; n<N_estimators; n++) theFleet.spacecraft[n].estimator.set_Ra( realValue );
+    for(int s=0; s<theShards.length; s++) theShards[s].set_Ra( realValue );
   }
   
   
@@ -638,14 +632,47 @@ public class myGUI {
   void set_Rw( float theValue ){
     double realValue = Math.pow(10.0,theValue);
     this.RwSlider.setValueLabel( String.format("%4.1e", realValue ) );
-    dataAdmin.set_Rw( realValue );
+    SensorShard[] theShards = shards.get_shards();
+    for(int s=0; s<theShards.length; s++) theShards[s].dataAdmin.set_Rw( realValue );
     if( this.dropdownDataSource.getValue() == 0 ) realValue += 1.0e-2;  // this is a common noise in the MPU6050 sensor if we have the serial data selected
-    for(int n=0; n<N_estimators; n++) theFleet.spacecraft[n].estimator.set_Rw( realValue );
+    for(int s=0; s<theShards.length; s++) theShards[s].set_Rw( realValue );
+  }
+  
+  
+  // implements the data source dropdown behaviour
+  void set_dataSource( float theValue ){
+    SensorShard[] theShards = shards.get_shards();
+    for(int s=0; s<theShards.length; s++) theShards[s].dataAdmin.set_dataSource( theValue );
+  }
+  
+  
+  // applies the current settings of the GUI to a shard created after the settings were selected
+  void apply_settings( SensorShard aShard ){
+    aShard.dataAdmin.set_dataSource( this.dropdownDataSource.getValue() );
+    double Ra = Math.pow(10.0,this.RaSlider.getValue());
+    double Rw = Math.pow(10.0,this.RwSlider.getValue());
+    aShard.dataAdmin.set_Ra( Ra );
+    aShard.dataAdmin.set_Rw( Rw );
+    if( this.dropdownDataSource.getValue() == 0 ){
+      Ra += 1.0e-4;
+      Rw += 1.0e-2;
+    }
+    aShard.set_Ra( Ra );
+    aShard.set_Rw( Rw );
+    aShard.fleet.set_Qa( Math.pow(10.0,this.QaSlider.getValue()) );
+    aShard.fleet.set_Qw( Math.pow(10.0,this.QwSlider.getValue()) );
+    aShard.fleet.set_W0( this.W0Slider.getValue() );
+    aShard.fleet.set_chartUpdate( this.chartUpdateToggle.getState() );
+    if( this.dropdownSensorProcessor.getValue() == 0 ){
+      aShard.fleet.set_targetFrequency( Math.pow(10.0,this.updateFrequencySlider.getValue()) );
+    }else{
+      aShard.fleet.set_processorLimitedFrequencies();
+    }
   }
   
   
-  // draw the content of the data tab
-  void drawData(){
+  // draw the content of the data tab (dataCount is the position of the last sample to draw in the data buffers)
+  void drawData( int dataCount ){
     
     // first we draw the grids
     shape( theGUI.gridA );
@@ -655,16 +682,16 @@ public class myGUI {
     float alpha = 240;
     float sizeXA = this.xGridA_f-this.xGridA_i;
     float sizeYA = this.yGridA_f-this.yGridA_i;
-    drawData( dataAdmin.amx , this.dataLimA , this.xGridA_i , this.yGridA_i , sizeXA , sizeYA , color(255,0,0,alpha) );
-    drawData( dataAdmin.amy , this.dataLimA , this.xGridA_i , this.yGridA_i , sizeXA , sizeYA , color(0,255,0,alpha) );
-    drawData( dataAdmin.amz , this.dataLimA , this.xGridA_i , this.yGridA_i , sizeXA , sizeYA , color(30,144,255,alpha) );
+    drawData( dataAdmin.amx , dataCount , this.dataLimA , this.xGridA_i , this.yGridA_i , sizeXA , sizeYA , color(255,0,0,alpha) );
+    drawData( dataAdmin.amy , dataCount , this.dataLimA , this.xGridA_i , this.yGridA_i , sizeXA , sizeYA , color(0,255,0,alpha) );
+    drawData( dataAdmin.amz , dataCount , this.dataLimA , this.xGridA_i , this.yGridA_i , sizeXA , sizeYA , color(30,144,255,alpha) );
     
     // we draw the gyroscope data
     float sizeXW = this.xGridW_f-this.xGridW_i;
     float sizeYW = this.yGridW_f-this.yGridW_i;
-    drawData( dataAdmin.wmx , this.dataLimW , this.xGridW_i , this.yGridW_i , sizeXW , sizeYW , color(255,0,0,alpha) );
-    drawData( dataAdmin.wmy , this.dataLimW , this.xGridW_i , this.yGridW_i , sizeXW , sizeYW , color(0,255,0,alpha) );
-    drawData( dataAdmin.wmz , this.dataLimW , this.xGridW_i , this.yGridW_i , sizeXW , sizeYW , color(30,144,255,alpha) );
+    drawData( dataAdmin.wmx , dataCount , this.dataLimW , this.xGridW_i , this.yGridW_i , sizeXW , sizeYW , color(255,0,0,alpha) );
+    drawData( dataAdmin.wmy , dataCount , this.dataLimW , this.xGridW_i , this.yGridW_i , sizeXW , sizeYW , color(0,255,0,alpha) );
+    drawData( dataAdmin.wmz , dataCount , this.dataLimW , this.xGridW_i , this.yGridW_i , sizeXW , sizeYW , color(30,144,255,alpha) );
     
     // for the next labels we want the text to be centered
     textAlign(CENTER,CENTER);
@@ -717,8 +744,8 @@ public class myGUI {
   }
   
   
-  // draws a given set of data points in a specified area
-  void drawData( float[] data , float dataLim , float pX0 , float pY0 , float Sx , float Sy , color col ){
+  // draws a given set of data points in a specified area, ending at the position dataCount of the data buffer
+  void drawData( float[] data , int dataCount , float dataLim , float pX0 , float pY0 , float Sx , float Sy , color col ){
     // we set the color
     stroke( col );
     
@@ -730,7 +757,7 @@ public class myGUI {
       float auxX = Sx/samples;
       float auxY1 = pY0 + 0.5*Sy;
       float auxY2 = 0.5*Sy/dataLim;
-      int idat = dataAdmin.dataCount;
+      int idat = dataCount;
       for(int i=0; i<samples; i++){
         if( idat < 0 ) idat += dataAdmin.Ndat;
         vertex( pX0+auxX*float(samples-i) , auxY1 - auxY2*data[idat] );  // -data[] because the y-axis of processing points downwards
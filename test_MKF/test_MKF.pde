@@ -20,8 +20,13 @@ import processing.serial.*;  // to get serial data
 
 
 // SERIAL COMMUNICATION VARIABLES
-int samplesFromLastUpdate = 0;  // we will use this variable to count the samples per second arriving to the serial port
+long lastSamples = 0;  // samples processed by the displayed sensor at the last measurement of the sample rate
 float sampleFrequency = 0.0;  // this variable will store the last measured sample rate (data rate)
+final int networkPort = 0;  // UDP and TCP port where the packets of the network bridges are received (0 disables the network source)
+
+// SIMULATION VARIABLES
+final long simulationSeed = 1;  // seed of the simulated data (and of the noise added to the serial data)
+final double simulationRate = 1000.0;  // nominal rate of the simulated data (samples/s)
 
 // DRAW METHOD VARIABLES
 boolean loopToggle = true;  // loopToggle variable will be used to enable the draw loop or to pause it
@@ -30,8 +35,19 @@ final int millisPerUpdate = 1000;  // this parameter sets the interval at which
 
 // ESTIMATORS VARIABLES
 final int N_estimators = 9;
+final double estimatorBudget = 0.8/N_estimators;  // fraction of a CPU core that each estimator can use (the expensive ones will reduce their update frequency)
+final boolean preintegrateSamples = true;  // if true, the samples that the scheduler does not admit are pre-integrated (see GyroPreintegrator.java) instead of discarded
+final boolean instrumentEstimators = true;  // if true, the metrics of each estimator are recorded, published via JMX, and shown below its label
+final boolean reducedSigmaPoints = false;  // if true, the MUKFs use 13 sigma points and add the process noise analytically
+final boolean fastMath = false;  // if true, the estimators use the small-angle trigonometric functions of FastMath
+final int correctionPeriod = 1;  // samples between full updates of the estimators; the rest only propagate the gyroscope (1: all the samples, 0: only on request)
+final int estimateRingSlots = 0;  // records kept in the ring file where the estimates of each sensor are published for other processes (0 disables it)
+final boolean recordSensors = false;  // if true, the raw packets of all the sensors are recorded in a compressed log (recordings/sensors_<ms>.mkfl, see SensorLog.java)
+final int snapshotPeriod = 5000;  // time between snapshots of the estimators of each sensor (ms); they are restored at start (0 disables them)
 long lastResetPositionTime = 0;  // time when last reset position occurred
-int updates = 0;  // updates variable will count the frequency at which the OrientationEstimator's will be updated
+
+// latency histograms of the data pipeline (press 'l' to print them)
+PipelineLatency latency = new PipelineLatency();
 
 // the GUI
 myGUI theGUI;
@@ -41,6 +57,8 @@ Fleet theFleet = new Fleet();
 
 // data administrator object
 dataAdministrator dataAdmin;
+// the packets of each sensor are processed in their own shard (the first sensor is the displayed one)
+ShardManager shards;
 CommunicationManager cm;
 
 
@@ -53,7 +71,7 @@ void setup() {
   //fullScreen( P3D , SPAN );  // to EXIT fullScreen mode, press ESC
   
   dataAdmin = new dataAdministrator();
-  cm = new CommunicationManager( this , dataAdmin , theFleet );
+  shards = new ShardManager( dataAdmin , theFleet );
   
   // we create the GUI
   theGUI = new myGUI( this );
@@ -61,7 +79,18 @@ void setup() {
   // we create the spacecraft shape
   theFleet.setUpSpacecraft();
   
-  // we create the spacecrafts of the fleet. Each spacecraft has an estimator associated. We also specify a position for the orientation mode
+  // we create the spacecrafts of the fleet
+  populateFleet( theFleet );
+  
+  // finally, we start receiving data (the shards need the GUI and the displayed fleet)
+  cm = new CommunicationManager( this , shards );
+  
+} // end setup
+
+
+
+// creates the spacecrafts of a fleet. Each spacecraft has an estimator associated. We also specify a position for the orientation mode
+void populateFleet( Fleet aFleet ) {
   int row = 0;
   int col = 0;
   for(int n=0; n<N_estimators; n++){
@@ -73,38 +102,13 @@ void setup() {
       row++;
     }
     // and we add the information to the GUI
-    switch( n ){
-      case 0:
-        theFleet.addSpacecraft( "MUKF O" , new MUKFcO() , r0In );
-        break;
-      case 1:
-        theFleet.addSpacecraft( "MUKF RP" , new MUKFcRP(), r0In );
-        break;
-      case 2:
-        theFleet.addSpacecraft( "MUKF MRP" , new MUKFcMRP() , r0In );
-        break;
-      case 3:
-        theFleet.addSpacecraft( "MUKF RV" , new MUKFcRV() , r0In );
-        break;
-      case 4:
-        theFleet.addSpacecraft( "MEKF O" , new MEKFcO() , r0In );
-        break;
-      case 5:
-        theFleet.addSpacecraft( "MEKF RP" , new MEKFcRP() , r0In );
-        break;
-      case 6:
-        theFleet.addSpacecraft( "MEKF MRP" , new MEKFcMRP() , r0In );
-        break;
-      case 7:
-        theFleet.addSpacecraft( "MEKF RV" , new MEKFcRV() , r0In );
-        break;
-      case 8:
-        theFleet.addSpacecraft( "Madgwick" , new MadgwickAHRS() , r0In );
-        break;
-    }
+    OrientationEstimator estimator = Estimators.create( n );
+    estimator.set_reducedSigmaPoints( reducedSigmaPoints );
+    estimator.set_fastMath( fastMath );
+    estimator.set_correctionPeriod( correctionPeriod );
+    aFleet.addSpacecraft( Estimators.NAMES[n] , estimator , r0In );
   }
-  
-} // end setup
+}
 
 
 
@@ -125,11 +129,14 @@ void draw() {
     camera(width/2, height/2, cameraZ , width/2, height/2, 0, 0, 1, 0);
   }
   
+  // we take the last state of the fleet published by the estimators (all the spacecraft come from the same sample)
+  FleetSnapshot snapshot = theFleet.acquireSnapshot();
+  
   // we draw the spacecraft based on the quaternions produced by the estimators
-  theFleet.drawFleet();
+  theFleet.drawFleet( snapshot );
   
   // if we are in the data tab, we draw the data elements
-  if( theGUI.dataToggle.getState() ) theGUI.drawData();
+  if( theGUI.dataToggle.getState() ) theGUI.drawData( snapshot.dataCount );
   
   // we reset the position if we have to
   int t = millis();
@@ -142,18 +149,12 @@ void draw() {
   int DeltaT = t-lastMillis;
   if( DeltaT > millisPerUpdate ){
     // sample frequency in the serial port
-    sampleFrequency = float(samplesFromLastUpdate)/(1.0e-3*(millis()-lastMillis));
-    samplesFromLastUpdate = 0;
+    sampleFrequency = float(snapshot.samples-lastSamples)/(1.0e-3*(millis()-lastMillis));
+    lastSamples = snapshot.samples;
     lastMillis = millis();
     
-    // real update frequency for our computer
-    float measuredUpdateFrequency = updates/(DeltaT/1000.0);
-    updates = 0;
-    //println( measuredUpdateFrequency );  // this can be used for debug purposes
-    // if our computer is not powerful enough to compute the updates at the assigned frequency, we make it lower
-    if( theFleet.spacecraft[0].updateFrequency > measuredUpdateFrequency ){
-      theGUI.updateFrequencySlider.setValue( (float)Math.log10(measuredUpdateFrequency) );
-    }
+    // if our computer is not powerful enough, each scheduler lowers the update frequency of its own estimator
+    //for(int n=0; n<theFleet.spacecraftCount; n++) println( theFleet.spacecraft[n].label + ": " + theFleet.spacecraft[n].scheduler );  // this can be used for debug purposes
   }
   
 } // end draw
@@ -161,13 +162,16 @@ void draw() {
 
 
 void serialEvent( Serial p ) { 
-  cm.notify_activity();
+  cm.notify_activity( p );
 }
 
 void exit() {
   if( cm != null ){
     cm.stop();
   }
+  if( shards != null ){
+    shards.stop();
+  }
   super.exit();
 }
 
@@ -183,4 +187,29 @@ void mousePressed(){
       loopToggle = true;
     }
   }
+}
+
+
+
+// this method is executed each time a key is pressed. We use it to print the latency histograms ('l'), and to reset them ('L')
+void keyPressed(){
+  if( key == 'l' ){
+    println( latency );
+    SensorShard[] theShards = shards.get_shards();
+    for(int s=0; s<theShards.length; s++){
+      println( "sensor " + theShards[s].sensorID + " (" + theShards[s].get_dropped() + " dropped packets)" );
+      for(int n=0; n<theShards[s].fleet.spacecraftCount; n++){
+        Spacecraft sc = theShards[s].fleet.spacecraft[n];
+        println( sc.updateLatency );
+        if( sc.metrics != null ) println( "  " + sc.metrics.snapshot() );
+      }
+    }
+    println();
+  }else if( key == 'L' ){
+    latency.reset();
+    SensorShard[] theShards = shards.get_shards();
+    for(int s=0; s<theShards.length; s++){
+      for(int n=0; n<theShards[s].fleet.spacecraftCount; n++) theShards[s].fleet.spacecraft[n].updateLatency.reset();
+    }
+  }
 }
\ No newline at end of file